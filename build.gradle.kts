@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    alias(libs.plugins.jmh)
 }
 
 group = "net.flamgop"
@@ -58,4 +59,38 @@ dependencies {
     implementation(libs.log4j.core)
     implementation(libs.log4j.slf4j2.impl)
     compileOnly(libs.jetbrains.annotations)
-}
\ No newline at end of file
+
+    testImplementation(platform(libs.junit.bom))
+    testImplementation(libs.junit.jupiter)
+    testRuntimeOnly(libs.junit.platform.launcher)
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    // Matrix4f batch transforms, AABBStore and occlusion kernels use the Vector API when it is available at runtime.
+    // javac warns "using incubating module(s)" on every compile, that's expected: only the Vectorized* classes touch
+    // jdk.incubator.vector, and their dispatchers fall back to scalar code when the module isn't resolved at runtime
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
+}
+
+// precision checks that shouldn't only run when someone benchmarks, see src/test
+tasks.test {
+    useJUnitPlatform()
+    jvmArgs("--add-modules=jdk.incubator.vector", "--enable-native-access=ALL-UNNAMED")
+}
+
+// ./gradlew jmh [-PjmhIncludes=<regex>], results are written as JSON so runs from different commits can be diffed
+jmh {
+    jmhVersion = libs.versions.jmh
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results.json")
+    jvmArgsAppend.addAll("--add-modules=jdk.incubator.vector", "--enable-native-access=ALL-UNNAMED")
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+}
+
+// ./gradlew cookModels -Pmodels=a.glb,b.glb writes a.glb.cooked etc. next to them, to ship without the sources
+tasks.register<JavaExec>("cookModels") {
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass = "net.flamgop.borked.renderer.model.CookedModel"
+    jvmArgs("--add-modules=jdk.incubator.vector", "--enable-native-access=ALL-UNNAMED")
+    args(providers.gradleProperty("models").getOrElse("").split(",").filter { it.isNotBlank() })
+}
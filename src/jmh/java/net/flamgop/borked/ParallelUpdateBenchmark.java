@@ -0,0 +1,76 @@
+package net.flamgop.borked;
+
+import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.math.Quaternionf;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/// How [World#update(float)]'s chunked update scales with worker count.
+/// Entities can't be created without a device, so each one is stood in for by a spinning, bobbing transform,
+/// split with the same [ParallelRange] and [World#UPDATE_GRAIN] the world uses. `threads = 0` means every available core,
+/// `threads = 1` is the sequential fallback.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelUpdateBenchmark {
+    private static final float DT = 1f / 60f;
+
+    @Param({"1", "2", "4", "8", "0"})
+    public int threads;
+
+    @Param({"10000", "100000"})
+    public int entityCount;
+
+    private ForkJoinPool pool;
+    private SimulatedEntity[] entities;
+
+    private static final class SimulatedEntity {
+        private final Matrix4f transform = new Matrix4f();
+        private final Matrix4f previous = new Matrix4f();
+        private final Quaternionf rotation = new Quaternionf();
+        private final float speed, phase;
+        private float angle;
+
+        private SimulatedEntity(float speed, float phase) {
+            this.speed = speed;
+            this.phase = phase;
+        }
+
+        private void update(float dt) {
+            previous.set(transform);
+            angle += speed * dt;
+            float half = angle * 0.5f;
+            rotation.x(0); rotation.y((float) Math.sin(half)); rotation.z(0); rotation.w((float) Math.cos(half));
+            transform.rotation(rotation).setTranslation(phase, (float) Math.sin(angle + phase), 0);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        int parallelism = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        pool = new ForkJoinPool(parallelism);
+        SplittableRandom random = new SplittableRandom(42);
+        entities = new SimulatedEntity[entityCount];
+        for (int i = 0; i < entityCount; i++) {
+            entities[i] = new SimulatedEntity((float) random.nextDouble(0.5, 4), (float) random.nextDouble(0, 100));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public void update() {
+        ParallelRange.run(pool, entityCount, World.UPDATE_GRAIN, (from, to) -> {
+            for (int i = from; i < to; i++) entities[i].update(DT);
+        });
+    }
+}
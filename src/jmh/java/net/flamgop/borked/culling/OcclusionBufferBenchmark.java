@@ -0,0 +1,82 @@
+package net.flamgop.borked.culling;
+
+import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/// Rasterizing a field of box occluders into a 256x128 buffer, and testing boxes scattered behind and between them.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OcclusionBufferBenchmark {
+    @Param({"64", "512"})
+    public int occluders;
+
+    @Param({"65536"})
+    public int boxes;
+
+    private Matrix4f viewProjection;
+    private OcclusionBuffer buffer;
+    private Occluder box;
+    private float[] transforms;
+    private float[] bounds;
+
+    @Setup
+    public void setup() {
+        Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(90), 16f / 9f, 0.1f, 500f, true);
+        Matrix4f view = new Matrix4f().lookAt(new Vector3f(0, 0, 0), new Vector3f(0, 0, -1), new Vector3f(0, 1, 0));
+        viewProjection = projection.multiply(view);
+        buffer = new OcclusionBuffer(256, 128);
+        box = new Occluder(
+                new float[]{-1, -1, -1, 1, -1, -1, 1, 1, -1, -1, 1, -1, -1, -1, 1, 1, -1, 1, 1, 1, 1, -1, 1, 1},
+                new int[]{0, 1, 2, 0, 2, 3, 4, 6, 5, 4, 7, 6, 0, 4, 5, 0, 5, 1, 3, 2, 6, 3, 6, 7, 0, 3, 7, 0, 7, 4, 1, 5, 6, 1, 6, 2}
+        );
+
+        SplittableRandom random = new SplittableRandom(42);
+        transforms = new float[occluders * 16];
+        Matrix4f transform = new Matrix4f();
+        for (int i = 0; i < occluders; i++) {
+            float scale = (float) random.nextDouble(1, 6);
+            transform.setIdentity()
+                    .scale(scale)
+                    .setTranslation((float) random.nextDouble(-60, 60), (float) random.nextDouble(-10, 10), (float) random.nextDouble(-80, -5))
+                    .get(transforms, i * 16);
+        }
+
+        bounds = new float[boxes * 6];
+        for (int i = 0; i < boxes; i++) {
+            float x = (float) random.nextDouble(-120, 120);
+            float y = (float) random.nextDouble(-20, 20);
+            float z = (float) random.nextDouble(-200, -1);
+            float half = (float) random.nextDouble(0.25, 2);
+            bounds[i * 6] = x - half; bounds[i * 6 + 1] = y - half; bounds[i * 6 + 2] = z - half;
+            bounds[i * 6 + 3] = x + half; bounds[i * 6 + 4] = y + half; bounds[i * 6 + 5] = z + half;
+        }
+        rasterize();
+    }
+
+    @Benchmark
+    public int rasterize() {
+        buffer.begin(viewProjection);
+        for (int i = 0; i < occluders; i++) buffer.addOccluder(box, transforms, i * 16);
+        buffer.rasterize(0, buffer.height());
+        buffer.buildHierarchy();
+        return buffer.triangleCount();
+    }
+
+    @Benchmark
+    public int testBoxes() {
+        int occluded = 0;
+        for (int i = 0; i < boxes; i++) {
+            int b = i * 6;
+            if (buffer.isOccluded(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5])) occluded++;
+        }
+        return occluded;
+    }
+}
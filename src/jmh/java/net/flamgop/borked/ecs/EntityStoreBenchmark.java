@@ -0,0 +1,77 @@
+package net.flamgop.borked.ecs;
+
+import net.flamgop.borked.math.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/// A collision-sync style pass over the translation of every entity that moved this tick, `movedPercent` of `entityCount`.
+/// `objects` is the old layout, one object per entity each with its own matrix and dirty flag, `store` walks the moved bitset
+/// of an [EntityStore] archetype.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityStoreBenchmark {
+    @Param({"10000", "100000"})
+    public int entityCount;
+
+    @Param({"1", "100"})
+    public int movedPercent;
+
+    private static final class ObjectEntity {
+        private final Matrix4f transform = new Matrix4f();
+        private boolean dirty;
+    }
+
+    private ObjectEntity[] objects;
+    private final EntityStore store = new EntityStore();
+    private Archetype archetype;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        objects = new ObjectEntity[entityCount];
+        Matrix4f transform = new Matrix4f();
+        for (int i = 0; i < entityCount; i++) {
+            float x = (float) random.nextDouble(-100, 100);
+            boolean moved = random.nextInt(100) < movedPercent;
+            objects[i] = new ObjectEntity();
+            objects[i].transform.translation(x, 0, 0);
+            objects[i].dirty = moved;
+
+            long handle = store.create();
+            transform.translation(x, 0, 0);
+            if (moved) store.setTransform(handle, transform);
+            else store.teleport(handle, transform);
+        }
+        archetype = store.archetypes().getFirst();
+    }
+
+    @Benchmark
+    public float objects() {
+        float sum = 0;
+        for (ObjectEntity entity : objects) {
+            if (!entity.dirty) continue;
+            sum += entity.transform.m30() + entity.transform.m31() + entity.transform.m32();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float store() {
+        float sum = 0;
+        float[] transforms = archetype.floats(EntityStore.TRANSFORM);
+        int words = Archetype.bitsetLength(archetype.size());
+        for (int w = 0; w < words; w++) {
+            for (long bits = archetype.movedWord(w); bits != 0; bits &= bits - 1) {
+                int row = (w << 6) + Long.numberOfTrailingZeros(bits);
+                sum += transforms[row * 16 + 12] + transforms[row * 16 + 13] + transforms[row * 16 + 14];
+            }
+        }
+        return sum;
+    }
+}
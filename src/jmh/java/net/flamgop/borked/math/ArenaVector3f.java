@@ -0,0 +1,55 @@
+package net.flamgop.borked.math;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/// How [Vector3f] was stored before it moved to plain fields, its own `Arena.ofAuto()` segment per instance.
+/// Only here so [MathStorageBenchmark] can measure the old storage against the current one, with just the operations it needs.
+final class ArenaVector3f {
+    static final int BYTES = 3 * Float.BYTES;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT;
+
+    private final MemorySegment memory = Arena.ofAuto().allocate(BYTES);
+
+    ArenaVector3f(float x, float y, float z) {
+        x(x);
+        y(y);
+        z(z);
+    }
+
+    ArenaVector3f(ArenaVector3f other) {
+        this(other.x(), other.y(), other.z());
+    }
+
+    float x() {
+        return memory.get(F32, 0);
+    }
+
+    float y() {
+        return memory.get(F32, Float.BYTES);
+    }
+
+    float z() {
+        return memory.get(F32, 2 * Float.BYTES);
+    }
+
+    void x(float value) {
+        memory.set(F32, 0, value);
+    }
+
+    void y(float value) {
+        memory.set(F32, Float.BYTES, value);
+    }
+
+    void z(float value) {
+        memory.set(F32, 2 * Float.BYTES, value);
+    }
+
+    ArenaVector3f subtract(ArenaVector3f other) {
+        x(x() - other.x());
+        y(y() - other.y());
+        z(z() - other.z());
+        return this;
+    }
+}
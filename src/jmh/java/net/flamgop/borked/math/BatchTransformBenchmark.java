@@ -0,0 +1,95 @@
+package net.flamgop.borked.math;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// Mesh-loading vertex transforms. Throughput is reported per call, the `vertices` counter is vertices/second.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchTransformBenchmark {
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT;
+
+    @Param({"1024", "65536", "1048576"})
+    public int vertexCount;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long vertices;
+    }
+
+    private final Matrix4f transform = new Matrix4f().rotation(new Quaternionf(0.1f, 0.2f, 0.3f, 0.9f).normalize()).setTranslation(1, 2, 3);
+
+    private Arena arena;
+    private MemorySegment src, dst;
+    private float[] xs, ys, zs;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        arena = Arena.ofConfined();
+        src = arena.allocate((long) vertexCount * Vector3f.BYTES);
+        dst = arena.allocate((long) vertexCount * Vector3f.BYTES);
+        xs = new float[vertexCount];
+        ys = new float[vertexCount];
+        zs = new float[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            xs[i] = random.nextFloat();
+            ys[i] = random.nextFloat();
+            zs[i] = random.nextFloat();
+            src.setAtIndex(F32, i * 3L, xs[i]);
+            src.setAtIndex(F32, i * 3L + 1, ys[i]);
+            src.setAtIndex(F32, i * 3L + 2, zs[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    /// What `PlortMesh` did before batch transforms: one temporary per vertex.
+    @Benchmark
+    public void perVertex(Counters counters) {
+        for (int i = 0; i < vertexCount; i++) {
+            Vector3f v = transform.transform(new Vector3f(src.getAtIndex(F32, i * 3L), src.getAtIndex(F32, i * 3L + 1), src.getAtIndex(F32, i * 3L + 2)));
+            dst.setAtIndex(F32, i * 3L, v.x());
+            dst.setAtIndex(F32, i * 3L + 1, v.y());
+            dst.setAtIndex(F32, i * 3L + 2, v.z());
+        }
+        counters.vertices += vertexCount;
+    }
+
+    @Benchmark
+    public void scalarAoS(Counters counters) {
+        BatchTransforms.scalarTransformPositions(transform, src, 0, dst, 0, vertexCount);
+        counters.vertices += vertexCount;
+    }
+
+    @Benchmark
+    public void batchAoS(Counters counters) {
+        transform.transformPositions(src, dst, vertexCount);
+        counters.vertices += vertexCount;
+    }
+
+    @Benchmark
+    public void scalarSoADirections(Counters counters) {
+        BatchTransforms.scalarTransformDirections(transform, xs, ys, zs, 0, vertexCount);
+        counters.vertices += vertexCount;
+    }
+
+    @Benchmark
+    public void batchSoADirections(Counters counters) {
+        transform.transformDirections(xs, ys, zs, 0, vertexCount);
+        counters.vertices += vertexCount;
+    }
+}
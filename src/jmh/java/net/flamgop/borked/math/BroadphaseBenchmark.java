@@ -0,0 +1,109 @@
+package net.flamgop.borked.math;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// The player's three-axis collision resolve against `boxCount` world-space boxes,
+/// brute force like `CameraController` used to do, as a SIMD scan over an [AABBStore], and against the [AABBTree] broadphase `World` now maintains.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadphaseBenchmark {
+    @Param({"10000", "50000", "100000"})
+    public int boxCount;
+
+    private AABB[] boxes;
+    private final AABBTree tree = new AABBTree();
+    private final AABBStore store = new AABBStore();
+    private long[] overlaps;
+    private final AABB box = new AABB(new Vector3f(), new Vector3f());
+    private int[] candidates = new int[64];
+
+    private final AABB player = new AABB(new Vector3f(-0.5f, -1f, -0.5f), new Vector3f(0.5f, 1f, 0.5f));
+    private final AABB moved = new AABB(player);
+    private final Vector3f resolution = new Vector3f();
+    private final Vector3f start = new Vector3f();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        float extent = (float) Math.cbrt(boxCount) * 4f;
+        boxes = new AABB[boxCount];
+        for (int i = 0; i < boxCount; i++) {
+            float x = random.nextFloat() * extent, y = random.nextFloat() * extent, z = random.nextFloat() * extent;
+            float size = 0.5f + random.nextFloat() * 2f;
+            boxes[i] = new AABB(new Vector3f(x, y, z), new Vector3f(x + size, y + size, z + size));
+            tree.createProxy(boxes[i], i);
+            store.add(x, y, z, x + size, y + size, z + size, true);
+        }
+        overlaps = new long[AABBStore.bitsetLength(boxCount)];
+        start.x(extent * 0.5f);
+        start.y(extent * 0.5f);
+        start.z(extent * 0.5f);
+    }
+
+    private AABB resetPlayer() {
+        moved.min().setFrom(player.min());
+        moved.max().setFrom(player.max());
+        return moved.translate(start);
+    }
+
+    @Benchmark
+    public AABB bruteForce() {
+        AABB aabb = resetPlayer();
+        for (Axis axis : Axis.values()) {
+            aabb.translate(0.01f, 0.01f, 0.01f);
+            for (AABB box : boxes) {
+                if (!aabb.intersects(box)) continue;
+                aabb.translate(aabb.resolveAxis(box, axis, resolution));
+            }
+        }
+        return aabb;
+    }
+
+    @Benchmark
+    public AABB storeScan() {
+        AABB aabb = resetPlayer();
+        for (Axis axis : Axis.values()) {
+            aabb.translate(0.01f, 0.01f, 0.01f);
+            if (store.overlapping(aabb, overlaps) == 0) continue;
+            for (int w = 0; w < overlaps.length; w++) {
+                for (long bits = overlaps[w]; bits != 0; bits &= bits - 1) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    if (!store.intersects(i, aabb)) continue;
+                    aabb.translate(aabb.resolveAxis(store.get(i, box), axis, resolution));
+                }
+            }
+        }
+        return aabb;
+    }
+
+    @TearDown
+    public void tearDown() {
+        store.close();
+    }
+
+    @Benchmark
+    public AABB tree() {
+        AABB aabb = resetPlayer();
+        for (Axis axis : Axis.values()) {
+            aabb.translate(0.01f, 0.01f, 0.01f);
+            int count = tree.query(aabb, candidates);
+            if (count > candidates.length) {
+                candidates = new int[Integer.highestOneBit(count) << 1];
+                count = tree.query(aabb, candidates);
+            }
+            for (int i = 0; i < count; i++) {
+                AABB box = boxes[candidates[i]];
+                if (!aabb.intersects(box)) continue;
+                aabb.translate(aabb.resolveAxis(box, axis, resolution));
+            }
+        }
+        return aabb;
+    }
+}
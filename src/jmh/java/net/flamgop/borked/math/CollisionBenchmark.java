@@ -0,0 +1,48 @@
+package net.flamgop.borked.math;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// The per-frame player collision sweep from `CameraController.physicsStep`, over a scene of `entityCount` boxes.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int entityCount;
+
+    private final List<AABB> boxes = new ArrayList<>();
+    private final List<Vector3f> positions = new ArrayList<>();
+    private final AABB player = new AABB(new Vector3f(-0.5f, -1f, -0.5f), new Vector3f(0.5f, 1f, 0.5f));
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1234);
+        float extent = (float) Math.cbrt(entityCount) * 4f;
+        for (int i = 0; i < entityCount; i++) {
+            boxes.add(new AABB(new Vector3f(0), new Vector3f(0.5f + random.nextFloat() * 2f)));
+            positions.add(new Vector3f(random.nextFloat() * extent, random.nextFloat() * extent, random.nextFloat() * extent));
+        }
+    }
+
+    @Benchmark
+    public AABB resolveAllAxes() {
+        AABB aabb = new AABB(player).translate(new Vector3f(entityCount * 0.5f % 7f, 2f, 3f));
+        for (Axis axis : Axis.values()) {
+            aabb.translate(new Vector3f(0.01f, 0.01f, 0.01f));
+            for (int i = 0; i < boxes.size(); i++) {
+                AABB worldChild = boxes.get(i).translated(positions.get(i));
+                if (!aabb.intersects(worldChild)) continue;
+                aabb.translate(aabb.resolveAxis(worldChild, axis));
+            }
+        }
+        return aabb;
+    }
+}
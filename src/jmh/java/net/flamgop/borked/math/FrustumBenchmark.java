@@ -0,0 +1,84 @@
+package net.flamgop.borked.math;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/// Frustum culling over boxes and spheres scattered around the camera, roughly a quarter of them visible.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrustumBenchmark {
+    private static final long SPHERE_STRIDE = 12 * Float.BYTES; // same stride as PlortMesh.BOUNDS_SIZE
+
+    @Param({"1024", "65536"})
+    public int count;
+
+    private Frustum frustum;
+    private AABB[] aabbs;
+    private float[] minX, minY, minZ, maxX, maxY, maxZ;
+    private float[] spheres;
+    private MemorySegment sphereSegment;
+    private long[] visible;
+
+    @Setup
+    public void setup() {
+        Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(90), 16f / 9f, 0.1f, 500f, true);
+        Matrix4f view = new Matrix4f().lookAt(new Vector3f(0, 0, 0), new Vector3f(0, 0, -1), new Vector3f(0, 1, 0));
+        frustum = new Frustum(projection.multiply(view), true);
+
+        SplittableRandom random = new SplittableRandom(42);
+        aabbs = new AABB[count];
+        minX = new float[count]; minY = new float[count]; minZ = new float[count];
+        maxX = new float[count]; maxY = new float[count]; maxZ = new float[count];
+        spheres = new float[count * 4];
+        sphereSegment = Arena.ofAuto().allocate(count * SPHERE_STRIDE);
+        visible = new long[Frustum.bitsetLength(count)];
+
+        for (int i = 0; i < count; i++) {
+            float x = (float) random.nextDouble(-250, 250);
+            float y = (float) random.nextDouble(-50, 50);
+            float z = (float) random.nextDouble(-250, 250);
+            float half = (float) random.nextDouble(0.5, 4);
+            aabbs[i] = new AABB(new Vector3f(x - half, y - half, z - half), new Vector3f(x + half, y + half, z + half));
+            minX[i] = x - half; minY[i] = y - half; minZ[i] = z - half;
+            maxX[i] = x + half; maxY[i] = y + half; maxZ[i] = z + half;
+            spheres[i * 4] = x; spheres[i * 4 + 1] = y; spheres[i * 4 + 2] = z; spheres[i * 4 + 3] = half;
+            sphereSegment.set(ValueLayout.JAVA_FLOAT, i * SPHERE_STRIDE, x);
+            sphereSegment.set(ValueLayout.JAVA_FLOAT, i * SPHERE_STRIDE + 4, y);
+            sphereSegment.set(ValueLayout.JAVA_FLOAT, i * SPHERE_STRIDE + 8, z);
+            sphereSegment.set(ValueLayout.JAVA_FLOAT, i * SPHERE_STRIDE + 12, half);
+        }
+    }
+
+    @Benchmark
+    public int perObjectAABB() {
+        int visibleCount = 0;
+        for (AABB aabb : aabbs) {
+            if (frustum.testAABB(aabb)) visibleCount++;
+        }
+        return visibleCount;
+    }
+
+    @Benchmark
+    public int batchAABB() {
+        return frustum.testAABBs(minX, minY, minZ, maxX, maxY, maxZ, 0, count, visible);
+    }
+
+    @Benchmark
+    public int batchSpheres() {
+        return frustum.testSpheres(spheres, 0, count, visible);
+    }
+
+    @Benchmark
+    public int batchSpheresStrided() {
+        return frustum.testSpheres(sphereSegment, SPHERE_STRIDE, count, visible);
+    }
+}
@@ -0,0 +1,49 @@
+package net.flamgop.borked.math;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/// Single-object math used every frame. Run with `-prof gc` to see allocation rates.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathBenchmark {
+    private final Matrix4f view = new Matrix4f().lookAt(new Vector3f(1, 2, 3), new Vector3f(0, 0, 0), new Vector3f(0, 1, 0));
+    private final Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(90), 16f / 9f, 0.001f, 1000f, true);
+    private final Vector3f position = new Vector3f(1, 2, 3);
+    private final Vector3f target = new Vector3f(4, 5, 6);
+    private final Vector3f up = new Vector3f(0, 1, 0);
+
+    @Benchmark
+    public Matrix4f multiply() {
+        return new Matrix4f(projection).multiply(view);
+    }
+
+    @Benchmark
+    public Matrix4f invert() {
+        return new Matrix4f(view).invert();
+    }
+
+    @Benchmark
+    public Matrix4f lookAt() {
+        return new Matrix4f().lookAt(position, target, up);
+    }
+
+    @Benchmark
+    public Vector3f transform() {
+        return view.transform(position);
+    }
+
+    @Benchmark
+    public void upload(Blackhole bh) {
+        // the per-frame camera upload: view projection plus two inverses
+        bh.consume(new Matrix4f(projection).multiply(view));
+        bh.consume(new Matrix4f(view).invert());
+        bh.consume(new Matrix4f(projection).invert());
+    }
+}
@@ -0,0 +1,193 @@
+package net.flamgop.borked.math;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/// The collision and mesh loading paths with vectors stored the old way, in an [ArenaVector3f] per instance, against the same code on
+/// the field-backed [Vector3f] and against what ships now. Run with `-prof gc` to compare allocation rates alongside the timings.
+///
+/// `collision*` resolves a player box against `colliders` overlapping boxes on every axis, as a physics step does.
+/// `meshLoading*` transforms `vertexCount` positions one vector at a time and writes them out, as meshes were loaded before the batch transforms.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MathStorageBenchmark {
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT;
+
+    @Param({"16"})
+    public int colliders;
+
+    @Param({"65536"})
+    public int vertexCount;
+
+    private AABB player;
+    private AABB[] boxes;
+    private ArenaVector3f playerMin, playerMax;
+    private ArenaVector3f[] boxMins, boxMaxes;
+    private final Vector3f resolution = new Vector3f();
+
+    private final Matrix4f transform = new Matrix4f().setIdentity().scale(2f).setTranslation(1f, 2f, 3f);
+    private float[] positions;
+    private MemorySegment positionSegment;
+    private Arena arena;
+    private MemorySegment transformed;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        player = new AABB(new Vector3f(-0.5f, -1f, -0.5f), new Vector3f(0.5f, 1f, 0.5f));
+        playerMin = new ArenaVector3f(-0.5f, -1f, -0.5f);
+        playerMax = new ArenaVector3f(0.5f, 1f, 0.5f);
+        boxes = new AABB[colliders];
+        boxMins = new ArenaVector3f[colliders];
+        boxMaxes = new ArenaVector3f[colliders];
+        for (int i = 0; i < colliders; i++) {
+            float x = (float) random.nextDouble(-1, 1), y = (float) random.nextDouble(-1.5, 1.5), z = (float) random.nextDouble(-1, 1);
+            float half = (float) random.nextDouble(0.25, 1);
+            boxes[i] = new AABB(new Vector3f(x - half, y - half, z - half), new Vector3f(x + half, y + half, z + half));
+            boxMins[i] = new ArenaVector3f(x - half, y - half, z - half);
+            boxMaxes[i] = new ArenaVector3f(x + half, y + half, z + half);
+        }
+
+        positions = new float[vertexCount * 3];
+        for (int i = 0; i < positions.length; i++) positions[i] = (float) random.nextDouble(-100, 100);
+        positionSegment = MemorySegment.ofArray(positions);
+        arena = Arena.ofConfined();
+        transformed = arena.allocate((long) vertexCount * 3 * Float.BYTES);
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public float collisionArena() {
+        float sum = 0;
+        for (int i = 0; i < colliders; i++) {
+            for (Axis axis : Axis.values()) sum += sumOf(resolveAxisArena(playerMin, playerMax, boxMins[i], boxMaxes[i], axis));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float collisionHeap() {
+        float sum = 0;
+        for (int i = 0; i < colliders; i++) {
+            for (Axis axis : Axis.values()) sum += sumOf(resolveAxisHeap(player, boxes[i], axis));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float collisionShipped() {
+        float sum = 0;
+        for (int i = 0; i < colliders; i++) {
+            for (Axis axis : Axis.values()) sum += sumOf(player.resolveAxis(boxes[i], axis, resolution));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public MemorySegment meshLoadingArena() {
+        for (int v = 0; v < vertexCount; v++) {
+            ArenaVector3f p = transformArena(new ArenaVector3f(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]));
+            write(v, p.x(), p.y(), p.z());
+        }
+        return transformed;
+    }
+
+    @Benchmark
+    public MemorySegment meshLoadingHeap() {
+        for (int v = 0; v < vertexCount; v++) {
+            Vector3f p = transform.transform(new Vector3f(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]));
+            write(v, p.x(), p.y(), p.z());
+        }
+        return transformed;
+    }
+
+    @Benchmark
+    public MemorySegment meshLoadingShipped() {
+        transform.transformPositions(positionSegment, transformed, vertexCount);
+        return transformed;
+    }
+
+    private void write(int vertex, float x, float y, float z) {
+        long offset = (long) vertex * 3 * Float.BYTES;
+        transformed.set(F32, offset, x);
+        transformed.set(F32, offset + Float.BYTES, y);
+        transformed.set(F32, offset + 2 * Float.BYTES, z);
+    }
+
+    private static float sumOf(Vector3f v) {
+        return v.x() + v.y() + v.z();
+    }
+
+    private static float sumOf(ArenaVector3f v) {
+        return v.x() + v.y() + v.z();
+    }
+
+    // AABB.penetration and resolveAxis as they were, a vector allocated for every intermediate
+    private static ArenaVector3f resolveAxisArena(ArenaVector3f min, ArenaVector3f max, ArenaVector3f otherMin, ArenaVector3f otherMax, Axis axis) {
+        ArenaVector3f d1 = new ArenaVector3f(otherMax).subtract(min);
+        ArenaVector3f d2 = new ArenaVector3f(max).subtract(otherMin);
+        ArenaVector3f p = new ArenaVector3f(Math.min(d1.x(), d2.x()), Math.min(d1.y(), d2.y()), Math.min(d1.z(), d2.z()));
+        return switch (axis) {
+            case X -> {
+                float push = Math.min(p.x(), Math.abs(min.x() - otherMin.x()));
+                yield new ArenaVector3f(min.x() < otherMin.x() ? -push : push, 0, 0);
+            }
+            case Y -> {
+                float push = Math.min(p.y(), Math.abs(min.y() - otherMin.y()));
+                yield new ArenaVector3f(0, min.y() < otherMin.y() ? -push : push, 0);
+            }
+            case Z -> {
+                float push = Math.min(p.z(), Math.abs(min.z() - otherMin.z()));
+                yield new ArenaVector3f(0, 0, min.z() < otherMin.z() ? -push : push);
+            }
+        };
+    }
+
+    // the same allocations on field-backed vectors
+    private static Vector3f resolveAxisHeap(AABB box, AABB other, Axis axis) {
+        Vector3f p = box.penetration(other);
+        Vector3f min = box.min(), otherMin = other.min();
+        return switch (axis) {
+            case X -> {
+                float push = Math.min(p.x(), Math.abs(min.x() - otherMin.x()));
+                yield new Vector3f(min.x() < otherMin.x() ? -push : push, 0, 0);
+            }
+            case Y -> {
+                float push = Math.min(p.y(), Math.abs(min.y() - otherMin.y()));
+                yield new Vector3f(0, min.y() < otherMin.y() ? -push : push, 0);
+            }
+            case Z -> {
+                float push = Math.min(p.z(), Math.abs(min.z() - otherMin.z()));
+                yield new Vector3f(0, 0, min.z() < otherMin.z() ? -push : push);
+            }
+        };
+    }
+
+    // Matrix4f.transform as it was, returning a new vector
+    private ArenaVector3f transformArena(ArenaVector3f v) {
+        Matrix4f m = transform;
+        float x = v.x(), y = v.y(), z = v.z();
+        float rx = Math.fma(m.m00(), x, Math.fma(m.m10(), y, Math.fma(m.m20(), z, m.m30())));
+        float ry = Math.fma(m.m01(), x, Math.fma(m.m11(), y, Math.fma(m.m21(), z, m.m31())));
+        float rz = Math.fma(m.m02(), x, Math.fma(m.m12(), y, Math.fma(m.m22(), z, m.m32())));
+        float rw = Math.fma(m.m03(), x, Math.fma(m.m13(), y, Math.fma(m.m23(), z, m.m33())));
+        if (rw != 1.0f && rw != 0.0f) {
+            float invW = 1.0f / rw;
+            return new ArenaVector3f(rx * invW, ry * invW, rz * invW);
+        }
+        return new ArenaVector3f(rx, ry, rz);
+    }
+}
@@ -0,0 +1,63 @@
+package net.flamgop.borked.math;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/// Specialized inverses against the general adjugate path, timings only, `MatrixInverseTest` checks they agree.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatrixInverseBenchmark {
+    private final Matrix4f rigid = new Matrix4f()
+            .rotation(new Quaternionf(0.18257418f, 0.36514837f, 0.5477226f, 0.73029673f))
+            .setTranslation(12.5f, -3f, 100f);
+    private final Matrix4f affine = new Matrix4f(
+            2f, 0.5f, 0f, 0f,
+            0f, 3f, 0.25f, 0f,
+            0.1f, 0f, 0.75f, 0f,
+            -4f, 8f, 16f, 1f
+    );
+    private final Matrix4f perspective = new Matrix4f().perspective((float) Math.toRadians(90), 16f / 9f, 0.001f, 1000f, true);
+
+    private final Matrix4f scratch = new Matrix4f();
+
+    @Benchmark
+    public Matrix4f rigidGeneral() {
+        return scratch.set(rigid).invertGeneral();
+    }
+
+    @Benchmark
+    public Matrix4f rigidFast() {
+        return scratch.set(rigid).invertRigid();
+    }
+
+    @Benchmark
+    public Matrix4f affineGeneral() {
+        return scratch.set(affine).invertGeneral();
+    }
+
+    @Benchmark
+    public Matrix4f affineFast() {
+        return scratch.set(affine).invertAffine();
+    }
+
+    @Benchmark
+    public Matrix4f perspectiveGeneral() {
+        return scratch.set(perspective).invertGeneral();
+    }
+
+    @Benchmark
+    public Matrix4f perspectiveFast() {
+        return scratch.set(perspective).invertPerspective();
+    }
+
+    @Benchmark
+    public Matrix4f dispatched() {
+        // what callers actually pay, kind dispatch included
+        return scratch.set(rigid).invert();
+    }
+}
@@ -0,0 +1,92 @@
+package net.flamgop.borked.renderer.model;
+
+import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.util.meshoptimizer.MeshOptimizer;
+import org.lwjgl.util.meshoptimizer.MeshoptMeshlet;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/// Meshlet building and packing from `PlortMesh` over a generated grid of roughly `vertexCount` vertices.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeshletBenchmark {
+    @Param({"4096", "65536", "1048576"})
+    public int vertexCount;
+
+    private int numVertices, numIndices;
+    private FloatBuffer vertices;
+    private IntBuffer indices;
+
+    private MeshoptMeshlet.Buffer meshlets;
+    private IntBuffer meshletVertices;
+    private ByteBuffer meshletTriangles;
+    private ByteBuffer packed;
+    private int meshletCount;
+
+    @Setup
+    public void setup() {
+        int side = (int) Math.sqrt(vertexCount);
+        numVertices = side * side;
+        numIndices = (side - 1) * (side - 1) * 6;
+
+        vertices = MemoryUtil.memAllocFloat(numVertices * 3);
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                vertices.put(x).put((float) Math.sin(x * 0.1) * (float) Math.cos(y * 0.1)).put(y);
+            }
+        }
+        vertices.flip();
+
+        indices = MemoryUtil.memAllocInt(numIndices);
+        for (int y = 0; y < side - 1; y++) {
+            for (int x = 0; x < side - 1; x++) {
+                int i = y * side + x;
+                indices.put(i).put(i + side).put(i + 1);
+                indices.put(i + 1).put(i + side).put(i + side + 1);
+            }
+        }
+        indices.flip();
+
+        int worstCaseMeshletCount = Math.toIntExact(MeshOptimizer.meshopt_buildMeshletsBound(numIndices, PlortMesh.MAX_VERTICES_PER_MESHLET, PlortMesh.MAX_TRIANGLES_PER_MESHLET));
+        meshlets = MeshoptMeshlet.calloc(worstCaseMeshletCount);
+        meshletVertices = MemoryUtil.memAllocInt(PlortMesh.MAX_VERTICES_PER_MESHLET * worstCaseMeshletCount);
+        meshletTriangles = MemoryUtil.memAlloc(PlortMesh.MAX_TRIANGLES_PER_MESHLET * 3 * worstCaseMeshletCount);
+        packed = MemoryUtil.memAlloc(PlortMesh.MESHLET_SIZE * worstCaseMeshletCount);
+
+        meshletCount = buildMeshlets();
+    }
+
+    @TearDown
+    public void tearDown() {
+        meshlets.close();
+        MemoryUtil.memFree(meshletVertices);
+        MemoryUtil.memFree(meshletTriangles);
+        MemoryUtil.memFree(packed);
+        MemoryUtil.memFree(vertices);
+        MemoryUtil.memFree(indices);
+    }
+
+    private int buildMeshlets() {
+        return Math.toIntExact(MeshOptimizer.meshopt_buildMeshlets(meshlets, meshletVertices, meshletTriangles, indices, vertices, numVertices, 12, PlortMesh.MAX_VERTICES_PER_MESHLET, PlortMesh.MAX_TRIANGLES_PER_MESHLET, 0.0f));
+    }
+
+    @Benchmark
+    public int build() {
+        return buildMeshlets();
+    }
+
+    @Benchmark
+    public ByteBuffer pack() {
+        PlortMesh.packMeshlets(meshlets, meshletCount, meshletVertices, meshletTriangles, MemorySegment.ofBuffer(packed));
+        return packed;
+    }
+}
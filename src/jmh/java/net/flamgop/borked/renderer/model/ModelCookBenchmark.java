@@ -0,0 +1,42 @@
+package net.flamgop.borked.renderer.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/// [CookedModel#cook(String, ForkJoinPool)] of a whole model, import included, and how it scales with worker count.
+/// `model` is resolved against the working directory like the game resolves it, pass another one with `-p model=<path>`.
+/// `threads = 0` means every available core, `threads = 1` is the sequential fallback.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelCookBenchmark {
+    @Param({"1_coffeeShop_post.glb"})
+    public String model;
+
+    @Param({"1", "2", "4", "0"})
+    public int threads;
+
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        pool = new ForkJoinPool(threads == 0 ? Runtime.getRuntime().availableProcessors() : threads);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.close();
+    }
+
+    @Benchmark
+    public int cook() {
+        try (CookedModel cooked = CookedModel.cook(model, pool)) {
+            return cooked.meshes().size();
+        }
+    }
+}
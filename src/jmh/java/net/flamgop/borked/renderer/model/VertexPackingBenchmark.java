@@ -0,0 +1,75 @@
+package net.flamgop.borked.renderer.model;
+
+import net.flamgop.borked.math.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/// Vertex packing from `PlortMesh`, interleaving `vertexCount` random vertices laid out like Assimp's attribute arrays,
+/// on its own and together with the bulk transforms into model space that precede it.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VertexPackingBenchmark {
+    @Param({"1048576"})
+    public int vertexCount;
+
+    private Arena arena;
+    private Matrix4f transform, normalMatrix;
+    private MemorySegment positions, normals, tangents, bitangents, texcoords;
+    private MemorySegment transformedPositions, transformedNormals, transformedTangents, transformedBitangents;
+    private MemorySegment packed;
+
+    @Setup
+    public void setup() {
+        arena = Arena.ofConfined();
+        SplittableRandom random = new SplittableRandom(42);
+        positions = randomVectors(random);
+        normals = randomVectors(random);
+        tangents = randomVectors(random);
+        bitangents = randomVectors(random);
+        texcoords = randomVectors(random);
+        transformedPositions = arena.allocate((long) vertexCount * 3 * Float.BYTES);
+        transformedNormals = arena.allocate((long) vertexCount * 3 * Float.BYTES);
+        transformedTangents = arena.allocate((long) vertexCount * 3 * Float.BYTES);
+        transformedBitangents = arena.allocate((long) vertexCount * 3 * Float.BYTES);
+        packed = arena.allocate((long) vertexCount * PlortMesh.VERTEX_SIZE);
+
+        transform = new Matrix4f().setIdentity().scale(2f).setTranslation(1f, 2f, 3f);
+        normalMatrix = new Matrix4f(transform).invert().transpose();
+    }
+
+    private MemorySegment randomVectors(SplittableRandom random) {
+        MemorySegment vectors = arena.allocate((long) vertexCount * 3 * Float.BYTES);
+        for (long i = 0; i < (long) vertexCount * 3; i++) vectors.setAtIndex(ValueLayout.JAVA_FLOAT, i, (float) random.nextDouble(-1, 1));
+        return vectors;
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public MemorySegment pack() {
+        PlortMesh.packVertices(positions, normals, tangents, bitangents, texcoords, vertexCount, packed);
+        return packed;
+    }
+
+    @Benchmark
+    public MemorySegment transformAndPack() {
+        transform.transformPositions(positions, transformedPositions, vertexCount);
+        normalMatrix.transformDirections(normals, transformedNormals, vertexCount);
+        normalMatrix.transformDirections(tangents, transformedTangents, vertexCount);
+        normalMatrix.transformDirections(bitangents, transformedBitangents, vertexCount);
+        PlortMesh.packVertices(transformedPositions, transformedNormals, transformedTangents, transformedBitangents, texcoords, vertexCount, packed);
+        return packed;
+    }
+}
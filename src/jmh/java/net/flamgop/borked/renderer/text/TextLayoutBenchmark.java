@@ -0,0 +1,54 @@
+package net.flamgop.borked.renderer.text;
+
+import net.flamgop.borked.math.Vector2f;
+import net.flamgop.borked.math.Vector3f;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/// The CPU side of `Atlas.buildTextBuffer`, laid out into host memory instead of a mapped buffer.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextLayoutBenchmark {
+    @Param({"16", "256", "4096"})
+    public int stringLength;
+
+    private TextLayout layout;
+    private List<Text> text;
+    private Arena arena;
+    private MemorySegment dst;
+
+    @Setup
+    public void setup() {
+        layout = TextLayout.loadFromResources("assets/fonts/nunito");
+
+        Random random = new Random(1234);
+        StringBuilder builder = new StringBuilder(stringLength);
+        for (int i = 0; i < stringLength; i++) {
+            builder.append(i % 64 == 63 ? '\n' : (char) (0x20 + random.nextInt(0x7F - 0x20)));
+        }
+        text = List.of(new Text(builder.toString(), new Vector3f(1f), new Vector2f(0, 64), 0.5f));
+
+        arena = Arena.ofConfined();
+        dst = arena.allocate((long) layout.glyphCount(text) * Atlas.GLYPH_MESHLET_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public MemorySegment layoutText() {
+        layout.layout(text, dst);
+        return dst;
+    }
+}
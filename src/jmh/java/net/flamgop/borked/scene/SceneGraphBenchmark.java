@@ -0,0 +1,72 @@
+package net.flamgop.borked.scene;
+
+import net.flamgop.borked.math.Matrix4f;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/// World matrix propagation over a wide, shallow hierarchy: a root with 64 props, each carrying its share of `nodeCount` parts.
+/// Moving the root dirties everything, sequentially and on the common pool. Moving a few random parts only recomputes those.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SceneGraphBenchmark {
+    private static final int PROPS = 64;
+    private static final int MOVED_PARTS = 100;
+
+    @Param({"10000", "100000"})
+    public int nodeCount;
+
+    private final SceneGraph graph = new SceneGraph();
+    private final Matrix4f transform = new Matrix4f();
+    private int root;
+    private int[] parts;
+    private float angle;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        root = graph.create(SceneGraph.NULL, 0);
+        int[] props = new int[PROPS];
+        for (int i = 0; i < PROPS; i++) props[i] = graph.create(root, transform.translation(i, 0, 0), 0);
+        parts = new int[nodeCount - PROPS - 1];
+        for (int i = 0; i < parts.length; i++) {
+            parts[i] = graph.create(props[random.nextInt(PROPS)], transform.translation(0, random.nextFloat(), 0), 0);
+        }
+        graph.update(null);
+    }
+
+    private void moveRoot() {
+        angle += 0.01f;
+        graph.setLocal(root, transform.translation(angle, 0, 0));
+    }
+
+    @Benchmark
+    public int rootSequential() {
+        moveRoot();
+        graph.update(null);
+        return graph.changedCount();
+    }
+
+    @Benchmark
+    public int rootParallel() {
+        moveRoot();
+        graph.update(ForkJoinPool.commonPool());
+        return graph.changedCount();
+    }
+
+    @Benchmark
+    public int sparseParts() {
+        angle += 0.01f;
+        for (int i = 0; i < MOVED_PARTS; i++) {
+            graph.setLocal(parts[(i * 7919) % parts.length], transform.translation(0, angle, 0));
+        }
+        graph.update(ForkJoinPool.commonPool());
+        return graph.changedCount();
+    }
+}
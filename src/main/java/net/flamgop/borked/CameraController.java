@@ -1,25 +1,35 @@
 package net.flamgop.borked;
 
 import net.flamgop.borked.math.*;
-import net.flamgop.borked.renderer.model.PlortModel;
 import net.flamgop.borked.renderer.window.PlortInput;
 import net.flamgop.borked.renderer.window.PlortWindow;
 import net.flamgop.borked.renderer.memory.BufferUsage;
 import net.flamgop.borked.renderer.memory.MappedMemory;
 import net.flamgop.borked.renderer.memory.PlortAllocator;
 import net.flamgop.borked.renderer.memory.PlortBuffer;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.glfw.GLFW;
 
 public class CameraController implements AutoCloseable {
     private final PlortInput input;
-    private final PlortBuffer viewBuffer;
+    // null when headless
+    private final @Nullable PlortBuffer viewBuffer;
+    private final FrameScratch scratch;
 
     private final Vector3f velocity = new Vector3f(0);
 
     private final Vector3f up = new Vector3f(0,1,0);
     private final Vector3f position = new Vector3f(-0.5f,10,-0.5f);
+    // position at the end of the previous tick, frames interpolate from here to position
+    private final Vector3f previousPosition = new Vector3f(position);
     private final Matrix4f projection = new Matrix4f();
     private final Matrix4f view = new Matrix4f();
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Frustum frustum = new Frustum();
+    // where the last uploaded view looks from
+    private final Vector3f eye = new Vector3f();
+    private float projectionScale;
+    private int[] colliderCandidates = new int[64];
 
     private final float fov;
     private final float sensitivity;
@@ -36,47 +46,76 @@ public class CameraController implements AutoCloseable {
     private float lastMouseX, lastMouseY;
     private float yaw, pitch;
 
-    public CameraController(PlortAllocator allocator, PlortWindow window, float fov, float sensitivity) {
-        this.input = window.input();
-        this.viewBuffer = new PlortBuffer(5 * Matrix4f.BYTES + 4 * Float.BYTES, BufferUsage.UNIFORM_BUFFER_BIT, allocator);
+    public CameraController(PlortAllocator allocator, PlortWindow window, FrameScratch scratch, float fov, float sensitivity) {
+        this(new PlortBuffer(5 * Matrix4f.BYTES + 4 * Float.BYTES, BufferUsage.UNIFORM_BUFFER_BIT, allocator), window.input(), scratch, fov, sensitivity);
+        this.resize(window.width(), window.height());
+    }
+
+    /// A headless controller that simulates like any other but uploads nothing, for running ticks without a window or device.
+    CameraController(PlortInput input, FrameScratch scratch, float fov, float sensitivity) {
+        this(null, input, scratch, fov, sensitivity);
+        this.resize(1, 1);
+    }
+
+    private CameraController(@Nullable PlortBuffer viewBuffer, PlortInput input, FrameScratch scratch, float fov, float sensitivity) {
+        this.input = input;
+        this.scratch = scratch;
+        this.viewBuffer = viewBuffer;
         this.fov = fov;
         this.sensitivity = sensitivity;
         aabb.translate(position);
-        this.resize(window.width(), window.height());
     }
 
     public Vector3f cameraForward() {
-        return new Vector3f(
-                (float)(Math.cos(Math.toRadians(yaw)) * Math.cos(Math.toRadians(pitch))),
-                (float) Math.sin(Math.toRadians(pitch)),
-                (float)(Math.sin(Math.toRadians(yaw)) * Math.cos(Math.toRadians(pitch)))
-        ).normalize();
+        return cameraForward(new Vector3f());
+    }
+
+    public Vector3f cameraForward(Vector3f dst) {
+        dst.x((float)(Math.cos(Math.toRadians(yaw)) * Math.cos(Math.toRadians(pitch))));
+        dst.y((float) Math.sin(Math.toRadians(pitch)));
+        dst.z((float)(Math.sin(Math.toRadians(yaw)) * Math.cos(Math.toRadians(pitch))));
+        return dst.normalize();
     }
 
     public Vector3f playerForward() {
-        return new Vector3f((float)(Math.cos(Math.toRadians(yaw))), 0, (float)(Math.sin(Math.toRadians(yaw)))).normalize();
+        return playerForward(new Vector3f());
+    }
+
+    public Vector3f playerForward(Vector3f dst) {
+        dst.x((float)(Math.cos(Math.toRadians(yaw))));
+        dst.y(0);
+        dst.z((float)(Math.sin(Math.toRadians(yaw))));
+        return dst.normalize();
     }
 
     public Vector3f right() {
-        return new Vector3f(cameraForward()).cross(up).normalize();
+        return cameraForward(new Vector3f()).cross(up).normalize();
     }
 
     public void resize(int width, int height) {
         this.projection.setIdentity().perspective((float) Math.toRadians(fov), (float) width / height, 0.001f, 1000.0f, true);
+        this.projectionScale = height / (2f * (float) Math.tan(Math.toRadians(fov) / 2));
     }
 
     public AABB aabb() {
         return aabb;
     }
 
+    /// @return The player's position as of the latest tick, written to `dst`.
+    public Vector3f position(Vector3f dst) {
+        dst.setFrom(position);
+        return dst;
+    }
+
     private void look() {
-        Vector2f mousePos = input.mousePosition();
+        float mouseX = input.mouseX();
+        float mouseY = input.mouseY();
 
-        float dx = (mousePos.x() - lastMouseX) * sensitivity;
-        float dy = (lastMouseY - mousePos.y()) * sensitivity;
+        float dx = (mouseX - lastMouseX) * sensitivity;
+        float dy = (lastMouseY - mouseY) * sensitivity;
 
-        lastMouseX = mousePos.x();
-        lastMouseY = mousePos.y();
+        lastMouseX = mouseX;
+        lastMouseY = mouseY;
 
         yaw += dx;
         pitch += dy;
@@ -85,20 +124,18 @@ public class CameraController implements AutoCloseable {
     }
 
     private void move(float deltaTime) {
-        Vector3f forward = playerForward();
-        Vector3f right = new Vector3f(forward).cross(up).normalize();
+        Vector3f forward = playerForward(scratch.vector3f());
+        Vector3f right = scratch.vector3f(forward).cross(up).normalize();
 
         velocity.x(0);
         velocity.z(0);
 
         float speed = 2f;
 
-        if (input.keyDown(GLFW.GLFW_KEY_W)) velocity.add(new Vector3f(forward).scale(speed));
-        if (input.keyDown(GLFW.GLFW_KEY_A)) velocity.add(new Vector3f(right).scale(-speed));
-        if (input.keyDown(GLFW.GLFW_KEY_S)) velocity.add(new Vector3f(forward).scale(-speed));
-        if (input.keyDown(GLFW.GLFW_KEY_D)) velocity.add(new Vector3f(right).scale(speed));
-
-        if (input.keyPressed(GLFW.GLFW_KEY_F)) applyGravity = !applyGravity;
+        if (input.keyDown(GLFW.GLFW_KEY_W)) velocity.add(scratch.vector3f(forward).scale(speed));
+        if (input.keyDown(GLFW.GLFW_KEY_A)) velocity.add(scratch.vector3f(right).scale(-speed));
+        if (input.keyDown(GLFW.GLFW_KEY_S)) velocity.add(scratch.vector3f(forward).scale(-speed));
+        if (input.keyDown(GLFW.GLFW_KEY_D)) velocity.add(scratch.vector3f(right).scale(speed));
 
         if (!grounded) {
             velocity.y(velocity.y() + gravity * deltaTime);
@@ -112,61 +149,67 @@ public class CameraController implements AutoCloseable {
 
     public void physicsStep(World world, float dt) {
         grounded = false;
-        Vector3f delta = new Vector3f(velocity).scale(dt);
+        Vector3f delta = scratch.vector3f(velocity).scale(dt);
 
-        aabb.translate(new Vector3f(delta.x(), 0, 0));
+        aabb.translate(delta.x(), 0, 0);
         resolveAxis(world, Axis.X);
 
-        aabb.translate(new Vector3f(0, delta.y(), 0));
+        aabb.translate(0, delta.y(), 0);
         resolveAxis(world, Axis.Y);
 
         if (!applyGravity && aabb.min().y() < 0) {
             float penetration = -aabb.min().y();
-            aabb.translate(new Vector3f(0, penetration, 0));
+            aabb.translate(0, penetration, 0);
             velocity.y(0);
             grounded = true;
         }
 
-        aabb.translate(new Vector3f(0, 0, delta.z()));
+        aabb.translate(0, 0, delta.z());
         resolveAxis(world, Axis.Z);
 
-        position.setFrom(aabb.center());
+        aabb.center(position);
     }
 
     private void resolveAxis(World world, Axis axis) {
-        for (Entity e : world.entities) {
-            Vector3f position = e.transform().position();
-            PlortModel model = e.model();
-
-            for (AABB child : model.childAABBs()) {
-                if (!child.hasCollision()) continue;
-                AABB worldChild = child.translated(position);
-                if (!aabb.intersects(worldChild)) continue;
-
-                Vector3f resolution = aabb.resolveAxis(worldChild, axis);
-                aabb.translate(resolution);
-
-                switch (axis) {
-                    case X -> velocity.x(0);
-                    case Z -> velocity.z(0);
-                    case Y -> {
-                        if (resolution.y() > 0) {
-                            grounded = true;
-                            velocity.y(0);
-                        }
+        int count = world.queryColliders(aabb, colliderCandidates);
+        if (count > colliderCandidates.length) {
+            colliderCandidates = new int[Integer.highestOneBit(count) << 1];
+            count = world.queryColliders(aabb, colliderCandidates);
+        }
+
+        AABBStore bounds = world.colliderBounds();
+        AABB collider = scratch.aabb();
+        Vector3f resolution = scratch.vector3f();
+        for (int i = 0; i < count; i++) {
+            int c = colliderCandidates[i];
+            if (!bounds.intersects(c, aabb)) continue;
+
+            aabb.resolveAxis(bounds.get(c, collider), axis, resolution);
+            aabb.translate(resolution);
+
+            switch (axis) {
+                case X -> velocity.x(0);
+                case Z -> velocity.z(0);
+                case Y -> {
+                    if (resolution.y() > 0) {
+                        grounded = true;
+                        velocity.y(0);
                     }
                 }
             }
         }
     }
 
-    private void upload() {
+    private void upload(Vector3f position) {
+        viewProjection.set(projection).multiply(view);
+        frustum.set(viewProjection, true);
+        if (viewBuffer == null) return;
         try (MappedMemory mem = viewBuffer.map()) {
-            mem.putMatrix4f(new Matrix4f(projection).multiply(view));
+            mem.putMatrix4f(viewProjection);
             mem.putMatrix4f(view);
             mem.putMatrix4f(projection);
-            mem.putMatrix4f(new Matrix4f(view).invert());
-            mem.putMatrix4f(new Matrix4f(projection).invert());
+            mem.putMatrix4f(scratch.matrix4f(view).invert());
+            mem.putMatrix4f(scratch.matrix4f(projection).invert());
             mem.putFloat(position.x());
             mem.putFloat(position.y());
             mem.putFloat(position.z());
@@ -174,24 +217,56 @@ public class CameraController implements AutoCloseable {
         }
     }
 
-    public void update(World world, float deltaTime) {
-        look();
+    /// Advances movement and collision by one fixed simulation step.
+    public void tick(World world, float deltaTime) {
+        previousPosition.setFrom(position);
         move(deltaTime);
         physicsStep(world, deltaTime);
+    }
 
-        Vector3f offsetPosition = new Vector3f(position).add(0, cameraOffset, 0);
-        Vector3f cameraTarget = new Vector3f(offsetPosition).add(cameraForward());
+    /// Applies mouse look and uploads the view, interpolated `alpha` of the way from the previous tick to the latest one.
+    public void frame(float alpha) {
+        look();
+        // edge triggered input is only seen for a single frame, which may run zero or several ticks
+        if (input.keyPressed(GLFW.GLFW_KEY_F)) applyGravity = !applyGravity;
+
+        Vector3f renderPosition = scratch.vector3f(previousPosition).lerp(position, alpha);
+        Vector3f offsetPosition = scratch.vector3f(renderPosition).add(0, cameraOffset, 0);
+        Vector3f cameraTarget = scratch.vector3f(offsetPosition).add(cameraForward(scratch.vector3f()));
         view.setIdentity().lookAt(offsetPosition, cameraTarget, up);
+        eye.setFrom(offsetPosition);
+
+        upload(renderPosition);
+    }
+
+    /// @return The frustum of the last uploaded view, in world space.
+    public Frustum frustum() {
+        return frustum;
+    }
+
+    /// @return The view projection matrix of the last uploaded view.
+    public Matrix4f viewProjection() {
+        return viewProjection;
+    }
+
+    /// @return The position the last uploaded view looks from.
+    public Vector3f eye() {
+        return eye;
+    }
 
-        upload();
+    /// @return How many pixels tall something one unit tall appears one unit in front of the camera.
+    /// Divide by distance for the on-screen size of anything else.
+    public float projectionScale() {
+        return projectionScale;
     }
 
     public PlortBuffer viewBuffer() {
+        if (viewBuffer == null) throw new IllegalStateException("A headless camera has no view buffer");
         return viewBuffer;
     }
 
     @Override
     public void close() {
-        this.viewBuffer.close();
+        if (viewBuffer != null) viewBuffer.close();
     }
 }
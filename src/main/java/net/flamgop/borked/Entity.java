@@ -1,89 +1,140 @@
 package net.flamgop.borked;
 
+import net.flamgop.borked.ecs.EntityStore;
+import net.flamgop.borked.ecs.ObjectComponent;
 import net.flamgop.borked.math.AABB;
 import net.flamgop.borked.math.Matrix4f;
 import net.flamgop.borked.math.Quaternionf;
 import net.flamgop.borked.math.Vector3f;
-import net.flamgop.borked.renderer.PlortCommandBuffer;
-import net.flamgop.borked.renderer.memory.BufferUsage;
-import net.flamgop.borked.renderer.memory.MappedMemory;
-import net.flamgop.borked.renderer.memory.PlortAllocator;
-import net.flamgop.borked.renderer.memory.PlortBuffer;
 import net.flamgop.borked.renderer.model.PlortModel;
-import net.flamgop.borked.renderer.pipeline.PlortPipelineLayout;
+import net.flamgop.borked.scene.SceneGraph;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.function.Consumer;
 
+/// A model placed in the world, as a facade over a row in the world's [EntityStore].
+///
+/// Until the entity is added to a world its transform is kept here, afterwards it lives in the store
+/// and the world's systems (collision sync, instance packing) work on the packed columns directly.
 public class Entity implements AutoCloseable {
-    private static final int INSTANCE_BUFFER_SIZE = 2 * Matrix4f.BYTES; // model, inverse_model
+    public static final ObjectComponent<Entity> FACADE = new ObjectComponent<>("entity");
+    public static final ObjectComponent<PlortModel> MODEL = new ObjectComponent<>("model");
 
     private final PlortModel model;
-    private final PlortBuffer instanceBuffer;
+    private final AABB aabb;
 
+    // the transform while not in a world, copied into the store on add and back out on removal
+    private final Matrix4f detachedTransform = new Matrix4f();
+    // what transform() hands out and setters edit before writing back
     private final Matrix4f transform = new Matrix4f();
-    private boolean transformDirty = true;
-
-    private final AABB aabb;
+    private @Nullable EntityStore store;
+    private long handle = EntityStore.NULL;
+    private @Nullable SceneGraph scene;
+    private int sceneNode = SceneGraph.NULL;
 
-    public Entity(PlortModel model, PlortAllocator allocator) {
+    /// @param model Shared between every entity using it and drawn instanced, so it is not closed with the entity.
+    public Entity(PlortModel model) {
         this.model = model;
         this.aabb = model.aabb();
-        this.instanceBuffer = new PlortBuffer(INSTANCE_BUFFER_SIZE, BufferUsage.STORAGE_BUFFER_BIT, allocator);
+    }
+
+    /// @return The entity's handle in its world's store, or [EntityStore#NULL] while it isn't in a world.
+    public long handle() {
+        return handle;
+    }
+
+    boolean isIn(EntityStore store) {
+        return this.store == store && store.isAlive(handle);
+    }
+
+    void attach(EntityStore store, long handle) {
+        this.store = store;
+        this.handle = handle;
+        store.teleport(handle, detachedTransform);
+    }
+
+    void detach() {
+        if (store == null) return;
+        store.getTransform(handle, detachedTransform);
+        store = null;
+        handle = EntityStore.NULL;
+    }
+
+    /// @return The entity's node in its world's scene graph, or [SceneGraph#NULL] if it has never been part of a hierarchy.
+    public int sceneNode() {
+        return sceneNode;
+    }
+
+    void joinScene(SceneGraph scene, int node) {
+        this.scene = scene;
+        this.sceneNode = node;
+    }
+
+    void leaveScene() {
+        this.scene = null;
+        this.sceneNode = SceneGraph.NULL;
     }
 
     public AABB aabb() {
-        return new AABB(aabb).translated(transform.position());
+        return new AABB(aabb).translated(transform().position());
     }
 
+    /// @return A copy of the world transform, changes to it are not applied. Use [#modifyTransform(Consumer)] to change it.
     public Matrix4f transform() {
-        return transform;
+        return store == null ? transform.set(detachedTransform) : store.getTransform(handle, transform);
     }
 
-    public void uploadTransform() {
-        try (MappedMemory mem = this.instanceBuffer.map()) {
-            mem.putMatrix4f(transform);
-            mem.putMatrix4f(new Matrix4f(transform).invert());
-        }
+    /// @return A copy of the transform relative to the parent set with [World#setParent(Entity, Entity)],
+    /// the same as [#transform()] for entities that have never been part of a hierarchy.
+    public Matrix4f localTransform() {
+        return scene != null ? scene.local(sceneNode, transform) : transform();
     }
 
+    // while the entity is in the scene graph the setters edit its local transform, the world applies it at the end of the next update
     public void setPosition(Vector3f position) {
         this.setPosition(position.x(), position.y(), position.z());
     }
 
     public void setPosition(float x, float y, float z) {
-        transform.translation(x, y, z);
-        transformDirty = true;
+        commit(editable().translation(x, y, z));
     }
 
     public void rotation(Quaternionf quaternionf) {
-        transform.rotation(quaternionf);
-        transformDirty = true;
+        commit(editable().rotation(quaternionf));
     }
 
     public void modifyTransform(Consumer<Matrix4f> modifier) {
-        modifier.accept(transform);
-        transformDirty = true;
+        Matrix4f editable = editable();
+        modifier.accept(editable);
+        commit(editable);
     }
 
-    public PlortModel model() {
-        return model;
+    private Matrix4f editable() {
+        if (scene != null) return scene.local(sceneNode, transform);
+        return store == null ? detachedTransform : store.getTransform(handle, transform);
+    }
+
+    private void commit(Matrix4f edited) {
+        if (scene != null) scene.setLocal(sceneNode, edited);
+        else if (store != null) store.setTransform(handle, edited);
     }
 
-    public void submit(PlortCommandBuffer cmdBuffer, PlortPipelineLayout pipelineLayout, int currentFrameModInFlight) {
-        if (transformDirty) {
-            uploadTransform();
-            transformDirty = false;
-        }
-        model.submit(cmdBuffer, pipelineLayout, instanceBuffer, 1, currentFrameModInFlight);
+    public PlortModel model() {
+        return model;
     }
 
+    /// Runs this entity's logic for one simulation tick.
+    ///
+    /// Entities update concurrently with each other on the world's update pool, so an update may only change its own entity.
+    /// Reading other entities is racy, adding or removing entities throws, and [World#queries()] is safe but answers with
+    /// collider positions from the end of the previous tick.
     public void update(float deltaTime) {
 
     }
 
+    /// Releases whatever the entity itself owns, called when its world closes. The model is left to whoever loaded it.
     @Override
     public void close() {
-        instanceBuffer.close();
-        model.close();
+
     }
 }
@@ -0,0 +1,35 @@
+package net.flamgop.borked;
+
+/// Turns variable frame times into whole fixed simulation ticks, carrying what's left over into the next frame.
+///
+/// Simulation only ever advances by the tick length, so its results don't depend on the framerate,
+/// and [#alpha()] tells rendering how far past the latest tick the frame is, to interpolate by.
+final class FixedTimestep {
+    private final double tickSeconds;
+    private final double maxFrameSeconds;
+    private double accumulator;
+
+    /// @param maxFrameSeconds Longer frames are cut to this, so a stall is dropped instead of replayed as a burst of ticks.
+    FixedTimestep(double tickSeconds, double maxFrameSeconds) {
+        if (!(tickSeconds > 0)) throw new IllegalArgumentException("Tick length must be positive.");
+        this.tickSeconds = tickSeconds;
+        this.maxFrameSeconds = maxFrameSeconds;
+    }
+
+    /// Adds a frame's worth of time.
+    /// @return How many ticks are due now.
+    int advance(double frameSeconds) {
+        accumulator += Math.min(frameSeconds, maxFrameSeconds);
+        int ticks = 0;
+        while (accumulator >= tickSeconds) {
+            accumulator -= tickSeconds;
+            ticks++;
+        }
+        return ticks;
+    }
+
+    /// @return How far between the latest tick and the next one the time added so far ends, from 0 to 1.
+    float alpha() {
+        return (float) (accumulator / tickSeconds);
+    }
+}
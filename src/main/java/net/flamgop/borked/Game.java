@@ -1,5 +1,8 @@
 package net.flamgop.borked;
 
+import net.flamgop.borked.math.FrameScratch;
+import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.math.Vector3f;
 import net.flamgop.borked.renderer.descriptor.*;
 import net.flamgop.borked.renderer.PlortRenderContext;
 import net.flamgop.borked.renderer.model.PlortModel;
@@ -7,19 +10,41 @@ import net.flamgop.borked.renderer.renderpass.*;
 import net.flamgop.borked.renderer.image.*;
 import net.flamgop.borked.renderer.memory.*;
 import net.flamgop.borked.renderer.pipeline.*;
+import net.flamgop.borked.renderer.util.AssetCache;
 import net.flamgop.borked.renderer.util.VkUtil;
 import net.flamgop.borked.renderer.window.CursorState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Game {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Game.class);
+    private static final int TICK_RATE = 60;
+    static final float TICK_SECONDS = 1f / TICK_RATE;
+    // a stall (fence timeout, window drag) is dropped instead of replayed as a burst of ticks
+    private static final double MAX_FRAME_SECONDS = 0.25;
+    // side length of a grid of extra copies of the scene, for stressing instanced submission. 0 spawns only the one
+    private static final int STRESS_GRID = 0;
+    private static final float SECTION_SIZE = 64f;
+    // in sections, the gap keeps a player walking along a section edge from reloading it every step
+    private static final float SECTION_LOAD_RADIUS = 2f;
+    private static final float SECTION_UNLOAD_RADIUS = 3f;
+    private static final long SECTION_MEMORY_BUDGET = 1L << 30;
 
     private final PlortRenderContext renderContext;
+    // leak detection costs a poison pass per reset, so only pay for it when assertions are on
+    private final FrameScratch scratch = new FrameScratch(Game.class.desiredAssertionStatus());
     private final CameraController cameraController;
     private final World world;
     private final Renderer renderer;
+    private final SectionStreamer streamer;
+    private final FixedTimestep timestep = new FixedTimestep(TICK_SECONDS, MAX_FRAME_SECONDS);
+    private final Vector3f cameraPosition = new Vector3f();
+    // entities share models, so they're owned here rather than by any one entity
+    private final List<PlortModel> models = new ArrayList<>();
 
     public Game() {
         LOGGER.debug("This is a debug string");
@@ -29,34 +54,65 @@ public class Game {
 
         renderContext = new PlortRenderContext("Game", VkUtil.makeApiVersion(1,0,0,0));
 
-        this.cameraController = new CameraController(renderContext.allocator(), renderContext.window(), 90, 0.1f);
-        this.world = new World(renderContext.allocator(), cameraController);
+        this.cameraController = new CameraController(renderContext.allocator(), renderContext.window(), scratch, 90, 0.1f);
+        this.world = new World(renderContext.allocator(), renderContext.swapchain().imageCount(), cameraController);
 
         this.renderer = new Renderer(renderContext, cameraController, world);
 
-        world.entities.add(new Entity(new PlortModel(renderContext, "1_coffeeShop_post.glb"), renderContext.allocator()));
-        world.recreateAABBBuffer();
+        this.streamer = new SectionStreamer(world, path -> new PlortModel(renderContext, path), renderContext.swapchain().imageCount(),
+                SECTION_SIZE, SECTION_LOAD_RADIUS, SECTION_UNLOAD_RADIUS, SECTION_MEMORY_BUDGET);
+        streamer.add(new SectionStreamer.Section(0, 0, List.of(new SectionStreamer.Placement("1_coffeeShop_post.glb", new Matrix4f()))));
+        // the player spawns on top of the nearest sections, they have to be there before the first tick
+        streamer.update(cameraController.position(cameraPosition));
+        streamer.awaitLoads();
+
+        spawnStressGrid();
+        AssetCache.logStatistics();
+    }
+
+    private void spawnStressGrid() {
+        if (STRESS_GRID <= 0) return;
+        PlortModel model = new PlortModel(renderContext, "1_coffeeShop_post.glb");
+        models.add(model);
+        Vector3f spacing = model.aabb().size().scale(1.1f);
+        for (int x = 0; x < STRESS_GRID; x++) {
+            for (int z = 0; z < STRESS_GRID; z++) {
+                Entity entity = new Entity(model);
+                entity.setPosition((x + 1) * spacing.x(), 0, z * spacing.z());
+                world.addEntity(entity);
+            }
+        }
+        LOGGER.info("Spawned a {}x{} stress grid", STRESS_GRID, STRESS_GRID);
     }
 
     public void start() {
-        long prevFrameStart = System.nanoTime();
+        long previousFrameStart = System.nanoTime();
         double deltaTime = 0;
 
         renderContext.window().input().setCursorState(CursorState.DISABLED);
 
         while (renderer.windowOpen()) {
+            scratch.reset();
             renderContext.window().input().update();
             renderContext.window().pollEvents();
 
-            if (!renderer.frame(deltaTime)) continue;
-
-            long frameEnd = System.nanoTime();
-            deltaTime = (frameEnd - prevFrameStart) / 1e+9;
-            prevFrameStart = System.nanoTime();
-
-            float fdt = (float) deltaTime;
-            cameraController.update(world, fdt);
-            world.update(fdt);
+            long frameStart = System.nanoTime();
+            deltaTime = (frameStart - previousFrameStart) / 1e+9;
+            previousFrameStart = frameStart;
+
+            // simulation always advances in whole ticks, whatever the framerate is
+            for (int ticks = timestep.advance(deltaTime); ticks > 0; ticks--) {
+                cameraController.tick(world, TICK_SECONDS);
+                world.update(TICK_SECONDS);
+            }
+
+            float alpha = timestep.alpha();
+            cameraController.frame(alpha);
+            streamer.update(cameraController.position(cameraPosition));
+            if (!renderer.frame(deltaTime, alpha)) {
+                // the fence timed out and the device was waited on, that wait isn't played back as ticks next frame
+                previousFrameStart = System.nanoTime();
+            }
         }
         cleanup();
     }
@@ -64,7 +120,9 @@ public class Game {
     public void cleanup() {
         renderer.waitIdle();
 
+        streamer.close();
         world.close();
+        for (PlortModel model : models) model.close();
         cameraController.close();
 
         renderer.close();
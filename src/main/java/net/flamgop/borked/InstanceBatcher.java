@@ -0,0 +1,659 @@
+package net.flamgop.borked;
+
+import net.flamgop.borked.culling.OcclusionBuffer;
+import net.flamgop.borked.ecs.Archetype;
+import net.flamgop.borked.ecs.EntityStore;
+import net.flamgop.borked.math.AABB;
+import net.flamgop.borked.math.Frustum;
+import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.math.Vector3f;
+import net.flamgop.borked.renderer.PlortCommandBuffer;
+import net.flamgop.borked.renderer.PlortRenderContext;
+import net.flamgop.borked.renderer.memory.BufferUsage;
+import net.flamgop.borked.renderer.memory.PlortAllocator;
+import net.flamgop.borked.renderer.memory.PlortBuffer;
+import net.flamgop.borked.renderer.memory.StreamedBuffer;
+import net.flamgop.borked.renderer.model.PlortModel;
+import net.flamgop.borked.renderer.pipeline.PlortPipelineLayout;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+/// Draws every entity that shares a [PlortModel] with one instanced dispatch per mesh, out of one persistently mapped transform buffer.
+///
+/// Every entity with a model gets a slot, and each model owns a contiguous region of slots so its instances can be drawn as one range,
+/// the mesh shader picking the instance from `dispatch_id.y`. A region doubles (moving every region) when it fills up, and removing an entity
+/// moves the last instance of its region into its slot.
+///
+/// Each region is further split into one run per level of detail, finest first. Every frame each instance picks the coarsest level whose
+/// error projects to at most [#LOD_ERROR_PIXELS] on screen, and moving it to another level swaps it across the run boundaries,
+/// so each (model, level) pair is still drawn as one range.
+///
+/// Only transforms marked dirty in the store are written, into a CPU copy of the slots that a [StreamedBuffer] mirrors
+/// into each frame's buffer run by run.
+///
+/// After [#cull(Matrix4f, OcclusionBuffer)] only the visible instances are drawn, each level's run being split into runs of consecutive
+/// visible instances. The meshes of a run that are hidden in every one of its instances are skipped, and so are the meshlets
+/// outside the view of every instance of models with few enough instances to cull meshlets for.
+class InstanceBatcher implements AutoCloseable {
+    // false goes back to one dispatch per entity, for comparing submit times on the stress scene
+    private static final boolean INSTANCED = true;
+    private static final int INSTANCE_FLOATS = 32; // model, inverse_model
+    private static final long INSTANCE_SIZE = INSTANCE_FLOATS * Float.BYTES;
+    private static final int INITIAL_SLOTS = 64;
+    private static final int INITIAL_REGION = 16;
+    // how far, in pixels, a level of detail's surface may appear from the full detail one
+    private static final float LOD_ERROR_PIXELS = 1f;
+    // an instance only switches to a coarser level once that level's error is under this fraction of the limit,
+    // so one sitting at a threshold distance doesn't flip between levels every frame
+    private static final float LOD_HYSTERESIS = 0.75f;
+    // closer than this (past the model's bounding sphere) always draws full detail
+    private static final float MIN_LOD_DISTANCE = 1e-3f;
+    // bitset words of instances per culling task
+    private static final int CULL_GRAIN_WORDS = 4;
+    // models with more instances than this are drawn with every meshlet, testing each instance's meshlets would cost more than it saves
+    private static final int MESHLET_CULL_MAX_INSTANCES = 4;
+    private static final int VISIBLE = 0, OUTSIDE = 1, OCCLUDED = 2;
+    // indices into cullCounts
+    private static final int INSTANCES_TESTED = 0, INSTANCES_OUTSIDE = 1, INSTANCES_OCCLUDED = 2, INSTANCES_DRAWN = 3,
+            MESHES_TESTED = 4, MESHES_CULLED = 5, MESHLETS_TESTED = 6, MESHLETS_CULLED = 7, CULL_COUNTERS = 8;
+    private static final ThreadLocal<CullScratch> CULL_SCRATCH = ThreadLocal.withInitial(CullScratch::new);
+
+    private final StreamedBuffer instances;
+
+    private final Map<PlortModel, Batch> batchesByModel = new IdentityHashMap<>();
+    private final Function<PlortModel, Batch> newBatch = this::newBatch;
+    private final List<Batch> batches = new ArrayList<>();
+
+    private @Nullable EntityStore syncedStore;
+    private int syncedVersion;
+    private int scan;
+
+    // the end of the last region, every slot past it is unused
+    private int slotCount;
+    private float[] slots = new float[INITIAL_SLOTS * INSTANCE_FLOATS];
+    private MemorySegment slotsView = MemorySegment.ofArray(slots);
+    private long[] slotHandles = new long[INITIAL_SLOTS];
+    private int[] slotSeen = new int[INITIAL_SLOTS];
+    // by EntityStore.index(handle), only meaningful where slotHandles agrees
+    private int[] slotOfEntity = new int[INITIAL_SLOTS];
+
+    private final Matrix4f transform = new Matrix4f();
+    private final Matrix4f inverse = new Matrix4f();
+    private final float[] swapScratch = new float[INSTANCE_FLOATS];
+    private int instanceCount;
+    private int drawCount;
+    private int writeCount;
+    private int lodSwitchCount;
+
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final ParallelRange.Range cullWords = this::cullWords;
+    // whether the visibility of every batch is from this frame's transforms
+    private boolean culled;
+    // the view being culled against, only set during cull
+    private final Frustum frustum = new Frustum();
+    private final float[] viewProjection = new float[16];
+    private @Nullable OcclusionBuffer occlusionBuffer;
+    private final AtomicIntegerArray cullCounts = new AtomicIntegerArray(CULL_COUNTERS);
+    private long[] meshMask = new long[1];
+    private long[] meshletMask = new long[1];
+
+    private static final class CullScratch {
+        private final int[] counts = new int[CULL_COUNTERS];
+        private final float[] modelViewProjection = new float[16];
+        private final Matrix4f matrix = new Matrix4f();
+        private final Frustum frustum = new Frustum();
+    }
+
+    private static final class Batch {
+        private final PlortModel model;
+        private final float[] lodErrors;
+        // the model's bounding sphere, in model space
+        private final float centerX, centerY, centerZ, radius;
+        // centre and half extent of the model's box followed by each mesh's, in model space
+        private final float[] boxes;
+        private final int meshCount, meshWords;
+        private final int meshletWords;
+        // relative to first, one bit per instance, meshWords words and meshletWords words per instance, filled by cull.
+        // meshletVisible is only filled when the batch has at most MESHLET_CULL_MAX_INSTANCES instances
+        private long[] visible = new long[0];
+        private long[] meshVisible = new long[0];
+        private long[] meshletVisible = new long[0];
+        private boolean meshletsCulled;
+        // where the batch's instances start in the bitset words cull splits across tasks
+        private int cullWordStart;
+        private int first, capacity, count;
+        // relative to first, level l's instances are [lodStart[l], lodStart[l + 1]). the last entry is always count
+        private final int[] lodStart;
+
+        private Batch(PlortModel model) {
+            this.model = model;
+            this.lodErrors = new float[model.lodCount()];
+            for (int lod = 0; lod < lodErrors.length; lod++) lodErrors[lod] = model.lodError(lod);
+            AABB aabb = model.aabb();
+            Vector3f center = aabb.center(new Vector3f());
+            this.centerX = center.x();
+            this.centerY = center.y();
+            this.centerZ = center.z();
+            this.radius = aabb.size().length() * 0.5f;
+            this.lodStart = new int[lodErrors.length + 1];
+
+            List<AABB> meshes = model.childAABBs();
+            this.meshCount = meshes.size();
+            this.meshWords = (meshCount + 63) >>> 6;
+            this.meshletWords = model.meshletMaskLength();
+            this.boxes = new float[(meshCount + 1) * 6];
+            putBox(boxes, 0, aabb);
+            for (int i = 0; i < meshCount; i++) putBox(boxes, (i + 1) * 6, meshes.get(i));
+        }
+
+        private static void putBox(float[] boxes, int offset, AABB aabb) {
+            Vector3f min = aabb.min(), max = aabb.max();
+            boxes[offset] = (min.x() + max.x()) * 0.5f;
+            boxes[offset + 1] = (min.y() + max.y()) * 0.5f;
+            boxes[offset + 2] = (min.z() + max.z()) * 0.5f;
+            boxes[offset + 3] = (max.x() - min.x()) * 0.5f;
+            boxes[offset + 4] = (max.y() - min.y()) * 0.5f;
+            boxes[offset + 5] = (max.z() - min.z()) * 0.5f;
+        }
+
+        private boolean isVisible(int instance) {
+            return (visible[instance >>> 6] & (1L << instance)) != 0;
+        }
+
+        private int lods() {
+            return lodErrors.length;
+        }
+    }
+
+    InstanceBatcher(PlortAllocator allocator, int framesInFlight) {
+        this.instances = new StreamedBuffer(allocator, BufferUsage.STORAGE_BUFFER_BIT, INSTANCE_SIZE, INITIAL_SLOTS, framesInFlight);
+    }
+
+    int instanceCount() {
+        return instanceCount;
+    }
+
+    /// @return How many model submissions the last [#submit(PlortCommandBuffer, PlortPipelineLayout, int)] made.
+    int drawCount() {
+        return drawCount;
+    }
+
+    /// @return How many transforms the last [#build(EntityStore, float, Vector3f, float, int)] wrote.
+    int writeCount() {
+        return writeCount;
+    }
+
+    /// @return How many instances changed level of detail in the last [#build(EntityStore, float, Vector3f, float, int)].
+    int lodSwitchCount() {
+        return lodSwitchCount;
+    }
+
+    /// @return How many instances the last [#cull(Matrix4f, OcclusionBuffer)] found outside the view frustum.
+    int outsideInstanceCount() {
+        return cullCounts.get(INSTANCES_OUTSIDE);
+    }
+
+    /// @return How many instances the last [#cull(Matrix4f, OcclusionBuffer)] found hidden behind occluders.
+    int occludedInstanceCount() {
+        return cullCounts.get(INSTANCES_OCCLUDED);
+    }
+
+    /// @return How many instances the last [#cull(Matrix4f, OcclusionBuffer)] left to draw.
+    int drawnInstanceCount() {
+        return cullCounts.get(INSTANCES_DRAWN);
+    }
+
+    /// @return How many meshes of instances in view the last [#cull(Matrix4f, OcclusionBuffer)] tested.
+    int testedMeshCount() {
+        return cullCounts.get(MESHES_TESTED);
+    }
+
+    /// @return How many of the [#testedMeshCount()] meshes were outside the frustum or hidden.
+    int culledMeshCount() {
+        return cullCounts.get(MESHES_CULLED);
+    }
+
+    /// @return How many meshlets the last [#cull(Matrix4f, OcclusionBuffer)] tested.
+    int testedMeshletCount() {
+        return cullCounts.get(MESHLETS_TESTED);
+    }
+
+    /// @return How many of the [#testedMeshletCount()] meshlets were outside the frustum.
+    int culledMeshletCount() {
+        return cullCounts.get(MESHLETS_CULLED);
+    }
+
+    /// Brings this frame's transform buffer up to date with `store`, interpolating entities that moved this tick `alpha` of the way
+    /// from their previous position. Only the translation is interpolated, rotation and scale snap to the current tick.
+    /// Levels of detail are picked for a view from `eye`, `projectionScale` being [CameraController#projectionScale()].
+    void build(EntityStore store, float alpha, Vector3f eye, float projectionScale, int currentFrameModInFlight) {
+        if (store != syncedStore) reset(store);
+        if (store.version() != syncedVersion) sync(store);
+        writeDirty(store, alpha);
+        selectLods(eye, projectionScale);
+        instances.upload(slotsView, slotCount, currentFrameModInFlight);
+        culled = false;
+    }
+
+    /// Tests every instance built by the last [#build(EntityStore, float, Vector3f, float, int)], then the meshes of the instances that passed,
+    /// against the view frustum and `buffer`, so the next [#submit(PlortCommandBuffer, PlortPipelineLayout, int)] only draws what may be visible.
+    /// Models with at most [#MESHLET_CULL_MAX_INSTANCES] instances also have each instance's meshlets tested against the frustum.
+    /// Instances are split across the common pool.
+    /// @param viewProjection This frame's view projection, with a zero-to-one depth range.
+    /// @param buffer A finished occlusion buffer for the same view, or null to only cull against the frustum.
+    void cull(Matrix4f viewProjection, @Nullable OcclusionBuffer buffer) {
+        frustum.set(viewProjection, true);
+        viewProjection.get(this.viewProjection, 0);
+        occlusionBuffer = buffer;
+        for (int i = 0; i < CULL_COUNTERS; i++) cullCounts.set(i, 0);
+
+        int words = 0;
+        for (Batch batch : batches) {
+            batch.cullWordStart = words;
+            int batchWords = Archetype.bitsetLength(batch.count);
+            if (batch.visible.length < batchWords) batch.visible = new long[Archetype.bitsetLength(batch.capacity)];
+            if (batch.meshVisible.length < batch.count * batch.meshWords) batch.meshVisible = new long[batch.capacity * batch.meshWords];
+            batch.meshletsCulled = batch.count <= MESHLET_CULL_MAX_INSTANCES;
+            if (batch.meshletsCulled && batch.meshletVisible.length < batch.count * batch.meshletWords) {
+                batch.meshletVisible = new long[MESHLET_CULL_MAX_INSTANCES * batch.meshletWords];
+            }
+            words += batchWords;
+        }
+        ParallelRange.run(pool, words, CULL_GRAIN_WORDS, cullWords);
+        occlusionBuffer = null;
+        culled = true;
+    }
+
+    // culls the instances of bitset words [from, to) across every batch
+    private void cullWords(int from, int to) {
+        // the last batch starting at or before from, earlier ones with the same start have no instances
+        int lo = 0, hi = batches.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (batches.get(mid).cullWordStart <= from) lo = mid;
+            else hi = mid - 1;
+        }
+
+        CullScratch scratch = CULL_SCRATCH.get();
+        Arrays.fill(scratch.counts, 0);
+        for (int b = lo, w = from; w < to; b++) {
+            Batch batch = batches.get(b);
+            int end = Math.min(to, batch.cullWordStart + Archetype.bitsetLength(batch.count));
+            for (; w < end; w++) batch.visible[w - batch.cullWordStart] = cullWord(batch, w - batch.cullWordStart, scratch);
+        }
+        for (int i = 0; i < CULL_COUNTERS; i++) {
+            if (scratch.counts[i] != 0) cullCounts.addAndGet(i, scratch.counts[i]);
+        }
+    }
+
+    // the visibility bits of the batch's instances [word * 64, word * 64 + 64)
+    private long cullWord(Batch batch, int word, CullScratch scratch) {
+        float[] s = slots;
+        long[] meshVisible = batch.meshVisible;
+        int[] counts = scratch.counts;
+        long visible = 0;
+        for (int i = word << 6, end = Math.min(i + 64, batch.count); i < end; i++) {
+            int base = (batch.first + i) * INSTANCE_FLOATS;
+            counts[INSTANCES_TESTED]++;
+            int result = test(s, base, batch.boxes, 0);
+            if (result != VISIBLE) {
+                counts[result == OUTSIDE ? INSTANCES_OUTSIDE : INSTANCES_OCCLUDED]++;
+                continue;
+            }
+
+            int mask = i * batch.meshWords;
+            long any = 0;
+            for (int w = 0; w < batch.meshWords; w++) meshVisible[mask + w] = 0;
+            counts[MESHES_TESTED] += batch.meshCount;
+            for (int mesh = 0; mesh < batch.meshCount; mesh++) {
+                // the model's box is the mesh's box when there's only one
+                if (batch.meshCount > 1 && test(s, base, batch.boxes, (mesh + 1) * 6) != VISIBLE) {
+                    counts[MESHES_CULLED]++;
+                    continue;
+                }
+                meshVisible[mask + (mesh >>> 6)] |= 1L << mesh;
+                any = 1;
+            }
+
+            if (any != 0 && batch.meshletsCulled) {
+                // the frustum of the view projection times the model matrix is the view frustum in model space
+                Matrix4f.multiply(viewProjection, 0, s, base, scratch.modelViewProjection, 0);
+                scratch.frustum.set(scratch.matrix.set(scratch.modelViewProjection, 0), true);
+                int meshletMask = i * batch.meshletWords;
+                int tested = batch.model.cullMeshlets(scratch.frustum, lodOf(batch, batch.first + i), meshVisible, mask, batch.meshletVisible, meshletMask);
+                int drawn = 0;
+                for (int w = 0; w < batch.meshletWords; w++) drawn += Long.bitCount(batch.meshletVisible[meshletMask + w]);
+                counts[MESHLETS_TESTED] += tested;
+                counts[MESHLETS_CULLED] += tested - drawn;
+                if (drawn == 0) any = 0;
+            }
+
+            if (any == 0) continue;
+            visible |= 1L << i;
+            counts[INSTANCES_DRAWN]++;
+        }
+        return visible;
+    }
+
+    // whether the instance's transform applied to a model space box, taking the box around the rotated one, is in view
+    private int test(float[] s, int base, float[] boxes, int box) {
+        float cx = boxes[box], cy = boxes[box + 1], cz = boxes[box + 2];
+        float ex = boxes[box + 3], ey = boxes[box + 4], ez = boxes[box + 5];
+        float x = Math.fma(s[base], cx, Math.fma(s[base + 4], cy, Math.fma(s[base + 8], cz, s[base + 12])));
+        float y = Math.fma(s[base + 1], cx, Math.fma(s[base + 5], cy, Math.fma(s[base + 9], cz, s[base + 13])));
+        float z = Math.fma(s[base + 2], cx, Math.fma(s[base + 6], cy, Math.fma(s[base + 10], cz, s[base + 14])));
+        float hx = Math.abs(s[base]) * ex + Math.abs(s[base + 4]) * ey + Math.abs(s[base + 8]) * ez;
+        float hy = Math.abs(s[base + 1]) * ex + Math.abs(s[base + 5]) * ey + Math.abs(s[base + 9]) * ez;
+        float hz = Math.abs(s[base + 2]) * ex + Math.abs(s[base + 6]) * ey + Math.abs(s[base + 10]) * ez;
+        if (!frustum.testAABB(x - hx, y - hy, z - hz, x + hx, y + hy, z + hz)) return OUTSIDE;
+        OcclusionBuffer buffer = occlusionBuffer;
+        if (buffer != null && buffer.isOccluded(x - hx, y - hy, z - hz, x + hx, y + hy, z + hz)) return OCCLUDED;
+        return VISIBLE;
+    }
+
+    private void reset(EntityStore store) {
+        batches.clear();
+        batchesByModel.clear();
+        Arrays.fill(slotHandles, EntityStore.NULL);
+        slotCount = 0;
+        syncedStore = store;
+        syncedVersion = store.version() - 1;
+    }
+
+    // frees the slots of entities that are gone, then hands out slots to entities that don't have one yet
+    private void sync(EntityStore store) {
+        scan++;
+        for (Archetype archetype : store.archetypes()) {
+            if (!archetype.has(Entity.MODEL)) continue;
+            for (int row = 0; row < archetype.size(); row++) {
+                int slot = slotOf(archetype.handle(row));
+                if (slot != -1) slotSeen[slot] = scan;
+            }
+        }
+
+        for (int i = batches.size() - 1; i >= 0; i--) {
+            Batch batch = batches.get(i);
+            // backwards, so the instance moved into a freed slot has already been checked
+            for (int slot = batch.first + batch.count - 1; slot >= batch.first; slot--) {
+                if (slotSeen[slot] != scan) free(batch, slot);
+            }
+            if (batch.count > 0) continue;
+            // no entity uses the model anymore, don't keep it alive. its region is reclaimed by the next relayout
+            batchesByModel.remove(batch.model);
+            batches.remove(i);
+        }
+
+        for (Archetype archetype : store.archetypes()) {
+            if (!archetype.has(Entity.MODEL)) continue;
+            for (int row = 0; row < archetype.size(); row++) {
+                long handle = archetype.handle(row);
+                if (slotOf(handle) != -1) continue;
+
+                Batch batch = batchesByModel.computeIfAbsent(archetype.get(Entity.MODEL, row), newBatch);
+                if (batch.count == batch.capacity) relayout(batch);
+                // joins the coarsest level, the next selectLods moves it to the right one
+                int slot = batch.first + batch.count++;
+                batch.lodStart[batch.lods()] = batch.count;
+                int index = EntityStore.index(handle);
+                slotHandles[slot] = handle;
+                if (index >= slotOfEntity.length) slotOfEntity = Arrays.copyOf(slotOfEntity, Math.max(index + 1, slotOfEntity.length * 2));
+                slotOfEntity[index] = slot;
+                archetype.markTransformDirty(row);
+            }
+        }
+
+        instanceCount = 0;
+        for (Batch batch : batches) instanceCount += batch.count;
+        syncedVersion = store.version();
+    }
+
+    // the entity's slot, or -1 if it doesn't have one
+    private int slotOf(long handle) {
+        int index = EntityStore.index(handle);
+        if (index >= slotOfEntity.length) return -1;
+        int slot = slotOfEntity[index];
+        return slotHandles[slot] == handle ? slot : -1;
+    }
+
+    private Batch newBatch(PlortModel model) {
+        Batch batch = new Batch(model);
+        if (meshMask.length < batch.meshWords) meshMask = new long[batch.meshWords];
+        if (meshletMask.length < batch.meshletWords) meshletMask = new long[batch.meshletWords];
+        batch.first = slotCount;
+        batch.capacity = INITIAL_REGION;
+        ensureSlots(slotCount + INITIAL_REGION);
+        slotCount += INITIAL_REGION;
+        batches.add(batch);
+        return batch;
+    }
+
+    // fills the hole with the last instance of its level, that one's hole with the last instance of the next level, and so on.
+    // every instance moved comes from a higher slot
+    private void free(Batch batch, int slot) {
+        int hole = slot;
+        for (int lod = lodOf(batch, slot); lod < batch.lods(); lod++) {
+            int last = batch.first + --batch.lodStart[lod + 1];
+            if (hole != last) move(last, hole);
+            hole = last;
+        }
+        batch.count--;
+        slotHandles[hole] = EntityStore.NULL;
+    }
+
+    private static int lodOf(Batch batch, int slot) {
+        int lod = 0;
+        while (slot - batch.first >= batch.lodStart[lod + 1]) lod++;
+        return lod;
+    }
+
+    private void move(int from, int to) {
+        System.arraycopy(slots, from * INSTANCE_FLOATS, slots, to * INSTANCE_FLOATS, INSTANCE_FLOATS);
+        slotHandles[to] = slotHandles[from];
+        slotOfEntity[EntityStore.index(slotHandles[to])] = to;
+        instances.markDirty(to);
+    }
+
+    private void swap(int a, int b) {
+        if (a == b) return;
+        System.arraycopy(slots, a * INSTANCE_FLOATS, swapScratch, 0, INSTANCE_FLOATS);
+        System.arraycopy(slots, b * INSTANCE_FLOATS, slots, a * INSTANCE_FLOATS, INSTANCE_FLOATS);
+        System.arraycopy(swapScratch, 0, slots, b * INSTANCE_FLOATS, INSTANCE_FLOATS);
+        long handle = slotHandles[a];
+        slotHandles[a] = slotHandles[b];
+        slotHandles[b] = handle;
+        slotOfEntity[EntityStore.index(slotHandles[a])] = a;
+        slotOfEntity[EntityStore.index(slotHandles[b])] = b;
+        instances.markDirty(a);
+        instances.markDirty(b);
+    }
+
+    // moves instances whose projected error calls for another level across the level boundaries of their region
+    private void selectLods(Vector3f eye, float projectionScale) {
+        lodSwitchCount = 0;
+        for (Batch batch : batches) {
+            if (batch.lods() == 1) continue;
+            for (int lod = 0; lod < batch.lods(); lod++) {
+                int slot = batch.first + batch.lodStart[lod];
+                while (slot < batch.first + batch.lodStart[lod + 1]) {
+                    int target = selectLod(batch, slot, lod, eye, projectionScale);
+                    if (target > lod) {
+                        // one level at a time, it's looked at again as the first instance of the next level.
+                        // the unvisited instance swapped in is looked at next
+                        swap(slot, batch.first + --batch.lodStart[lod + 1]);
+                        lodSwitchCount++;
+                        continue;
+                    }
+                    if (target < lod) {
+                        // every instance this passes has already been looked at
+                        int at = slot;
+                        for (int l = lod; l > target; l--) {
+                            int firstOfLevel = batch.first + batch.lodStart[l]++;
+                            swap(at, firstOfLevel);
+                            at = firstOfLevel;
+                        }
+                        lodSwitchCount++;
+                    }
+                    slot++;
+                }
+            }
+        }
+    }
+
+    private int selectLod(Batch batch, int slot, int current, Vector3f eye, float projectionScale) {
+        float[] s = slots;
+        int base = slot * INSTANCE_FLOATS;
+        // the bounding sphere in world space, scaled by the largest axis scale
+        float cx = Math.fma(s[base], batch.centerX, Math.fma(s[base + 4], batch.centerY, Math.fma(s[base + 8], batch.centerZ, s[base + 12])));
+        float cy = Math.fma(s[base + 1], batch.centerX, Math.fma(s[base + 5], batch.centerY, Math.fma(s[base + 9], batch.centerZ, s[base + 13])));
+        float cz = Math.fma(s[base + 2], batch.centerX, Math.fma(s[base + 6], batch.centerY, Math.fma(s[base + 10], batch.centerZ, s[base + 14])));
+        float scaleX = s[base] * s[base] + s[base + 1] * s[base + 1] + s[base + 2] * s[base + 2];
+        float scaleY = s[base + 4] * s[base + 4] + s[base + 5] * s[base + 5] + s[base + 6] * s[base + 6];
+        float scaleZ = s[base + 8] * s[base + 8] + s[base + 9] * s[base + 9] + s[base + 10] * s[base + 10];
+        float scale = (float) Math.sqrt(Math.max(scaleX, Math.max(scaleY, scaleZ)));
+
+        float dx = cx - eye.x(), dy = cy - eye.y(), dz = cz - eye.z();
+        float distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - batch.radius * scale;
+        if (distance < MIN_LOD_DISTANCE) return 0;
+        // on screen pixels per model space unit of error at the nearest point of the sphere
+        float pixels = projectionScale * scale / distance;
+
+        float[] errors = batch.lodErrors;
+        int lod = current;
+        while (lod > 0 && errors[lod] * pixels > LOD_ERROR_PIXELS) lod--;
+        if (lod < current) return lod;
+        while (lod + 1 < errors.length && errors[lod + 1] * pixels <= LOD_ERROR_PIXELS * LOD_HYSTERESIS) lod++;
+        return lod;
+    }
+
+    // packs every region back to back, doubling the one that's full, and rewrites every frame's buffer
+    private void relayout(Batch full) {
+        int total = 0;
+        for (Batch batch : batches) total += batch == full ? batch.capacity * 2 : batch.capacity;
+
+        int capacity = Math.max(total, slotHandles.length);
+        float[] newSlots = new float[capacity * INSTANCE_FLOATS];
+        long[] newHandles = new long[capacity];
+        int first = 0;
+        for (Batch batch : batches) {
+            System.arraycopy(slots, batch.first * INSTANCE_FLOATS, newSlots, first * INSTANCE_FLOATS, batch.count * INSTANCE_FLOATS);
+            System.arraycopy(slotHandles, batch.first, newHandles, first, batch.count);
+            for (int i = 0; i < batch.count; i++) slotOfEntity[EntityStore.index(newHandles[first + i])] = first + i;
+            batch.first = first;
+            if (batch == full) batch.capacity *= 2;
+            first += batch.capacity;
+        }
+        slots = newSlots;
+        slotsView = MemorySegment.ofArray(slots);
+        slotHandles = newHandles;
+        slotSeen = Arrays.copyOf(slotSeen, capacity);
+        slotCount = total;
+        instances.markDirty(0, slotCount);
+    }
+
+    private void ensureSlots(int count) {
+        if (count <= slotHandles.length) return;
+        int capacity = Math.max(count, slotHandles.length * 2);
+        slots = Arrays.copyOf(slots, capacity * INSTANCE_FLOATS);
+        slotsView = MemorySegment.ofArray(slots);
+        slotHandles = Arrays.copyOf(slotHandles, capacity);
+        slotSeen = Arrays.copyOf(slotSeen, capacity);
+    }
+
+    private void writeDirty(EntityStore store, float alpha) {
+        writeCount = 0;
+        for (Archetype archetype : store.archetypes()) {
+            if (!archetype.has(Entity.MODEL)) continue;
+            float[] transforms = archetype.floats(EntityStore.TRANSFORM);
+            float[] previous = archetype.floats(EntityStore.PREVIOUS_POSITION);
+            int words = Archetype.bitsetLength(archetype.size());
+            for (int w = 0; w < words; w++) {
+                for (long bits = archetype.transformDirtyWord(w); bits != 0; bits &= bits - 1) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    int slot = slotOfEntity[EntityStore.index(archetype.handle(row))];
+
+                    transform.set(transforms, row * 16);
+                    if (!archetype.isMoved(row)) {
+                        // settled, this is the last write until it moves again
+                        archetype.clearTransformDirty(row);
+                    } else if (alpha < 1f) {
+                        transform.m30(Math.fma(transform.m30() - previous[row * 3], alpha, previous[row * 3]));
+                        transform.m31(Math.fma(transform.m31() - previous[row * 3 + 1], alpha, previous[row * 3 + 1]));
+                        transform.m32(Math.fma(transform.m32() - previous[row * 3 + 2], alpha, previous[row * 3 + 2]));
+                    }
+                    transform.get(slots, slot * INSTANCE_FLOATS);
+                    inverse.set(transform).invert().get(slots, slot * INSTANCE_FLOATS + 16);
+                    instances.markDirty(slot);
+                    writeCount++;
+                }
+            }
+        }
+    }
+
+    void setViewBuffer(PlortRenderContext context, PlortBuffer viewBuffer, int currentFrameModInFlight) {
+        for (Batch batch : batches) batch.model.setViewBuffer(context, viewBuffer, currentFrameModInFlight);
+    }
+
+    void submit(PlortCommandBuffer cmdBuffer, PlortPipelineLayout layout, int currentFrameModInFlight) {
+        long address = instances.buffer(currentFrameModInFlight).deviceAddress();
+        drawCount = 0;
+        for (Batch batch : batches) {
+            for (int lod = 0; lod < batch.lods(); lod++) {
+                int from = batch.first + batch.lodStart[lod], to = batch.first + batch.lodStart[lod + 1];
+                if (from == to) continue;
+                if (culled) {
+                    submitVisible(cmdBuffer, layout, address, batch, from, to, lod, currentFrameModInFlight);
+                    continue;
+                }
+                if (INSTANCED) {
+                    batch.model.submit(cmdBuffer, layout, address + from * INSTANCE_SIZE, to - from, lod, null, currentFrameModInFlight);
+                    drawCount++;
+                    continue;
+                }
+                for (int i = from; i < to; i++) {
+                    batch.model.submit(cmdBuffer, layout, address + i * INSTANCE_SIZE, 1, lod, null, currentFrameModInFlight);
+                    drawCount++;
+                }
+            }
+        }
+    }
+
+    // draws the visible instances of slots [from, to) in runs, each with the meshes and meshlets visible in any of its instances
+    private void submitVisible(PlortCommandBuffer cmdBuffer, PlortPipelineLayout layout, long address, Batch batch, int from, int to, int lod, int currentFrameModInFlight) {
+        int instance = from - batch.first, end = to - batch.first;
+        while (instance < end) {
+            if (!batch.isVisible(instance)) {
+                instance++;
+                continue;
+            }
+            int start = instance;
+            Arrays.fill(meshMask, 0, batch.meshWords, 0);
+            Arrays.fill(meshletMask, 0, batch.meshletWords, 0);
+            do {
+                int mask = instance * batch.meshWords;
+                for (int word = 0; word < batch.meshWords; word++) meshMask[word] |= batch.meshVisible[mask + word];
+                if (batch.meshletsCulled) {
+                    int meshlets = instance * batch.meshletWords;
+                    for (int word = 0; word < batch.meshletWords; word++) meshletMask[word] |= batch.meshletVisible[meshlets + word];
+                }
+                instance++;
+            } while (INSTANCED && instance < end && batch.isVisible(instance));
+            batch.model.submit(cmdBuffer, layout, address + (batch.first + start) * INSTANCE_SIZE, instance - start, lod, meshMask,
+                    batch.meshletsCulled ? meshletMask : null, currentFrameModInFlight);
+            drawCount++;
+        }
+    }
+
+    @Override
+    public void close() {
+        instances.close();
+    }
+}
@@ -0,0 +1,76 @@
+package net.flamgop.borked;
+
+import net.flamgop.borked.culling.Occluder;
+import net.flamgop.borked.culling.OcclusionBuffer;
+import net.flamgop.borked.ecs.Archetype;
+import net.flamgop.borked.ecs.EntityStore;
+import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.renderer.model.PlortModel;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/// Fills an [OcclusionBuffer] with the occluders of every entity each frame, on the common pool while the render thread waits for the GPU.
+///
+/// [#begin(EntityStore, Matrix4f)] queues the occluders and forks the rasterization, [#await()] hands back the finished buffer.
+/// Entities that moved this tick don't occlude anything, their interpolated position isn't known until the transforms are built.
+class OcclusionCuller {
+    private static final int WIDTH = 256;
+    private static final int HEIGHT = 128;
+    private static final int ROWS_PER_TASK = 8;
+
+    private final OcclusionBuffer buffer = new OcclusionBuffer(WIDTH, HEIGHT);
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final Runnable rasterize = this::rasterize;
+    private final ParallelRange.Range rasterizeRows = buffer::rasterize;
+    private @Nullable ForkJoinTask<?> pending;
+    private boolean started;
+    private int occluderCount;
+
+    /// @return How many occluders the last [#begin(EntityStore, Matrix4f)] queued.
+    int occluderCount() {
+        return occluderCount;
+    }
+
+    /// @return How many triangles the last [#begin(EntityStore, Matrix4f)] left to rasterize after clipping.
+    int triangleCount() {
+        return buffer.triangleCount();
+    }
+
+    /// Starts building this frame's buffer from the occluders in `store`, seen through `viewProjection`.
+    void begin(EntityStore store, Matrix4f viewProjection) {
+        await();
+        buffer.begin(viewProjection);
+        occluderCount = 0;
+        for (Archetype archetype : store.archetypes()) {
+            if (!archetype.has(Entity.MODEL)) continue;
+            float[] transforms = archetype.floats(EntityStore.TRANSFORM);
+            for (int row = 0; row < archetype.size(); row++) {
+                if (archetype.isMoved(row)) continue;
+                PlortModel model = archetype.get(Entity.MODEL, row);
+                Occluder occluder = model.occluder();
+                if (occluder == null) continue;
+                buffer.addOccluder(occluder, transforms, row * 16);
+                occluderCount++;
+            }
+        }
+        pending = pool.submit(rasterize);
+        started = true;
+    }
+
+    /// Waits for the buffer started by the last [#begin(EntityStore, Matrix4f)].
+    /// @return The buffer, or null if no frame has been started yet.
+    @Nullable OcclusionBuffer await() {
+        if (pending != null) {
+            pending.join();
+            pending = null;
+        }
+        return started ? buffer : null;
+    }
+
+    private void rasterize() {
+        ParallelRange.run(pool, HEIGHT, ROWS_PER_TASK, rasterizeRows);
+        buffer.buildHierarchy();
+    }
+}
@@ -0,0 +1,50 @@
+package net.flamgop.borked;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/// Runs an index range in chunks on a [ForkJoinPool].
+///
+/// The range is split in halves until chunks are at most `grain` long, idle workers steal the larger halves left on
+/// other workers' queues, so uneven chunks balance themselves. Every index is visited exactly once and
+/// [#run(ForkJoinPool, int, int, Range)] only returns once all chunks have, rethrowing the first exception any chunk threw.
+public final class ParallelRange {
+    private ParallelRange() {}
+
+    @FunctionalInterface
+    public interface Range {
+        /// Runs indices `[from, to)`. Chunks may run concurrently with each other, but never overlap.
+        void run(int from, int to);
+    }
+
+    /// Runs `[0, count)` on the calling thread when there is no pool, the pool has a single worker or `count` fits in one chunk,
+    /// otherwise splits it across `pool`.
+    public static void run(@Nullable ForkJoinPool pool, int count, int grain, Range range) {
+        if (pool == null || pool.getParallelism() <= 1 || count <= grain) range.run(0, count);
+        else pool.invoke(new RangeTask(range, 0, count, grain));
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private final Range range;
+        private final int from, to, grain;
+
+        private RangeTask(Range range, int from, int to, int grain) {
+            this.range = range;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                range.run(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(range, from, mid, grain), new RangeTask(range, mid, to, grain));
+        }
+    }
+}
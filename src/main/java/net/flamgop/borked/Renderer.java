@@ -1,6 +1,7 @@
 package net.flamgop.borked;
 
 import net.flamgop.borked.math.Vector2f;
+import net.flamgop.borked.math.Vector3f;
 import net.flamgop.borked.math.Vector3i;
 import net.flamgop.borked.renderer.PlortCommandBuffer;
 import net.flamgop.borked.renderer.PlortRenderContext;
@@ -33,6 +34,8 @@ import static org.lwjgl.vulkan.VK13.VK_ACCESS_NONE;
 @SuppressWarnings("resource")
 public class Renderer implements AutoCloseable {
     private static final Logger LOGGER = LoggerFactory.getLogger(Renderer.class);
+    // false draws every instance, for comparing submit and GPU times on the stress scene
+    private static final boolean OCCLUSION_CULLING = true;
 
     private final PlortRenderContext context;
 
@@ -46,6 +49,15 @@ public class Renderer implements AutoCloseable {
     private final TextRenderer textRenderer;
     private final Atlas atlas;
 
+    // only the frame time line changes, so the rest of the overlay is built once
+    private final Vector3f frameTimeColor = Colors.red();
+    private final Vector2f frameTimeOffset = new Vector2f(0, 64);
+    private final Vector3f submitTimeColor = Colors.blue();
+    private final Vector2f submitTimeOffset;
+    private final Text thirdLine;
+    private final Vector3f cullColor = Colors.green();
+    private final Vector2f cullOffset;
+
     private final PlortShaderModule meshModule;
     private final PlortDescriptorSetLayout meshLayout;
     private final PlortBufferedDescriptorSetPool meshDescriptors;
@@ -75,6 +87,11 @@ public class Renderer implements AutoCloseable {
     private final World world;
 
 
+    private final InstanceBatcher instanceBatcher;
+    private final OcclusionCuller occlusionCuller = new OcclusionCuller();
+    // CPU time spent packing instances and recording the deferred pass, shown on screen
+    private long submitNanos;
+
     private int currentFrameModInFlight = 0;
 
     // note: while we would create the context, camera controller has buffers in it so we can't.
@@ -136,12 +153,18 @@ public class Renderer implements AutoCloseable {
             textRenderer.switchAtlas(atlas, i);
         }
 
+        submitTimeOffset = new Vector2f(0, 64 + atlas.lineHeight() * 0.5f);
+        thirdLine = new Text("And another line of yet cooler text", Colors.green(), new Vector2f(0, 64 + 2 * atlas.lineHeight() * 0.5f), 0.5f);
+        cullOffset = new Vector2f(0, 64 + 3 * atlas.lineHeight() * 0.5f);
+
         textBuffers = new BufferedObject<>(PlortBuffer.class, context.swapchain().imageCount(), (i) -> atlas.buildTextBuffer(List.of(
-                new Text(String.format("FPS: %.3f", 0f), Colors.red(), new Vector2f(0, 64), 0.5f),
-                new Text("Here's another line of even cooler text", Colors.blue(), new Vector2f(0, 64 + atlas.lineHeight() * 0.5f), 0.5f),
-                new Text("And another line of yet cooler text", Colors.green(), new Vector2f(0, 64 + 2 * atlas.lineHeight() * 0.5f), 0.5f)
+                new Text(String.format("FPS: %.3f", 0f), frameTimeColor, frameTimeOffset, 0.5f),
+                new Text(String.format("Submit: %.3fms", 0f), submitTimeColor, submitTimeOffset, 0.5f),
+                thirdLine
         )));
 
+        instanceBatcher = new InstanceBatcher(context.allocator(), context.swapchain().imageCount());
+
         ByteBuffer shaderCode = ResourceHelper.loadFromResource("assets/shaders/mesh.spv");
         this.meshModule = new PlortShaderModule(context.device(), shaderCode);
         meshModule.label("Mesh");
@@ -268,11 +291,15 @@ public class Renderer implements AutoCloseable {
     long timeoutTimestamp = System.nanoTime();
     boolean timeoutLastFrame = false;
 
-    private void submitDeferred(PlortCommandBuffer cmdBuffer, int imageIndex) {
-        world.entities.forEach(e -> e.model().setViewBuffer(context, cameraController.viewBuffer(), currentFrameModInFlight));
+    private void submitDeferred(PlortCommandBuffer cmdBuffer, int imageIndex, float alpha) {
+        long start = System.nanoTime();
+        instanceBatcher.build(world.store(), alpha, cameraController.eye(), cameraController.projectionScale(), currentFrameModInFlight);
+        instanceBatcher.cull(cameraController.viewProjection(), OCCLUSION_CULLING ? occlusionCuller.await() : null);
+        instanceBatcher.setViewBuffer(context, cameraController.viewBuffer(), currentFrameModInFlight);
 
         meshPipeline.bind(cmdBuffer, PipelineBindPoint.GRAPHICS);
-        world.entities.forEach(e -> e.submit(cmdBuffer, meshPipelineLayout, currentFrameModInFlight));
+        instanceBatcher.submit(cmdBuffer, meshPipelineLayout, currentFrameModInFlight);
+        submitNanos = System.nanoTime() - start;
     }
 
     private void submitShading(PlortCommandBuffer cmdBuffer, double deltaTime, int imageIndex, int currentFrameModInFlight) {
@@ -296,15 +323,19 @@ public class Renderer implements AutoCloseable {
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
             cmdBuffer.bindDescriptorSets(PipelineBindPoint.GRAPHICS, aabbPipelineLayout, 0, stack.longs(aabbDescriptors.descriptorSet(currentFrameModInFlight, 0)), null);
-            PlortBuffer buffer = world.aabbBuffer();
-            cmdBuffer.pushConstants(aabbPipelineLayout, PlortShaderStage.Stage.MESH.bit(), 0, MemoryUtil.memByteBuffer(stack.longs(buffer != null ? buffer.deviceAddress() : 0)));
-            cmdBuffer.drawMeshTasksEXT((int) world.aabbCount(), 1, 1);
+            world.updateAABBBuffer(currentFrameModInFlight);
+            cmdBuffer.pushConstants(aabbPipelineLayout, PlortShaderStage.Stage.MESH.bit(), 0, MemoryUtil.memByteBuffer(stack.longs(world.aabbBuffer(currentFrameModInFlight).deviceAddress())));
+            cmdBuffer.drawMeshTasksEXT(world.aabbCount(), 1, 1);
         }
 
         textBuffers.replace(imageIndex, atlas.buildTextBuffer(List.of(
-                new Text(String.format("Frame Time: %.3fms FPS: %.3f", deltaTime * 1000f, 1 / deltaTime), Colors.red(), new Vector2f(0, 64), 0.5f),
-                new Text("Here's another line of even cooler text", Colors.blue(), new Vector2f(0, 64 + atlas.lineHeight() * 0.5f), 0.5f),
-                new Text("And another line of yet cooler text", Colors.green(), new Vector2f(0, 64 + 2 * atlas.lineHeight() * 0.5f), 0.5f)
+                new Text(String.format("Frame Time: %.3fms FPS: %.3f", deltaTime * 1000f, 1 / deltaTime), frameTimeColor, frameTimeOffset, 0.5f),
+                new Text(String.format("Submit: %.3fms, %d instances in %d draws, %d written, %d LOD switches", submitNanos / 1e6, instanceBatcher.instanceCount(), instanceBatcher.drawCount(), instanceBatcher.writeCount(), instanceBatcher.lodSwitchCount()), submitTimeColor, submitTimeOffset, 0.5f),
+                thirdLine,
+                new Text(String.format("Culling: %d/%d instances drawn (%d outside, %d occluded), %d/%d meshes, %d/%d meshlets",
+                        instanceBatcher.drawnInstanceCount(), instanceBatcher.instanceCount(), instanceBatcher.outsideInstanceCount(), instanceBatcher.occludedInstanceCount(),
+                        instanceBatcher.testedMeshCount() - instanceBatcher.culledMeshCount(), instanceBatcher.testedMeshCount(),
+                        instanceBatcher.testedMeshletCount() - instanceBatcher.culledMeshletCount(), instanceBatcher.testedMeshletCount()), cullColor, cullOffset, 0.5f)
         )));
 
         textRenderer.renderTextBuffer(cmdBuffer, textBuffers.get(imageIndex), imageIndex);
@@ -343,7 +374,11 @@ public class Renderer implements AutoCloseable {
         }
     }
 
-    public boolean frame(double deltaTime) {
+    /// @param alpha How far this frame is between the previous simulation tick and the latest one.
+    /// @return False if the previous frame's fence timed out and nothing was drawn, after waiting for the device to go idle.
+    public boolean frame(double deltaTime, float alpha) {
+        // rasterizes occluders on the common pool while the previous frame is still on the GPU
+        if (OCCLUSION_CULLING) occlusionCuller.begin(world.store(), cameraController.viewProjection());
         if (context.waitForFence(currentFrameModInFlight)) {
             timeoutLastFrame = true;
             timeoutTimestamp = System.nanoTime();
@@ -386,7 +421,7 @@ public class Renderer implements AutoCloseable {
 
                 gbuffer.beginSubmitPass(cmdBuffer, gClearValues, imageIndex);
 
-                submitDeferred(cmdBuffer, imageIndex);
+                submitDeferred(cmdBuffer, imageIndex, alpha);
 
                 gbuffer.endSubmitPass(cmdBuffer);
 
@@ -447,6 +482,8 @@ public class Renderer implements AutoCloseable {
         aabbModule.close();
 
         noiseTexture.close();
+        occlusionCuller.await();
+        instanceBatcher.close();
 
         gbuffer.close();
 
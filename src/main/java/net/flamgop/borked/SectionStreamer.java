@@ -0,0 +1,287 @@
+package net.flamgop.borked;
+
+import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.math.Vector3f;
+import net.flamgop.borked.renderer.model.PlortModel;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/// Streams a grid of world sections into a [World] around the camera.
+///
+/// Each [Section] covers one `sectionSize` square of the XZ plane and lists the models placed in it. Sections whose centre is within
+/// `loadRadius` sections of the camera are loaded on background threads, nearest first, and their entities are added to the world
+/// once loading finishes. Sections further than `unloadRadius` are removed again, the gap between the two radii keeps a camera
+/// moving along a boundary from loading and unloading the same section over and over.
+///
+/// The memory budget caps the device memory resident sections may use. No new load starts while it's reached, and when a finished
+/// load goes over it the farthest sections are evicted. An evicted section isn't loaded again until the camera moves to another section.
+///
+/// The models of a removed section are closed on a loader thread once every frame that could still draw them has finished,
+/// so neither loading nor unloading blocks the frame.
+/// @implNote Apart from the loading itself everything happens on the thread calling [#update(Vector3f)].
+public class SectionStreamer implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SectionStreamer.class);
+    private static final int LOADER_THREADS = 2;
+    // adding entities happens on the calling thread, so finished sections are added a few at a time
+    private static final int MAX_INTEGRATIONS_PER_UPDATE = 1;
+    private static final long NO_SECTION = Long.MIN_VALUE;
+
+    /// A model placed in a section, `transform` being its world transform.
+    public record Placement(String model, Matrix4f transform) {}
+
+    /// The section at grid position (`x`, `z`), covering `[x, x + 1) * sectionSize` by `[z, z + 1) * sectionSize`.
+    public record Section(int x, int z, List<Placement> placements) {}
+
+    private enum State { UNLOADED, LOADING, RESIDENT, FAILED }
+
+    private static final class Streamed {
+        private final Section section;
+        private State state = State.UNLOADED;
+        // from the camera to the section's centre, in sections
+        private float distance;
+        // as measured by the last load, 0 before the first
+        private long memorySize;
+        private Map<String, PlortModel> models = Map.of();
+        private final List<Entity> entities = new ArrayList<>();
+        // the camera's section when this was evicted for the budget
+        private long evictedFrom = NO_SECTION;
+
+        private Streamed(Section section) {
+            this.section = section;
+        }
+    }
+
+    private record Loaded(Streamed streamed, Map<String, PlortModel> models, @Nullable Throwable error) {}
+
+    private record Retired(Map<String, PlortModel> models, long releaseFrame) {}
+
+    private final World world;
+    private final Function<String, PlortModel> loader;
+    private final int framesInFlight;
+    private final float sectionSize;
+    private final float loadRadius, unloadRadius;
+    private final long memoryBudget;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(LOADER_THREADS, Thread.ofPlatform().name("Section Loader ", 0).daemon().factory());
+    private final Map<Long, Streamed> sections = new HashMap<>();
+    private final Queue<Loaded> finished = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Retired> retired = new ArrayDeque<>();
+    private final List<Streamed> candidates = new ArrayList<>();
+    private final Comparator<Streamed> nearestFirst = Comparator.comparingDouble(s -> s.distance);
+
+    private long frame;
+    private long cameraSection = NO_SECTION;
+    private long residentBytes;
+    private long loadingBytes;
+    private int loading;
+    private int residentCount;
+
+    /// @param loader Loads a model by path. Called on loader threads, so it must be safe to call from any thread.
+    /// @param framesInFlight How many frames may still be drawing a section after it's removed.
+    /// @param loadRadius How close, in sections, a section's centre has to come to the camera to be loaded.
+    /// @param unloadRadius How far, in sections, a section's centre has to get from the camera to be removed. Must exceed `loadRadius`.
+    /// @param memoryBudget The device memory, in bytes, resident sections may use. The section nearest the camera is always kept.
+    public SectionStreamer(World world, Function<String, PlortModel> loader, int framesInFlight, float sectionSize, float loadRadius, float unloadRadius, long memoryBudget) {
+        if (unloadRadius <= loadRadius) throw new IllegalArgumentException("unloadRadius must be greater than loadRadius");
+        this.world = world;
+        this.loader = loader;
+        this.framesInFlight = framesInFlight;
+        this.sectionSize = sectionSize;
+        this.loadRadius = loadRadius;
+        this.unloadRadius = unloadRadius;
+        this.memoryBudget = memoryBudget;
+    }
+
+    private static long key(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    public void add(Section section) {
+        if (sections.putIfAbsent(key(section.x(), section.z()), new Streamed(section)) != null) {
+            throw new IllegalArgumentException("There already is a section at " + section.x() + ", " + section.z());
+        }
+    }
+
+    public int residentCount() {
+        return residentCount;
+    }
+
+    /// @return The device memory resident sections use, in bytes.
+    public long residentBytes() {
+        return residentBytes;
+    }
+
+    public int loadingCount() {
+        return loading;
+    }
+
+    /// Loads, adds and removes sections for a camera at `camera`. Call it once per rendered frame, outside of [World#update(float)].
+    public void update(Vector3f camera) {
+        frame++;
+        releaseRetired();
+
+        float cx = camera.x() / sectionSize, cz = camera.z() / sectionSize;
+        cameraSection = key((int) Math.floor(cx), (int) Math.floor(cz));
+        for (Streamed s : sections.values()) {
+            float dx = s.section.x() + 0.5f - cx, dz = s.section.z() + 0.5f - cz;
+            s.distance = (float) Math.sqrt(dx * dx + dz * dz);
+        }
+
+        for (int i = 0; i < MAX_INTEGRATIONS_PER_UPDATE; i++) {
+            Loaded loaded = finished.poll();
+            if (loaded == null) break;
+            integrate(loaded);
+        }
+
+        for (Streamed s : sections.values()) {
+            if (s.state == State.RESIDENT && s.distance > unloadRadius) unload(s);
+        }
+
+        candidates.clear();
+        for (Streamed s : sections.values()) {
+            if (s.state == State.UNLOADED && s.distance <= loadRadius && s.evictedFrom != cameraSection) candidates.add(s);
+        }
+        candidates.sort(nearestFirst);
+        for (Streamed s : candidates) {
+            if (loading >= LOADER_THREADS || residentBytes + loadingBytes >= memoryBudget) break;
+            load(s);
+        }
+    }
+
+    /// Blocks until every load in progress has finished and adds them. Meant for startup, before the first frame.
+    public void awaitLoads() {
+        while (loading > 0) {
+            Loaded loaded = finished.poll();
+            if (loaded == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            integrate(loaded);
+        }
+    }
+
+    private void load(Streamed s) {
+        s.state = State.LOADING;
+        loading++;
+        loadingBytes += s.memorySize;
+        Section section = s.section;
+        executor.execute(() -> {
+            Map<String, PlortModel> models = new HashMap<>();
+            try {
+                for (Placement placement : section.placements()) models.computeIfAbsent(placement.model(), loader);
+                finished.add(new Loaded(s, models, null));
+            } catch (Throwable t) {
+                // nothing has drawn them yet, so they can go right away
+                for (PlortModel model : models.values()) model.close();
+                finished.add(new Loaded(s, Map.of(), t));
+            }
+        });
+    }
+
+    private void integrate(Loaded loaded) {
+        Streamed s = loaded.streamed();
+        Section section = s.section;
+        loading--;
+        loadingBytes -= s.memorySize;
+        if (loaded.error() != null) {
+            s.state = State.FAILED;
+            LOGGER.error("Failed to load section {}, {}, it won't be retried", section.x(), section.z(), loaded.error());
+            return;
+        }
+
+        s.models = loaded.models();
+        s.memorySize = 0;
+        for (PlortModel model : s.models.values()) s.memorySize += model.memorySize();
+        if (s.distance > unloadRadius) {
+            // the camera left while it was loading
+            s.state = State.UNLOADED;
+            retire(s);
+            return;
+        }
+
+        for (Placement placement : section.placements()) {
+            Entity entity = new Entity(s.models.get(placement.model()));
+            entity.modifyTransform(transform -> transform.set(placement.transform()));
+            world.addEntity(entity);
+            s.entities.add(entity);
+        }
+        s.state = State.RESIDENT;
+        residentBytes += s.memorySize;
+        residentCount++;
+        LOGGER.debug("Loaded section {}, {} ({} KiB, {} resident, {} KiB total)", section.x(), section.z(), s.memorySize >> 10, residentCount, residentBytes >> 10);
+
+        while (residentBytes > memoryBudget && residentCount > 1) {
+            Streamed farthest = null;
+            for (Streamed other : sections.values()) {
+                if (other.state == State.RESIDENT && (farthest == null || other.distance > farthest.distance)) farthest = other;
+            }
+            farthest.evictedFrom = cameraSection;
+            LOGGER.info("Evicting section {}, {} to stay within the {} KiB budget", farthest.section.x(), farthest.section.z(), memoryBudget >> 10);
+            unload(farthest);
+        }
+    }
+
+    private void unload(Streamed s) {
+        for (Entity entity : s.entities) {
+            world.removeEntity(entity);
+            entity.close();
+        }
+        s.entities.clear();
+        s.state = State.UNLOADED;
+        residentBytes -= s.memorySize;
+        residentCount--;
+        retire(s);
+        LOGGER.debug("Unloaded section {}, {} ({} resident, {} KiB total)", s.section.x(), s.section.z(), residentCount, residentBytes >> 10);
+    }
+
+    private void retire(Streamed s) {
+        retired.add(new Retired(s.models, frame + framesInFlight));
+        s.models = Map.of();
+    }
+
+    // every frame that could have drawn these has waited on its fence by now
+    private void releaseRetired() {
+        while (!retired.isEmpty() && retired.peekFirst().releaseFrame() <= frame) {
+            Map<String, PlortModel> models = retired.pollFirst().models();
+            executor.execute(() -> {
+                for (PlortModel model : models.values()) model.close();
+            });
+        }
+    }
+
+    /// Stops loading and closes every model, resident or not. The device must be idle.
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) LOGGER.warn("Section loaders didn't finish in time, leaking what they were loading");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Loaded loaded; (loaded = finished.poll()) != null; ) {
+            for (PlortModel model : loaded.models().values()) model.close();
+        }
+        for (Retired r : retired) {
+            for (PlortModel model : r.models().values()) model.close();
+        }
+        retired.clear();
+        for (Streamed s : sections.values()) {
+            for (PlortModel model : s.models.values()) model.close();
+            s.models = Map.of();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package net.flamgop.borked;
+
+import net.flamgop.borked.math.AABB;
+import net.flamgop.borked.math.AABBStore;
+import net.flamgop.borked.math.AABBTree;
+import net.flamgop.borked.math.Vector3f;
+
+import java.util.concurrent.ForkJoinPool;
+
+/// Raycast, overlap and sweep queries against the world's collision boxes, answered in batches.
+///
+/// Batches hold their queries and results in preallocated arrays and are meant to be reused frame after frame,
+/// nothing is allocated per query. Large batches are split across the common [ForkJoinPool],
+/// small ones run on the calling thread.
+///
+/// Queries only read the collision tree, so they must not overlap with [World#update(float)], [World#addEntity(Entity)]
+/// or [World#removeEntity(Entity)]. Any number of batches may run concurrently with each other.
+public class SpatialQueries {
+    // below this many queries forking costs more than it saves
+    private static final int PARALLEL_GRAIN = 64;
+
+    private final World world;
+    private final AABBTree tree;
+
+    SpatialQueries(World world, AABBTree tree) {
+        this.world = world;
+        this.tree = tree;
+    }
+
+    /// Finds the closest collider along every ray in the batch.
+    public void raycast(RaycastBatch batch) {
+        run(batch.count, (from, to) -> {
+            ClosestHit closest = new ClosestHit(world);
+            for (int i = from; i < to; i++) {
+                closest.begin(batch.originX[i], batch.originY[i], batch.originZ[i], batch.directionX[i], batch.directionY[i], batch.directionZ[i], 0, 0, 0);
+                tree.raycast(batch.originX[i], batch.originY[i], batch.originZ[i], batch.directionX[i], batch.directionY[i], batch.directionZ[i],
+                        0, 0, 0, batch.maxDistance[i], closest);
+                batch.hitCollider[i] = closest.collider;
+                batch.hitDistance[i] = closest.t;
+            }
+        });
+    }
+
+    /// Finds every collider overlapping each box in the batch.
+    public void overlap(OverlapBatch batch) {
+        run(batch.count, (from, to) -> {
+            Overlaps overlaps = new Overlaps(world, batch);
+            for (int i = from; i < to; i++) {
+                overlaps.begin(i);
+                tree.query(batch.minX[i], batch.minY[i], batch.minZ[i], batch.maxX[i], batch.maxY[i], batch.maxZ[i], overlaps);
+                batch.hitCount[i] = overlaps.count;
+            }
+        });
+    }
+
+    /// Finds the first collider each box in the batch touches while moving along its motion.
+    public void sweep(SweepBatch batch) {
+        run(batch.count, (from, to) -> {
+            ClosestHit closest = new ClosestHit(world);
+            for (int i = from; i < to; i++) {
+                float halfX = (batch.maxX[i] - batch.minX[i]) * 0.5f;
+                float halfY = (batch.maxY[i] - batch.minY[i]) * 0.5f;
+                float halfZ = (batch.maxZ[i] - batch.minZ[i]) * 0.5f;
+                float centerX = batch.minX[i] + halfX, centerY = batch.minY[i] + halfY, centerZ = batch.minZ[i] + halfZ;
+
+                closest.begin(centerX, centerY, centerZ, batch.motionX[i], batch.motionY[i], batch.motionZ[i], halfX, halfY, halfZ);
+                tree.raycast(centerX, centerY, centerZ, batch.motionX[i], batch.motionY[i], batch.motionZ[i], halfX, halfY, halfZ, 1f, closest);
+                batch.hitCollider[i] = closest.collider;
+                batch.hitFraction[i] = closest.t;
+            }
+        });
+    }
+
+    private static void run(int count, ParallelRange.Range range) {
+        ParallelRange.run(ForkJoinPool.commonPool(), count, PARALLEL_GRAIN, range);
+    }
+
+    // one per chunk, reused for every query in it
+    private static final class ClosestHit implements AABBTree.RaycastCallback {
+        private final World world;
+        private float originX, originY, originZ, directionX, directionY, directionZ, halfX, halfY, halfZ;
+        private int collider;
+        private float t;
+
+        private ClosestHit(World world) {
+            this.world = world;
+        }
+
+        private void begin(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float halfX, float halfY, float halfZ) {
+            this.originX = originX; this.originY = originY; this.originZ = originZ;
+            this.directionX = directionX; this.directionY = directionY; this.directionZ = directionZ;
+            this.halfX = halfX; this.halfY = halfY; this.halfZ = halfZ;
+            this.collider = -1;
+            this.t = Float.POSITIVE_INFINITY;
+        }
+
+        @Override
+        public float hit(int collider, float maxT) {
+            AABBStore bounds = world.colliderBounds();
+            float hitT = AABB.rayEntry(
+                    bounds.minX(collider) - halfX, bounds.minY(collider) - halfY, bounds.minZ(collider) - halfZ,
+                    bounds.maxX(collider) + halfX, bounds.maxY(collider) + halfY, bounds.maxZ(collider) + halfZ,
+                    originX, originY, originZ, directionX, directionY, directionZ
+            );
+            // a miss, even when the ray is unbounded
+            if (hitT > maxT || hitT == Float.POSITIVE_INFINITY) return maxT;
+            this.collider = collider;
+            this.t = hitT;
+            return hitT;
+        }
+    }
+
+    private static final class Overlaps implements AABBTree.QueryCallback {
+        private final World world;
+        private final OverlapBatch batch;
+        private int query, count;
+
+        private Overlaps(World world, OverlapBatch batch) {
+            this.world = world;
+            this.batch = batch;
+        }
+
+        private void begin(int query) {
+            this.query = query;
+            this.count = 0;
+        }
+
+        @Override
+        public boolean overlap(int collider) {
+            AABBStore bounds = world.colliderBounds();
+            int q = query;
+            if (bounds.maxX(collider) > batch.minX[q] && bounds.minX(collider) < batch.maxX[q]
+                    && bounds.maxY(collider) > batch.minY[q] && bounds.minY(collider) < batch.maxY[q]
+                    && bounds.maxZ(collider) > batch.minZ[q] && bounds.minZ(collider) < batch.maxZ[q]) {
+                if (count < batch.maxHits) batch.hits[q * batch.maxHits + count] = collider;
+                count++;
+            }
+            return true;
+        }
+    }
+
+    /// Rays with a direction and a maximum distance. With a normalized direction distances are in world units.
+    public static final class RaycastBatch {
+        private final float[] originX, originY, originZ, directionX, directionY, directionZ, maxDistance;
+        private final int[] hitCollider;
+        private final float[] hitDistance;
+        private int count;
+
+        public RaycastBatch(int capacity) {
+            originX = new float[capacity]; originY = new float[capacity]; originZ = new float[capacity];
+            directionX = new float[capacity]; directionY = new float[capacity]; directionZ = new float[capacity];
+            maxDistance = new float[capacity];
+            hitCollider = new int[capacity];
+            hitDistance = new float[capacity];
+        }
+
+        /// @return The index of the query.
+        public int add(float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float maxDistance) {
+            if (count == this.originX.length) throw new IllegalStateException("Raycast batch is full (" + count + " queries)");
+            int i = count++;
+            this.originX[i] = originX; this.originY[i] = originY; this.originZ[i] = originZ;
+            this.directionX[i] = directionX; this.directionY[i] = directionY; this.directionZ[i] = directionZ;
+            this.maxDistance[i] = maxDistance;
+            return i;
+        }
+
+        public int add(Vector3f origin, Vector3f direction, float maxDistance) {
+            return add(origin.x(), origin.y(), origin.z(), direction.x(), direction.y(), direction.z(), maxDistance);
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        /// @return The collider hit by the ray, -1 if nothing was hit. See [World#colliderOwner(int)].
+        public int hitCollider(int query) {
+            return hitCollider[query];
+        }
+
+        /// @return The distance along the ray to the hit, 0 if the ray started inside a collider and infinite if nothing was hit.
+        public float hitDistance(int query) {
+            return hitDistance[query];
+        }
+    }
+
+    /// Boxes and the colliders overlapping them, up to `maxHits` per box.
+    public static final class OverlapBatch {
+        private final float[] minX, minY, minZ, maxX, maxY, maxZ;
+        private final int maxHits;
+        private final int[] hits;
+        private final int[] hitCount;
+        private int count;
+
+        public OverlapBatch(int capacity, int maxHits) {
+            minX = new float[capacity]; minY = new float[capacity]; minZ = new float[capacity];
+            maxX = new float[capacity]; maxY = new float[capacity]; maxZ = new float[capacity];
+            this.maxHits = maxHits;
+            this.hits = new int[capacity * maxHits];
+            this.hitCount = new int[capacity];
+        }
+
+        public int add(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+            if (count == this.minX.length) throw new IllegalStateException("Overlap batch is full (" + count + " queries)");
+            int i = count++;
+            this.minX[i] = minX; this.minY[i] = minY; this.minZ[i] = minZ;
+            this.maxX[i] = maxX; this.maxY[i] = maxY; this.maxZ[i] = maxZ;
+            return i;
+        }
+
+        public int add(AABB box) {
+            return add(box.min().x(), box.min().y(), box.min().z(), box.max().x(), box.max().y(), box.max().z());
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        /// @return How many colliders overlap the box, may be more than `maxHits` in which case only the first `maxHits` are stored.
+        public int hitCount(int query) {
+            return hitCount[query];
+        }
+
+        public int hit(int query, int n) {
+            if (n >= Math.min(hitCount[query], maxHits)) throw new IndexOutOfBoundsException(n);
+            return hits[query * maxHits + n];
+        }
+    }
+
+    /// Boxes moving along a motion vector, reporting the first collider touched.
+    public static final class SweepBatch {
+        private final float[] minX, minY, minZ, maxX, maxY, maxZ, motionX, motionY, motionZ;
+        private final int[] hitCollider;
+        private final float[] hitFraction;
+        private int count;
+
+        public SweepBatch(int capacity) {
+            minX = new float[capacity]; minY = new float[capacity]; minZ = new float[capacity];
+            maxX = new float[capacity]; maxY = new float[capacity]; maxZ = new float[capacity];
+            motionX = new float[capacity]; motionY = new float[capacity]; motionZ = new float[capacity];
+            hitCollider = new int[capacity];
+            hitFraction = new float[capacity];
+        }
+
+        public int add(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, float motionX, float motionY, float motionZ) {
+            if (count == this.minX.length) throw new IllegalStateException("Sweep batch is full (" + count + " queries)");
+            int i = count++;
+            this.minX[i] = minX; this.minY[i] = minY; this.minZ[i] = minZ;
+            this.maxX[i] = maxX; this.maxY[i] = maxY; this.maxZ[i] = maxZ;
+            this.motionX[i] = motionX; this.motionY[i] = motionY; this.motionZ[i] = motionZ;
+            return i;
+        }
+
+        public int add(AABB box, Vector3f motion) {
+            return add(box.min().x(), box.min().y(), box.min().z(), box.max().x(), box.max().y(), box.max().z(), motion.x(), motion.y(), motion.z());
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        public int count() {
+            return count;
+        }
+
+        /// @return The first collider the box touches, -1 if it can move the whole way.
+        public int hitCollider(int query) {
+            return hitCollider[query];
+        }
+
+        /// @return How much of the motion can be applied before touching [#hitCollider(int)], in `[0, 1]`.
+        public float hitFraction(int query) {
+            return hitCollider[query] == -1 ? 1f : hitFraction[query];
+        }
+    }
+}
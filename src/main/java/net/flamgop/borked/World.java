@@ -1,76 +1,290 @@
 package net.flamgop.borked;
 
+import net.flamgop.borked.ecs.Archetype;
+import net.flamgop.borked.ecs.EntityStore;
+import net.flamgop.borked.ecs.ObjectComponent;
+import net.flamgop.borked.math.AABB;
+import net.flamgop.borked.math.AABBStore;
+import net.flamgop.borked.math.AABBTree;
+import net.flamgop.borked.math.Matrix4f;
 import net.flamgop.borked.math.Vector3f;
 import net.flamgop.borked.renderer.memory.BufferUsage;
-import net.flamgop.borked.renderer.memory.MappedMemory;
 import net.flamgop.borked.renderer.memory.PlortAllocator;
 import net.flamgop.borked.renderer.memory.PlortBuffer;
+import net.flamgop.borked.renderer.memory.StreamedBuffer;
+import net.flamgop.borked.scene.SceneGraph;
 import org.jetbrains.annotations.Nullable;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class World implements AutoCloseable {
-    private static final Logger LOGGER = LoggerFactory.getLogger(World.class);
     private static final boolean DRAW_PLAYER_AABB = false;
+    // entities per update chunk, enough that a chunk of empty updates still outweighs forking it
+    static final int UPDATE_GRAIN = 256;
 
-    private static final long AABB_SIZE = 2 * Vector3f.BYTES + 2 * Float.BYTES;
-    private final PlortAllocator allocator;
-    private long aabbCount;
-    private PlortBuffer aabbBuffer;
+    private static final int INITIAL_AABB_CAPACITY = 256;
 
-    protected final List<Entity> entities = new ArrayList<>();
+    // the debug view of bounds, plus the player's box when DRAW_PLAYER_AABB is on. null when headless
+    private final @Nullable StreamedBuffer aabbBuffers;
+    private int aabbCount;
+
+    static final ObjectComponent<Collider[]> COLLIDERS = new ObjectComponent<>("colliders");
+
+    private final EntityStore store = new EntityStore();
+    // only entities that have been given a parent or a child have a node
+    private final SceneGraph scene = new SceneGraph();
     private final CameraController player;
 
-    public World(PlortAllocator allocator, CameraController player) {
-        this.allocator = allocator;
+    // every child box of every entity in world space, colliders.get(i) describes bounds box i.
+    // boxes with collision also get a proxy in the tree whose user data is the box index
+    private final AABBStore bounds = new AABBStore();
+    private final List<Collider> colliders = new ArrayList<>();
+    private final AABBTree collisionTree = new AABBTree();
+    private final SpatialQueries queries = new SpatialQueries(this, collisionTree);
+
+    private @Nullable ForkJoinPool updatePool = ForkJoinPool.commonPool();
+    private boolean updating;
+
+    public World(PlortAllocator allocator, int framesInFlight, CameraController player) {
+        this.aabbBuffers = new StreamedBuffer(allocator, BufferUsage.STORAGE_BUFFER_BIT, AABBStore.GPU_STRIDE, INITIAL_AABB_CAPACITY, framesInFlight);
+        this.player = player;
+    }
+
+    /// A headless world that simulates like any other but has no debug AABB buffer, for running ticks without a device.
+    World(CameraController player) {
+        this.aabbBuffers = null;
         this.player = player;
     }
 
-    public void recreateAABBBuffer() {
-        aabbCount = entities.stream().mapToLong(e -> e.model().childAABBs().size()).sum() + (DRAW_PLAYER_AABB ? 1 : 0);
-        if (aabbBuffer != null) {
-            aabbBuffer.close();
-            aabbBuffer = null;
+    public void addEntity(Entity entity) {
+        checkNotUpdating();
+        if (entity.handle() != EntityStore.NULL) throw new IllegalStateException("Entity is already in a world");
+
+        long handle = store.create(Entity.FACADE, Entity.MODEL, COLLIDERS);
+        store.set(handle, Entity.FACADE, entity);
+        store.set(handle, Entity.MODEL, entity.model());
+        entity.attach(store, handle);
+
+        Matrix4f transform = entity.transform();
+        List<AABB> children = entity.model().childAABBs();
+        Collider[] entityColliders = new Collider[children.size()];
+        for (int c = 0; c < children.size(); c++) {
+            AABB local = children.get(c);
+            Collider collider = new Collider(entity, local);
+            collider.index = bounds.add(0, 0, 0, 0, 0, 0, local.hasCollision());
+            writeBounds(collider, transform.m30(), transform.m31(), transform.m32());
+            if (local.hasCollision()) {
+                int i = collider.index;
+                collider.proxy = collisionTree.createProxy(bounds.minX(i), bounds.minY(i), bounds.minZ(i), bounds.maxX(i), bounds.maxY(i), bounds.maxZ(i), i);
+            }
+            colliders.add(collider);
+            entityColliders[c] = collider;
+        }
+        store.set(handle, COLLIDERS, entityColliders);
+    }
+
+    /// Removes the entity and its colliders from the world without closing it.
+    public void removeEntity(Entity entity) {
+        checkNotUpdating();
+        if (!entity.isIn(store)) return;
+
+        for (Collider collider : store.get(entity.handle(), COLLIDERS)) {
+            if (collider.proxy != AABBTree.NULL) collisionTree.destroyProxy(collider.proxy);
+
+            int index = collider.index;
+            bounds.removeSwap(index);
+            // the last box moved into the hole
+            if (aabbBuffers != null) aabbBuffers.markDirty(index);
+            Collider last = colliders.removeLast();
+            if (last != collider) {
+                colliders.set(index, last);
+                last.index = index;
+                if (last.proxy != AABBTree.NULL) collisionTree.userData(last.proxy, index);
+            }
         }
-        if (aabbCount <= 0) {
-            LOGGER.debug("No AABBs to build in buffer.");
-            return;
+        if (entity.sceneNode() != SceneGraph.NULL) {
+            // children stay where they are as roots
+            scene.destroy(entity.sceneNode());
+            entity.leaveScene();
         }
-        aabbBuffer = new PlortBuffer(aabbCount * AABB_SIZE, BufferUsage.STORAGE_BUFFER_BIT, allocator);
-        try (MappedMemory mem = aabbBuffer.map()) {
-            entities.forEach(e -> e.model().childAABBs().forEach(a -> {
-                mem.putVector3f(a.min());
-                mem.putFloat(0);
-                mem.putVector3f(a.max());
-                mem.putFloat(a.hasCollision() ? 1 : 0);
-            }));
-            if (DRAW_PLAYER_AABB) {
-                mem.putVector3f(player.aabb().min());
-                mem.putFloat(0);
-                mem.putVector3f(player.aabb().max());
-                mem.putFloat(0);
+        long handle = entity.handle();
+        entity.detach();
+        store.destroy(handle);
+    }
+
+    /// Makes `child` follow `parent`, keeping `child` where it currently is, or detaches it again if `parent` is `null`.
+    /// From then on the child's setters edit its transform relative to the parent.
+    public void setParent(Entity child, @Nullable Entity parent) {
+        checkNotUpdating();
+        if (!child.isIn(store) || (parent != null && !parent.isIn(store))) throw new IllegalArgumentException("Both entities must be in this world");
+        scene.setParent(sceneNode(child), parent != null ? sceneNode(parent) : SceneGraph.NULL, true);
+    }
+
+    private int sceneNode(Entity entity) {
+        if (entity.sceneNode() != SceneGraph.NULL) return entity.sceneNode();
+        int node = scene.create(SceneGraph.NULL, entity.transform(), entity.handle());
+        entity.joinScene(scene, node);
+        return node;
+    }
+
+    public EntityStore store() {
+        return store;
+    }
+
+    /// Sets the pool [#update(float)] spreads entity updates over, `null` updates every entity on the calling thread.
+    /// Defaults to the common pool.
+    public void setUpdatePool(@Nullable ForkJoinPool pool) {
+        this.updatePool = pool;
+    }
+
+    private void checkNotUpdating() {
+        if (updating) throw new IllegalStateException("Entities cannot be added or removed during World.update");
+    }
+
+    public SpatialQueries queries() {
+        return queries;
+    }
+
+    /// Writes the indices of colliders that may overlap `box` into `results`, see [AABBTree#query(AABB, int[])].
+    /// Candidates still need an exact test against [#colliderBounds()].
+    /// @return The total number of candidates, which may exceed `results.length`.
+    public int queryColliders(AABB box, int[] results) {
+        return collisionTree.query(box, results);
+    }
+
+    /// @return The world space boxes of every entity child, indexed by collider. Only boxes with collision are ever reported by queries.
+    public AABBStore colliderBounds() {
+        return bounds;
+    }
+
+    public Entity colliderOwner(int collider) {
+        return colliders.get(collider).owner;
+    }
+
+    // entity collision only follows translation, same as the player's narrow phase always has
+    private void writeBounds(Collider collider, float x, float y, float z) {
+        Vector3f min = collider.local.min(), max = collider.local.max();
+        bounds.set(collider.index, min.x() + x, min.y() + y, min.z() + z, max.x() + x, max.y() + y, max.z() + z);
+        if (aabbBuffers != null) aabbBuffers.markDirty(collider.index);
+    }
+
+    // only visits entities whose moved bit is set
+    private void updateColliders() {
+        for (Archetype archetype : store.archetypes()) {
+            if (!archetype.has(COLLIDERS)) continue;
+            float[] transforms = archetype.floats(EntityStore.TRANSFORM);
+            int words = Archetype.bitsetLength(archetype.size());
+            for (int w = 0; w < words; w++) {
+                for (long bits = archetype.movedWord(w); bits != 0; bits &= bits - 1) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    float x = transforms[row * 16 + 12], y = transforms[row * 16 + 13], z = transforms[row * 16 + 14];
+                    for (Collider collider : archetype.get(COLLIDERS, row)) {
+                        writeBounds(collider, x, y, z);
+                        if (collider.proxy == AABBTree.NULL) continue;
+                        int b = collider.index;
+                        collisionTree.moveProxy(collider.proxy, bounds.minX(b), bounds.minY(b), bounds.minZ(b), bounds.maxX(b), bounds.maxY(b), bounds.maxZ(b));
+                    }
+                }
             }
         }
     }
 
-    public @Nullable PlortBuffer aabbBuffer() {
-        return aabbBuffer;
+    /// Copies the boxes added, removed or moved since the given frame last drew them into its debug AABB buffer.
+    public void updateAABBBuffer(int currentFrameModInFlight) {
+        if (aabbBuffers == null) throw new IllegalStateException("A headless world has no debug AABB buffer");
+        int boxCount = bounds.size();
+        aabbCount = boxCount + (DRAW_PLAYER_AABB ? 1 : 0);
+        aabbBuffers.ensureCapacity(aabbCount, currentFrameModInFlight);
+        aabbBuffers.upload(bounds.gpuView(), boxCount, currentFrameModInFlight);
+        if (DRAW_PLAYER_AABB) {
+            // the player moves every frame anyway, so it's always written
+            PlortBuffer buffer = aabbBuffers.buffer(currentFrameModInFlight);
+            MemorySegment box = buffer.mapped().asSlice(boxCount * AABBStore.GPU_STRIDE, AABBStore.GPU_STRIDE);
+            Vector3f min = player.aabb().min(), max = player.aabb().max();
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 0, min.x());
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 1, min.y());
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 2, min.z());
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 3, 0);
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 4, max.x());
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 5, max.y());
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 6, max.z());
+            box.setAtIndex(ValueLayout.JAVA_FLOAT, 7, 0);
+            buffer.flush(boxCount * AABBStore.GPU_STRIDE, AABBStore.GPU_STRIDE);
+        }
+    }
+
+    /// @return The debug AABB buffer the given frame reads, valid until its next [#updateAABBBuffer(int)].
+    public PlortBuffer aabbBuffer(int currentFrameModInFlight) {
+        if (aabbBuffers == null) throw new IllegalStateException("A headless world has no debug AABB buffer");
+        return aabbBuffers.buffer(currentFrameModInFlight);
     }
 
-    public long aabbCount() {
+    public int aabbCount() {
         return aabbCount;
     }
 
+    /// Runs one fixed simulation tick.
+    ///
+    /// Entities are updated in chunks of [#UPDATE_GRAIN] on the update pool, see [Entity#update(float)] for what they may touch.
+    /// Then parented entities get their world transforms from the scene graph and colliders are synced on the calling thread,
+    /// so queries made during the tick see the previous tick's positions.
     public void update(float dt) {
-        entities.forEach(e -> e.update(dt));
+        // picks up anything moved between ticks, before beginTick() forgets it moved. Entities that moved during the last tick
+        // were already synced at its end, for them this is a repeat that moveProxy() mostly skips
+        updateColliders();
+        store.beginTick();
+
+        updating = true;
+        try {
+            for (Archetype archetype : store.archetypes()) {
+                if (!archetype.has(Entity.FACADE)) continue;
+                ParallelRange.run(updatePool, archetype.size(), UPDATE_GRAIN, (from, to) -> {
+                    for (int row = from; row < to; row++) archetype.get(Entity.FACADE, row).update(dt);
+                });
+            }
+        } finally {
+            updating = false;
+        }
+        updateHierarchy();
+        updateColliders();
+    }
+
+    // recomputes the dirty parts of the scene graph and writes the world transforms that changed back into the store
+    private void updateHierarchy() {
+        scene.update(updatePool);
+        for (int i = 0; i < scene.changedCount(); i++) {
+            int node = scene.changed(i);
+            long handle = scene.userData(node);
+            Archetype archetype = store.archetype(handle);
+            int row = store.row(handle);
+            scene.copyWorld(node, archetype.floats(EntityStore.TRANSFORM), row * 16);
+            archetype.markMoved(row);
+        }
     }
 
     @Override
     public void close() {
-        if (aabbBuffer != null) aabbBuffer.close();
-        entities.forEach(Entity::close);
+        if (aabbBuffers != null) aabbBuffers.close();
+        for (Archetype archetype : store.archetypes()) {
+            if (!archetype.has(Entity.FACADE)) continue;
+            for (int row = 0; row < archetype.size(); row++) archetype.get(Entity.FACADE, row).close();
+        }
+        bounds.close();
+    }
+
+    static final class Collider {
+        private final Entity owner;
+        private final AABB local;
+        private int index;
+        private int proxy = AABBTree.NULL;
+
+        private Collider(Entity owner, AABB local) {
+            this.owner = owner;
+            this.local = local;
+        }
     }
 }
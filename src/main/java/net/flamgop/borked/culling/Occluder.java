@@ -0,0 +1,10 @@
+package net.flamgop.borked.culling;
+
+/// Simplified, opaque geometry that hides whatever is behind it, in model space.
+/// @param positions `x, y, z` per vertex.
+/// @param indices Three per triangle. Winding doesn't matter, both sides occlude.
+public record Occluder(float[] positions, int[] indices) {
+    public int triangleCount() {
+        return indices.length / 3;
+    }
+}
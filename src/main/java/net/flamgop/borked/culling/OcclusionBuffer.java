@@ -0,0 +1,280 @@
+package net.flamgop.borked.culling;
+
+import net.flamgop.borked.math.Matrix4f;
+
+import java.util.Arrays;
+
+/// A small CPU depth buffer that [Occluder]s are rasterized into, with a max-depth pyramid on top for testing boxes against it.
+///
+/// A frame goes [#begin(Matrix4f)], [#addOccluder(Occluder, float[], int)] for each occluder, [#rasterize(int, int)] over every row
+/// and then [#buildHierarchy()], after which [#isOccluded(float, float, float, float, float, float)] may be called.
+/// Rasterizing disjoint row ranges and testing boxes are both safe from several threads at once, everything else isn't.
+///
+/// Everything errs on the side of visible. A texel takes an occluder's depth when the triangle covers its centre, which keeps
+/// triangles sharing an edge watertight, so a triangle may claim up to half a texel it doesn't cover. Boxes are grown by
+/// a texel on every side to make up for that, the depth written is the farthest the triangle's plane gets within the texel,
+/// and a box is only occluded when its nearest point is behind every texel it touches.
+/// Depth is `z / w` of a zero-to-one projection, 0 at the near plane.
+public class OcclusionBuffer {
+    private static final float FAR = 1f;
+    // degenerate triangles, in texels squared
+    private static final float MIN_AREA = 1e-6f;
+
+    private final int width, height;
+    // level 0 is the depth buffer itself, every level after holds the farthest depth of a 2x2 block of the one before
+    private final float[][] levels;
+    private final int[] levelWidths, levelHeights;
+
+    private final float[] viewProjection = new float[16];
+    private final float[] modelViewProjection = new float[16];
+    // an occluder's vertices in clip space, x, y, z, w each
+    private float[] clip = new float[1024];
+    // screen space triangles waiting to be rasterized, x, y, z per vertex
+    private float[] triangles = new float[9 * 256];
+    private int triangleCount;
+    // clipping one triangle against the near plane makes at most four vertices
+    private final float[] polygon = new float[4 * 4];
+
+    public OcclusionBuffer(int width, int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("Occlusion buffer size must be positive.");
+        this.width = width;
+        this.height = height;
+
+        int count = 1;
+        for (int w = width, h = height; w > 1 || h > 1; w = (w + 1) >>> 1, h = (h + 1) >>> 1) count++;
+        this.levels = new float[count][];
+        this.levelWidths = new int[count];
+        this.levelHeights = new int[count];
+        for (int l = 0, w = width, h = height; l < count; l++, w = (w + 1) >>> 1, h = (h + 1) >>> 1) {
+            levels[l] = new float[w * h];
+            levelWidths[l] = w;
+            levelHeights[l] = h;
+        }
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    /// @return How many triangles were left to rasterize after clipping, since the last [#begin(Matrix4f)].
+    public int triangleCount() {
+        return triangleCount;
+    }
+
+    /// @return The depth buffer, row major. Only meaningful after [#rasterize(int, int)].
+    public float[] depth() {
+        return levels[0];
+    }
+
+    int levelCount() {
+        return levels.length;
+    }
+
+    /// @return Level `level` of the max-depth pyramid, row major and [#levelWidth(int)] wide, level 0 being [#depth()].
+    float[] level(int level) {
+        return levels[level];
+    }
+
+    int levelWidth(int level) {
+        return levelWidths[level];
+    }
+
+    /// Clears the buffer and starts a frame seen through `viewProjection`.
+    public void begin(Matrix4f viewProjection) {
+        viewProjection.get(this.viewProjection, 0);
+        Arrays.fill(levels[0], FAR);
+        triangleCount = 0;
+    }
+
+    /// Transforms and clips the occluder's triangles, queueing the parts in front of the near plane for [#rasterize(int, int)].
+    /// @param transform The occluder's model matrix, 16 column-major floats starting at `transformOffset`.
+    public void addOccluder(Occluder occluder, float[] transform, int transformOffset) {
+        Matrix4f.multiply(viewProjection, 0, transform, transformOffset, modelViewProjection, 0);
+        float[] m = modelViewProjection;
+        float[] positions = occluder.positions();
+        int vertexCount = positions.length / 3;
+        if (clip.length < vertexCount * 4) clip = new float[Math.max(vertexCount * 4, clip.length * 2)];
+
+        for (int v = 0; v < vertexCount; v++) {
+            float x = positions[v * 3], y = positions[v * 3 + 1], z = positions[v * 3 + 2];
+            clip[v * 4] = Math.fma(m[0], x, Math.fma(m[4], y, Math.fma(m[8], z, m[12])));
+            clip[v * 4 + 1] = Math.fma(m[1], x, Math.fma(m[5], y, Math.fma(m[9], z, m[13])));
+            clip[v * 4 + 2] = Math.fma(m[2], x, Math.fma(m[6], y, Math.fma(m[10], z, m[14])));
+            clip[v * 4 + 3] = Math.fma(m[3], x, Math.fma(m[7], y, Math.fma(m[11], z, m[15])));
+        }
+
+        int[] indices = occluder.indices();
+        for (int t = 0; t + 2 < indices.length; t += 3) {
+            int a = indices[t] * 4, b = indices[t + 1] * 4, c = indices[t + 2] * 4;
+            if (outsideSameSide(a, b, c)) continue;
+
+            boolean inA = clip[a + 2] >= 0, inB = clip[b + 2] >= 0, inC = clip[c + 2] >= 0;
+            if (inA & inB & inC) {
+                emit(clip, a, clip, b, clip, c);
+                continue;
+            }
+            if (!(inA | inB | inC)) continue;
+
+            int count = 0;
+            count = clipEdge(a, b, count);
+            count = clipEdge(b, c, count);
+            count = clipEdge(c, a, count);
+            for (int i = 2; i < count; i++) emit(polygon, 0, polygon, (i - 1) * 4, polygon, i * 4);
+        }
+    }
+
+    // all three vertices beyond the same side plane, the triangle can't be on screen
+    private boolean outsideSameSide(int a, int b, int c) {
+        float[] p = clip;
+        return (p[a] > p[a + 3] & p[b] > p[b + 3] & p[c] > p[c + 3])
+                | (p[a] < -p[a + 3] & p[b] < -p[b + 3] & p[c] < -p[c + 3])
+                | (p[a + 1] > p[a + 3] & p[b + 1] > p[b + 3] & p[c + 1] > p[c + 3])
+                | (p[a + 1] < -p[a + 3] & p[b + 1] < -p[b + 3] & p[c + 1] < -p[c + 3]);
+    }
+
+    // one Sutherland-Hodgman step against the near plane z = 0, appending to polygon
+    private int clipEdge(int from, int to, int count) {
+        float zFrom = clip[from + 2], zTo = clip[to + 2];
+        if (zFrom >= 0) {
+            System.arraycopy(clip, from, polygon, count * 4, 4);
+            count++;
+        }
+        if ((zFrom >= 0) != (zTo >= 0)) {
+            float t = zFrom / (zFrom - zTo);
+            for (int i = 0; i < 4; i++) polygon[count * 4 + i] = Math.fma(clip[to + i] - clip[from + i], t, clip[from + i]);
+            count++;
+        }
+        return count;
+    }
+
+    private void emit(float[] pa, int a, float[] pb, int b, float[] pc, int c) {
+        if (triangles.length < (triangleCount + 1) * 9) triangles = Arrays.copyOf(triangles, triangles.length * 2);
+        int o = triangleCount * 9;
+        toScreen(pa, a, o);
+        toScreen(pb, b, o + 3);
+        toScreen(pc, c, o + 6);
+        triangleCount++;
+    }
+
+    private void toScreen(float[] src, int offset, int dst) {
+        float invW = 1f / src[offset + 3];
+        triangles[dst] = Math.fma(src[offset] * invW, 0.5f, 0.5f) * width;
+        triangles[dst + 1] = Math.fma(src[offset + 1] * invW, 0.5f, 0.5f) * height;
+        triangles[dst + 2] = src[offset + 2] * invW;
+    }
+
+    /// Rasterizes every queued triangle into rows `[fromRow, toRow)`.
+    public void rasterize(int fromRow, int toRow) {
+        float[] depth = levels[0];
+        float[] tri = triangles;
+        for (int t = 0; t < triangleCount; t++) {
+            int o = t * 9;
+            float x0 = tri[o], y0 = tri[o + 1], z0 = tri[o + 2];
+            float x1 = tri[o + 3], y1 = tri[o + 4], z1 = tri[o + 5];
+            float x2 = tri[o + 6], y2 = tri[o + 7], z2 = tri[o + 8];
+
+            int minY = Math.max(fromRow, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+            int maxY = Math.min(toRow, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+            int minX = Math.max(0, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+            int maxX = Math.min(width, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+            if (minY >= maxY || minX >= maxX) continue;
+
+            float area = (x1 - x0) * (y2 - y0) - (x2 - x0) * (y1 - y0);
+            if (Math.abs(area) < MIN_AREA) continue;
+            if (area < 0) {
+                // either winding occludes, make it counter clockwise so inside is where every edge function is positive
+                float x = x1, y = y1, z = z1;
+                x1 = x2; y1 = y2; z1 = z2;
+                x2 = x; y2 = y; z2 = z;
+                area = -area;
+            }
+
+            // edge function of a -> b at p is (b.x - a.x) * (p.y - a.y) - (b.y - a.y) * (p.x - a.x), stepped per texel along x
+            float dx0 = y0 - y1, dy0 = x1 - x0;
+            float dx1 = y1 - y2, dy1 = x2 - x1;
+            float dx2 = y2 - y0, dy2 = x0 - x2;
+
+            float invArea = 1f / area;
+            float dzdx = ((z1 - z0) * (y2 - y0) - (z2 - z0) * (y1 - y0)) * invArea;
+            float dzdy = ((x1 - x0) * (z2 - z0) - (x2 - x0) * (z1 - z0)) * invArea;
+            // the farthest the plane gets within the texel, half a texel's worth of each gradient from the centre
+            float zBias = 0.5f * (Math.abs(dzdx) + Math.abs(dzdy));
+
+            float px = minX + 0.5f;
+            for (int y = minY; y < maxY; y++) {
+                float py = y + 0.5f;
+                float e0 = dy0 * (py - y0) + dx0 * (px - x0);
+                float e1 = dy1 * (py - y1) + dx1 * (px - x1);
+                float e2 = dy2 * (py - y2) + dx2 * (px - x2);
+                float z = z0 + dzdx * (px - x0) + dzdy * (py - y0) + zBias;
+                OcclusionKernels.rasterizeSpan(depth, y * width + minX, maxX - minX, e0, e1, e2, dx0, dx1, dx2, z, dzdx);
+            }
+        }
+    }
+
+    /// Builds the max-depth pyramid from the rasterized depth buffer.
+    public void buildHierarchy() {
+        for (int l = 1; l < levels.length; l++) {
+            float[] src = levels[l - 1], dst = levels[l];
+            int srcWidth = levelWidths[l - 1], srcHeight = levelHeights[l - 1];
+            int dstWidth = levelWidths[l], dstHeight = levelHeights[l];
+            for (int y = 0; y < dstHeight; y++) {
+                int row0 = 2 * y * srcWidth;
+                // odd sizes repeat the last row or column
+                int row1 = Math.min(2 * y + 1, srcHeight - 1) * srcWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int x0 = 2 * x, x1 = Math.min(2 * x + 1, srcWidth - 1);
+                    dst[y * dstWidth + x] = Math.max(Math.max(src[row0 + x0], src[row0 + x1]), Math.max(src[row1 + x0], src[row1 + x1]));
+                }
+            }
+        }
+    }
+
+    /// @return Whether the world space box is certainly hidden behind what was rasterized. A box that crosses the near plane or
+    /// reaches past an edge of the screen is never occluded, the buffer holds no depth for the part beyond it to be tested against.
+    public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float[] m = viewProjection;
+        float screenMinX = Float.POSITIVE_INFINITY, screenMinY = Float.POSITIVE_INFINITY, nearest = Float.POSITIVE_INFINITY;
+        float screenMaxX = Float.NEGATIVE_INFINITY, screenMaxY = Float.NEGATIVE_INFINITY;
+        for (int corner = 0; corner < 8; corner++) {
+            float x = (corner & 1) == 0 ? minX : maxX;
+            float y = (corner & 2) == 0 ? minY : maxY;
+            float z = (corner & 4) == 0 ? minZ : maxZ;
+            float cz = Math.fma(m[2], x, Math.fma(m[6], y, Math.fma(m[10], z, m[14])));
+            float cw = Math.fma(m[3], x, Math.fma(m[7], y, Math.fma(m[11], z, m[15])));
+            if (cz < 0 || cw <= 0) return false;
+
+            float invW = 1f / cw;
+            float sx = Math.fma(Math.fma(m[0], x, Math.fma(m[4], y, Math.fma(m[8], z, m[12]))) * invW, 0.5f, 0.5f) * width;
+            float sy = Math.fma(Math.fma(m[1], x, Math.fma(m[5], y, Math.fma(m[9], z, m[13]))) * invW, 0.5f, 0.5f) * height;
+            screenMinX = Math.min(screenMinX, sx);
+            screenMaxX = Math.max(screenMaxX, sx);
+            screenMinY = Math.min(screenMinY, sy);
+            screenMaxY = Math.max(screenMaxY, sy);
+            nearest = Math.min(nearest, cz * invW);
+        }
+        if (screenMinX < 0 || screenMinY < 0 || screenMaxX > width || screenMaxY > height) return false;
+
+        // grown by a texel, see the class comment
+        int x0 = Math.max(0, (int) Math.floor(screenMinX) - 1), x1 = Math.min(width - 1, (int) Math.ceil(screenMaxX));
+        int y0 = Math.max(0, (int) Math.floor(screenMinY) - 1), y1 = Math.min(height - 1, (int) Math.ceil(screenMaxY));
+
+        // the level where the box touches at most 3x3 texels
+        int extent = Math.max(x1 - x0, y1 - y0);
+        int level = 0;
+        while (level < levels.length - 1 && (extent >> level) > 1) level++;
+
+        float[] depth = levels[level];
+        int levelWidth = levelWidths[level];
+        for (int y = y0 >> level; y <= y1 >> level; y++) {
+            for (int x = x0 >> level; x <= x1 >> level; x++) {
+                if (depth[y * levelWidth + x] >= nearest) return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,25 @@
+package net.flamgop.borked.culling;
+
+/// Inner loops of [OcclusionBuffer].
+/// Dispatches to [VectorizedOcclusionKernels] when the `jdk.incubator.vector` module is present at runtime, otherwise runs the scalar loops in this class.
+final class OcclusionKernels {
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private OcclusionKernels() {}
+
+    /// Writes `z + i * dz` into `depth[offset + i]` for every `i < count` where all three edge values `e + i * d` are non-negative,
+    /// keeping whichever depth is nearer.
+    static void rasterizeSpan(float[] depth, int offset, int count, float e0, float e1, float e2, float d0, float d1, float d2, float z, float dz) {
+        if (VECTORIZED) VectorizedOcclusionKernels.rasterizeSpan(depth, offset, count, e0, e1, e2, d0, d1, d2, z, dz);
+        else scalarRasterizeSpan(depth, offset, 0, count, e0, e1, e2, d0, d1, d2, z, dz);
+    }
+
+    static void scalarRasterizeSpan(float[] depth, int offset, int from, int to, float e0, float e1, float e2, float d0, float d1, float d2, float z, float dz) {
+        for (int i = from; i < to; i++) {
+            // non short-circuiting so the loop body stays branch free
+            boolean inside = Math.fma(d0, i, e0) >= 0 & Math.fma(d1, i, e1) >= 0 & Math.fma(d2, i, e2) >= 0;
+            float current = depth[offset + i];
+            depth[offset + i] = inside ? Math.min(current, Math.fma(dz, i, z)) : current;
+        }
+    }
+}
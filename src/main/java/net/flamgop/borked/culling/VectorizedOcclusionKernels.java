@@ -0,0 +1,32 @@
+package net.flamgop.borked.culling;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/// Vector API implementation of [OcclusionKernels].
+/// @implNote Only referenced from [OcclusionKernels] when `jdk.incubator.vector` is resolved, so this class must never be touched from anywhere else.
+final class VectorizedOcclusionKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    // 0, 1, 2, ... one per lane
+    private static final FloatVector LANES = FloatVector.zero(SPECIES).addIndex(1);
+
+    private VectorizedOcclusionKernels() {}
+
+    static void rasterizeSpan(float[] depth, int offset, int count, float e0, float e1, float e2, float d0, float d1, float d2, float z, float dz) {
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            FloatVector x = LANES.add(i);
+            VectorMask<Float> inside = x.fma(d0, e0).compare(VectorOperators.GE, 0f)
+                    .and(x.fma(d1, e1).compare(VectorOperators.GE, 0f))
+                    .and(x.fma(d2, e2).compare(VectorOperators.GE, 0f));
+            if (!inside.anyTrue()) continue;
+
+            FloatVector current = FloatVector.fromArray(SPECIES, depth, offset + i);
+            current.blend(current.min(x.fma(dz, z)), inside).intoArray(depth, offset + i);
+        }
+        OcclusionKernels.scalarRasterizeSpan(depth, offset, i, count, e0, e1, e2, d0, d1, d2, z, dz);
+    }
+}
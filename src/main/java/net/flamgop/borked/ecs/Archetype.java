@@ -0,0 +1,174 @@
+package net.flamgop.borked.ecs;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/// Every entity with exactly the same set of components, stored as one packed array per component.
+///
+/// Rows are dense, removing an entity moves the last row into its place, so rows are only stable between structural changes
+/// to the [EntityStore]. The arrays returned by [#floats(FloatComponent)] are replaced when the archetype grows.
+///
+/// Alongside the components every archetype tracks two transform bitsets, one bit per row:
+/// - *moved*: the transform was written during the current tick. Cleared by [EntityStore#beginTick()].
+/// - *transform dirty*: the transform was written since it was last uploaded. Cleared by whoever uploads it.
+///
+/// Both are set atomically, so rows may be marked from several threads at once.
+public final class Archetype {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long mask;
+    private final ComponentType[] types;
+    private final float[][] floats = new float[ComponentType.MAX_TYPES][];
+    private final Object[][] objects = new Object[ComponentType.MAX_TYPES][];
+    private long[] handles = new long[INITIAL_CAPACITY];
+    private long[] moved = new long[bitsetLength(INITIAL_CAPACITY)];
+    private long[] transformDirty = new long[bitsetLength(INITIAL_CAPACITY)];
+    private int size;
+
+    Archetype(long mask, ComponentType[] types) {
+        this.mask = mask;
+        this.types = types;
+        for (ComponentType type : types) {
+            switch (type) {
+                case FloatComponent f -> floats[f.id] = new float[INITIAL_CAPACITY * f.stride];
+                case ObjectComponent<?> o -> objects[o.id] = new Object[INITIAL_CAPACITY];
+            }
+        }
+    }
+
+    public static int bitsetLength(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    public long mask() {
+        return mask;
+    }
+
+    public boolean has(ComponentType type) {
+        return (mask & type.bit()) != 0;
+    }
+
+    public boolean hasAll(long mask) {
+        return (this.mask & mask) == mask;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long handle(int row) {
+        return handles[row];
+    }
+
+    /// @return The packed values of `type`, row `r` starting at `r * type.stride()`. Only valid until the archetype next grows.
+    public float[] floats(FloatComponent type) {
+        float[] column = floats[type.id];
+        if (column == null) throw new IllegalArgumentException("Archetype has no " + type + " component");
+        return column;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(ObjectComponent<T> type, int row) {
+        return (T) column(type)[row];
+    }
+
+    public <T> void set(ObjectComponent<T> type, int row, T value) {
+        column(type)[row] = value;
+    }
+
+    private Object[] column(ObjectComponent<?> type) {
+        Object[] column = objects[type.id];
+        if (column == null) throw new IllegalArgumentException("Archetype has no " + type + " component");
+        return column;
+    }
+
+    /// Marks row `row`'s transform as written this tick and not yet uploaded.
+    public void markMoved(int row) {
+        long bit = 1L << row;
+        LONGS.getAndBitwiseOr(moved, row >>> 6, bit);
+        LONGS.getAndBitwiseOr(transformDirty, row >>> 6, bit);
+    }
+
+    public boolean isMoved(int row) {
+        return (moved[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /// @return Word `word` of the moved bitset, bit `i` standing for row `word * 64 + i`.
+    public long movedWord(int word) {
+        return moved[word];
+    }
+
+    public void markTransformDirty(int row) {
+        LONGS.getAndBitwiseOr(transformDirty, row >>> 6, 1L << row);
+    }
+
+    public void clearTransformDirty(int row) {
+        LONGS.getAndBitwiseAnd(transformDirty, row >>> 6, ~(1L << row));
+    }
+
+    /// @return Word `word` of the transform dirty bitset, bit `i` standing for row `word * 64 + i`.
+    public long transformDirtyWord(int word) {
+        return transformDirty[word];
+    }
+
+    void clearMoved() {
+        Arrays.fill(moved, 0, bitsetLength(size), 0);
+    }
+
+    int add(long handle) {
+        if (size == handles.length) grow(size * 2);
+        int row = size++;
+        handles[row] = handle;
+        return row;
+    }
+
+    /// Moves the last row into `row`, keeping its bits.
+    /// @return The handle of the entity now at `row`, or [EntityStore#NULL] if `row` was the last one.
+    long removeSwap(int row) {
+        int last = --size;
+        long movedHandle = EntityStore.NULL;
+        if (row != last) {
+            copyRow(last, this, row);
+            handles[row] = handles[last];
+            movedHandle = handles[row];
+        }
+        for (ComponentType type : types) {
+            if (type instanceof ObjectComponent<?> o) objects[o.id][last] = null;
+        }
+        setBit(moved, last, false);
+        setBit(transformDirty, last, false);
+        return movedHandle;
+    }
+
+    /// Copies every component `dst` also has, along with the transform bits, from `row` into `dst`'s row `dstRow`.
+    void copyRow(int row, Archetype dst, int dstRow) {
+        for (ComponentType type : types) {
+            if (!dst.has(type)) continue;
+            switch (type) {
+                case FloatComponent f -> System.arraycopy(floats[f.id], row * f.stride, dst.floats[f.id], dstRow * f.stride, f.stride);
+                case ObjectComponent<?> o -> dst.objects[o.id][dstRow] = objects[o.id][row];
+            }
+        }
+        setBit(dst.moved, dstRow, isMoved(row));
+        setBit(dst.transformDirty, dstRow, (transformDirty[row >>> 6] & (1L << row)) != 0);
+    }
+
+    private static void setBit(long[] bits, int i, boolean value) {
+        if (value) bits[i >>> 6] |= 1L << i;
+        else bits[i >>> 6] &= ~(1L << i);
+    }
+
+    private void grow(int capacity) {
+        handles = Arrays.copyOf(handles, capacity);
+        moved = Arrays.copyOf(moved, bitsetLength(capacity));
+        transformDirty = Arrays.copyOf(transformDirty, bitsetLength(capacity));
+        for (ComponentType type : types) {
+            switch (type) {
+                case FloatComponent f -> floats[f.id] = Arrays.copyOf(floats[f.id], capacity * f.stride);
+                case ObjectComponent<?> o -> objects[o.id] = Arrays.copyOf(objects[o.id], capacity);
+            }
+        }
+    }
+}
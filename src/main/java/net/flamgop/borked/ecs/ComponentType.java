@@ -0,0 +1,32 @@
+package net.flamgop.borked.ecs;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/// Identifies a kind of component. Types are meant to be created once and kept in constants,
+/// every type gets a process-wide id and an archetype is the set of those ids, so at most [#MAX_TYPES] may ever exist.
+public abstract sealed class ComponentType permits FloatComponent, ObjectComponent {
+    public static final int MAX_TYPES = Long.SIZE;
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    final int id;
+    private final String name;
+
+    ComponentType(String name) {
+        this.id = NEXT_ID.getAndIncrement();
+        this.name = name;
+        if (id >= MAX_TYPES) throw new IllegalStateException("Too many component types, " + name + " would be number " + (id + 1) + " of " + MAX_TYPES);
+    }
+
+    long bit() {
+        return 1L << id;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
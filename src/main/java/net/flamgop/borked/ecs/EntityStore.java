@@ -0,0 +1,255 @@
+package net.flamgop.borked.ecs;
+
+import net.flamgop.borked.math.Matrix4f;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Entities as generational handles, their components packed per [Archetype].
+///
+/// A handle is a `long` holding a slot index in the low 32 bits and that slot's generation in the high 32 bits.
+/// Destroying an entity bumps its slot's generation, so stale handles are detected instead of aliasing whatever reuses the slot.
+/// Generations start at 1, so [#NULL] is never a live handle.
+///
+/// Every entity has a [#TRANSFORM] and a [#PREVIOUS_POSITION], and writing the transform through
+/// [#setTransform(long, Matrix4f)] or [Archetype#markMoved(int)] feeds the archetype's dirty bitsets.
+/// @implNote Structural changes (create, destroy, adding and removing components) are not thread safe.
+/// Reading components and writing different rows concurrently is fine, as is marking rows.
+public final class EntityStore {
+    public static final long NULL = 0;
+    /// The entity's world transform, 16 column-major floats.
+    public static final FloatComponent TRANSFORM = new FloatComponent("transform", 16);
+    /// The translation at the start of the current tick, used to interpolate between ticks.
+    public static final FloatComponent PREVIOUS_POSITION = new FloatComponent("previous_position", 3);
+
+    private static final long BASE_MASK = TRANSFORM.bit() | PREVIOUS_POSITION.bit();
+    private static final int INITIAL_SLOTS = 64;
+
+    private final List<Archetype> archetypes = new ArrayList<>();
+    private final List<Archetype> archetypesView = Collections.unmodifiableList(archetypes);
+    private final Map<Long, Archetype> archetypesByMask = new HashMap<>();
+    private final ComponentType[] typesById = new ComponentType[ComponentType.MAX_TYPES];
+
+    private int[] generations = new int[INITIAL_SLOTS];
+    private Archetype[] archetypeOf = new Archetype[INITIAL_SLOTS];
+    private int[] rowOf = new int[INITIAL_SLOTS];
+    private int[] freeSlots = new int[INITIAL_SLOTS];
+    private int freeCount;
+    private int slotCount;
+    private int size;
+    private int version;
+
+    public EntityStore() {
+        typesById[TRANSFORM.id] = TRANSFORM;
+        typesById[PREVIOUS_POSITION.id] = PREVIOUS_POSITION;
+    }
+
+    public static int index(long handle) {
+        return (int) handle;
+    }
+
+    public static int generation(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static long handle(int index, int generation) {
+        return ((long) generation << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    /// @return How many entities are alive.
+    public int size() {
+        return size;
+    }
+
+    /// @return A counter bumped whenever an entity is created or destroyed, so caches of the entity set can tell they're stale.
+    public int version() {
+        return version;
+    }
+
+    /// @return Every archetype an entity has ever had, including empty ones. Archetypes are never removed.
+    public List<Archetype> archetypes() {
+        return archetypesView;
+    }
+
+    /// Creates an entity with the identity transform, the given components and nothing else.
+    /// Float components start zeroed and object components `null`.
+    public long create(ComponentType... components) {
+        long mask = BASE_MASK;
+        for (ComponentType type : components) mask |= type.bit();
+        return create(mask, components);
+    }
+
+    private long create(long mask, ComponentType[] components) {
+        int index;
+        if (freeCount > 0) {
+            index = freeSlots[--freeCount];
+        } else {
+            if (slotCount == generations.length) growSlots(slotCount * 2);
+            index = slotCount++;
+            generations[index] = 1;
+        }
+        long handle = handle(index, generations[index]);
+
+        Archetype archetype = archetype(mask, components);
+        int row = archetype.add(handle);
+        archetypeOf[index] = archetype;
+        rowOf[index] = row;
+        size++;
+        version++;
+
+        float[] transforms = archetype.floats(TRANSFORM);
+        Arrays.fill(transforms, row * 16, row * 16 + 16, 0);
+        transforms[row * 16] = transforms[row * 16 + 5] = transforms[row * 16 + 10] = transforms[row * 16 + 15] = 1;
+        Arrays.fill(archetype.floats(PREVIOUS_POSITION), row * 3, row * 3 + 3, 0);
+        for (ComponentType type : components) {
+            if (type instanceof FloatComponent f) Arrays.fill(archetype.floats(f), row * f.stride, row * f.stride + f.stride, 0);
+        }
+        // nothing has uploaded it yet, but it hasn't moved within the tick either
+        archetype.markTransformDirty(row);
+        return handle;
+    }
+
+    public boolean isAlive(long handle) {
+        int index = index(handle);
+        return index >= 0 && index < slotCount && archetypeOf[index] != null && generations[index] == generation(handle);
+    }
+
+    public void destroy(long handle) {
+        checkAlive(handle);
+        int index = index(handle);
+        Archetype archetype = archetypeOf[index];
+        long moved = archetype.removeSwap(rowOf[index]);
+        if (moved != NULL) rowOf[index(moved)] = rowOf[index];
+
+        archetypeOf[index] = null;
+        // skip 0 on wrap around so NULL stays invalid
+        if (++generations[index] == 0) generations[index] = 1;
+        if (freeCount == freeSlots.length) freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        freeSlots[freeCount++] = index;
+        size--;
+        version++;
+    }
+
+    public Archetype archetype(long handle) {
+        checkAlive(handle);
+        return archetypeOf[index(handle)];
+    }
+
+    /// @return The entity's row in its [#archetype(long)], valid until the next structural change.
+    public int row(long handle) {
+        checkAlive(handle);
+        return rowOf[index(handle)];
+    }
+
+    public boolean has(long handle, ComponentType type) {
+        return archetype(handle).has(type);
+    }
+
+    public <T> T get(long handle, ObjectComponent<T> type) {
+        return archetype(handle).get(type, row(handle));
+    }
+
+    public <T> void set(long handle, ObjectComponent<T> type, T value) {
+        archetype(handle).set(type, row(handle), value);
+    }
+
+    /// Moves the entity to the archetype that also has `type`, doing nothing if it already has it.
+    public void add(long handle, ComponentType type) {
+        Archetype from = archetype(handle);
+        if (from.has(type)) return;
+        migrate(handle, from, from.mask() | type.bit(), type);
+    }
+
+    /// Moves the entity to the archetype without `type`, doing nothing if it doesn't have it.
+    public void remove(long handle, ComponentType type) {
+        if ((BASE_MASK & type.bit()) != 0) throw new IllegalArgumentException("Every entity has a " + type);
+        Archetype from = archetype(handle);
+        if (!from.has(type)) return;
+        migrate(handle, from, from.mask() & ~type.bit(), null);
+    }
+
+    private void migrate(long handle, Archetype from, long mask, @Nullable ComponentType added) {
+        Archetype to = archetype(mask, added != null ? new ComponentType[]{added} : new ComponentType[0]);
+        int index = index(handle);
+        int fromRow = rowOf[index];
+        int toRow = to.add(handle);
+        if (added instanceof FloatComponent f) Arrays.fill(to.floats(f), toRow * f.stride, toRow * f.stride + f.stride, 0);
+        if (added instanceof ObjectComponent<?> o) to.set(o, toRow, null);
+        from.copyRow(fromRow, to, toRow);
+
+        long moved = from.removeSwap(fromRow);
+        if (moved != NULL) rowOf[index(moved)] = fromRow;
+        archetypeOf[index] = to;
+        rowOf[index] = toRow;
+    }
+
+    public Matrix4f getTransform(long handle, Matrix4f dst) {
+        return dst.set(archetype(handle).floats(TRANSFORM), row(handle) * 16);
+    }
+
+    /// Writes the entity's transform and marks it moved.
+    public void setTransform(long handle, Matrix4f transform) {
+        Archetype archetype = archetype(handle);
+        int row = row(handle);
+        transform.get(archetype.floats(TRANSFORM), row * 16);
+        archetype.markMoved(row);
+    }
+
+    /// Writes the entity's transform and makes it the previous position too, so it jumps there instead of interpolating.
+    public void teleport(long handle, Matrix4f transform) {
+        Archetype archetype = archetype(handle);
+        int row = row(handle);
+        float[] transforms = archetype.floats(TRANSFORM);
+        transform.get(transforms, row * 16);
+        System.arraycopy(transforms, row * 16 + 12, archetype.floats(PREVIOUS_POSITION), row * 3, 3);
+        archetype.markTransformDirty(row);
+    }
+
+    /// Starts a simulation tick: every entity that moved during the last one has its translation saved as the previous position,
+    /// then the moved bits are cleared. Entities that didn't move already have a matching previous position.
+    public void beginTick() {
+        for (Archetype archetype : archetypes) {
+            float[] transforms = archetype.floats(TRANSFORM);
+            float[] previous = archetype.floats(PREVIOUS_POSITION);
+            int words = Archetype.bitsetLength(archetype.size());
+            for (int w = 0; w < words; w++) {
+                for (long bits = archetype.movedWord(w); bits != 0; bits &= bits - 1) {
+                    int row = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    System.arraycopy(transforms, row * 16 + 12, previous, row * 3, 3);
+                }
+            }
+            archetype.clearMoved();
+        }
+    }
+
+    private Archetype archetype(long mask, ComponentType[] components) {
+        Archetype archetype = archetypesByMask.get(mask);
+        if (archetype != null) return archetype;
+
+        for (ComponentType type : components) typesById[type.id] = type;
+        ComponentType[] types = new ComponentType[Long.bitCount(mask)];
+        int t = 0;
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            types[t++] = typesById[Long.numberOfTrailingZeros(bits)];
+        }
+        archetype = new Archetype(mask, types);
+        archetypes.add(archetype);
+        archetypesByMask.put(mask, archetype);
+        return archetype;
+    }
+
+    private void checkAlive(long handle) {
+        if (!isAlive(handle)) throw new IllegalArgumentException("Entity " + index(handle) + "v" + generation(handle) + " is not alive");
+    }
+
+    private void growSlots(int capacity) {
+        generations = Arrays.copyOf(generations, capacity);
+        archetypeOf = Arrays.copyOf(archetypeOf, capacity);
+        rowOf = Arrays.copyOf(rowOf, capacity);
+    }
+}
@@ -0,0 +1,16 @@
+package net.flamgop.borked.ecs;
+
+/// A component made of `stride` floats, stored packed back to back in one `float[]` per archetype.
+public final class FloatComponent extends ComponentType {
+    final int stride;
+
+    public FloatComponent(String name, int stride) {
+        super(name);
+        if (stride <= 0) throw new IllegalArgumentException("Stride must be positive, got " + stride);
+        this.stride = stride;
+    }
+
+    public int stride() {
+        return stride;
+    }
+}
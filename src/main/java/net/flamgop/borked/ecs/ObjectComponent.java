@@ -0,0 +1,10 @@
+package net.flamgop.borked.ecs;
+
+/// A component holding a reference, stored in one `Object[]` per archetype. Meant for resources and handles to them,
+/// anything a system iterates per entity per frame belongs in a [FloatComponent].
+@SuppressWarnings("unused") // T only types the accessors
+public final class ObjectComponent<T> extends ComponentType {
+    public ObjectComponent(String name) {
+        super(name);
+    }
+}
@@ -16,7 +16,12 @@ public record AABB(Vector3f min, Vector3f max, boolean hasCollision) {
     }
 
     public Vector3f center() {
-        return new Vector3f(min).add(max).scale(0.5f);
+        return center(new Vector3f());
+    }
+
+    public Vector3f center(Vector3f dst) {
+        dst.setFrom(min);
+        return dst.add(max).scale(0.5f);
     }
 
     public AABB translated(Vector3f delta) {
@@ -29,12 +34,48 @@ public record AABB(Vector3f min, Vector3f max, boolean hasCollision) {
         return this;
     }
 
+    public AABB translate(float x, float y, float z) {
+        min.add(x, y, z);
+        max.add(x, y, z);
+        return this;
+    }
+
     public boolean contains(Vector3f p) {
         return p.x() >= min.x() && p.x() <= max.x()
                 && p.y() >= min.y() && p.y() <= max.y()
                 && p.z() >= min.z() && p.z() <= max.z();
     }
 
+    /// Slab test of the ray `origin + t * direction` against the box.
+    /// @return The `t` at which the ray enters the box, 0 if it starts inside, or [Float#POSITIVE_INFINITY] if it misses.
+    public static float rayEntry(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                                 float originX, float originY, float originZ, float directionX, float directionY, float directionZ) {
+        float enter = 0, exit = Float.POSITIVE_INFINITY;
+
+        if (directionX != 0) {
+            float inv = 1f / directionX;
+            float t0 = (minX - originX) * inv, t1 = (maxX - originX) * inv;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+        } else if (originX < minX || originX > maxX) return Float.POSITIVE_INFINITY;
+
+        if (directionY != 0) {
+            float inv = 1f / directionY;
+            float t0 = (minY - originY) * inv, t1 = (maxY - originY) * inv;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+        } else if (originY < minY || originY > maxY) return Float.POSITIVE_INFINITY;
+
+        if (directionZ != 0) {
+            float inv = 1f / directionZ;
+            float t0 = (minZ - originZ) * inv, t1 = (maxZ - originZ) * inv;
+            enter = Math.max(enter, Math.min(t0, t1));
+            exit = Math.min(exit, Math.max(t0, t1));
+        } else if (originZ < minZ || originZ > maxZ) return Float.POSITIVE_INFINITY;
+
+        return enter <= exit ? enter : Float.POSITIVE_INFINITY;
+    }
+
     public boolean intersects(AABB other) {
         return max.x() > other.min.x() && min.x() < other.max.x()
                 && max.y() > other.min.y() && min.y() < other.max.y()
@@ -60,21 +101,35 @@ public record AABB(Vector3f min, Vector3f max, boolean hasCollision) {
     }
 
     public Vector3f resolveAxis(AABB other, Axis axis) {
-        Vector3f p = penetration(other);
-        return switch (axis) {
+        return resolveAxis(other, axis, new Vector3f());
+    }
+
+    /// Allocation-free version of [#resolveAxis(AABB, Axis)], the resolution is written to `dst`.
+    public Vector3f resolveAxis(AABB other, Axis axis, Vector3f dst) {
+        switch (axis) {
             case X -> {
-                float push = Math.min(p.x(), Math.abs(min.x() - other.min.x()));
-                yield new Vector3f(min.x() < other.min.x() ? -push : push, 0, 0);
+                float p = Math.min(other.max.x() - min.x(), max.x() - other.min.x());
+                float push = Math.min(p, Math.abs(min.x() - other.min.x()));
+                dst.x(min.x() < other.min.x() ? -push : push);
+                dst.y(0);
+                dst.z(0);
             }
             case Y -> {
-                float push = Math.min(p.y(), Math.abs(min.y() - other.min.y()));
-                yield new Vector3f(0, min.y() < other.min.y() ? -push : push, 0);
+                float p = Math.min(other.max.y() - min.y(), max.y() - other.min.y());
+                float push = Math.min(p, Math.abs(min.y() - other.min.y()));
+                dst.x(0);
+                dst.y(min.y() < other.min.y() ? -push : push);
+                dst.z(0);
             }
             case Z -> {
-                float push = Math.min(p.z(), Math.abs(min.z() - other.min.z()));
-                yield new Vector3f(0, 0, min.z() < other.min.z() ? -push : push);
+                float p = Math.min(other.max.z() - min.z(), max.z() - other.min.z());
+                float push = Math.min(p, Math.abs(min.z() - other.min.z()));
+                dst.x(0);
+                dst.y(0);
+                dst.z(min.z() < other.min.z() ? -push : push);
             }
-        };
+        }
+        return dst;
     }
 
     public AABB expanded(float x, float y, float z) {
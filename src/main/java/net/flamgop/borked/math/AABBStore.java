@@ -0,0 +1,175 @@
+package net.flamgop.borked.math;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/// Structure-of-arrays storage for many boxes: one float array per bound plus a bitset of which boxes have collision.
+///
+/// Alongside the arrays the store keeps an off-heap mirror in the layout the debug AABB shader reads
+/// (`min xyz, pad, max xyz, collision`, see [#GPU_STRIDE]), so uploading every box is a single bulk copy of [#gpuView()].
+/// Removal swaps the last box into the hole, so indices are dense but not stable.
+/// @implNote Not thread safe for modification, concurrent reads are fine.
+public class AABBStore implements AutoCloseable {
+    public static final long GPU_STRIDE = 2 * Vector3f.BYTES + 2 * Float.BYTES;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+
+    private Arena gpuArena;
+    private MemorySegment gpu = MemorySegment.NULL;
+
+    private float[] minX = new float[0], minY = new float[0], minZ = new float[0];
+    private float[] maxX = new float[0], maxY = new float[0], maxZ = new float[0];
+    private long[] collision = new long[0];
+    private int size;
+
+    public AABBStore() {
+        grow(INITIAL_CAPACITY);
+    }
+
+    public static int bitsetLength(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /// @return The index of the new box.
+    public int add(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, boolean hasCollision) {
+        if (size == this.minX.length) grow(size * 2);
+        int i = size++;
+        set(i, minX, minY, minZ, maxX, maxY, maxZ);
+        setCollision(i, hasCollision);
+        return i;
+    }
+
+    public int add(AABB aabb) {
+        Vector3f min = aabb.min(), max = aabb.max();
+        return add(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), aabb.hasCollision());
+    }
+
+    public void set(int i, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        checkIndex(i);
+        this.minX[i] = minX;
+        this.minY[i] = minY;
+        this.minZ[i] = minZ;
+        this.maxX[i] = maxX;
+        this.maxY[i] = maxY;
+        this.maxZ[i] = maxZ;
+
+        long base = i * GPU_STRIDE;
+        gpu.set(F32, base, minX);
+        gpu.set(F32, base + 4, minY);
+        gpu.set(F32, base + 8, minZ);
+        gpu.set(F32, base + 16, maxX);
+        gpu.set(F32, base + 20, maxY);
+        gpu.set(F32, base + 24, maxZ);
+    }
+
+    public void setCollision(int i, boolean hasCollision) {
+        checkIndex(i);
+        if (hasCollision) collision[i >>> 6] |= 1L << i;
+        else collision[i >>> 6] &= ~(1L << i);
+        gpu.set(F32, i * GPU_STRIDE + 28, hasCollision ? 1 : 0);
+    }
+
+    /// Removes box `i` by moving the last box into its place.
+    /// @return The old index of the box now at `i`, or -1 if `i` was the last box.
+    public int removeSwap(int i) {
+        checkIndex(i);
+        int last = --size;
+        if (i != last) {
+            set(i, minX[last], minY[last], minZ[last], maxX[last], maxY[last], maxZ[last]);
+            setCollision(i, hasCollision(last));
+        }
+        collision[last >>> 6] &= ~(1L << last);
+        return i != last ? last : -1;
+    }
+
+    public void clear() {
+        size = 0;
+        Arrays.fill(collision, 0);
+    }
+
+    public float minX(int i) { return minX[i]; }
+    public float minY(int i) { return minY[i]; }
+    public float minZ(int i) { return minZ[i]; }
+    public float maxX(int i) { return maxX[i]; }
+    public float maxY(int i) { return maxY[i]; }
+    public float maxZ(int i) { return maxZ[i]; }
+
+    public boolean hasCollision(int i) {
+        return (collision[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /// Copies box `i` into `dst`.
+    public AABB get(int i, AABB dst) {
+        checkIndex(i);
+        Vector3f min = dst.min(), max = dst.max();
+        min.x(minX[i]); min.y(minY[i]); min.z(minZ[i]);
+        max.x(maxX[i]); max.y(maxY[i]); max.z(maxZ[i]);
+        return dst;
+    }
+
+    /// Same test as [AABB#intersects(AABB)], without materializing box `i`.
+    public boolean intersects(int i, AABB other) {
+        Vector3f min = other.min(), max = other.max();
+        return maxX[i] > min.x() && minX[i] < max.x()
+                && maxY[i] > min.y() && minY[i] < max.y()
+                && maxZ[i] > min.z() && minZ[i] < max.z();
+    }
+
+    /// Tests every box with collision against the given box, setting bit `i` of `dst` for every overlap.
+    /// `dst` must hold at least [#bitsetLength(int)] of [#size()] longs, every word covering the store is overwritten.
+    /// @return How many boxes overlap.
+    public int overlapping(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, long[] dst) {
+        if (AABBStoreKernels.VECTORIZED) VectorizedAABBStoreKernels.overlapping(this.minX, this.minY, this.minZ, this.maxX, this.maxY, this.maxZ, size, minX, minY, minZ, maxX, maxY, maxZ, dst);
+        else AABBStoreKernels.overlapping(this.minX, this.minY, this.minZ, this.maxX, this.maxY, this.maxZ, size, minX, minY, minZ, maxX, maxY, maxZ, dst);
+
+        int count = 0;
+        int words = bitsetLength(size);
+        for (int w = 0; w < words; w++) {
+            dst[w] &= collision[w];
+            count += Long.bitCount(dst[w]);
+        }
+        return count;
+    }
+
+    public int overlapping(AABB box, long[] dst) {
+        Vector3f min = box.min(), max = box.max();
+        return overlapping(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), dst);
+    }
+
+    /// @return The first [#size()] boxes in the GPU layout, only valid until the store next grows.
+    public MemorySegment gpuView() {
+        return gpu.asSlice(0, size * GPU_STRIDE);
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException(i);
+    }
+
+    private void grow(int capacity) {
+        minX = Arrays.copyOf(minX, capacity);
+        minY = Arrays.copyOf(minY, capacity);
+        minZ = Arrays.copyOf(minZ, capacity);
+        maxX = Arrays.copyOf(maxX, capacity);
+        maxY = Arrays.copyOf(maxY, capacity);
+        maxZ = Arrays.copyOf(maxZ, capacity);
+        collision = Arrays.copyOf(collision, bitsetLength(capacity));
+
+        Arena newArena = Arena.ofShared();
+        MemorySegment newGpu = newArena.allocate(capacity * GPU_STRIDE, 16);
+        MemorySegment.copy(gpu, 0, newGpu, 0, size * GPU_STRIDE);
+        if (gpuArena != null) gpuArena.close();
+        gpuArena = newArena;
+        gpu = newGpu;
+    }
+
+    @Override
+    public void close() {
+        gpuArena.close();
+    }
+}
@@ -0,0 +1,28 @@
+package net.flamgop.borked.math;
+
+/// Bulk loops over [AABBStore] arrays.
+/// Dispatches to [VectorizedAABBStoreKernels] when the `jdk.incubator.vector` module is present at runtime, otherwise runs the scalar loops in this class.
+final class AABBStoreKernels {
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private AABBStoreKernels() {}
+
+    /// Sets bit `i` of `dst` for every box `i < count` that overlaps the query box, the collision bitset is applied by the caller.
+    static void overlapping(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int count,
+                            float qMinX, float qMinY, float qMinZ, float qMaxX, float qMaxY, float qMaxZ, long[] dst) {
+        overlapping(minX, minY, minZ, maxX, maxY, maxZ, 0, count, qMinX, qMinY, qMinZ, qMaxX, qMaxY, qMaxZ, dst);
+    }
+
+    static void overlapping(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int from, int to,
+                            float qMinX, float qMinY, float qMinZ, float qMaxX, float qMaxY, float qMaxZ, long[] dst) {
+        for (int i = from; i < to; i++) {
+            // non short-circuiting so the loop body stays branch free
+            boolean overlap = maxX[i] > qMinX & minX[i] < qMaxX
+                    & maxY[i] > qMinY & minY[i] < qMaxY
+                    & maxZ[i] > qMinZ & minZ[i] < qMaxZ;
+            long bit = 1L << i;
+            if ((i & 63) == 0) dst[i >>> 6] = 0;
+            dst[i >>> 6] |= overlap ? bit : 0;
+        }
+    }
+}
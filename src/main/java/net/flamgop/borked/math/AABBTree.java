@@ -0,0 +1,420 @@
+package net.flamgop.borked.math;
+
+import java.util.Arrays;
+
+/// Dynamic AABB tree broadphase. Every proxy is a leaf holding a "fat" box, the exact box grown by a margin,
+/// so small movements don't touch the tree at all. Inserts pick the sibling with the lowest surface area cost,
+/// and the tree is kept balanced with AVL style rotations so queries stay logarithmic as proxies come and go.
+///
+/// Nodes live in flat arrays indexed by node id, proxy ids are leaf node ids and stay valid until destroyed.
+/// @implNote Not thread safe for modification, concurrent queries are fine as long as nothing is modifying the tree.
+public class AABBTree {
+    public static final int NULL = -1;
+    public static final float DEFAULT_MARGIN = 0.1f;
+    private static final int INITIAL_CAPACITY = 16;
+
+    @FunctionalInterface
+    public interface QueryCallback {
+        /// @return Whether to keep looking for overlaps.
+        boolean overlap(int userData);
+    }
+
+    @FunctionalInterface
+    public interface RaycastCallback {
+        /// Called for every proxy whose fat box the ray enters before `maxT`, nearest subtrees first.
+        /// @return The new `maxT`, return `maxT` to ignore the proxy, the hit distance to clip the ray, or 0 to stop.
+        float hit(int userData, float maxT);
+    }
+
+    private final float margin;
+
+    private float[] minX = new float[0], minY = new float[0], minZ = new float[0];
+    private float[] maxX = new float[0], maxY = new float[0], maxZ = new float[0];
+    // parent doubles as the next pointer of the free list
+    private int[] parent = new int[0], child1 = new int[0], child2 = new int[0], height = new int[0], userData = new int[0];
+
+    private int capacity;
+    private int proxyCount;
+    private int root = NULL;
+    private int freeList = NULL;
+
+    public AABBTree(float margin) {
+        this.margin = margin;
+        grow(INITIAL_CAPACITY);
+    }
+
+    public AABBTree() {
+        this(DEFAULT_MARGIN);
+    }
+
+    /// @return A proxy id for the box, `userData` is what queries report for it.
+    public int createProxy(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int userData) {
+        int proxy = allocateNode();
+        setFat(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        this.userData[proxy] = userData;
+        this.height[proxy] = 0;
+        insertLeaf(proxy);
+        proxyCount++;
+        return proxy;
+    }
+
+    public int createProxy(AABB aabb, int userData) {
+        Vector3f min = aabb.min(), max = aabb.max();
+        return createProxy(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), userData);
+    }
+
+    public void destroyProxy(int proxy) {
+        checkProxy(proxy);
+        removeLeaf(proxy);
+        freeNode(proxy);
+        proxyCount--;
+    }
+
+    /// Updates the exact box of a proxy. The tree is only touched when the box left its fat box.
+    /// @return Whether the proxy had to be reinserted.
+    public boolean moveProxy(int proxy, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        checkProxy(proxy);
+        if (this.minX[proxy] <= minX && this.minY[proxy] <= minY && this.minZ[proxy] <= minZ
+                && this.maxX[proxy] >= maxX && this.maxY[proxy] >= maxY && this.maxZ[proxy] >= maxZ) {
+            return false;
+        }
+        removeLeaf(proxy);
+        setFat(proxy, minX, minY, minZ, maxX, maxY, maxZ);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    public boolean moveProxy(int proxy, AABB aabb) {
+        Vector3f min = aabb.min(), max = aabb.max();
+        return moveProxy(proxy, min.x(), min.y(), min.z(), max.x(), max.y(), max.z());
+    }
+
+    public int userData(int proxy) {
+        checkProxy(proxy);
+        return userData[proxy];
+    }
+
+    public void userData(int proxy, int userData) {
+        checkProxy(proxy);
+        this.userData[proxy] = userData;
+    }
+
+    public int proxyCount() {
+        return proxyCount;
+    }
+
+    /// @return The height of the tree, 0 for a single leaf and -1 when empty.
+    public int height() {
+        return root == NULL ? -1 : height[root];
+    }
+
+    /// Reports the user data of every proxy whose fat box overlaps the given box.
+    /// Only the first `results.length` are written, the return value is the total, so callers can grow and retry.
+    /// Overlapping the fat box doesn't imply overlapping the exact box, callers do the narrow test.
+    public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] results) {
+        if (root == NULL) return 0;
+        return query(root, minX, minY, minZ, maxX, maxY, maxZ, results, 0);
+    }
+
+    public int query(AABB aabb, int[] results) {
+        Vector3f min = aabb.min(), max = aabb.max();
+        return query(min.x(), min.y(), min.z(), max.x(), max.y(), max.z(), results);
+    }
+
+    /// Callback version of [#query(float, float, float, float, float, float, int[])], stops early when the callback returns false.
+    public void query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, QueryCallback callback) {
+        if (root == NULL) return;
+        query(root, minX, minY, minZ, maxX, maxY, maxZ, callback);
+    }
+
+    /// Casts the box with half extents `halfX, halfY, halfZ` centered on `origin` along `direction`, zero extents make it a plain ray.
+    /// Distances are in multiples of `direction`, so a normalized direction gives world units and a motion vector with `maxT = 1` gives a sweep.
+    public void raycast(float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+                        float halfX, float halfY, float halfZ, float maxT, RaycastCallback callback) {
+        if (root == NULL) return;
+        float t = nodeEntry(root, originX, originY, originZ, directionX, directionY, directionZ, halfX, halfY, halfZ);
+        if (!reaches(t, maxT)) return;
+        raycast(root, originX, originY, originZ, directionX, directionY, directionZ, halfX, halfY, halfZ, maxT, callback);
+    }
+
+    // a miss enters at infinity, which an unbounded ray's maxT would otherwise let through
+    private static boolean reaches(float t, float maxT) {
+        return t <= maxT && t != Float.POSITIVE_INFINITY;
+    }
+
+    private float nodeEntry(int node, float originX, float originY, float originZ, float directionX, float directionY, float directionZ, float halfX, float halfY, float halfZ) {
+        return AABB.rayEntry(
+                minX[node] - halfX, minY[node] - halfY, minZ[node] - halfZ,
+                maxX[node] + halfX, maxY[node] + halfY, maxZ[node] + halfZ,
+                originX, originY, originZ, directionX, directionY, directionZ
+        );
+    }
+
+    private float raycast(int node, float originX, float originY, float originZ, float directionX, float directionY, float directionZ,
+                          float halfX, float halfY, float halfZ, float maxT, RaycastCallback callback) {
+        if (child1[node] == NULL) return callback.hit(userData[node], maxT);
+
+        int near = child1[node], far = child2[node];
+        float nearT = nodeEntry(near, originX, originY, originZ, directionX, directionY, directionZ, halfX, halfY, halfZ);
+        float farT = nodeEntry(far, originX, originY, originZ, directionX, directionY, directionZ, halfX, halfY, halfZ);
+        if (farT < nearT) {
+            int swap = near; near = far; far = swap;
+            float swapT = nearT; nearT = farT; farT = swapT;
+        }
+
+        if (reaches(nearT, maxT)) maxT = raycast(near, originX, originY, originZ, directionX, directionY, directionZ, halfX, halfY, halfZ, maxT, callback);
+        if (maxT > 0 && reaches(farT, maxT)) maxT = raycast(far, originX, originY, originZ, directionX, directionY, directionZ, halfX, halfY, halfZ, maxT, callback);
+        return maxT;
+    }
+
+    private boolean query(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, QueryCallback callback) {
+        if (this.maxX[node] < minX || this.minX[node] > maxX
+                || this.maxY[node] < minY || this.minY[node] > maxY
+                || this.maxZ[node] < minZ || this.minZ[node] > maxZ) {
+            return true;
+        }
+        if (child1[node] == NULL) return callback.overlap(userData[node]);
+        return query(child1[node], minX, minY, minZ, maxX, maxY, maxZ, callback)
+                && query(child2[node], minX, minY, minZ, maxX, maxY, maxZ, callback);
+    }
+
+    // recursion depth is bounded by the tree height, which balancing keeps logarithmic
+    private int query(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] results, int count) {
+        if (this.maxX[node] < minX || this.minX[node] > maxX
+                || this.maxY[node] < minY || this.minY[node] > maxY
+                || this.maxZ[node] < minZ || this.minZ[node] > maxZ) {
+            return count;
+        }
+        if (child1[node] == NULL) {
+            if (count < results.length) results[count] = userData[node];
+            return count + 1;
+        }
+        count = query(child1[node], minX, minY, minZ, maxX, maxY, maxZ, results, count);
+        return query(child2[node], minX, minY, minZ, maxX, maxY, maxZ, results, count);
+    }
+
+    private void checkProxy(int proxy) {
+        if (proxy < 0 || proxy >= capacity || height[proxy] != 0) throw new IllegalArgumentException("Not a live proxy: " + proxy);
+    }
+
+    private void setFat(int node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        this.minX[node] = minX - margin;
+        this.minY[node] = minY - margin;
+        this.minZ[node] = minZ - margin;
+        this.maxX[node] = maxX + margin;
+        this.maxY[node] = maxY + margin;
+        this.maxZ[node] = maxZ + margin;
+    }
+
+    private void setUnion(int node, int a, int b) {
+        minX[node] = Math.min(minX[a], minX[b]);
+        minY[node] = Math.min(minY[a], minY[b]);
+        minZ[node] = Math.min(minZ[a], minZ[b]);
+        maxX[node] = Math.max(maxX[a], maxX[b]);
+        maxY[node] = Math.max(maxY[a], maxY[b]);
+        maxZ[node] = Math.max(maxZ[a], maxZ[b]);
+    }
+
+    // half the surface area, only ever compared so the factor of two doesn't matter
+    private float area(int node) {
+        float dx = maxX[node] - minX[node], dy = maxY[node] - minY[node], dz = maxZ[node] - minZ[node];
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private float unionArea(int a, int b) {
+        float dx = Math.max(maxX[a], maxX[b]) - Math.min(minX[a], minX[b]);
+        float dy = Math.max(maxY[a], maxY[b]) - Math.min(minY[a], minY[b]);
+        float dz = Math.max(maxZ[a], maxZ[b]) - Math.min(minZ[a], minZ[b]);
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // descend towards the sibling that grows the tree's total surface area the least
+        int index = root;
+        while (child1[index] != NULL) {
+            int c1 = child1[index], c2 = child2[index];
+            float area = area(index);
+            float combinedArea = unionArea(index, leaf);
+
+            float cost = 2 * combinedArea;
+            float inheritanceCost = 2 * (combinedArea - area);
+            float cost1 = (child1[c1] == NULL ? unionArea(leaf, c1) : unionArea(leaf, c1) - area(c1)) + inheritanceCost;
+            float cost2 = (child1[c2] == NULL ? unionArea(leaf, c2) : unionArea(leaf, c2) - area(c2)) + inheritanceCost;
+
+            if (cost < cost1 && cost < cost2) break;
+            index = cost1 < cost2 ? c1 : c2;
+        }
+
+        int sibling = index;
+        int oldParent = parent[sibling];
+        int newParent = allocateNode();
+        parent[newParent] = oldParent;
+        userData[newParent] = -1;
+        setUnion(newParent, leaf, sibling);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL) {
+            if (child1[oldParent] == sibling) child1[oldParent] = newParent;
+            else child2[oldParent] = newParent;
+        } else {
+            root = newParent;
+        }
+        child1[newParent] = sibling;
+        child2[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = child1[p] == leaf ? child2[p] : child1[p];
+
+        if (grandParent != NULL) {
+            if (child1[grandParent] == p) child1[grandParent] = sibling;
+            else child2[grandParent] = sibling;
+            parent[sibling] = grandParent;
+            freeNode(p);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL;
+            freeNode(p);
+        }
+    }
+
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            int c1 = child1[index], c2 = child2[index];
+            height[index] = 1 + Math.max(height[c1], height[c2]);
+            setUnion(index, c1, c2);
+            index = parent[index];
+        }
+    }
+
+    /// Rotates the taller grandchild up if the subtree at `a` is unbalanced.
+    /// @return The new root of the subtree.
+    private int balance(int a) {
+        if (child1[a] == NULL || height[a] < 2) return a;
+
+        int b = child1[a], c = child2[a];
+        int balance = height[c] - height[b];
+
+        if (balance > 1) {
+            int f = child1[c], g = child2[c];
+            child1[c] = a;
+            parent[c] = parent[a];
+            parent[a] = c;
+            replaceChild(parent[c], a, c);
+
+            if (height[f] > height[g]) {
+                child2[c] = f;
+                child2[a] = g;
+                parent[g] = a;
+                setUnion(a, b, g);
+                setUnion(c, a, f);
+                height[a] = 1 + Math.max(height[b], height[g]);
+                height[c] = 1 + Math.max(height[a], height[f]);
+            } else {
+                child2[c] = g;
+                child2[a] = f;
+                parent[f] = a;
+                setUnion(a, b, f);
+                setUnion(c, a, g);
+                height[a] = 1 + Math.max(height[b], height[f]);
+                height[c] = 1 + Math.max(height[a], height[g]);
+            }
+            return c;
+        }
+
+        if (balance < -1) {
+            int d = child1[b], e = child2[b];
+            child1[b] = a;
+            parent[b] = parent[a];
+            parent[a] = b;
+            replaceChild(parent[b], a, b);
+
+            if (height[d] > height[e]) {
+                child2[b] = d;
+                child1[a] = e;
+                parent[e] = a;
+                setUnion(a, c, e);
+                setUnion(b, a, d);
+                height[a] = 1 + Math.max(height[c], height[e]);
+                height[b] = 1 + Math.max(height[a], height[d]);
+            } else {
+                child2[b] = e;
+                child1[a] = d;
+                parent[d] = a;
+                setUnion(a, c, d);
+                setUnion(b, a, e);
+                height[a] = 1 + Math.max(height[c], height[d]);
+                height[b] = 1 + Math.max(height[a], height[e]);
+            }
+            return b;
+        }
+
+        return a;
+    }
+
+    private void replaceChild(int node, int oldChild, int newChild) {
+        if (node == NULL) {
+            root = newChild;
+            return;
+        }
+        if (child1[node] == oldChild) child1[node] = newChild;
+        else child2[node] = newChild;
+    }
+
+    private int allocateNode() {
+        if (freeList == NULL) grow(capacity * 2);
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        child1[node] = NULL;
+        child2[node] = NULL;
+        height[node] = 0;
+        return node;
+    }
+
+    private void freeNode(int node) {
+        parent[node] = freeList;
+        height[node] = -1;
+        freeList = node;
+    }
+
+    private void grow(int newCapacity) {
+        minX = Arrays.copyOf(minX, newCapacity);
+        minY = Arrays.copyOf(minY, newCapacity);
+        minZ = Arrays.copyOf(minZ, newCapacity);
+        maxX = Arrays.copyOf(maxX, newCapacity);
+        maxY = Arrays.copyOf(maxY, newCapacity);
+        maxZ = Arrays.copyOf(maxZ, newCapacity);
+        parent = Arrays.copyOf(parent, newCapacity);
+        child1 = Arrays.copyOf(child1, newCapacity);
+        child2 = Arrays.copyOf(child2, newCapacity);
+        height = Arrays.copyOf(height, newCapacity);
+        userData = Arrays.copyOf(userData, newCapacity);
+
+        for (int i = capacity; i < newCapacity; i++) {
+            parent[i] = i + 1 < newCapacity ? i + 1 : freeList;
+            height[i] = -1;
+        }
+        freeList = capacity;
+        capacity = newCapacity;
+    }
+}
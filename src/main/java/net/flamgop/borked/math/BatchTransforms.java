@@ -0,0 +1,131 @@
+package net.flamgop.borked.math;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/// Batch versions of [Matrix4f#transform(Vector3f)] and [Matrix4f#transformDirection(Vector3f)].
+/// Dispatches to [VectorizedBatchTransforms] when the `jdk.incubator.vector` module is present at runtime, otherwise runs the scalar loops in this class.
+final class BatchTransforms {
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+    private static final long STRIDE = Vector3f.BYTES;
+
+    static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private BatchTransforms() {}
+
+    static void transformPositions(Matrix4f m, float[] xs, float[] ys, float[] zs, int offset, int count) {
+        if (VECTORIZED) VectorizedBatchTransforms.transformPositions(m, xs, ys, zs, offset, count);
+        else scalarTransformPositions(m, xs, ys, zs, offset, count);
+    }
+
+    static void transformDirections(Matrix4f m, float[] xs, float[] ys, float[] zs, int offset, int count) {
+        if (VECTORIZED) VectorizedBatchTransforms.transformDirections(m, xs, ys, zs, offset, count);
+        else scalarTransformDirections(m, xs, ys, zs, offset, count);
+    }
+
+    static void transformPositions(Matrix4f m, MemorySegment src, MemorySegment dst, int count) {
+        if (VECTORIZED) VectorizedBatchTransforms.transformPositions(m, src, dst, count);
+        else scalarTransformPositions(m, src, 0, dst, 0, count);
+    }
+
+    static void transformDirections(Matrix4f m, MemorySegment src, MemorySegment dst, int count) {
+        if (VECTORIZED) VectorizedBatchTransforms.transformDirections(m, src, dst, count);
+        else scalarTransformDirections(m, src, 0, dst, 0, count);
+    }
+
+    static void scalarTransformPositions(Matrix4f m, float[] xs, float[] ys, float[] zs, int offset, int count) {
+        float m00 = m.m00(), m01 = m.m01(), m02 = m.m02(), m03 = m.m03();
+        float m10 = m.m10(), m11 = m.m11(), m12 = m.m12(), m13 = m.m13();
+        float m20 = m.m20(), m21 = m.m21(), m22 = m.m22(), m23 = m.m23();
+        float m30 = m.m30(), m31 = m.m31(), m32 = m.m32(), m33 = m.m33();
+
+        for (int i = offset; i < offset + count; i++) {
+            float x = xs[i], y = ys[i], z = zs[i];
+
+            float rx = Math.fma(m00, x, Math.fma(m10, y, Math.fma(m20, z, m30)));
+            float ry = Math.fma(m01, x, Math.fma(m11, y, Math.fma(m21, z, m31)));
+            float rz = Math.fma(m02, x, Math.fma(m12, y, Math.fma(m22, z, m32)));
+            float rw = Math.fma(m03, x, Math.fma(m13, y, Math.fma(m23, z, m33)));
+
+            if (rw != 1.0f && rw != 0.0f) {
+                float invW = 1.0f / rw;
+                rx *= invW;
+                ry *= invW;
+                rz *= invW;
+            }
+
+            xs[i] = rx;
+            ys[i] = ry;
+            zs[i] = rz;
+        }
+    }
+
+    static void scalarTransformDirections(Matrix4f m, float[] xs, float[] ys, float[] zs, int offset, int count) {
+        float m00 = m.m00(), m01 = m.m01(), m02 = m.m02();
+        float m10 = m.m10(), m11 = m.m11(), m12 = m.m12();
+        float m20 = m.m20(), m21 = m.m21(), m22 = m.m22();
+
+        for (int i = offset; i < offset + count; i++) {
+            float x = xs[i], y = ys[i], z = zs[i];
+
+            float rx = Math.fma(m00, x, Math.fma(m10, y, m20 * z));
+            float ry = Math.fma(m01, x, Math.fma(m11, y, m21 * z));
+            float rz = Math.fma(m02, x, Math.fma(m12, y, m22 * z));
+            float invLength = 1f / (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+
+            xs[i] = rx * invLength;
+            ys[i] = ry * invLength;
+            zs[i] = rz * invLength;
+        }
+    }
+
+    static void scalarTransformPositions(Matrix4f m, MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int count) {
+        float m00 = m.m00(), m01 = m.m01(), m02 = m.m02(), m03 = m.m03();
+        float m10 = m.m10(), m11 = m.m11(), m12 = m.m12(), m13 = m.m13();
+        float m20 = m.m20(), m21 = m.m21(), m22 = m.m22(), m23 = m.m23();
+        float m30 = m.m30(), m31 = m.m31(), m32 = m.m32(), m33 = m.m33();
+
+        for (int i = 0; i < count; i++) {
+            long s = srcOffset + i * STRIDE;
+            long d = dstOffset + i * STRIDE;
+            float x = src.get(F32, s), y = src.get(F32, s + 4), z = src.get(F32, s + 8);
+
+            float rx = Math.fma(m00, x, Math.fma(m10, y, Math.fma(m20, z, m30)));
+            float ry = Math.fma(m01, x, Math.fma(m11, y, Math.fma(m21, z, m31)));
+            float rz = Math.fma(m02, x, Math.fma(m12, y, Math.fma(m22, z, m32)));
+            float rw = Math.fma(m03, x, Math.fma(m13, y, Math.fma(m23, z, m33)));
+
+            if (rw != 1.0f && rw != 0.0f) {
+                float invW = 1.0f / rw;
+                rx *= invW;
+                ry *= invW;
+                rz *= invW;
+            }
+
+            dst.set(F32, d, rx);
+            dst.set(F32, d + 4, ry);
+            dst.set(F32, d + 8, rz);
+        }
+    }
+
+    static void scalarTransformDirections(Matrix4f m, MemorySegment src, long srcOffset, MemorySegment dst, long dstOffset, int count) {
+        float m00 = m.m00(), m01 = m.m01(), m02 = m.m02();
+        float m10 = m.m10(), m11 = m.m11(), m12 = m.m12();
+        float m20 = m.m20(), m21 = m.m21(), m22 = m.m22();
+
+        for (int i = 0; i < count; i++) {
+            long s = srcOffset + i * STRIDE;
+            long d = dstOffset + i * STRIDE;
+            float x = src.get(F32, s), y = src.get(F32, s + 4), z = src.get(F32, s + 8);
+
+            float rx = Math.fma(m00, x, Math.fma(m10, y, m20 * z));
+            float ry = Math.fma(m01, x, Math.fma(m11, y, m21 * z));
+            float rz = Math.fma(m02, x, Math.fma(m12, y, m22 * z));
+            float invLength = 1f / (float) Math.sqrt(rx * rx + ry * ry + rz * rz);
+
+            dst.set(F32, d, rx * invLength);
+            dst.set(F32, d + 4, ry * invLength);
+            dst.set(F32, d + 8, rz * invLength);
+        }
+    }
+}
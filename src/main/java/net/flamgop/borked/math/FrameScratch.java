@@ -0,0 +1,167 @@
+package net.flamgop.borked.math;
+
+import java.util.Arrays;
+
+/// Bump allocator for per-frame math temporaries. Everything handed out is only valid until the next [#reset()],
+/// after which the same objects are handed out again, so the steady-state frame loop doesn't allocate.
+///
+/// In debug mode every temporary is poisoned with NaN when the frame ends and checked when it is handed out again,
+/// so holding on to a temporary past its frame and writing to it fails loudly instead of silently corrupting someone else's math.
+/// Debug mode also rejects use from any thread but the one that created the scratch.
+/// @implNote Not thread safe, each thread that needs temporaries should own its own scratch.
+public class FrameScratch {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final boolean debug;
+    private final Thread owner;
+
+    private Vector3f[] vectors = new Vector3f[0];
+    private Matrix4f[] matrices = new Matrix4f[0];
+    private AABB[] aabbs = new AABB[0];
+    private int vectorCount, matrixCount, aabbCount;
+    private int poisonedVectors, poisonedMatrices, poisonedAABBs;
+
+    private long frame;
+
+    public FrameScratch(boolean debug) {
+        this.debug = debug;
+        this.owner = Thread.currentThread();
+        vectors = growVectors(INITIAL_CAPACITY);
+        matrices = growMatrices(INITIAL_CAPACITY);
+        aabbs = growAABBs(INITIAL_CAPACITY);
+    }
+
+    public FrameScratch() {
+        this(false);
+    }
+
+    /// Ends the current frame, every temporary handed out since the last reset becomes invalid.
+    public void reset() {
+        checkThread();
+        if (debug) {
+            for (int i = 0; i < vectorCount; i++) poison(vectors[i]);
+            for (int i = 0; i < matrixCount; i++) poison(matrices[i]);
+            for (int i = 0; i < aabbCount; i++) {
+                poison(aabbs[i].min());
+                poison(aabbs[i].max());
+            }
+            poisonedVectors = Math.max(poisonedVectors, vectorCount);
+            poisonedMatrices = Math.max(poisonedMatrices, matrixCount);
+            poisonedAABBs = Math.max(poisonedAABBs, aabbCount);
+        }
+        vectorCount = 0;
+        matrixCount = 0;
+        aabbCount = 0;
+        frame++;
+    }
+
+    /// @return How many times [#reset()] has been called.
+    public long frame() {
+        return frame;
+    }
+
+    public boolean debug() {
+        return debug;
+    }
+
+    /// @return A zeroed vector valid until the next [#reset()].
+    public Vector3f vector3f() {
+        return vector3f(0, 0, 0);
+    }
+
+    public Vector3f vector3f(float x, float y, float z) {
+        checkThread();
+        if (vectorCount == vectors.length) vectors = growVectors(vectors.length * 2);
+        Vector3f v = vectors[vectorCount];
+        if (debug && vectorCount < poisonedVectors) checkPoisoned(v, "Vector3f");
+        vectorCount++;
+        v.x(x);
+        v.y(y);
+        v.z(z);
+        return v;
+    }
+
+    public Vector3f vector3f(Vector3f other) {
+        return vector3f(other.x(), other.y(), other.z());
+    }
+
+    /// @return An identity matrix valid until the next [#reset()].
+    public Matrix4f matrix4f() {
+        checkThread();
+        if (matrixCount == matrices.length) matrices = growMatrices(matrices.length * 2);
+        Matrix4f m = matrices[matrixCount];
+        if (debug && matrixCount < poisonedMatrices) checkPoisoned(m);
+        matrixCount++;
+        return m.setIdentity();
+    }
+
+    public Matrix4f matrix4f(Matrix4f other) {
+        return matrix4f().set(other);
+    }
+
+    /// @return A zero-sized, colliding box valid until the next [#reset()].
+    public AABB aabb() {
+        checkThread();
+        if (aabbCount == aabbs.length) aabbs = growAABBs(aabbs.length * 2);
+        AABB box = aabbs[aabbCount];
+        if (debug && aabbCount < poisonedAABBs) {
+            checkPoisoned(box.min(), "AABB");
+            checkPoisoned(box.max(), "AABB");
+        }
+        aabbCount++;
+        box.min().x(0); box.min().y(0); box.min().z(0);
+        box.max().x(0); box.max().y(0); box.max().z(0);
+        return box;
+    }
+
+    public AABB aabb(AABB other) {
+        AABB box = aabb();
+        box.min().setFrom(other.min());
+        box.max().setFrom(other.max());
+        return box;
+    }
+
+    private Vector3f[] growVectors(int capacity) {
+        Vector3f[] grown = Arrays.copyOf(vectors, capacity);
+        for (int i = vectors.length; i < capacity; i++) grown[i] = new Vector3f();
+        return grown;
+    }
+
+    private Matrix4f[] growMatrices(int capacity) {
+        Matrix4f[] grown = Arrays.copyOf(matrices, capacity);
+        for (int i = matrices.length; i < capacity; i++) grown[i] = new Matrix4f();
+        return grown;
+    }
+
+    private AABB[] growAABBs(int capacity) {
+        AABB[] grown = Arrays.copyOf(aabbs, capacity);
+        for (int i = aabbs.length; i < capacity; i++) grown[i] = new AABB(new Vector3f(), new Vector3f());
+        return grown;
+    }
+
+    private void checkThread() {
+        if (debug && Thread.currentThread() != owner) throw new IllegalStateException("FrameScratch used from " + Thread.currentThread().getName() + " but is owned by " + owner.getName());
+    }
+
+    private static void poison(Vector3f v) {
+        v.x(Float.NaN);
+        v.y(Float.NaN);
+        v.z(Float.NaN);
+    }
+
+    private static void poison(Matrix4f m) {
+        for (int i = 0; i < 16; i++) m.setUnsafe(i, Float.NaN);
+    }
+
+    private void checkPoisoned(Vector3f v, String type) {
+        if (!Float.isNaN(v.x()) || !Float.isNaN(v.y()) || !Float.isNaN(v.z()))
+            throw new IllegalStateException("Scratch " + type + " was written to after its frame ended (leaked past frame " + (frame - 1) + ")");
+    }
+
+    private void checkPoisoned(Matrix4f m) {
+        for (int i = 0; i < 16; i++) {
+            if (!Float.isNaN(m.getUnsafe(i)))
+                throw new IllegalStateException("Scratch Matrix4f was written to after its frame ended (leaked past frame " + (frame - 1) + ")");
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package net.flamgop.borked.math;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/// View frustum as six inward facing planes, extracted from a view-projection matrix (Gribb/Hartmann).
+///
+/// All tests are conservative: something reported as invisible is guaranteed to be outside,
+/// something reported as visible may still be just outside near a frustum corner.
+///
+/// Batch tests write one bit per element into `visible`, bit `i` is element `offset + i`,
+/// so `visible` must hold at least [#bitsetLength(int)] longs. Every word covering the batch is overwritten,
+/// there is no need to clear it between frames.
+public class Frustum {
+    public static final int LEFT = 0, RIGHT = 1, BOTTOM = 2, TOP = 3, NEAR = 4, FAR = 5;
+    private static final int PLANE_COUNT = 6;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+
+    // a, b, c, d per plane, normalized so that a*x + b*y + c*z + d is the signed distance, positive inside
+    private final float[] planes = new float[PLANE_COUNT * 4];
+
+    public Frustum() {
+    }
+
+    public Frustum(Matrix4f viewProjection, boolean zZeroToOne) {
+        this.set(viewProjection, zZeroToOne);
+    }
+
+    public static int bitsetLength(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    public static boolean isVisible(long[] visible, int index) {
+        return (visible[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /// @param zZeroToOne Must match the projection, see [Matrix4f#perspective(float, float, float, float, boolean)].
+    public Frustum set(Matrix4f m, boolean zZeroToOne) {
+        // row R of a column-major matrix is (m0R, m1R, m2R, m3R)
+        float r0x = m.m00(), r0y = m.m10(), r0z = m.m20(), r0w = m.m30();
+        float r1x = m.m01(), r1y = m.m11(), r1z = m.m21(), r1w = m.m31();
+        float r2x = m.m02(), r2y = m.m12(), r2z = m.m22(), r2w = m.m32();
+        float r3x = m.m03(), r3y = m.m13(), r3z = m.m23(), r3w = m.m33();
+
+        setPlane(LEFT, r3x + r0x, r3y + r0y, r3z + r0z, r3w + r0w);
+        setPlane(RIGHT, r3x - r0x, r3y - r0y, r3z - r0z, r3w - r0w);
+        setPlane(BOTTOM, r3x + r1x, r3y + r1y, r3z + r1z, r3w + r1w);
+        setPlane(TOP, r3x - r1x, r3y - r1y, r3z - r1z, r3w - r1w);
+        if (zZeroToOne) setPlane(NEAR, r2x, r2y, r2z, r2w);
+        else setPlane(NEAR, r3x + r2x, r3y + r2y, r3z + r2z, r3w + r2w);
+        setPlane(FAR, r3x - r2x, r3y - r2y, r3z - r2z, r3w - r2w);
+        return this;
+    }
+
+    private void setPlane(int plane, float a, float b, float c, float d) {
+        float invLength = 1f / (float) Math.sqrt(a * a + b * b + c * c);
+        int i = plane * 4;
+        planes[i] = a * invLength;
+        planes[i + 1] = b * invLength;
+        planes[i + 2] = c * invLength;
+        planes[i + 3] = d * invLength;
+    }
+
+    /// @return The signed distance from `plane` (one of [#LEFT] .. [#FAR]) to the point, positive inside.
+    public float distance(int plane, float x, float y, float z) {
+        int i = plane * 4;
+        return Math.fma(planes[i], x, Math.fma(planes[i + 1], y, Math.fma(planes[i + 2], z, planes[i + 3])));
+    }
+
+    public boolean testPoint(float x, float y, float z) {
+        return testSphere(x, y, z, 0);
+    }
+
+    public boolean testSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            float distance = Math.fma(planes[i], x, Math.fma(planes[i + 1], y, Math.fma(planes[i + 2], z, planes[i + 3])));
+            if (distance < -radius) return false;
+        }
+        return true;
+    }
+
+    public boolean testAABB(AABB aabb) {
+        Vector3f min = aabb.min(), max = aabb.max();
+        return testAABB(min.x(), min.y(), min.z(), max.x(), max.y(), max.z());
+    }
+
+    public boolean testAABB(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int i = 0; i < PLANE_COUNT * 4; i += 4) {
+            float a = planes[i], b = planes[i + 1], c = planes[i + 2];
+            // only the corner furthest along the plane normal needs to be checked
+            float x = a >= 0 ? maxX : minX;
+            float y = b >= 0 ? maxY : minY;
+            float z = c >= 0 ? maxZ : minZ;
+            if (Math.fma(a, x, Math.fma(b, y, Math.fma(c, z, planes[i + 3]))) < 0) return false;
+        }
+        return true;
+    }
+
+    /// Batch [#testAABB(float, float, float, float, float, float)] over structure-of-arrays bounds.
+    /// @return How many of the `count` boxes are visible.
+    public int testAABBs(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int offset, int count, long[] visible) {
+        int visibleCount = 0;
+        long word = 0;
+        for (int i = 0; i < count; i++) {
+            int j = offset + i;
+            if (testAABB(minX[j], minY[j], minZ[j], maxX[j], maxY[j], maxZ[j])) {
+                word |= 1L << i;
+                visibleCount++;
+            }
+            if ((i & 63) == 63) {
+                visible[i >>> 6] = word;
+                word = 0;
+            }
+        }
+        if ((count & 63) != 0) visible[count >>> 6] = word;
+        return visibleCount;
+    }
+
+    /// Batch [#testSphere(float, float, float, float)] over packed `x, y, z, radius` quadruples.
+    /// @return How many of the `count` spheres are visible.
+    public int testSpheres(float[] spheres, int offset, int count, long[] visible) {
+        return testSpheres(spheres, offset, count, visible, 0);
+    }
+
+    /// [#testSpheres(float[], int, int, long[])] writing the bitset from word `visibleOffset` of `visible` on.
+    public int testSpheres(float[] spheres, int offset, int count, long[] visible, int visibleOffset) {
+        int visibleCount = 0;
+        long word = 0;
+        for (int i = 0; i < count; i++) {
+            int j = (offset + i) * 4;
+            if (testSphere(spheres[j], spheres[j + 1], spheres[j + 2], spheres[j + 3])) {
+                word |= 1L << i;
+                visibleCount++;
+            }
+            if ((i & 63) == 63) {
+                visible[visibleOffset + (i >>> 6)] = word;
+                word = 0;
+            }
+        }
+        if ((count & 63) != 0) visible[visibleOffset + (count >>> 6)] = word;
+        return visibleCount;
+    }
+
+    /// Batch [#testSphere(float, float, float, float)] over `count` records of `stride` bytes that each start with `x, y, z, radius`,
+    /// such as the meshlet bounds written by [net.flamgop.borked.renderer.model.PlortMesh].
+    /// @return How many of the `count` spheres are visible.
+    public int testSpheres(MemorySegment spheres, long stride, int count, long[] visible) {
+        int visibleCount = 0;
+        long word = 0;
+        for (int i = 0; i < count; i++) {
+            long base = i * stride;
+            float x = spheres.get(F32, base);
+            float y = spheres.get(F32, base + 4);
+            float z = spheres.get(F32, base + 8);
+            float radius = spheres.get(F32, base + 12);
+            if (testSphere(x, y, z, radius)) {
+                word |= 1L << i;
+                visibleCount++;
+            }
+            if ((i & 63) == 63) {
+                visible[i >>> 6] = word;
+                word = 0;
+            }
+        }
+        if ((count & 63) != 0) visible[count >>> 6] = word;
+        return visibleCount;
+    }
+}
@@ -7,11 +7,14 @@ import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.nio.Buffer;
+import java.nio.FloatBuffer;
 
 @SuppressWarnings({"UnusedReturnValue", "DuplicatedCode"})
 public class Matrix4f {
     public static final int BYTES = 16 * Float.BYTES;
-    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+    // how far from orthonormal an upper 3x3 may be for classify() to still call it rigid
+    private static final float RIGID_EPSILON = 1e-5f;
 
     public static Matrix4f fromQuaternion(Arena arena, Quaternionf q) {
         return new Matrix4f(arena).rotation(q);
@@ -30,58 +33,63 @@ public class Matrix4f {
         );
     }
 
-    private static final long M00 = 0;
-    private static final long M01 = 4;
-    private static final long M02 = 8;
-    private static final long M03 = 12;
-    private static final long M10 = 16;
-    private static final long M11 = 20;
-    private static final long M12 = 24;
-    private static final long M13 = 28;
-    private static final long M20 = 32;
-    private static final long M21 = 36;
-    private static final long M22 = 40;
-    private static final long M23 = 44;
-    private static final long M30 = 48;
-    private static final long M31 = 52;
-    private static final long M32 = 56;
-    private static final long M33 = 60;
-
-    private final MemorySegment memory;
+    // column-major, mCR is column C row R, laid out in memory in declaration order
+    private float m00, m01, m02, m03;
+    private float m10, m11, m12, m13;
+    private float m20, m21, m22, m23;
+    private float m30, m31, m32, m33;
 
+    private MatrixKind kind;
+
+    /// Matrices are stored in plain fields on the heap, the arena is ignored and only kept for source compatibility.
     public Matrix4f(Arena arena) {
-        this.memory = arena.allocate(BYTES);
-        this.setIdentity();
+        this();
     }
 
     public Matrix4f() {
-        this(Arena.ofAuto());
+        this.setIdentity();
     }
 
     public Matrix4f(Arena arena, Matrix4f other) {
-        this(arena);
-        this.memory.copyFrom(other.memory);
+        this(other);
     }
 
     public Matrix4f(Matrix4f other) {
-        this(Arena.ofAuto(), other);
+        this.set(other);
     }
 
     public Matrix4f(Arena arena, float m00, float m01, float m02, float m03, float m10, float m11, float m12, float m13, float m20, float m21, float m22, float m23, float m30, float m31, float m32, float m33) {
-        this(arena);
-        m00(m00); m01(m01); m02(m02); m03(m03);
-        m10(m10); m11(m11); m12(m12); m13(m13);
-        m20(m20); m21(m21); m22(m22); m23(m23);
-        m30(m30); m31(m31); m32(m32); m33(m33);
+        this(m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33);
     }
 
     public Matrix4f(float m00, float m01, float m02, float m03, float m10, float m11, float m12, float m13, float m20, float m21, float m22, float m23, float m30, float m31, float m32, float m33) {
-        this(Arena.ofAuto(), m00, m01, m02, m03, m10, m11, m12, m13, m20, m21, m22, m23, m30, m31, m32, m33);
+        this.m00 = m00; this.m01 = m01; this.m02 = m02; this.m03 = m03;
+        this.m10 = m10; this.m11 = m11; this.m12 = m12; this.m13 = m13;
+        this.m20 = m20; this.m21 = m21; this.m22 = m22; this.m23 = m23;
+        this.m30 = m30; this.m31 = m31; this.m32 = m32; this.m33 = m33;
+        this.classify();
     }
 
     @ApiStatus.Internal // not bounds checked
     public float getUnsafe(int index) {
-        return memory.get(F32, (long)index * Float.BYTES);
+        return switch (index) {
+            case 0 -> m00;
+            case 1 -> m01;
+            case 2 -> m02;
+            case 3 -> m03;
+            case 4 -> m10;
+            case 5 -> m11;
+            case 6 -> m12;
+            case 7 -> m13;
+            case 8 -> m20;
+            case 9 -> m21;
+            case 10 -> m22;
+            case 11 -> m23;
+            case 12 -> m30;
+            case 13 -> m31;
+            case 14 -> m32;
+            default -> m33;
+        };
     }
 
     public float get(int index) {
@@ -91,7 +99,25 @@ public class Matrix4f {
 
     @ApiStatus.Internal // not bounds checked
     public Matrix4f setUnsafe(int index, float value) {
-        memory.set(F32, (long)index * Float.BYTES, value);
+        switch (index) {
+            case 0 -> m00 = value;
+            case 1 -> m01 = value;
+            case 2 -> m02 = value;
+            case 3 -> m03 = value;
+            case 4 -> m10 = value;
+            case 5 -> m11 = value;
+            case 6 -> m12 = value;
+            case 7 -> m13 = value;
+            case 8 -> m20 = value;
+            case 9 -> m21 = value;
+            case 10 -> m22 = value;
+            case 11 -> m23 = value;
+            case 12 -> m30 = value;
+            case 13 -> m31 = value;
+            case 14 -> m32 = value;
+            default -> m33 = value;
+        }
+        this.kind = index >= 12 && index < 15 ? kind.withTranslation() : MatrixKind.GENERAL;
         return this;
     }
 
@@ -100,12 +126,73 @@ public class Matrix4f {
         return setUnsafe(index, value);
     }
 
+    public Matrix4f set(Matrix4f other) {
+        this.m00 = other.m00; this.m01 = other.m01; this.m02 = other.m02; this.m03 = other.m03;
+        this.m10 = other.m10; this.m11 = other.m11; this.m12 = other.m12; this.m13 = other.m13;
+        this.m20 = other.m20; this.m21 = other.m21; this.m22 = other.m22; this.m23 = other.m23;
+        this.m30 = other.m30; this.m31 = other.m31; this.m32 = other.m32; this.m33 = other.m33;
+        this.kind = other.kind;
+        return this;
+    }
+
+    /// Loads 16 column-major floats starting at `src[offset]` and classifies the result.
+    public Matrix4f set(float[] src, int offset) {
+        this.m00 = src[offset];      this.m01 = src[offset + 1];  this.m02 = src[offset + 2];  this.m03 = src[offset + 3];
+        this.m10 = src[offset + 4];  this.m11 = src[offset + 5];  this.m12 = src[offset + 6];  this.m13 = src[offset + 7];
+        this.m20 = src[offset + 8];  this.m21 = src[offset + 9];  this.m22 = src[offset + 10]; this.m23 = src[offset + 11];
+        this.m30 = src[offset + 12]; this.m31 = src[offset + 13]; this.m32 = src[offset + 14]; this.m33 = src[offset + 15];
+        return classify();
+    }
+
+    /// Stores this matrix as 16 column-major floats starting at `dst[offset]`.
+    public void get(float[] dst, int offset) {
+        dst[offset] = m00;      dst[offset + 1] = m01;  dst[offset + 2] = m02;  dst[offset + 3] = m03;
+        dst[offset + 4] = m10;  dst[offset + 5] = m11;  dst[offset + 6] = m12;  dst[offset + 7] = m13;
+        dst[offset + 8] = m20;  dst[offset + 9] = m21;  dst[offset + 10] = m22; dst[offset + 11] = m23;
+        dst[offset + 12] = m30; dst[offset + 13] = m31; dst[offset + 14] = m32; dst[offset + 15] = m33;
+    }
+
     public Matrix4f setIdentity() {
-        memory.fill((byte)0);
-        memory.set(F32, M00, 1);
-        memory.set(F32, M11, 1);
-        memory.set(F32, M22, 1);
-        memory.set(F32, M33, 1);
+        this.m00 = 1; this.m01 = 0; this.m02 = 0; this.m03 = 0;
+        this.m10 = 0; this.m11 = 1; this.m12 = 0; this.m13 = 0;
+        this.m20 = 0; this.m21 = 0; this.m22 = 1; this.m23 = 0;
+        this.m30 = 0; this.m31 = 0; this.m32 = 0; this.m33 = 1;
+        this.kind = MatrixKind.IDENTITY;
+        return this;
+    }
+
+    /// Every operation keeps track of the structure it leaves the matrix in, [#invert()] uses this to pick the cheapest correct inverse.
+    /// Writing individual components through the setters conservatively demotes the matrix to [MatrixKind#GENERAL],
+    /// except for the translation column, call [#classify()] afterwards to recover a more specific kind.
+    public MatrixKind kind() {
+        return kind;
+    }
+
+    /// Works out the most specific kind from the current contents, treating an upper 3x3 within [#RIGID_EPSILON] of orthonormal as rigid.
+    public Matrix4f classify() {
+        if (m03 != 0 || m13 != 0 || m23 != 0 || m33 != 1) {
+            boolean perspective = m23 == -1 && m33 == 0 && m03 == 0 && m13 == 0
+                    && m01 == 0 && m02 == 0 && m10 == 0 && m12 == 0 && m20 == 0 && m21 == 0 && m30 == 0 && m31 == 0
+                    && m00 != 0 && m11 != 0 && m32 != 0;
+            this.kind = perspective ? MatrixKind.PERSPECTIVE : MatrixKind.GENERAL;
+            return this;
+        }
+
+        boolean identity3x3 = m00 == 1 && m01 == 0 && m02 == 0 && m10 == 0 && m11 == 1 && m12 == 0 && m20 == 0 && m21 == 0 && m22 == 1;
+        if (identity3x3) {
+            this.kind = m30 == 0 && m31 == 0 && m32 == 0 ? MatrixKind.IDENTITY : MatrixKind.TRANSLATION;
+            return this;
+        }
+
+        float len0 = m00 * m00 + m01 * m01 + m02 * m02;
+        float len1 = m10 * m10 + m11 * m11 + m12 * m12;
+        float len2 = m20 * m20 + m21 * m21 + m22 * m22;
+        float dot01 = m00 * m10 + m01 * m11 + m02 * m12;
+        float dot02 = m00 * m20 + m01 * m21 + m02 * m22;
+        float dot12 = m10 * m20 + m11 * m21 + m12 * m22;
+        boolean orthonormal = Math.abs(len0 - 1) <= RIGID_EPSILON && Math.abs(len1 - 1) <= RIGID_EPSILON && Math.abs(len2 - 1) <= RIGID_EPSILON
+                && Math.abs(dot01) <= RIGID_EPSILON && Math.abs(dot02) <= RIGID_EPSILON && Math.abs(dot12) <= RIGID_EPSILON;
+        this.kind = orthonormal ? MatrixKind.RIGID : MatrixKind.AFFINE;
         return this;
     }
 
@@ -124,6 +211,7 @@ public class Matrix4f {
         this.m23(-1);
         this.m33(0);
 
+        this.kind = MatrixKind.PERSPECTIVE;
         return this;
     }
 
@@ -142,36 +230,71 @@ public class Matrix4f {
             this.m32(-(far + near) / (far - near));
         }
 
+        this.kind = MatrixKind.AFFINE;
         return this;
     }
 
     public Matrix4f lookAt(Vector3f position, Vector3f target, Vector3f up) {
-        Vector3f dir = new Vector3f(position).subtract(target).normalize();
-        Vector3f left = new Vector3f(up).cross(dir).normalize();
-        Vector3f upn = new Vector3f(dir).cross(left).normalize();
-
-        this.m00(left.x());
-        this.m01(upn.x());
-        this.m02(dir.x());
+        // dir = normalize(position - target)
+        float dirX = position.x() - target.x(), dirY = position.y() - target.y(), dirZ = position.z() - target.z();
+        float invDir = 1f / (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        dirX *= invDir; dirY *= invDir; dirZ *= invDir;
+
+        // left = normalize(up x dir)
+        float upX = up.x(), upY = up.y(), upZ = up.z();
+        float leftX = upY * dirZ - upZ * dirY, leftY = upZ * dirX - upX * dirZ, leftZ = upX * dirY - upY * dirX;
+        float invLeft = 1f / (float) Math.sqrt(leftX * leftX + leftY * leftY + leftZ * leftZ);
+        leftX *= invLeft; leftY *= invLeft; leftZ *= invLeft;
+
+        // upn = normalize(dir x left)
+        float upnX = dirY * leftZ - dirZ * leftY, upnY = dirZ * leftX - dirX * leftZ, upnZ = dirX * leftY - dirY * leftX;
+        float invUpn = 1f / (float) Math.sqrt(upnX * upnX + upnY * upnY + upnZ * upnZ);
+        upnX *= invUpn; upnY *= invUpn; upnZ *= invUpn;
+
+        float px = position.x(), py = position.y(), pz = position.z();
+
+        this.m00(leftX);
+        this.m01(upnX);
+        this.m02(dirX);
         this.m03(0.0f);
-        this.m10(left.y());
-        this.m11(upn.y());
-        this.m12(dir.y());
+        this.m10(leftY);
+        this.m11(upnY);
+        this.m12(dirY);
         this.m13(0.0f);
-        this.m20(left.z());
-        this.m21(upn.z());
-        this.m22(dir.z());
+        this.m20(leftZ);
+        this.m21(upnZ);
+        this.m22(dirZ);
         this.m23(0.0f);
-        this.m30(-left.dot(position));
-        this.m31(-upn.dot(position));
-        this.m32(-dir.dot(position));
+        this.m30(-Math.fma(leftX, px, Math.fma(leftY, py, leftZ * pz)));
+        this.m31(-Math.fma(upnX, px, Math.fma(upnY, py, upnZ * pz)));
+        this.m32(-Math.fma(dirX, px, Math.fma(dirY, py, dirZ * pz)));
         this.m33(1.0f);
 
+        this.kind = MatrixKind.RIGID;
         return this;
     }
 
+    /// `dst = left * right` on 16 column-major floats at the given offsets. `dst` may alias either input.
+    public static void multiply(float[] left, int leftOffset, float[] right, int rightOffset, float[] dst, int dstOffset) {
+        float a00 = left[leftOffset], a01 = left[leftOffset + 1], a02 = left[leftOffset + 2], a03 = left[leftOffset + 3];
+        float a10 = left[leftOffset + 4], a11 = left[leftOffset + 5], a12 = left[leftOffset + 6], a13 = left[leftOffset + 7];
+        float a20 = left[leftOffset + 8], a21 = left[leftOffset + 9], a22 = left[leftOffset + 10], a23 = left[leftOffset + 11];
+        float a30 = left[leftOffset + 12], a31 = left[leftOffset + 13], a32 = left[leftOffset + 14], a33 = left[leftOffset + 15];
+
+        for (int c = 0; c < 4; c++) {
+            float b0 = right[rightOffset + c * 4], b1 = right[rightOffset + c * 4 + 1];
+            float b2 = right[rightOffset + c * 4 + 2], b3 = right[rightOffset + c * 4 + 3];
+            dst[dstOffset + c * 4] = Math.fma(a00, b0, Math.fma(a10, b1, Math.fma(a20, b2, a30 * b3)));
+            dst[dstOffset + c * 4 + 1] = Math.fma(a01, b0, Math.fma(a11, b1, Math.fma(a21, b2, a31 * b3)));
+            dst[dstOffset + c * 4 + 2] = Math.fma(a02, b0, Math.fma(a12, b1, Math.fma(a22, b2, a32 * b3)));
+            dst[dstOffset + c * 4 + 3] = Math.fma(a03, b0, Math.fma(a13, b1, Math.fma(a23, b2, a33 * b3)));
+        }
+    }
+
     /// equivalent to this = this * right
     public Matrix4f multiply(Matrix4f right) {
+        MatrixKind productKind = MatrixKind.ofProduct(this.kind, right.kind);
+
         float a00 = this.m00(), a10 = this.m10(), a20 = this.m20(), a30 = this.m30();
         float a01 = this.m01(), a11 = this.m11(), a21 = this.m21(), a31 = this.m31();
         float a02 = this.m02(), a12 = this.m12(), a22 = this.m22(), a32 = this.m32();
@@ -198,6 +321,7 @@ public class Matrix4f {
         this.m31(Math.fma(a01, b30, Math.fma(a11, b31, Math.fma(a21, b32, a31 * b33))));
         this.m32(Math.fma(a02, b30, Math.fma(a12, b31, Math.fma(a22, b32, a32 * b33))));
         this.m33(Math.fma(a03, b30, Math.fma(a13, b31, Math.fma(a23, b32, a33 * b33))));
+        this.kind = productKind;
         return this;
     }
 
@@ -226,6 +350,34 @@ public class Matrix4f {
         ).normalize();
     }
 
+    /// Batch version of [#transform(Vector3f)] over structure-of-arrays positions, transformed in place.
+    public void transformPositions(float[] xs, float[] ys, float[] zs, int offset, int count) {
+        BatchTransforms.transformPositions(this, xs, ys, zs, offset, count);
+    }
+
+    /// Batch version of [#transform(Vector3f)] over `count` tightly packed xyz positions. `src` and `dst` may be the same segment.
+    public void transformPositions(MemorySegment src, MemorySegment dst, int count) {
+        BatchTransforms.transformPositions(this, src, dst, count);
+    }
+
+    public void transformPositions(FloatBuffer src, FloatBuffer dst, int count) {
+        transformPositions(MemorySegment.ofBuffer(src), MemorySegment.ofBuffer(dst), count);
+    }
+
+    /// Batch version of [#transformDirection(Vector3f)] over structure-of-arrays directions, transformed and normalized in place.
+    public void transformDirections(float[] xs, float[] ys, float[] zs, int offset, int count) {
+        BatchTransforms.transformDirections(this, xs, ys, zs, offset, count);
+    }
+
+    /// Batch version of [#transformDirection(Vector3f)] over `count` tightly packed xyz directions. `src` and `dst` may be the same segment.
+    public void transformDirections(MemorySegment src, MemorySegment dst, int count) {
+        BatchTransforms.transformDirections(this, src, dst, count);
+    }
+
+    public void transformDirections(FloatBuffer src, FloatBuffer dst, int count) {
+        transformDirections(MemorySegment.ofBuffer(src), MemorySegment.ofBuffer(dst), count);
+    }
+
     public Matrix4f scale(float scale) {
         this.m00(this.m00() * scale);
         this.m01(this.m01() * scale);
@@ -306,7 +458,20 @@ public class Matrix4f {
         return this;
     }
 
+    /// Inverts using the cheapest path that is correct for this matrix's [#kind()].
     public Matrix4f invert() {
+        return switch (kind) {
+            case IDENTITY -> this;
+            case TRANSLATION -> this.setTranslation(-m30, -m31, -m32);
+            case RIGID -> invertRigid();
+            case AFFINE -> invertAffine();
+            case PERSPECTIVE -> invertPerspective();
+            case GENERAL -> invertGeneral();
+        };
+    }
+
+    /// Inverts through the adjugate, works for any invertible matrix regardless of [#kind()].
+    public Matrix4f invertGeneral() {
         float det = determinant();
         if (det == 0f) throw new ArithmeticException("Cannot invert a matrix with determinant of 0!");
         float invDet = 1.0f / det;
@@ -314,6 +479,74 @@ public class Matrix4f {
         return adjugate().scale(invDet);
     }
 
+    /// Inverts assuming the bottom row is `(0, 0, 0, 1)`, the result is only meaningful for affine matrices.
+    public Matrix4f invertAffine() {
+        float a = m00, b = m10, c = m20;
+        float d = m01, e = m11, f = m21;
+        float g = m02, h = m12, i = m22;
+
+        float c00 = e * i - f * h;
+        float c01 = f * g - d * i;
+        float c02 = d * h - e * g;
+
+        float det = Math.fma(a, c00, Math.fma(b, c01, c * c02));
+        if (det == 0f) throw new ArithmeticException("Cannot invert a matrix with determinant of 0!");
+        float invDet = 1.0f / det;
+
+        float n00 = c00 * invDet, n10 = (c * h - b * i) * invDet, n20 = (b * f - c * e) * invDet;
+        float n01 = c01 * invDet, n11 = (a * i - c * g) * invDet, n21 = (c * d - a * f) * invDet;
+        float n02 = c02 * invDet, n12 = (b * g - a * h) * invDet, n22 = (a * e - b * d) * invDet;
+
+        float tx = m30, ty = m31, tz = m32;
+
+        this.m00 = n00; this.m01 = n01; this.m02 = n02; this.m03 = 0;
+        this.m10 = n10; this.m11 = n11; this.m12 = n12; this.m13 = 0;
+        this.m20 = n20; this.m21 = n21; this.m22 = n22; this.m23 = 0;
+        this.m30 = -Math.fma(n00, tx, Math.fma(n10, ty, n20 * tz));
+        this.m31 = -Math.fma(n01, tx, Math.fma(n11, ty, n21 * tz));
+        this.m32 = -Math.fma(n02, tx, Math.fma(n12, ty, n22 * tz));
+        this.m33 = 1;
+
+        if (!kind.isAffine()) this.kind = MatrixKind.AFFINE;
+        return this;
+    }
+
+    /// Inverts assuming the upper 3x3 is orthonormal and the bottom row is `(0, 0, 0, 1)`,
+    /// the inverse rotation is just the transpose so no determinant or division is needed.
+    public Matrix4f invertRigid() {
+        float a01 = m01, a02 = m02, a10 = m10, a12 = m12, a20 = m20, a21 = m21;
+        float tx = m30, ty = m31, tz = m32;
+
+        this.m01 = a10; this.m02 = a20; this.m03 = 0;
+        this.m10 = a01; this.m12 = a21; this.m13 = 0;
+        this.m20 = a02; this.m21 = a12; this.m23 = 0;
+        this.m30 = -Math.fma(m00, tx, Math.fma(a01, ty, a02 * tz));
+        this.m31 = -Math.fma(a10, tx, Math.fma(m11, ty, a12 * tz));
+        this.m32 = -Math.fma(a20, tx, Math.fma(a21, ty, m22 * tz));
+        this.m33 = 1;
+
+        if (kind.ordinal() > MatrixKind.RIGID.ordinal()) this.kind = MatrixKind.RIGID;
+        return this;
+    }
+
+    /// Inverts assuming the layout produced by [#perspective(float, float, float, float, boolean)],
+    /// where only `m00`, `m11`, `m22`, `m32` and `m23 = -1` are non-zero.
+    public Matrix4f invertPerspective() {
+        float a = m00, b = m11, c = m22, d = m32;
+        if (a == 0f || b == 0f || d == 0f) throw new ArithmeticException("Cannot invert a degenerate perspective matrix!");
+        float invD = 1.0f / d;
+
+        this.m00 = 1.0f / a;
+        this.m11 = 1.0f / b;
+        this.m22 = 0;
+        this.m23 = invD;
+        this.m32 = -1;
+        this.m33 = c * invD;
+
+        this.kind = MatrixKind.GENERAL;
+        return this;
+    }
+
     public Matrix4f translation(float x, float y, float z) {
         this.setIdentity();
         return setTranslation(x,y,z);
@@ -340,6 +573,7 @@ public class Matrix4f {
     }
 
     public Matrix4f setRotation(Quaternionf rotation) {
+        MatrixKind previousKind = this.kind;
         float w = rotation.w(), x = rotation.x(), y = rotation.y(), z = rotation.z();
         float w2 = w * w;
         float x2 = x * x;
@@ -362,6 +596,8 @@ public class Matrix4f {
         this.m21(dyz - dxw);
         this.m22(z2 - y2 - x2 + w2);
 
+        boolean unit = Math.abs(rotation.normSquared() - 1) <= RIGID_EPSILON;
+        this.kind = previousKind.isAffine() ? (unit ? MatrixKind.RIGID : MatrixKind.AFFINE) : MatrixKind.GENERAL;
         return this;
     }
 
@@ -371,6 +607,7 @@ public class Matrix4f {
     }
 
     public Matrix4f transpose() {
+        MatrixKind previousKind = this.kind;
         float a10 = this.m10(), a20 = this.m20(), a30 = this.m30();
         float a01 = this.m01(), a21 = this.m21(), a31 = this.m31();
         float a02 = this.m02(), a12 = this.m12(), a32 = this.m32();
@@ -392,105 +629,122 @@ public class Matrix4f {
         this.m31(a13);
         this.m32(a23);
 
+        if (previousKind == MatrixKind.IDENTITY) this.kind = MatrixKind.IDENTITY;
         return this;
     }
 
     public float m00() {
-        return this.memory.get(F32, M00);
+        return this.m00;
     }
     public float m01() {
-        return this.memory.get(F32, M01);
+        return this.m01;
     }
     public float m02() {
-        return this.memory.get(F32, M02);
+        return this.m02;
     }
     public float m03() {
-        return this.memory.get(F32, M03);
+        return this.m03;
     }
     public float m10() {
-        return this.memory.get(F32, M10);
+        return this.m10;
     }
     public float m11() {
-        return this.memory.get(F32, M11);
+        return this.m11;
     }
     public float m12() {
-        return this.memory.get(F32, M12);
+        return this.m12;
     }
     public float m13() {
-        return this.memory.get(F32, M13);
+        return this.m13;
     }
     public float m20() {
-        return this.memory.get(F32, M20);
+        return this.m20;
     }
     public float m21() {
-        return this.memory.get(F32, M21);
+        return this.m21;
     }
     public float m22() {
-        return this.memory.get(F32, M22);
+        return this.m22;
     }
     public float m23() {
-        return this.memory.get(F32, M23);
+        return this.m23;
     }
     public float m30() {
-        return this.memory.get(F32, M30);
+        return this.m30;
     }
     public float m31() {
-        return this.memory.get(F32, M31);
+        return this.m31;
     }
     public float m32() {
-        return this.memory.get(F32, M32);
+        return this.m32;
     }
     public float m33() {
-        return this.memory.get(F32, M33);
+        return this.m33;
     }
 
     public void m00(float v) {
-        this.memory.set(F32, M00, v);
+        this.m00 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m01(float v) {
-        this.memory.set(F32, M01, v);
+        this.m01 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m02(float v) {
-        this.memory.set(F32, M02, v);
+        this.m02 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m03(float v) {
-        this.memory.set(F32, M03, v);
+        this.m03 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m10(float v) {
-        this.memory.set(F32, M10, v);
+        this.m10 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m11(float v) {
-        this.memory.set(F32, M11, v);
+        this.m11 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m12(float v) {
-        this.memory.set(F32, M12, v);
+        this.m12 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m13(float v) {
-        this.memory.set(F32, M13, v);
+        this.m13 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m20(float v) {
-        this.memory.set(F32, M20, v);
+        this.m20 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m21(float v) {
-        this.memory.set(F32, M21, v);
+        this.m21 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m22(float v) {
-        this.memory.set(F32, M22, v);
+        this.m22 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m23(float v) {
-        this.memory.set(F32, M23, v);
+        this.m23 = v;
+        this.kind = MatrixKind.GENERAL;
     }
     public void m30(float v) {
-        this.memory.set(F32, M30, v);
+        this.m30 = v;
+        this.kind = kind.withTranslation();
     }
     public void m31(float v) {
-        this.memory.set(F32, M31, v);
+        this.m31 = v;
+        this.kind = kind.withTranslation();
     }
     public void m32(float v) {
-        this.memory.set(F32, M32, v);
+        this.m32 = v;
+        this.kind = kind.withTranslation();
     }
     public void m33(float v) {
-        this.memory.set(F32, M33, v);
+        this.m33 = v;
+        this.kind = MatrixKind.GENERAL;
     }
 
     public void getToBuffer(Buffer buffer) {
@@ -504,6 +758,21 @@ public class Matrix4f {
     }
 
     public void getToMemorySegment(MemorySegment dst) {
-        dst.copyFrom(memory);
+        dst.set(F32, 0, m00);
+        dst.set(F32, 4, m01);
+        dst.set(F32, 8, m02);
+        dst.set(F32, 12, m03);
+        dst.set(F32, 16, m10);
+        dst.set(F32, 20, m11);
+        dst.set(F32, 24, m12);
+        dst.set(F32, 28, m13);
+        dst.set(F32, 32, m20);
+        dst.set(F32, 36, m21);
+        dst.set(F32, 40, m22);
+        dst.set(F32, 44, m23);
+        dst.set(F32, 48, m30);
+        dst.set(F32, 52, m31);
+        dst.set(F32, 56, m32);
+        dst.set(F32, 60, m33);
     }
 }
@@ -0,0 +1,42 @@
+package net.flamgop.borked.math;
+
+/// What [Matrix4f] knows about its own structure, used to pick the cheapest correct inverse.
+///
+/// Kinds are ordered from most to least specific, a matrix is always allowed to be tracked as a less specific kind than it really is.
+public enum MatrixKind {
+    /// The identity matrix.
+    IDENTITY,
+    /// Identity upper 3x3, arbitrary translation.
+    TRANSLATION,
+    /// Orthonormal upper 3x3 (rotation, possibly a reflection) plus translation, bottom row `(0, 0, 0, 1)`.
+    RIGID,
+    /// Arbitrary upper 3x3 plus translation, bottom row `(0, 0, 0, 1)`.
+    AFFINE,
+    /// A symmetric perspective projection as built by [Matrix4f#perspective(float, float, float, float, boolean)].
+    PERSPECTIVE,
+    /// Nothing is known.
+    GENERAL,
+
+    ;
+
+    public boolean isAffine() {
+        return this.ordinal() <= AFFINE.ordinal();
+    }
+
+    /// @return The kind of `left * right`.
+    public static MatrixKind ofProduct(MatrixKind left, MatrixKind right) {
+        if (left == IDENTITY) return right;
+        if (right == IDENTITY) return left;
+        if (left.isAffine() && right.isAffine()) return left.ordinal() > right.ordinal() ? left : right;
+        return GENERAL;
+    }
+
+    /// @return The kind of a matrix of this kind after its translation has been changed.
+    MatrixKind withTranslation() {
+        return switch (this) {
+            case IDENTITY -> TRANSLATION;
+            case PERSPECTIVE -> GENERAL;
+            default -> this;
+        };
+    }
+}
@@ -8,33 +8,36 @@ import java.lang.foreign.ValueLayout;
 
 public class Quaternionf {
     public static final int BYTES = 4 * Float.BYTES;
-    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
 
-    private final MemorySegment memory;
+    private float x, y, z, w;
 
+    /// Quaternions are stored in plain fields on the heap, the arena is ignored and only kept for source compatibility.
     public Quaternionf(Arena arena) {
-        this.memory = arena.allocate(BYTES);
     }
 
     public Quaternionf() {
-        this(Arena.ofAuto());
     }
 
     public Quaternionf(Arena arena, float x, float y, float z, float w) {
-        this(arena);
-        this.x(x);
-        this.y(y);
-        this.z(z);
-        this.w(w);
+        this(x, y, z, w);
     }
 
     public Quaternionf(float x, float y, float z, float w) {
-        this(Arena.ofAuto(), x, y, z, w);
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
     }
 
     @ApiStatus.Internal // note: not bounds checked
     public float getUnsafe(int index) {
-        return memory.get(F32, (long) index * Float.BYTES);
+        return switch (index) {
+            case 0 -> x;
+            case 1 -> y;
+            case 2 -> z;
+            default -> w;
+        };
     }
 
     public float get(int index) {
@@ -44,7 +47,12 @@ public class Quaternionf {
 
     @ApiStatus.Internal // note: not bounds checked
     public void setUnsafe(int index, float value) {
-        memory.set(F32, (long) index * Float.BYTES, value);
+        switch (index) {
+            case 0 -> x = value;
+            case 1 -> y = value;
+            case 2 -> z = value;
+            default -> w = value;
+        }
     }
 
     public void set(int index, float value) {
@@ -53,39 +61,38 @@ public class Quaternionf {
     }
 
     public void x(float value) {
-        setUnsafe(0, value);
+        this.x = value;
     }
 
     public void y(float value) {
-        setUnsafe(1, value);
+        this.y = value;
     }
 
     public void z(float value) {
-        setUnsafe(2, value);
+        this.z = value;
     }
 
     public void w(float value) {
-        setUnsafe(3, value);
+        this.w = value;
     }
 
     public float x() {
-        return getUnsafe(0);
+        return x;
     }
 
     public float y() {
-        return getUnsafe(1);
+        return y;
     }
 
     public float z() {
-        return getUnsafe(2);
+        return z;
     }
 
     public float w() {
-        return getUnsafe(3);
+        return w;
     }
 
     public float normSquared() {
-        float w = w(), x = x(), y = y(), z = z();
         return w * w + x * x + y * y + z * z;
     }
 
@@ -104,4 +111,16 @@ public class Quaternionf {
     public Quaternionf normalize() {
         return this.scale(1f / norm());
     }
+
+    public void getToAddress(long ptr) {
+        MemorySegment segment = MemorySegment.ofAddress(ptr).reinterpret(BYTES);
+        getToMemorySegment(segment);
+    }
+
+    public void getToMemorySegment(MemorySegment dst) {
+        dst.set(F32, 0, x);
+        dst.set(F32, Float.BYTES, y);
+        dst.set(F32, 2 * Float.BYTES, z);
+        dst.set(F32, 3 * Float.BYTES, w);
+    }
 }
@@ -8,35 +8,33 @@ import java.lang.foreign.ValueLayout;
 
 public class Vector3f {
     public static final int BYTES = 3 * Float.BYTES;
-    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
 
-    private final MemorySegment memory;
+    private float x, y, z;
 
+    /// Vectors are stored in plain fields on the heap, the arena is ignored and only kept for source compatibility.
     public Vector3f(Arena arena) {
-        this.memory = arena.allocate(BYTES);
     }
 
     public Vector3f() {
-        this(Arena.ofAuto());
     }
 
     public Vector3f(Arena arena, float x, float y, float z) {
-        this(arena);
-        this.x(x);
-        this.y(y);
-        this.z(z);
+        this(x, y, z);
     }
 
     public Vector3f(float x, float y, float z) {
-        this(Arena.ofAuto(), x, y, z);
+        this.x = x;
+        this.y = y;
+        this.z = z;
     }
 
     public Vector3f(Arena arena, Vector3f vector3f) {
-        this(arena, vector3f.x(), vector3f.y(), vector3f.z());
+        this(vector3f);
     }
 
     public Vector3f(Vector3f vector3f) {
-        this(Arena.ofAuto(), vector3f);
+        this(vector3f.x, vector3f.y, vector3f.z);
     }
 
     public Vector3f(float v) {
@@ -45,7 +43,11 @@ public class Vector3f {
 
     @ApiStatus.Internal // note: not bounds checked
     public float getUnsafe(int index) {
-        return memory.get(F32, (long) index * Float.BYTES);
+        return switch (index) {
+            case 0 -> x;
+            case 1 -> y;
+            default -> z;
+        };
     }
 
     public float get(int index) {
@@ -59,12 +61,18 @@ public class Vector3f {
     }
 
     public void getToMemorySegment(MemorySegment dst) {
-        dst.copyFrom(memory);
+        dst.set(F32, 0, x);
+        dst.set(F32, Float.BYTES, y);
+        dst.set(F32, 2 * Float.BYTES, z);
     }
 
     @ApiStatus.Internal
     public void setUnsafe(int index, float value) {
-        memory.set(F32, (long) index * Float.BYTES, value);
+        switch (index) {
+            case 0 -> x = value;
+            case 1 -> y = value;
+            default -> z = value;
+        }
     }
 
     public void set(int index, float value) {
@@ -79,27 +87,27 @@ public class Vector3f {
     }
 
     public float x() {
-        return getUnsafe(0);
+        return x;
     }
 
     public float y() {
-        return getUnsafe(1);
+        return y;
     }
 
     public float z() {
-        return getUnsafe(2);
+        return z;
     }
 
     public void x(float value) {
-        setUnsafe(0, value);
+        this.x = value;
     }
 
     public void y(float value) {
-        setUnsafe(1, value);
+        this.y = value;
     }
 
     public void z(float value) {
-        setUnsafe(2, value);
+        this.z = value;
     }
 
     public float lengthSquared() {
@@ -180,6 +188,14 @@ public class Vector3f {
         return this;
     }
 
+    /// this = this + (b - this) * t
+    public Vector3f lerp(Vector3f b, float t) {
+        this.x(Math.fma(b.x() - this.x(), t, this.x()));
+        this.y(Math.fma(b.y() - this.y(), t, this.y()));
+        this.z(Math.fma(b.z() - this.z(), t, this.z()));
+        return this;
+    }
+
     public Vector3f negate() {
         return this.scale(-1f);
     }
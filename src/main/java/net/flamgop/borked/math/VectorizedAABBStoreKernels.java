@@ -0,0 +1,33 @@
+package net.flamgop.borked.math;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/// Vector API implementation of [AABBStoreKernels].
+/// @implNote Only referenced from [AABBStore] when `jdk.incubator.vector` is resolved, so this class must never be touched from anywhere else.
+final class VectorizedAABBStoreKernels {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    private VectorizedAABBStoreKernels() {}
+
+    static void overlapping(float[] minX, float[] minY, float[] minZ, float[] maxX, float[] maxY, float[] maxZ, int count,
+                            float qMinX, float qMinY, float qMinZ, float qMaxX, float qMaxY, float qMaxZ, long[] dst) {
+        // lane counts are powers of two no larger than 64, so a vector's mask never straddles two bitset words
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Float> overlap = FloatVector.fromArray(SPECIES, maxX, i).compare(VectorOperators.GT, qMinX)
+                    .and(FloatVector.fromArray(SPECIES, minX, i).compare(VectorOperators.LT, qMaxX))
+                    .and(FloatVector.fromArray(SPECIES, maxY, i).compare(VectorOperators.GT, qMinY))
+                    .and(FloatVector.fromArray(SPECIES, minY, i).compare(VectorOperators.LT, qMaxY))
+                    .and(FloatVector.fromArray(SPECIES, maxZ, i).compare(VectorOperators.GT, qMinZ))
+                    .and(FloatVector.fromArray(SPECIES, minZ, i).compare(VectorOperators.LT, qMaxZ));
+
+            if ((i & 63) == 0) dst[i >>> 6] = 0;
+            dst[i >>> 6] |= overlap.toLong() << (i & 63);
+        }
+        AABBStoreKernels.overlapping(minX, minY, minZ, maxX, maxY, maxZ, i, count, qMinX, qMinY, qMinZ, qMaxX, qMaxY, qMaxZ, dst);
+    }
+}
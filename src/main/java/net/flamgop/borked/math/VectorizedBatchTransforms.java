@@ -0,0 +1,169 @@
+package net.flamgop.borked.math;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/// Vector API implementation of [BatchTransforms].
+/// @implNote Only referenced from [BatchTransforms] when `jdk.incubator.vector` is resolved, so this class must never be touched from anywhere else.
+final class VectorizedBatchTransforms {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+    private static final FloatVector ONE = FloatVector.broadcast(SPECIES, 1f);
+
+    // AoS input is staged through a per-thread scratch array and gathered/scattered with a stride of 3
+    private static final int CHUNK_VERTICES = 1024;
+    private static final int[] STRIDE_3_INDICES = new int[SPECIES.length()];
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[CHUNK_VERTICES * 3]);
+
+    static {
+        for (int i = 0; i < STRIDE_3_INDICES.length; i++) STRIDE_3_INDICES[i] = i * 3;
+    }
+
+    private VectorizedBatchTransforms() {}
+
+    static void transformPositions(Matrix4f m, float[] xs, float[] ys, float[] zs, int offset, int count) {
+        boolean affine = m.m03() == 0f && m.m13() == 0f && m.m23() == 0f && m.m33() == 1f;
+        FloatVector m00 = FloatVector.broadcast(SPECIES, m.m00()), m01 = FloatVector.broadcast(SPECIES, m.m01()), m02 = FloatVector.broadcast(SPECIES, m.m02()), m03 = FloatVector.broadcast(SPECIES, m.m03());
+        FloatVector m10 = FloatVector.broadcast(SPECIES, m.m10()), m11 = FloatVector.broadcast(SPECIES, m.m11()), m12 = FloatVector.broadcast(SPECIES, m.m12()), m13 = FloatVector.broadcast(SPECIES, m.m13());
+        FloatVector m20 = FloatVector.broadcast(SPECIES, m.m20()), m21 = FloatVector.broadcast(SPECIES, m.m21()), m22 = FloatVector.broadcast(SPECIES, m.m22()), m23 = FloatVector.broadcast(SPECIES, m.m23());
+        FloatVector m30 = FloatVector.broadcast(SPECIES, m.m30()), m31 = FloatVector.broadcast(SPECIES, m.m31()), m32 = FloatVector.broadcast(SPECIES, m.m32()), m33 = FloatVector.broadcast(SPECIES, m.m33());
+
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            int o = offset + i;
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, o);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, o);
+            FloatVector z = FloatVector.fromArray(SPECIES, zs, o);
+
+            FloatVector rx = x.fma(m00, y.fma(m10, z.fma(m20, m30)));
+            FloatVector ry = x.fma(m01, y.fma(m11, z.fma(m21, m31)));
+            FloatVector rz = x.fma(m02, y.fma(m12, z.fma(m22, m32)));
+
+            if (!affine) {
+                FloatVector rw = x.fma(m03, y.fma(m13, z.fma(m23, m33)));
+                VectorMask<Float> divide = rw.compare(VectorOperators.NE, 1f).and(rw.compare(VectorOperators.NE, 0f));
+                FloatVector invW = ONE.div(rw);
+                rx = rx.blend(rx.mul(invW), divide);
+                ry = ry.blend(ry.mul(invW), divide);
+                rz = rz.blend(rz.mul(invW), divide);
+            }
+
+            rx.intoArray(xs, o);
+            ry.intoArray(ys, o);
+            rz.intoArray(zs, o);
+        }
+
+        BatchTransforms.scalarTransformPositions(m, xs, ys, zs, offset + i, count - i);
+    }
+
+    static void transformDirections(Matrix4f m, float[] xs, float[] ys, float[] zs, int offset, int count) {
+        FloatVector m00 = FloatVector.broadcast(SPECIES, m.m00()), m01 = FloatVector.broadcast(SPECIES, m.m01()), m02 = FloatVector.broadcast(SPECIES, m.m02());
+        FloatVector m10 = FloatVector.broadcast(SPECIES, m.m10()), m11 = FloatVector.broadcast(SPECIES, m.m11()), m12 = FloatVector.broadcast(SPECIES, m.m12());
+        FloatVector m20 = FloatVector.broadcast(SPECIES, m.m20()), m21 = FloatVector.broadcast(SPECIES, m.m21()), m22 = FloatVector.broadcast(SPECIES, m.m22());
+
+        int bound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < bound; i += SPECIES.length()) {
+            int o = offset + i;
+            FloatVector x = FloatVector.fromArray(SPECIES, xs, o);
+            FloatVector y = FloatVector.fromArray(SPECIES, ys, o);
+            FloatVector z = FloatVector.fromArray(SPECIES, zs, o);
+
+            FloatVector rx = x.fma(m00, y.fma(m10, z.mul(m20)));
+            FloatVector ry = x.fma(m01, y.fma(m11, z.mul(m21)));
+            FloatVector rz = x.fma(m02, y.fma(m12, z.mul(m22)));
+            FloatVector invLength = ONE.div(rx.mul(rx).add(ry.mul(ry)).add(rz.mul(rz)).sqrt());
+
+            rx.mul(invLength).intoArray(xs, o);
+            ry.mul(invLength).intoArray(ys, o);
+            rz.mul(invLength).intoArray(zs, o);
+        }
+
+        BatchTransforms.scalarTransformDirections(m, xs, ys, zs, offset + i, count - i);
+    }
+
+    static void transformPositions(Matrix4f m, MemorySegment src, MemorySegment dst, int count) {
+        transformAoS(m, src, dst, count, true);
+    }
+
+    static void transformDirections(Matrix4f m, MemorySegment src, MemorySegment dst, int count) {
+        transformAoS(m, src, dst, count, false);
+    }
+
+    private static void transformAoS(Matrix4f m, MemorySegment src, MemorySegment dst, int count, boolean positions) {
+        float[] scratch = SCRATCH.get();
+        for (int base = 0; base < count; base += CHUNK_VERTICES) {
+            int n = Math.min(CHUNK_VERTICES, count - base);
+            long byteOffset = (long) base * Vector3f.BYTES;
+            MemorySegment.copy(src, F32, byteOffset, scratch, 0, n * 3);
+
+            int bound = SPECIES.loopBound(n);
+            if (positions) transformInterleavedPositions(m, scratch, bound);
+            else transformInterleavedDirections(m, scratch, bound);
+
+            MemorySegment.copy(scratch, 0, dst, F32, byteOffset, bound * 3);
+            if (positions) BatchTransforms.scalarTransformPositions(m, src, byteOffset + (long) bound * Vector3f.BYTES, dst, byteOffset + (long) bound * Vector3f.BYTES, n - bound);
+            else BatchTransforms.scalarTransformDirections(m, src, byteOffset + (long) bound * Vector3f.BYTES, dst, byteOffset + (long) bound * Vector3f.BYTES, n - bound);
+        }
+    }
+
+    private static void transformInterleavedPositions(Matrix4f m, float[] xyz, int count) {
+        boolean affine = m.m03() == 0f && m.m13() == 0f && m.m23() == 0f && m.m33() == 1f;
+        FloatVector m00 = FloatVector.broadcast(SPECIES, m.m00()), m01 = FloatVector.broadcast(SPECIES, m.m01()), m02 = FloatVector.broadcast(SPECIES, m.m02()), m03 = FloatVector.broadcast(SPECIES, m.m03());
+        FloatVector m10 = FloatVector.broadcast(SPECIES, m.m10()), m11 = FloatVector.broadcast(SPECIES, m.m11()), m12 = FloatVector.broadcast(SPECIES, m.m12()), m13 = FloatVector.broadcast(SPECIES, m.m13());
+        FloatVector m20 = FloatVector.broadcast(SPECIES, m.m20()), m21 = FloatVector.broadcast(SPECIES, m.m21()), m22 = FloatVector.broadcast(SPECIES, m.m22()), m23 = FloatVector.broadcast(SPECIES, m.m23());
+        FloatVector m30 = FloatVector.broadcast(SPECIES, m.m30()), m31 = FloatVector.broadcast(SPECIES, m.m31()), m32 = FloatVector.broadcast(SPECIES, m.m32()), m33 = FloatVector.broadcast(SPECIES, m.m33());
+
+        for (int i = 0; i < count; i += SPECIES.length()) {
+            int o = i * 3;
+            FloatVector x = FloatVector.fromArray(SPECIES, xyz, o, STRIDE_3_INDICES, 0);
+            FloatVector y = FloatVector.fromArray(SPECIES, xyz, o + 1, STRIDE_3_INDICES, 0);
+            FloatVector z = FloatVector.fromArray(SPECIES, xyz, o + 2, STRIDE_3_INDICES, 0);
+
+            FloatVector rx = x.fma(m00, y.fma(m10, z.fma(m20, m30)));
+            FloatVector ry = x.fma(m01, y.fma(m11, z.fma(m21, m31)));
+            FloatVector rz = x.fma(m02, y.fma(m12, z.fma(m22, m32)));
+
+            if (!affine) {
+                FloatVector rw = x.fma(m03, y.fma(m13, z.fma(m23, m33)));
+                VectorMask<Float> divide = rw.compare(VectorOperators.NE, 1f).and(rw.compare(VectorOperators.NE, 0f));
+                FloatVector invW = ONE.div(rw);
+                rx = rx.blend(rx.mul(invW), divide);
+                ry = ry.blend(ry.mul(invW), divide);
+                rz = rz.blend(rz.mul(invW), divide);
+            }
+
+            rx.intoArray(xyz, o, STRIDE_3_INDICES, 0);
+            ry.intoArray(xyz, o + 1, STRIDE_3_INDICES, 0);
+            rz.intoArray(xyz, o + 2, STRIDE_3_INDICES, 0);
+        }
+    }
+
+    private static void transformInterleavedDirections(Matrix4f m, float[] xyz, int count) {
+        FloatVector m00 = FloatVector.broadcast(SPECIES, m.m00()), m01 = FloatVector.broadcast(SPECIES, m.m01()), m02 = FloatVector.broadcast(SPECIES, m.m02());
+        FloatVector m10 = FloatVector.broadcast(SPECIES, m.m10()), m11 = FloatVector.broadcast(SPECIES, m.m11()), m12 = FloatVector.broadcast(SPECIES, m.m12());
+        FloatVector m20 = FloatVector.broadcast(SPECIES, m.m20()), m21 = FloatVector.broadcast(SPECIES, m.m21()), m22 = FloatVector.broadcast(SPECIES, m.m22());
+
+        for (int i = 0; i < count; i += SPECIES.length()) {
+            int o = i * 3;
+            FloatVector x = FloatVector.fromArray(SPECIES, xyz, o, STRIDE_3_INDICES, 0);
+            FloatVector y = FloatVector.fromArray(SPECIES, xyz, o + 1, STRIDE_3_INDICES, 0);
+            FloatVector z = FloatVector.fromArray(SPECIES, xyz, o + 2, STRIDE_3_INDICES, 0);
+
+            FloatVector rx = x.fma(m00, y.fma(m10, z.mul(m20)));
+            FloatVector ry = x.fma(m01, y.fma(m11, z.mul(m21)));
+            FloatVector rz = x.fma(m02, y.fma(m12, z.mul(m22)));
+            FloatVector invLength = ONE.div(rx.mul(rx).add(ry.mul(ry)).add(rz.mul(rz)).sqrt());
+
+            rx.mul(invLength).intoArray(xyz, o, STRIDE_3_INDICES, 0);
+            ry.mul(invLength).intoArray(xyz, o + 1, STRIDE_3_INDICES, 0);
+            rz.mul(invLength).intoArray(xyz, o + 2, STRIDE_3_INDICES, 0);
+        }
+    }
+}
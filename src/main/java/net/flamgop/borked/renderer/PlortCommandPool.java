@@ -103,7 +103,9 @@ public class PlortCommandPool extends TrackedCloseable {
             LongBuffer pFence = stack.callocLong(1);
             VkUtil.check(vkCreateFence(device.handle(), fenceInfo, null, pFence));
             long fence = pFence.get(0);
-            VkUtil.check(vkQueueSubmit(queue, submitInfo, fence));
+            synchronized (device.queueLock()) {
+                VkUtil.check(vkQueueSubmit(queue, submitInfo, fence));
+            }
 
             VkUtil.check(vkWaitForFences(device.handle(), fence, true, Long.MAX_VALUE));
             vkDestroyFence(device.handle(), fence, null);
@@ -120,7 +122,9 @@ public class PlortCommandPool extends TrackedCloseable {
                     .pSignalSemaphores(stack.longs(signalSemaphore))
                     .pCommandBuffers(stack.pointers(commandBuffers[index]));
 
-            VkUtil.check(vkQueueSubmit(queue, submitInfo, fence));
+            synchronized (device.queueLock()) {
+                VkUtil.check(vkQueueSubmit(queue, submitInfo, fence));
+            }
         }
     }
 
@@ -134,7 +138,9 @@ public class PlortCommandPool extends TrackedCloseable {
                     .pSignalSemaphores(stack.longs(signalSemaphores))
                     .pCommandBuffers(stack.pointers(commandBuffers));
 
-            VkUtil.check(vkQueueSubmit(queue, submitInfo, fence));
+            synchronized (device.queueLock()) {
+                VkUtil.check(vkQueueSubmit(queue, submitInfo, fence));
+            }
         }
     }
 
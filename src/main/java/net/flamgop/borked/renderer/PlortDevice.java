@@ -96,6 +96,8 @@ public class PlortDevice extends TrackedCloseable {
     private final int graphicsQueueFamily, presentQueueFamily;
     private final VkQueue graphicsQueue, presentQueue;
     private final boolean identicalQueues;
+    // Vulkan needs queue access externally synchronized, and uploads may submit from loader threads
+    private final Object queueLock = new Object();
 
     public PlortDevice(VkPhysicalDevice device, long surface) {
         super();
@@ -258,7 +260,14 @@ public class PlortDevice extends TrackedCloseable {
     }
 
     public void waitIdle() {
-        vkDeviceWaitIdle(this.handle);
+        synchronized (queueLock) {
+            vkDeviceWaitIdle(this.handle);
+        }
+    }
+
+    /// @return The lock to hold around every submit to or present on this device's queues.
+    public Object queueLock() {
+        return queueLock;
     }
 
     public VkDevice handle() {
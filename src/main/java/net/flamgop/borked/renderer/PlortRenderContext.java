@@ -17,6 +17,7 @@ import org.slf4j.LoggerFactory;
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.lwjgl.vulkan.EXTDebugUtils.*;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
@@ -32,6 +33,9 @@ public class PlortRenderContext implements AutoCloseable {
     private final PlortSwapchain swapchain;
 
     private final PlortCommandPool drawCommandPool;
+    // command pools can't be shared between threads, so every thread that uploads gets its own
+    private final List<PlortCommandPool> uploadCommandPools = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<PlortCommandPool> uploadCommandPool = ThreadLocal.withInitial(this::createUploadCommandPool);
 
     private final long debugMessenger;
 
@@ -146,6 +150,19 @@ public class PlortRenderContext implements AutoCloseable {
         return this.drawCommandPool;
     }
 
+    /// @return A pool with one command buffer for [PlortCommandPool#transientSubmit], owned by the calling thread.
+    /// Unlike [#commandPool()] it is safe to use from any thread, including while a frame is being recorded.
+    public PlortCommandPool uploadCommandPool() {
+        return uploadCommandPool.get();
+    }
+
+    private PlortCommandPool createUploadCommandPool() {
+        PlortCommandPool pool = new PlortCommandPool(device, device.graphicsQueueFamily(), 1, PlortCommandPool.CommandBufferLevel.PRIMARY, VK_COMMAND_POOL_CREATE_RESET_COMMAND_BUFFER_BIT);
+        pool.label("Upload (" + Thread.currentThread().getName() + ")");
+        uploadCommandPools.add(pool);
+        return pool;
+    }
+
     private static final long FENCE_TIMEOUT = 10_000_000;
     public boolean waitForFence(int syncSlot) {
         int result = vkWaitForFences(device.handle(), swapchain.imageSyncObject(syncSlot).inFlightFence(), true, FENCE_TIMEOUT);
@@ -163,7 +180,9 @@ public class PlortRenderContext implements AutoCloseable {
                     .pCommandBuffers(stack.pointers(drawCommandPool.commandBuffer(imageIndex).address()))
                     .pSignalSemaphores(stack.longs(swapchain.imageSyncObject(syncSlot).renderFinishedSemaphore()));
 
-            VkUtil.check(vkQueueSubmit(device.graphicsQueue(), submitInfo, swapchain.imageSyncObject(syncSlot).inFlightFence()));
+            synchronized (device.queueLock()) {
+                VkUtil.check(vkQueueSubmit(device.graphicsQueue(), submitInfo, swapchain.imageSyncObject(syncSlot).inFlightFence()));
+            }
         }
     }
 
@@ -177,7 +196,10 @@ public class PlortRenderContext implements AutoCloseable {
                     .pSwapchains(stack.longs(swapchain.handle()))
                     .pImageIndices(stack.ints(imageIndex));
 
-            int result = vkQueuePresentKHR(device.presentQueue(), presentInfo);
+            int result;
+            synchronized (device.queueLock()) {
+                result = vkQueuePresentKHR(device.presentQueue(), presentInfo);
+            }
             if (result == VK_ERROR_OUT_OF_DATE_KHR || result == VK_SUBOPTIMAL_KHR) {
                 if (!window.minimized()) invalidateSwapchain();
                 else LOGGER.debug("Window is minimized, it doesn't make sense to recreate framebuffer yet.");
@@ -231,6 +253,7 @@ public class PlortRenderContext implements AutoCloseable {
     @Override
     public void close() {
         drawCommandPool.close();
+        for (PlortCommandPool pool : uploadCommandPools) pool.close();
         swapchain.close();
         window.close();
         allocator.close();
@@ -11,6 +11,7 @@ import net.flamgop.borked.renderer.util.VkUtil;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.util.vma.VmaAllocationCreateInfo;
+import org.lwjgl.util.vma.VmaAllocationInfo;
 import org.lwjgl.vulkan.*;
 
 import java.nio.LongBuffer;
@@ -98,6 +99,7 @@ public class PlortImage extends TrackedCloseable {
     private final PlortDevice device;
     private final PlortAllocator allocator;
     private final long image, allocation;
+    private final long memorySize;
     private final long view;
 
     private final int mipLevels, arrayLayers;
@@ -170,8 +172,10 @@ public class PlortImage extends TrackedCloseable {
 
             LongBuffer pImage = stack.callocLong(1);
             PointerBuffer pAlloc = stack.callocPointer(1);
-            VkUtil.check(vmaCreateImage(allocator.handle(), imageInfo, allocInfo, pImage, pAlloc, null));
+            VmaAllocationInfo allocationInfo = VmaAllocationInfo.calloc(stack);
+            VkUtil.check(vmaCreateImage(allocator.handle(), imageInfo, allocInfo, pImage, pAlloc, allocationInfo));
             this.image = pImage.get(0); this.allocation = pAlloc.get(0);
+            this.memorySize = allocationInfo.size();
 
             VkImageViewCreateInfo imageViewInfo = VkImageViewCreateInfo.calloc(stack)
                     .sType$Default()
@@ -262,6 +266,11 @@ public class PlortImage extends TrackedCloseable {
         return image;
     }
 
+    /// @return How many bytes of device memory the image occupies.
+    public long memorySize() {
+        return memorySize;
+    }
+
     public long view() {
         return view;
     }
@@ -6,6 +6,7 @@ import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
+import java.lang.foreign.MemorySegment;
 import java.nio.Buffer;
 
 public class MappedMemory implements AutoCloseable {
@@ -55,6 +56,13 @@ public class MappedMemory implements AutoCloseable {
         incrementPtr(Long.BYTES);
     }
 
+    /// @return A segment over the next `bytes` bytes of the mapping, the pointer is advanced past it.
+    public MemorySegment segment(long bytes) {
+        MemorySegment segment = MemorySegment.ofAddress(ptr).reinterpret(bytes);
+        incrementPtr(bytes);
+        return segment;
+    }
+
     public void copy(long src, long bytes) {
         MemoryUtil.memCopy(src, this.ptr, bytes);
         incrementPtr(bytes);
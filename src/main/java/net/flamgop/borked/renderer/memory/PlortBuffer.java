@@ -5,6 +5,7 @@ import net.flamgop.borked.renderer.util.VkUtil;
 import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.util.vma.VmaAllocationCreateInfo;
+import org.lwjgl.util.vma.VmaAllocationInfo;
 import org.lwjgl.vulkan.VkBufferCreateInfo;
 import org.lwjgl.vulkan.VkBufferDeviceAddressInfo;
 import org.lwjgl.vulkan.VkDebugUtilsObjectNameInfoEXT;
@@ -12,6 +13,7 @@ import org.lwjgl.vulkan.VkDescriptorBufferInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.foreign.MemorySegment;
 import java.nio.LongBuffer;
 
 import static org.lwjgl.util.vma.Vma.*;
@@ -28,8 +30,15 @@ public class PlortBuffer extends TrackedCloseable {
     private final long memory;
 
     private final long deviceAddress;
+    // 0 unless the buffer was created persistently mapped
+    private final long mappedAddress;
 
     public PlortBuffer(long size, int usageFlags, PlortAllocator allocator) {
+        this(size, usageFlags, allocator, false);
+    }
+
+    /// @param persistentlyMapped Keep the buffer mapped for its whole lifetime, see [#mapped()].
+    public PlortBuffer(long size, int usageFlags, PlortAllocator allocator, boolean persistentlyMapped) {
         super();
         this.size = size;
         this.allocator = allocator;
@@ -41,13 +50,16 @@ public class PlortBuffer extends TrackedCloseable {
                     .sharingMode(VK_SHARING_MODE_EXCLUSIVE);
 
             VmaAllocationCreateInfo allocInfo = VmaAllocationCreateInfo.calloc(stack)
-                    .usage(VMA_MEMORY_USAGE_CPU_TO_GPU);
+                    .usage(VMA_MEMORY_USAGE_CPU_TO_GPU)
+                    .flags(persistentlyMapped ? VMA_ALLOCATION_CREATE_MAPPED_BIT : 0);
 
             LongBuffer pBuffer = stack.callocLong(1);
             PointerBuffer pAllocation = stack.callocPointer(1);
-            VkUtil.check(vmaCreateBuffer(allocator.handle(), bufferInfo, allocInfo, pBuffer, pAllocation, null));
+            VmaAllocationInfo allocationInfo = VmaAllocationInfo.calloc(stack);
+            VkUtil.check(vmaCreateBuffer(allocator.handle(), bufferInfo, allocInfo, pBuffer, pAllocation, allocationInfo));
             this.handle = pBuffer.get(0);
             this.memory = pAllocation.get(0);
+            this.mappedAddress = persistentlyMapped ? allocationInfo.pMappedData() : 0;
 
             VkBufferDeviceAddressInfo addressInfo = VkBufferDeviceAddressInfo.calloc(stack)
                     .sType$Default()
@@ -84,6 +96,17 @@ public class PlortBuffer extends TrackedCloseable {
         vmaUnmapMemory(this.allocator.handle(), memory);
     }
 
+    /// @return The whole buffer, for a buffer created persistently mapped. Writes become visible to the GPU after [#flush(long, long)].
+    public MemorySegment mapped() {
+        if (mappedAddress == 0) throw new IllegalStateException("PlortBuffer " + Formats.address(handle) + " is not persistently mapped");
+        return MemorySegment.ofAddress(mappedAddress).reinterpret(size);
+    }
+
+    /// Makes host writes to `[offset, offset + size)` visible to the device. Does nothing on host coherent memory.
+    public void flush(long offset, long size) {
+        VkUtil.check(vmaFlushAllocation(this.allocator.handle(), memory, offset, size));
+    }
+
     public long handle() {
         return handle;
     }
@@ -109,7 +132,8 @@ public class PlortBuffer extends TrackedCloseable {
 
     @Override
     public void close() {
-        unmap();
+        // VMA unmaps persistently mapped allocations itself
+        if (mappedAddress == 0) unmap();
         vmaDestroyBuffer(allocator.handle(), handle, memory);
         super.close();
     }
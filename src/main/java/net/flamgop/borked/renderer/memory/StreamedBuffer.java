@@ -0,0 +1,132 @@
+package net.flamgop.borked.renderer.memory;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+/// An array of fixed size elements mirrored from the CPU into one persistently mapped [PlortBuffer] per frame in flight.
+///
+/// Writers mark the elements they change, and [#upload(MemorySegment, int, int)] copies only the runs of elements marked since
+/// that frame's buffer was last uploaded, flushing each run. A frame's buffer is only replaced, doubling in size, when that frame
+/// uploads more elements than it holds, so a buffer is never destroyed while a frame still in flight reads it.
+public class StreamedBuffer implements AutoCloseable {
+    private final PlortAllocator allocator;
+    private final int usageFlags;
+    private final long stride;
+    private final PlortBuffer[] buffers;
+    private final int[] capacities;
+    // per frame in flight, the elements marked since that frame's buffer was last uploaded
+    private final long[][] dirty;
+    private int dirtyLimit;
+
+    public StreamedBuffer(PlortAllocator allocator, int usageFlags, long stride, int initialCapacity, int framesInFlight) {
+        if (initialCapacity <= 0) throw new IllegalArgumentException("initialCapacity must be non-zero and positive.");
+        this.allocator = allocator;
+        this.usageFlags = usageFlags;
+        this.stride = stride;
+        this.buffers = new PlortBuffer[framesInFlight];
+        this.capacities = new int[framesInFlight];
+        this.dirty = new long[framesInFlight][bitsetLength(initialCapacity)];
+        this.dirtyLimit = dirty[0].length << 6;
+        for (int f = 0; f < framesInFlight; f++) {
+            buffers[f] = new PlortBuffer(initialCapacity * stride, usageFlags, allocator, true);
+            capacities[f] = initialCapacity;
+        }
+    }
+
+    private static int bitsetLength(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    /// @return The buffer the given frame should read, only valid until that frame's next upload.
+    public PlortBuffer buffer(int currentFrameModInFlight) {
+        return buffers[currentFrameModInFlight];
+    }
+
+    /// Marks element `i` for upload to every frame's buffer.
+    public void markDirty(int i) {
+        ensureDirty(i + 1);
+        for (long[] bits : dirty) bits[i >>> 6] |= 1L << i;
+    }
+
+    /// Marks the elements `[from, to)` for upload to every frame's buffer.
+    public void markDirty(int from, int to) {
+        if (from >= to) return;
+        ensureDirty(to);
+        for (int f = 0; f < dirty.length; f++) markRange(f, from, to);
+    }
+
+    /// Makes the given frame's buffer hold at least `count` elements. A replaced buffer gets every element re-uploaded.
+    public void ensureCapacity(int count, int currentFrameModInFlight) {
+        if (capacities[currentFrameModInFlight] >= count) return;
+        int capacity = Math.max(count, capacities[currentFrameModInFlight] * 2);
+        // this frame's fence has been waited on, nothing still reads the old buffer
+        buffers[currentFrameModInFlight].close();
+        buffers[currentFrameModInFlight] = new PlortBuffer(capacity * stride, usageFlags, allocator, true);
+        capacities[currentFrameModInFlight] = capacity;
+        ensureDirty(capacity);
+        markRange(currentFrameModInFlight, 0, capacity);
+    }
+
+    /// Brings the given frame's buffer up to date with the first `count` elements of `source`.
+    /// Marks on elements past `count` are kept for a later upload that covers them.
+    /// @return How many elements were copied.
+    public int upload(MemorySegment source, int count, int currentFrameModInFlight) {
+        ensureCapacity(count, currentFrameModInFlight);
+        PlortBuffer buffer = buffers[currentFrameModInFlight];
+        MemorySegment mapped = buffer.mapped();
+        long[] bits = dirty[currentFrameModInFlight];
+        int copied = 0;
+        for (int from = next(bits, 0, count, false); from < count; from = next(bits, from, count, false)) {
+            int to = next(bits, from, count, true);
+            MemorySegment.copy(source, from * stride, mapped, from * stride, (to - from) * stride);
+            buffer.flush(from * stride, (to - from) * stride);
+            copied += to - from;
+            from = to;
+        }
+        if (count > 0) {
+            Arrays.fill(bits, 0, Math.min(bits.length, (count - 1) >>> 6), 0);
+            if (((count - 1) >>> 6) < bits.length) bits[(count - 1) >>> 6] &= ~(-1L >>> -count);
+        }
+        return copied;
+    }
+
+    // the first element at or after `from` whose bit is set, or clear if `clear`, or `limit`
+    private static int next(long[] bits, int from, int limit, boolean clear) {
+        int words = Math.min(bits.length, bitsetLength(limit));
+        int w = from >>> 6;
+        if (w >= words) return clear ? from : limit;
+        long word = (clear ? ~bits[w] : bits[w]) & (-1L << from);
+        while (word == 0) {
+            // past the end of the bitset nothing is marked
+            if (++w == words) return clear ? Math.min(limit, words << 6) : limit;
+            word = clear ? ~bits[w] : bits[w];
+        }
+        return Math.min(limit, (w << 6) + Long.numberOfTrailingZeros(word));
+    }
+
+    private void markRange(int frame, int from, int to) {
+        long[] bits = dirty[frame];
+        int first = from >>> 6, last = (to - 1) >>> 6;
+        if (first == last) {
+            bits[first] |= (-1L << from) & (-1L >>> -to);
+            return;
+        }
+        bits[first] |= -1L << from;
+        Arrays.fill(bits, first + 1, last, -1L);
+        bits[last] |= -1L >>> -to;
+    }
+
+    private void ensureDirty(int count) {
+        if (count <= dirtyLimit) return;
+        int length = bitsetLength(count);
+        for (int f = 0; f < dirty.length; f++) {
+            if (dirty[f].length < length) dirty[f] = Arrays.copyOf(dirty[f], Math.max(length, dirty[f].length * 2));
+        }
+        dirtyLimit = dirty[0].length << 6;
+    }
+
+    @Override
+    public void close() {
+        for (PlortBuffer buffer : buffers) buffer.close();
+    }
+}
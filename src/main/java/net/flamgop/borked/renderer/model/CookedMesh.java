@@ -0,0 +1,42 @@
+package net.flamgop.borked.renderer.model;
+
+import net.flamgop.borked.culling.Occluder;
+import net.flamgop.borked.math.AABB;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.foreign.MemorySegment;
+
+/// A mesh after import and meshlet building, already in the layouts [PlortMesh] uploads.
+/// The segments belong to the [CookedModel] the mesh came from and are only valid until it's closed.
+/// @param name Used for the GPU buffers' debug labels.
+/// @param material Index into [CookedModel#materials()].
+/// @param aabb In model space, carries whether the mesh has collision.
+/// @param lodFirstMeshlet Per level of detail, where its meshlets start in `meshlets` and `bounds`.
+/// @param lodErrors Per level of detail, see [PlortMesh#lodError(int)].
+/// @param vertices [PlortMesh#VERTEX_SIZE] bytes per vertex.
+/// @param meshlets [PlortMesh#MESHLET_SIZE] bytes per meshlet, every level back to back from full detail down.
+/// @param bounds [PlortMesh#BOUNDS_SIZE] bytes per meshlet, in the same order as `meshlets`.
+public record CookedMesh(
+        String name,
+        int material,
+        AABB aabb,
+        int[] lodFirstMeshlet,
+        int[] lodMeshletCount,
+        float[] lodErrors,
+        MemorySegment vertices,
+        MemorySegment meshlets,
+        MemorySegment bounds,
+        @Nullable Occluder occluder
+) {
+    public int vertexCount() {
+        return Math.toIntExact(vertices.byteSize() / PlortMesh.VERTEX_SIZE);
+    }
+
+    public int meshletCount() {
+        return Math.toIntExact(meshlets.byteSize() / PlortMesh.MESHLET_SIZE);
+    }
+
+    public int lodCount() {
+        return lodErrors.length;
+    }
+}
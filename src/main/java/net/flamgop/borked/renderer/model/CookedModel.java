@@ -0,0 +1,524 @@
+package net.flamgop.borked.renderer.model;
+
+import net.flamgop.borked.ParallelRange;
+import net.flamgop.borked.culling.Occluder;
+import net.flamgop.borked.math.AABB;
+import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.math.Vector3f;
+import net.flamgop.borked.renderer.util.AssetCache;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.UnmodifiableView;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/// A model imported and built into the exact layouts [PlortModel] uploads, so it can be written to disk once and loaded with no per-vertex work.
+///
+/// [#cook(String)] runs the Assimp import and builds every mesh's meshlets, levels of detail and occluder, [#write(Path)] saves the result,
+/// and [#read(Path)] memory maps a saved file and hands out slices of it. Everything lives in the model's arena until [#close()].
+/// [#load(String)] keeps cooked models in the [AssetCache].
+///
+/// The file is a header of `magic, version, texture count, material count, mesh count`, then per texture `width, height, byte count, bytes`,
+/// per material `albedo, normal`, and per mesh
+/// `name length, name, material, has collision, aabb min, aabb max, lod count, (first meshlet, meshlet count, error) per lod,
+/// vertex count, occluder position count, occluder index count`, followed by its vertex, meshlet and bounds data as [PlortMesh] lays them
+/// out and its occluder's positions and indices. All in the host's byte order, which is what the GPU buffers want anyway.
+public final class CookedModel implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(CookedModel.class);
+
+    /// Appended to a model's path for the cooked file [#main(String[])] writes next to it.
+    public static final String EXTENSION = ".cooked";
+    // "PLRT" read in the host's byte order, so a file from a host with the other one is caught
+    private static final int MAGIC = 0x54524C50;
+    /// Bumped whenever the file layout or anything baked into it changes, the vertex and meshlet layouts or how levels of detail and
+    /// occluders are built. Part of the [AssetCache] key, so models cached by another version are cooked again.
+    public static final int VERSION = 1;
+
+    private static final int IMPORT_FLAGS = Assimp.aiProcess_Triangulate |
+            Assimp.aiProcess_GenSmoothNormals |
+            Assimp.aiProcess_CalcTangentSpace |
+            Assimp.aiProcess_JoinIdenticalVertices |
+            Assimp.aiProcess_ImproveCacheLocality |
+            Assimp.aiProcess_SortByPType |
+            Assimp.aiProcess_GenBoundingBoxes;
+    private static final String CACHE_KIND = "model";
+    // what the cache key covers besides the model's bytes and VERSION
+    private static final String SETTINGS = "assimp=" + Integer.toHexString(IMPORT_FLAGS)
+            + ",meshlet=" + PlortMesh.MAX_VERTICES_PER_MESHLET + "x" + PlortMesh.MAX_TRIANGLES_PER_MESHLET
+            + ",lods=" + PlortMesh.MAX_LODS;
+
+    /// Where [#cook(String)] builds meshes. Models are cooked on section loader threads during play, and a single mesh can take hundreds of
+    /// milliseconds, so this is kept apart from the common pool the per-frame work runs on.
+    public static final ForkJoinPool COOK_POOL = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1), pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Model Cooker " + thread.getPoolIndex());
+        return thread;
+    }, null, false);
+
+    private static final ValueLayout.OfInt I32 = ValueLayout.JAVA_INT_UNALIGNED;
+    private static final ValueLayout.OfLong I64 = ValueLayout.JAVA_LONG_UNALIGNED;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+
+    /// An embedded texture.
+    /// @param height 0 if `data` is a compressed image file of `width` bytes, otherwise `data` is `width * height` RGBA8 texels.
+    /// @param data Always native or mapped memory, so [MemorySegment#asByteBuffer()] gives the direct buffer stb and [PlortModel] want.
+    public record Texture(int width, int height, MemorySegment data) {
+        public boolean compressed() {
+            return height == 0;
+        }
+    }
+
+    /// @param albedo Index into [#textures()], -1 for none.
+    /// @param normal Index into [#textures()], -1 for none.
+    public record Material(int albedo, int normal) {}
+
+    private final Arena arena;
+    private final List<Texture> textures;
+    private final List<Material> materials;
+    private final List<CookedMesh> meshes;
+
+    private CookedModel(Arena arena, List<Texture> textures, List<Material> materials, List<CookedMesh> meshes) {
+        this.arena = arena;
+        this.textures = Collections.unmodifiableList(textures);
+        this.materials = Collections.unmodifiableList(materials);
+        this.meshes = Collections.unmodifiableList(meshes);
+    }
+
+    public @UnmodifiableView List<Texture> textures() {
+        return textures;
+    }
+
+    public @UnmodifiableView List<Material> materials() {
+        return materials;
+    }
+
+    public @UnmodifiableView List<CookedMesh> meshes() {
+        return meshes;
+    }
+
+    /// Reads the model at `path` from the [AssetCache], or cooks it and stores it there on a miss.
+    /// If there's no model at `path` but there's a cooked file next to it, that file is read instead, so a game can ship only cooked files.
+    public static CookedModel load(String path) {
+        Path source = Path.of(path);
+        Path cooked = Path.of(path + EXTENSION);
+        if (!Files.exists(source) && Files.exists(cooked)) {
+            try {
+                return read(cooked);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Couldn't read cooked model " + cooked, e);
+            }
+        }
+
+        AssetCache.Key key = null;
+        try {
+            key = AssetCache.key(CACHE_KIND, source, VERSION, SETTINGS);
+            Path entry = AssetCache.find(key);
+            if (entry != null) return read(entry);
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't read cached model {}, cooking it again: {}", path, e.getMessage());
+            if (key != null) AssetCache.evict(key);
+        }
+
+        long start = System.nanoTime();
+        CookedModel model = cook(path);
+        LOGGER.info("Cooked {} in {} ms on {} threads", path, (System.nanoTime() - start) / 1_000_000, COOK_POOL.getParallelism());
+        if (key != null) AssetCache.store(key, model::write);
+        return model;
+    }
+
+    /// [#cook(String, ForkJoinPool)] on [#COOK_POOL].
+    public static CookedModel cook(String path) {
+        return cook(path, COOK_POOL);
+    }
+
+    /// Imports the model at `path` with Assimp and builds all of its meshes, in parallel on `pool` or on the calling thread if it's null.
+    /// Nothing touches the GPU, [PlortModel] uploads the result in one go afterwards.
+    public static CookedModel cook(String path, @Nullable ForkJoinPool pool) {
+        AIScene scene = Assimp.aiImportFile(path, IMPORT_FLAGS);
+
+        if (scene == null || scene.mNumMeshes() == 0) throw new RuntimeException("bad model " + path);
+        AINode rootNode = scene.mRootNode();
+        if (rootNode == null) throw new NullPointerException("No nodes in scene");
+        if (scene.mMeshes() == null) throw new NullPointerException("No meshes in scene");
+        if (scene.mTextures() == null) throw new NullPointerException("No textures in scene");
+
+        // shared, the model may be handed to another thread to upload and close
+        Arena arena = Arena.ofShared();
+        try {
+            List<Texture> textures = new ArrayList<>();
+            Map<String, Integer> textureMap = new HashMap<>();
+            for (int i = 0; i < scene.mNumTextures(); i++) {
+                AITexture aiTexture = AITexture.create(scene.mTextures().get(i));
+
+                if (aiTexture.mHeight() == 0) { // compressed
+                    ByteBuffer data = aiTexture.pcDataCompressed();
+                    MemorySegment copy = arena.allocate(data.remaining()).copyFrom(MemorySegment.ofBuffer(data));
+                    textures.add(new Texture(data.remaining(), 0, copy));
+                } else {
+                    int width = aiTexture.mWidth();
+                    int height = aiTexture.mHeight();
+
+                    MemorySegment data = arena.allocate((long) width * height * 4);
+                    ByteBuffer rgba = data.asByteBuffer();
+                    AITexel.Buffer texels = aiTexture.pcData();
+
+                    texels.forEach(t -> {
+                        rgba.put(t.r());
+                        rgba.put(t.g());
+                        rgba.put(t.b());
+                        rgba.put(t.a());
+                    });
+
+                    textures.add(new Texture(width, height, data));
+                }
+                textureMap.put("*" + i, i);
+            }
+
+            List<Material> materials = new ArrayList<>();
+            try (AIString aiPath = AIString.calloc()) {
+                for (int i = 0; i < scene.mNumMaterials(); i++) {
+                    AIMaterial aiMaterial = AIMaterial.create(scene.mMaterials().get(i));
+                    int albedo = materialTexture(aiMaterial, Assimp.aiTextureType_DIFFUSE, aiPath, textureMap, "diffuse");
+                    int normal = materialTexture(aiMaterial, Assimp.aiTextureType_NORMALS, aiPath, textureMap, "normals");
+                    materials.add(new Material(albedo, normal));
+                }
+            }
+
+            // the scene is only read from here on, so its meshes are built in parallel and kept in traversal order
+            List<MeshSource> sources = new ArrayList<>();
+            traverseNode(scene, rootNode, sources);
+            CookedMesh[] meshes = new CookedMesh[sources.size()];
+            ParallelRange.run(pool, meshes.length, 1, (from, to) -> {
+                for (int i = from; i < to; i++) {
+                    MeshSource source = sources.get(i);
+                    meshes[i] = PlortMesh.cook(source.mesh(), source.hasCollision(), source.transform(), arena);
+                }
+            });
+            return new CookedModel(arena, textures, materials, List.of(meshes));
+        } catch (RuntimeException e) {
+            arena.close();
+            throw e;
+        } finally {
+            Assimp.aiFreeScene(scene);
+        }
+    }
+
+    private static int materialTexture(AIMaterial material, int type, AIString path, Map<String, Integer> textureMap, String typeName) {
+        int r = Assimp.aiGetMaterialTexture(material, type, 0, path, (IntBuffer) null, null, null, null, null, null);
+        if (r == Assimp.aiReturn_SUCCESS) return textureMap.getOrDefault(path.dataString(), -1);
+        if (r != Assimp.aiReturn_FAILURE) LOGGER.error("aiGetMaterialTexture({}) returned {}", typeName, r);
+        return -1;
+    }
+
+    // a mesh as placed by one node, everything PlortMesh.cook needs
+    private record MeshSource(AIMesh mesh, boolean hasCollision, Matrix4f transform) {}
+
+    private static void traverseNode(AIScene scene, AINode node, List<MeshSource> meshes) {
+        boolean noCollision = false;
+        AIMetaData meta = node.mMetadata();
+        if (meta != null) {
+            // TODO: determine fi the metadata has a no_collision tag on this node.
+            int count = meta.mNumProperties();
+            AIString.Buffer keys = meta.mKeys();
+            AIMetaDataEntry.Buffer values = meta.mValues();
+
+            for (int i = 0; i < count; i++) {
+                String key = keys.get(i).dataString();
+                if (key.equals("no_collision")) {
+                    AIMetaDataEntry entry = values.get(i);
+                    LOGGER.debug("Found a no_collision tag!");
+
+                    switch (entry.mType()) {
+                        case 0 -> { // BOOL
+                            noCollision = entry.mData(1).get() != 0;
+                        }
+                        case 1 -> { // INT32
+                            noCollision = entry.mData(4).getInt(0) != 0;
+                        }
+                    }
+                    LOGGER.debug("Set noCollision to {}", noCollision);
+                    break;
+                }
+            }
+        }
+
+        IntBuffer meshIndices = node.mMeshes();
+        if (meshIndices != null) {
+            for (int i = 0; i < meshIndices.capacity(); i++) {
+                AIMesh mesh = AIMesh.create(scene.mMeshes().get(meshIndices.get(i)));
+                meshes.add(new MeshSource(mesh, !noCollision, Matrix4f.fromAssimp(node.mTransformation())));
+            }
+        }
+
+        PointerBuffer children = node.mChildren();
+        if (children != null) {
+            for (int i = 0; i < node.mNumChildren(); i++) {
+                traverseNode(scene, AINode.create(children.get(i)), meshes);
+            }
+        }
+    }
+
+    /// Writes the model to `path`, replacing whatever is there.
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel);
+        }
+    }
+
+    /// Writes the model to `channel` from its current position.
+    public void write(FileChannel channel) throws IOException {
+        try (Arena scratch = Arena.ofConfined()) {
+            Writer out = new Writer(channel, scratch.allocate(64 * 1024));
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(textures.size());
+            out.putInt(materials.size());
+            out.putInt(meshes.size());
+
+            for (Texture texture : textures) {
+                out.putInt(texture.width());
+                out.putInt(texture.height());
+                out.putLong(texture.data().byteSize());
+                out.put(texture.data());
+            }
+
+            for (Material material : materials) {
+                out.putInt(material.albedo());
+                out.putInt(material.normal());
+            }
+
+            for (CookedMesh mesh : meshes) {
+                byte[] name = mesh.name().getBytes(StandardCharsets.UTF_8);
+                out.putInt(name.length);
+                out.put(MemorySegment.ofArray(name));
+                out.putInt(mesh.material());
+                out.putInt(mesh.aabb().hasCollision() ? 1 : 0);
+                putVector(out, mesh.aabb().min());
+                putVector(out, mesh.aabb().max());
+                out.putInt(mesh.lodCount());
+                for (int lod = 0; lod < mesh.lodCount(); lod++) {
+                    out.putInt(mesh.lodFirstMeshlet()[lod]);
+                    out.putInt(mesh.lodMeshletCount()[lod]);
+                    out.putFloat(mesh.lodErrors()[lod]);
+                }
+                out.putInt(mesh.vertexCount());
+                Occluder occluder = mesh.occluder();
+                out.putInt(occluder != null ? occluder.positions().length : 0);
+                out.putInt(occluder != null ? occluder.indices().length : 0);
+
+                out.put(mesh.vertices());
+                out.put(mesh.meshlets());
+                out.put(mesh.bounds());
+                if (occluder != null) {
+                    out.put(MemorySegment.ofArray(occluder.positions()));
+                    out.put(MemorySegment.ofArray(occluder.indices()));
+                }
+            }
+            out.flush();
+        }
+    }
+
+    private static void putVector(Writer out, Vector3f vector) throws IOException {
+        out.putFloat(vector.x());
+        out.putFloat(vector.y());
+        out.putFloat(vector.z());
+    }
+
+    /// Memory maps a file written by [#write(Path)]. The model's textures and mesh data are slices of the mapping, nothing is copied
+    /// but the small per-mesh tables and occluders.
+    /// @throws IOException If the file can't be read, is truncated, or is from another [#VERSION] or byte order.
+    public static CookedModel read(Path path) throws IOException {
+        Arena arena = Arena.ofShared();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Reader in = new Reader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena));
+            int magic = in.nextInt();
+            if (magic != MAGIC) throw new IOException(magic == Integer.reverseBytes(MAGIC) ? "wrong byte order" : "not a cooked model");
+            int version = in.nextInt();
+            if (version != VERSION) throw new IOException("version " + version + ", expected " + VERSION);
+            int textureCount = in.nextInt();
+            int materialCount = in.nextInt();
+            int meshCount = in.nextInt();
+
+            List<Texture> textures = new ArrayList<>(textureCount);
+            for (int i = 0; i < textureCount; i++) {
+                int width = in.nextInt();
+                int height = in.nextInt();
+                textures.add(new Texture(width, height, in.next(in.nextLong())));
+            }
+
+            List<Material> materials = new ArrayList<>(materialCount);
+            for (int i = 0; i < materialCount; i++) materials.add(new Material(in.nextInt(), in.nextInt()));
+
+            List<CookedMesh> meshes = new ArrayList<>(meshCount);
+            for (int i = 0; i < meshCount; i++) {
+                String name = new String(in.next(in.nextInt()).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+                int material = in.nextInt();
+                boolean hasCollision = in.nextInt() != 0;
+                Vector3f min = new Vector3f(in.nextFloat(), in.nextFloat(), in.nextFloat());
+                Vector3f max = new Vector3f(in.nextFloat(), in.nextFloat(), in.nextFloat());
+                int lodCount = in.nextInt();
+                int[] lodFirstMeshlet = new int[lodCount];
+                int[] lodMeshletCount = new int[lodCount];
+                float[] lodErrors = new float[lodCount];
+                int meshletCount = 0;
+                for (int lod = 0; lod < lodCount; lod++) {
+                    lodFirstMeshlet[lod] = in.nextInt();
+                    lodMeshletCount[lod] = in.nextInt();
+                    lodErrors[lod] = in.nextFloat();
+                    meshletCount += lodMeshletCount[lod];
+                }
+                int vertexCount = in.nextInt();
+                int occluderPositions = in.nextInt();
+                int occluderIndices = in.nextInt();
+
+                MemorySegment vertices = in.next((long) vertexCount * PlortMesh.VERTEX_SIZE);
+                MemorySegment meshlets = in.next((long) meshletCount * PlortMesh.MESHLET_SIZE);
+                MemorySegment bounds = in.next((long) meshletCount * PlortMesh.BOUNDS_SIZE);
+                Occluder occluder = null;
+                if (occluderIndices > 0) {
+                    float[] positions = in.next((long) occluderPositions * Float.BYTES).toArray(F32);
+                    int[] indices = in.next((long) occluderIndices * Integer.BYTES).toArray(I32);
+                    occluder = new Occluder(positions, indices);
+                }
+                meshes.add(new CookedMesh(name, material, new AABB(min, max, hasCollision), lodFirstMeshlet, lodMeshletCount, lodErrors,
+                        vertices, meshlets, bounds, occluder));
+            }
+            return new CookedModel(arena, textures, materials, meshes);
+        } catch (IOException | RuntimeException e) {
+            arena.close();
+            if (e instanceof IndexOutOfBoundsException) throw new IOException("truncated", e);
+            throw e;
+        }
+    }
+
+    /// Cooks every model given on the command line into a file next to it, so a game can ship them without the source models.
+    public static void main(String[] args) throws IOException {
+        for (String path : args) {
+            long start = System.nanoTime();
+            try (CookedModel model = cook(path)) {
+                model.write(Path.of(path + EXTENSION));
+            }
+            LOGGER.info("Cooked {} in {} ms on {} threads", path, (System.nanoTime() - start) / 1_000_000, COOK_POOL.getParallelism());
+        }
+    }
+
+    /// Frees the model's memory or unmaps its file, invalidating every segment it handed out.
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // sequential reads from the mapped file, throwing IndexOutOfBoundsException past its end
+    private static final class Reader {
+        private final MemorySegment file;
+        private long offset;
+
+        private Reader(MemorySegment file) {
+            this.file = file;
+        }
+
+        private int nextInt() {
+            int value = file.get(I32, offset);
+            offset += Integer.BYTES;
+            return value;
+        }
+
+        private long nextLong() {
+            long value = file.get(I64, offset);
+            offset += Long.BYTES;
+            return value;
+        }
+
+        private float nextFloat() {
+            float value = file.get(F32, offset);
+            offset += Float.BYTES;
+            return value;
+        }
+
+        private MemorySegment next(long bytes) {
+            MemorySegment slice = file.asSlice(offset, bytes);
+            offset += bytes;
+            return slice;
+        }
+    }
+
+    // buffers the small header fields, bulk data is written straight from its segment
+    private static final class Writer {
+        private final FileChannel channel;
+        private final MemorySegment buffer;
+        private long offset;
+
+        private Writer(FileChannel channel, MemorySegment buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+
+        private void putInt(int value) throws IOException {
+            reserve(Integer.BYTES);
+            buffer.set(I32, offset, value);
+            offset += Integer.BYTES;
+        }
+
+        private void putLong(long value) throws IOException {
+            reserve(Long.BYTES);
+            buffer.set(I64, offset, value);
+            offset += Long.BYTES;
+        }
+
+        private void putFloat(float value) throws IOException {
+            reserve(Float.BYTES);
+            buffer.set(F32, offset, value);
+            offset += Float.BYTES;
+        }
+
+        private void put(MemorySegment data) throws IOException {
+            flush();
+            if (data.isNative()) {
+                writeFully(data.asByteBuffer());
+                return;
+            }
+            // heap arrays go through the buffer, the channel would copy them into a temporary direct buffer anyway
+            for (long from = 0; from < data.byteSize(); ) {
+                long bytes = Math.min(buffer.byteSize(), data.byteSize() - from);
+                MemorySegment.copy(data, from, buffer, 0, bytes);
+                offset = bytes;
+                flush();
+                from += bytes;
+            }
+        }
+
+        private void reserve(long bytes) throws IOException {
+            if (offset + bytes > buffer.byteSize()) flush();
+        }
+
+        private void flush() throws IOException {
+            writeFully(buffer.asSlice(0, offset).asByteBuffer());
+            offset = 0;
+        }
+
+        private void writeFully(ByteBuffer data) throws IOException {
+            while (data.hasRemaining()) channel.write(data);
+        }
+    }
+}
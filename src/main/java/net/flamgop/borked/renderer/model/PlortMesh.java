@@ -1,10 +1,13 @@
 package net.flamgop.borked.renderer.model;
 
+import net.flamgop.borked.culling.Occluder;
 import net.flamgop.borked.math.AABB;
+import net.flamgop.borked.math.Frustum;
 import net.flamgop.borked.math.Matrix4f;
 import net.flamgop.borked.math.Vector3f;
 import net.flamgop.borked.renderer.PlortCommandBuffer;
 import net.flamgop.borked.renderer.memory.*;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.assimp.*;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
@@ -16,9 +19,16 @@ import org.lwjgl.vulkan.VkWriteDescriptorSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.lwjgl.vulkan.VK14.*;
 
@@ -31,12 +41,79 @@ public class PlortMesh extends TrackedCloseable {
     public static final int VERTEX_SIZE = 3 * Float.BYTES + 3 * Float.BYTES + 4 * Float.BYTES + 2 * Float.BYTES;
     public static final int BOUNDS_SIZE = 4 * Float.BYTES + 4 * Float.BYTES + 4 * Float.BYTES;
 
+    /// The most levels of detail a mesh gets, including the full detail one.
+    public static final int MAX_LODS = 4;
+    // each level aims for this fraction of the previous level's triangles
+    private static final float LOD_REDUCTION = 0.5f;
+    // the most a level may deviate from the one before it, relative to the mesh's extent
+    private static final float[] LOD_TARGET_ERRORS = {0f, 0.01f, 0.02f, 0.05f};
+    // a level that keeps more than this fraction of the previous level's triangles isn't worth drawing
+    private static final float LOD_MIN_GAIN = 0.85f;
+    // meshes whose coarsest level is at most this many triangles and whose bounds have a face at least this large, in model space
+    // units squared, are rasterized for occlusion culling. smaller ones hide little, bigger ones cost too much to rasterize
+    private static final int OCCLUDER_MAX_TRIANGLES = 1024;
+    private static final float OCCLUDER_MIN_AREA = 4f;
+
+    private static final ValueLayout.OfInt U32 = ValueLayout.JAVA_INT_UNALIGNED;
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+    private static final ValueLayout.OfLong I64 = ValueLayout.JAVA_LONG_UNALIGNED;
+
+    // where each attribute starts in a vertex, and the size of one x, y, z
+    private static final int POSITION_OFFSET = 0, NORMAL_OFFSET = 12, TANGENT_OFFSET = 24, TEXCOORD_OFFSET = 40;
+    private static final int VECTOR_SIZE = 3 * Float.BYTES;
+
     private final AABB aabb;
     private final PlortBuffer vertexBuffer, meshBuffer, boundsBuffer;
     private final int meshletCount;
-
-    public PlortMesh(PlortAllocator allocator, AIMesh mesh, boolean hasCollision, Matrix4f transform) {
+    // per level of detail, where its meshlets start in the mesh and bounds buffers
+    private final int[] lodFirstMeshlet, lodMeshletCount;
+    private final float[] lodErrors;
+    // x, y, z, radius per meshlet, a CPU copy of the bounds buffer's spheres for culling
+    private final float[] meshletSpheres;
+    private final @Nullable Occluder occluder;
+
+    /// Uploads a mesh built by [#cook(AIMesh, boolean, Matrix4f, Arena)], possibly read straight out of a mapped [CookedModel] file.
+    /// Nothing is rebuilt, the vertex, meshlet and bounds data is copied into the GPU buffers as is.
+    public PlortMesh(PlortAllocator allocator, CookedMesh mesh) {
         super();
+        this.aabb = mesh.aabb();
+        this.occluder = mesh.occluder();
+        this.lodFirstMeshlet = mesh.lodFirstMeshlet();
+        this.lodMeshletCount = mesh.lodMeshletCount();
+        this.lodErrors = mesh.lodErrors();
+        this.meshletCount = mesh.meshletCount();
+
+        LOGGER.debug("Mesh has {} vertices and {} meshlets in {} LODs", mesh.vertexCount(), meshletCount, lodErrors.length);
+
+        this.vertexBuffer = new PlortBuffer(mesh.vertices().byteSize(), BufferUsage.STORAGE_BUFFER_BIT , allocator);
+        this.meshBuffer = new PlortBuffer(mesh.meshlets().byteSize(), BufferUsage.STORAGE_BUFFER_BIT , allocator);
+        this.boundsBuffer = new PlortBuffer(mesh.bounds().byteSize(), BufferUsage.STORAGE_BUFFER_BIT , allocator);
+
+        vertexBuffer.label(mesh.name() + " Vertex");
+        meshBuffer.label(mesh.name() + " Mesh");
+        boundsBuffer.label(mesh.name() + " Bounds");
+
+        upload(vertexBuffer, mesh.vertices());
+        upload(meshBuffer, mesh.meshlets());
+        upload(boundsBuffer, mesh.bounds());
+
+        // each bounds record starts with the meshlet's sphere
+        this.meshletSpheres = new float[meshletCount * 4];
+        for (int i = 0; i < meshletCount; i++) {
+            MemorySegment.copy(mesh.bounds(), F32, (long) i * BOUNDS_SIZE, meshletSpheres, i * 4, 4);
+        }
+    }
+
+    private static void upload(PlortBuffer buffer, MemorySegment data) {
+        try (MappedMemory mem = buffer.map()) {
+            MemorySegment.copy(data, 0, mem.segment(data.byteSize()), 0, data.byteSize());
+        }
+    }
+
+    /// Builds everything [#PlortMesh(PlortAllocator, CookedMesh)] uploads from `mesh`: its vertices moved into model space by `transform`
+    /// in the [#VERTEX_SIZE] layout, meshlets and bounds for every level of detail, the AABB and the occluder. The data is allocated in `arena`.
+    /// Only reads `mesh` and touches no GPU state, so meshes can be cooked concurrently as long as `arena` is shared.
+    static CookedMesh cook(AIMesh mesh, boolean hasCollision, Matrix4f transform, Arena arena) {
         Matrix4f normalMatrix = new Matrix4f(transform).invert().transpose();
 
         int numVertices = mesh.mNumVertices();
@@ -58,175 +135,327 @@ public class PlortMesh extends TrackedCloseable {
         }
         indices.flip();
 
-        int worstCaseMeshletCount = Math.toIntExact(MeshOptimizer.meshopt_buildMeshletsBound(numIndices, MAX_VERTICES_PER_MESHLET, MAX_TRIANGLES_PER_MESHLET));
-
-        MeshoptMeshlet.Buffer meshlets = MeshoptMeshlet.calloc(worstCaseMeshletCount);
-        IntBuffer meshletVertices = MemoryUtil.memAllocInt(MAX_VERTICES_PER_MESHLET * worstCaseMeshletCount);
-        ByteBuffer meshletTriangles = MemoryUtil.memAlloc(MAX_TRIANGLES_PER_MESHLET * 3 * worstCaseMeshletCount);
-
         FloatBuffer vertices = MemoryUtil.memAllocFloat(numVertices * 3);
-        for (int i = 0; i < numVertices; i++) {
-            AIVector3D v = positions.get(i);
-            Vector3f position = transform.transform(new Vector3f(v.x(), v.y(), v.z()));
-            vertices.put(position.x()).put(position.y()).put(position.z());
-        }
-        vertices.flip();
-
-        meshletCount = Math.toIntExact(MeshOptimizer.meshopt_buildMeshlets(meshlets, meshletVertices, meshletTriangles, indices, vertices, numVertices, 12, MAX_VERTICES_PER_MESHLET, MAX_TRIANGLES_PER_MESHLET, 0.0f));
-
-        LOGGER.debug("Mesh has {} vertices, {} triangles, and {} meshlets", numVertices, numFaces, meshletCount);
-
-        this.vertexBuffer = new PlortBuffer((long) numVertices * VERTEX_SIZE, BufferUsage.STORAGE_BUFFER_BIT , allocator);
-        this.meshBuffer = new PlortBuffer((long) meshletCount * MESHLET_SIZE, BufferUsage.STORAGE_BUFFER_BIT , allocator);
-        this.boundsBuffer = new PlortBuffer((long) meshletCount * BOUNDS_SIZE, BufferUsage.STORAGE_BUFFER_BIT , allocator);
-
-        vertexBuffer.label(mesh.mName().dataString() + " Vertex");
-        meshBuffer.label(mesh.mName().dataString() + " Mesh");
-        boundsBuffer.label(mesh.mName().dataString() + " Bounds");
-
-        try (MappedMemory mem = vertexBuffer.map()) {
-            for (int i = 0; i < numVertices; i++) {
-                mem.putFloat(vertices.get(i*3));
-                mem.putFloat(vertices.get(i*3+1));
-                mem.putFloat(vertices.get(i*3+2));
-                if (normals != null) {
-                    AIVector3D n = normals.get(i);
-                    Vector3f normal = normalMatrix.transformDirection(new Vector3f(n.x(), n.y(), n.z()));
-                    mem.putVector3f(normal);
-
-                    if (tangents != null && bitangents != null) {
-                        AIVector3D tan = tangents.get(i);
-                        Vector3f tangent = normalMatrix.transformDirection(new Vector3f(tan.x(), tan.y(), tan.z()));
-
-                        mem.putVector3f(tangent);
-
-                        AIVector3D bitangent = bitangents.get(i);
-
-                        Vector3f b = normalMatrix.transformDirection(new Vector3f(bitangent.x(), bitangent.y(), bitangent.z()));
-
-                        float sign = normal.cross(tangent).dot(b) < 0f ? -1f : 1f;
-                        mem.putFloat(sign);
-                    } else {
-                        LOGGER.warn("Null tangents!");
-                        mem.putFloat(0);
-                        mem.putFloat(0);
-                        mem.putFloat(0);
-                        mem.putFloat(1);
-                    }
-                } else {
-                    LOGGER.warn("Null normals!");
-                    mem.putFloat(0);
-                    mem.putFloat(0);
-                    mem.putFloat(0);
-                    mem.putFloat(0);
-                    mem.putFloat(0);
-                    mem.putFloat(0);
-                    mem.putFloat(1);
-                }
-                if (texcoords != null) {
-                    AIVector3D texcoord = texcoords.get(i);
-                    mem.putFloat(texcoord.x());
-                    mem.putFloat(texcoord.y());
-                } else {
-                    mem.putFloat(0);
-                    mem.putFloat(0);
-                }
-            }
+        transform.transformPositions(vectorSegment(positions, numVertices), MemorySegment.ofBuffer(vertices), numVertices);
+
+        List<Meshlets> lods = new ArrayList<>(MAX_LODS);
+        int[] coarsestIndices = buildLods(indices, vertices, numVertices, lods);
+        int lodCount = lods.size();
+        int[] lodFirstMeshlet = new int[lodCount];
+        int[] lodMeshletCount = new int[lodCount];
+        float[] lodErrors = new float[lodCount];
+        int meshletCount = 0;
+        for (int lod = 0; lod < lodCount; lod++) {
+            lodFirstMeshlet[lod] = meshletCount;
+            lodMeshletCount[lod] = lods.get(lod).count();
+            lodErrors[lod] = lods.get(lod).error();
+            meshletCount += lods.get(lod).count();
         }
 
-        try (MappedMemory mem = meshBuffer.map()) {
-            for (int i = 0; i < meshletCount; i++) {
-                MeshoptMeshlet meshlet = meshlets.get(i);
+        LOGGER.debug("Cooked mesh has {} vertices, {} triangles, and {} meshlets in {} LODs", numVertices, numFaces, meshletCount, lodCount);
 
-                for (int v = 0; v < meshlet.vertex_count(); v++) {
-                    int vertexIndex = meshletVertices.get(meshlet.vertex_offset() + v);
-                    mem.putInt(vertexIndex);
-                }
+        MemorySegment vertexData = arena.allocate((long) numVertices * VERTEX_SIZE, Long.BYTES);
+        MemorySegment meshletData = arena.allocate((long) meshletCount * MESHLET_SIZE, Long.BYTES);
+        MemorySegment boundsData = arena.allocate((long) meshletCount * BOUNDS_SIZE, Long.BYTES);
 
-                for (int v = meshlet.vertex_count(); v < MAX_VERTICES_PER_MESHLET; v++) {
-                    mem.putInt(0);
-                }
+        FloatBuffer transformedNormals = normals != null ? transformDirections(normalMatrix, normals, numVertices) : null;
+        FloatBuffer transformedTangents = tangents != null ? transformDirections(normalMatrix, tangents, numVertices) : null;
+        FloatBuffer transformedBitangents = bitangents != null ? transformDirections(normalMatrix, bitangents, numVertices) : null;
 
-                for (int t = 0; t < meshlet.triangle_count() * 3; t++) {
-                    byte idx = meshletTriangles.get(meshlet.triangle_offset() + t);
-                    mem.putInt(idx & 0xFF);
-                }
+        if (transformedNormals == null) LOGGER.warn("Null normals!");
+        else if (transformedTangents == null || transformedBitangents == null) LOGGER.warn("Null tangents!");
+        packVertices(MemorySegment.ofBuffer(vertices), segmentOrNull(transformedNormals), segmentOrNull(transformedTangents), segmentOrNull(transformedBitangents),
+                texcoords != null ? vectorSegment(texcoords, numVertices) : null, numVertices, vertexData);
 
-                for (int t = meshlet.triangle_count() * 3; t < 3 * MAX_TRIANGLES_PER_MESHLET; t++) {
-                    mem.putInt(0);
-                }
+        if (transformedNormals != null) MemoryUtil.memFree(transformedNormals);
+        if (transformedTangents != null) MemoryUtil.memFree(transformedTangents);
+        if (transformedBitangents != null) MemoryUtil.memFree(transformedBitangents);
 
-                mem.putInt(meshlet.vertex_count());
-                mem.putInt(meshlet.triangle_count() * 3);
-
-                mem.putLong(0);
-            }
+        for (int lod = 0; lod < lodCount; lod++) {
+            Meshlets m = lods.get(lod);
+            packMeshlets(m.meshlets(), m.count(), m.vertices(), m.triangles(), meshletData.asSlice((long) lodFirstMeshlet[lod] * MESHLET_SIZE));
         }
 
-        try (MappedMemory mem = boundsBuffer.map()) {
-            for (int i = 0; i < meshletCount; i++) {
+        FloatBuffer out = boundsData.asByteBuffer().order(ByteOrder.nativeOrder()).asFloatBuffer();
+        for (Meshlets m : lods) {
+            for (int i = 0; i < m.count(); i++) {
                 try (MemoryStack stack = MemoryStack.stackPush()) {
-                    MeshoptMeshlet meshlet = meshlets.get(i);
+                    MeshoptMeshlet meshlet = m.meshlets().get(i);
 
                     MeshoptBounds bounds = MeshoptBounds.calloc(stack);
-                    MeshOptimizer.meshopt_computeMeshletBounds(meshletVertices.slice(meshlet.vertex_offset(), meshlet.vertex_count()), meshletTriangles.slice(meshlet.triangle_offset(), meshlet.triangle_count()), vertices, numVertices, 12, bounds);
-
-                    mem.putFloat(bounds.center(0));
-                    mem.putFloat(bounds.center(1));
-                    mem.putFloat(bounds.center(2));
-                    mem.putFloat(bounds.radius());
-
-                    mem.putFloat(bounds.cone_apex(0));
-                    mem.putFloat(bounds.cone_apex(1));
-                    mem.putFloat(bounds.cone_apex(2));
-                    mem.putFloat(bounds.cone_cutoff());
-
-                    mem.putFloat(bounds.cone_axis(0));
-                    mem.putFloat(bounds.cone_axis(1));
-                    mem.putFloat(bounds.cone_axis(2));
-                    mem.putFloat(0); // pad
+                    MeshOptimizer.meshopt_computeMeshletBounds(m.vertices().slice(meshlet.vertex_offset(), meshlet.vertex_count()), m.triangles().slice(meshlet.triangle_offset(), meshlet.triangle_count()), vertices, numVertices, 12, bounds);
+
+                    out.put(bounds.center(0));
+                    out.put(bounds.center(1));
+                    out.put(bounds.center(2));
+                    out.put(bounds.radius());
+
+                    out.put(bounds.cone_apex(0));
+                    out.put(bounds.cone_apex(1));
+                    out.put(bounds.cone_apex(2));
+                    out.put(bounds.cone_cutoff());
+
+                    out.put(bounds.cone_axis(0));
+                    out.put(bounds.cone_axis(1));
+                    out.put(bounds.cone_axis(2));
+                    out.put(0); // pad
                 }
             }
         }
 
         AIVector3D amin = mesh.mAABB().mMin();
         AIVector3D amax = mesh.mAABB().mMax();
-        Vector3f min = new Vector3f(amin.x(), amin.y(), amin.z());
-        Vector3f max = new Vector3f(amax.x(), amax.y(), amax.z());
-
-        Vector3f[] corners = {
-                new Vector3f(min.x(), min.y(), min.z()),
-                new Vector3f(min.x(), min.y(), max.z()),
-                new Vector3f(min.x(), max.y(), min.z()),
-                new Vector3f(min.x(), max.y(), max.z()),
-                new Vector3f(max.x(), min.y(), min.z()),
-                new Vector3f(max.x(), min.y(), max.z()),
-                new Vector3f(max.x(), max.y(), min.z()),
-                new Vector3f(max.x(), max.y(), max.z()),
-        };
+        float[] cornersX = {amin.x(), amin.x(), amin.x(), amin.x(), amax.x(), amax.x(), amax.x(), amax.x()};
+        float[] cornersY = {amin.y(), amin.y(), amax.y(), amax.y(), amin.y(), amin.y(), amax.y(), amax.y()};
+        float[] cornersZ = {amin.z(), amax.z(), amin.z(), amax.z(), amin.z(), amax.z(), amin.z(), amax.z()};
+        transform.transformPositions(cornersX, cornersY, cornersZ, 0, 8);
 
         Vector3f newMin = new Vector3f(Float.POSITIVE_INFINITY);
         Vector3f newMax = new Vector3f(Float.NEGATIVE_INFINITY);
 
-        for (Vector3f c : corners) {
-            Vector3f t = transform.transform(c);
-            newMin = newMin.min(t);
-            newMax = newMax.max(t);
+        for (int i = 0; i < 8; i++) {
+            newMin.x(Math.min(newMin.x(), cornersX[i]));
+            newMin.y(Math.min(newMin.y(), cornersY[i]));
+            newMin.z(Math.min(newMin.z(), cornersZ[i]));
+            newMax.x(Math.max(newMax.x(), cornersX[i]));
+            newMax.y(Math.max(newMax.y(), cornersY[i]));
+            newMax.z(Math.max(newMax.z(), cornersZ[i]));
         }
 
-        this.aabb = new AABB(newMin, newMax, hasCollision);
+        AABB aabb = new AABB(newMin, newMax, hasCollision);
+        Occluder occluder = buildOccluder(coarsestIndices, vertices, numVertices, aabb);
 
-        meshlets.close();
-        MemoryUtil.memFree(meshletTriangles);
-        MemoryUtil.memFree(meshletVertices);
+        lods.forEach(Meshlets::free);
         MemoryUtil.memFree(vertices);
         MemoryUtil.memFree(indices);
+
+        return new CookedMesh(mesh.mName().dataString(), mesh.mMaterialIndex(), aabb, lodFirstMeshlet, lodMeshletCount, lodErrors,
+                vertexData, meshletData, boundsData, occluder);
+    }
+
+    // one level of detail's meshlets, error being how far (in model space units) its surface may be from the full detail one
+    private record Meshlets(MeshoptMeshlet.Buffer meshlets, int count, IntBuffer vertices, ByteBuffer triangles, float error) {
+        private void free() {
+            meshlets.close();
+            MemoryUtil.memFree(triangles);
+            MemoryUtil.memFree(vertices);
+        }
+    }
+
+    /// Builds meshlets for the full detail `indices`, then for each coarser level simplifies the previous one to
+    /// [#LOD_REDUCTION] of its triangles within [#LOD_TARGET_ERRORS] and builds meshlets for that.
+    /// The chain stops early once simplification can't remove enough triangles to be worth another level.
+    /// @return The coarsest level's indices if it's small enough to be an occluder, otherwise null.
+    private static int[] buildLods(IntBuffer indices, FloatBuffer vertices, int numVertices, List<Meshlets> lods) {
+        lods.add(buildMeshlets(indices, vertices, numVertices, 0f));
+
+        // simplification errors are relative to the mesh's extent
+        float scale = MeshOptimizer.meshopt_simplifyScale(vertices, numVertices, 12);
+        IntBuffer previous = indices;
+        float error = 0f;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            FloatBuffer resultError = stack.mallocFloat(1);
+            for (int lod = 1; lod < MAX_LODS; lod++) {
+                int previousCount = previous.remaining();
+                long targetCount = (long) (previousCount * LOD_REDUCTION) / 3 * 3;
+                IntBuffer simplified = MemoryUtil.memAllocInt(previousCount);
+                // locking the border keeps the seams between a model's meshes closed
+                int count = Math.toIntExact(MeshOptimizer.meshopt_simplify(simplified, previous, vertices, numVertices, 12, targetCount, LOD_TARGET_ERRORS[lod], MeshOptimizer.meshopt_SimplifyLockBorder, resultError));
+                if (count == 0 || count > previousCount * LOD_MIN_GAIN) {
+                    MemoryUtil.memFree(simplified);
+                    break;
+                }
+                simplified.limit(count);
+                // each level is simplified from the one before, so the errors add up
+                error += resultError.get(0) * scale;
+                lods.add(buildMeshlets(simplified, vertices, numVertices, error));
+                if (previous != indices) MemoryUtil.memFree(previous);
+                previous = simplified;
+            }
+        }
+        int[] coarsest = null;
+        if (previous.remaining() / 3 <= OCCLUDER_MAX_TRIANGLES) {
+            coarsest = new int[previous.remaining()];
+            previous.get(0, coarsest);
+        }
+        if (previous != indices) MemoryUtil.memFree(previous);
+        return coarsest;
+    }
+
+    // the coarsest level's triangles and the vertices they use, if the mesh is big enough to hide anything behind it
+    private static @Nullable Occluder buildOccluder(int[] indices, FloatBuffer vertices, int numVertices, AABB aabb) {
+        if (indices == null || indices.length == 0) return null;
+        Vector3f size = aabb.size();
+        float largestFace = Math.max(size.x() * size.y(), Math.max(size.y() * size.z(), size.x() * size.z()));
+        if (largestFace < OCCLUDER_MIN_AREA) return null;
+
+        int[] remap = new int[numVertices];
+        Arrays.fill(remap, -1);
+        int[] remapped = new int[indices.length];
+        float[] positions = new float[Math.min(numVertices, indices.length) * 3];
+        int count = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] == -1) {
+                remap[v] = count;
+                vertices.get(v * 3, positions, count * 3, 3);
+                count++;
+            }
+            remapped[i] = remap[v];
+        }
+        return new Occluder(Arrays.copyOf(positions, count * 3), remapped);
+    }
+
+    private static Meshlets buildMeshlets(IntBuffer indices, FloatBuffer vertices, int numVertices, float error) {
+        int worstCaseMeshletCount = Math.toIntExact(MeshOptimizer.meshopt_buildMeshletsBound(indices.remaining(), MAX_VERTICES_PER_MESHLET, MAX_TRIANGLES_PER_MESHLET));
+
+        MeshoptMeshlet.Buffer meshlets = MeshoptMeshlet.calloc(worstCaseMeshletCount);
+        IntBuffer meshletVertices = MemoryUtil.memAllocInt(MAX_VERTICES_PER_MESHLET * worstCaseMeshletCount);
+        ByteBuffer meshletTriangles = MemoryUtil.memAlloc(MAX_TRIANGLES_PER_MESHLET * 3 * worstCaseMeshletCount);
+
+        int count = Math.toIntExact(MeshOptimizer.meshopt_buildMeshlets(meshlets, meshletVertices, meshletTriangles, indices, vertices, numVertices, 12, MAX_VERTICES_PER_MESHLET, MAX_TRIANGLES_PER_MESHLET, 0.0f));
+        return new Meshlets(meshlets, count, meshletVertices, meshletTriangles, error);
+    }
+
+    /// Interleaves `count` vertices into `dst` in the [#VERTEX_SIZE] layout `mesh.slang` reads, copying each attribute straight across
+    /// and computing only the bitangent sign. Nothing is allocated.
+    /// @param positions `x, y, z` per vertex, in model space like every other attribute.
+    /// @param normals `x, y, z` per vertex, null for zeros and no tangents either.
+    /// @param tangents `x, y, z` per vertex, null for zeros. Ignored without `bitangents`, which are only used for the sign.
+    /// @param texcoords `u, v, w` per vertex as Assimp stores them, `w` is dropped. Null for zeros.
+    static void packVertices(MemorySegment positions, @Nullable MemorySegment normals, @Nullable MemorySegment tangents, @Nullable MemorySegment bitangents,
+                             @Nullable MemorySegment texcoords, int count, MemorySegment dst) {
+        boolean hasTangents = normals != null && tangents != null && bitangents != null;
+        long in = 0, out = 0;
+        for (int i = 0; i < count; i++, in += VECTOR_SIZE, out += VERTEX_SIZE) {
+            MemorySegment.copy(positions, in, dst, out + POSITION_OFFSET, VECTOR_SIZE);
+
+            if (normals != null) MemorySegment.copy(normals, in, dst, out + NORMAL_OFFSET, VECTOR_SIZE);
+            else zeroVector(dst, out + NORMAL_OFFSET);
+
+            float sign = 1f;
+            if (hasTangents) {
+                MemorySegment.copy(tangents, in, dst, out + TANGENT_OFFSET, VECTOR_SIZE);
+                float nx = normals.get(F32, in), ny = normals.get(F32, in + 4), nz = normals.get(F32, in + 8);
+                float tx = tangents.get(F32, in), ty = tangents.get(F32, in + 4), tz = tangents.get(F32, in + 8);
+                // sign of dot(cross(normal, tangent), bitangent)
+                float cx = ny * tz - nz * ty;
+                float cy = nz * tx - nx * tz;
+                float cz = nx * ty - ny * tx;
+                float dot = Math.fma(cx, bitangents.get(F32, in), Math.fma(cy, bitangents.get(F32, in + 4), cz * bitangents.get(F32, in + 8)));
+                if (dot < 0f) sign = -1f;
+            } else {
+                zeroVector(dst, out + TANGENT_OFFSET);
+            }
+            dst.set(F32, out + TANGENT_OFFSET + VECTOR_SIZE, sign);
+
+            if (texcoords != null) MemorySegment.copy(texcoords, in, dst, out + TEXCOORD_OFFSET, 2 * Float.BYTES);
+            else dst.set(I64, out + TEXCOORD_OFFSET, 0L);
+        }
+    }
+
+    private static void zeroVector(MemorySegment dst, long offset) {
+        dst.set(I64, offset, 0L);
+        dst.set(F32, offset + Long.BYTES, 0f);
+    }
+
+    private static @Nullable MemorySegment segmentOrNull(@Nullable FloatBuffer buffer) {
+        return buffer != null ? MemorySegment.ofBuffer(buffer) : null;
+    }
+
+    /// Writes `meshletCount` meshlets into `dst` in the fixed [#MESHLET_SIZE] layout `mesh.slang` reads.
+    static void packMeshlets(MeshoptMeshlet.Buffer meshlets, int meshletCount, IntBuffer meshletVertices, ByteBuffer meshletTriangles, MemorySegment dst) {
+        long offset = 0;
+        for (int i = 0; i < meshletCount; i++) {
+            MeshoptMeshlet meshlet = meshlets.get(i);
+
+            for (int v = 0; v < meshlet.vertex_count(); v++) {
+                dst.set(U32, offset, meshletVertices.get(meshlet.vertex_offset() + v));
+                offset += Integer.BYTES;
+            }
+
+            for (int v = meshlet.vertex_count(); v < MAX_VERTICES_PER_MESHLET; v++) {
+                dst.set(U32, offset, 0);
+                offset += Integer.BYTES;
+            }
+
+            for (int t = 0; t < meshlet.triangle_count() * 3; t++) {
+                byte idx = meshletTriangles.get(meshlet.triangle_offset() + t);
+                dst.set(U32, offset, idx & 0xFF);
+                offset += Integer.BYTES;
+            }
+
+            for (int t = meshlet.triangle_count() * 3; t < 3 * MAX_TRIANGLES_PER_MESHLET; t++) {
+                dst.set(U32, offset, 0);
+                offset += Integer.BYTES;
+            }
+
+            dst.set(U32, offset, meshlet.vertex_count());
+            dst.set(U32, offset + Integer.BYTES, meshlet.triangle_count() * 3);
+            dst.set(ValueLayout.JAVA_LONG_UNALIGNED, offset + 2 * Integer.BYTES, 0L);
+            offset += 2 * Integer.BYTES + Long.BYTES;
+        }
+    }
+
+    private static MemorySegment vectorSegment(AIVector3D.Buffer vectors, int count) {
+        return MemorySegment.ofAddress(vectors.address()).reinterpret((long) count * AIVector3D.SIZEOF);
+    }
+
+    private static FloatBuffer transformDirections(Matrix4f matrix, AIVector3D.Buffer directions, int count) {
+        FloatBuffer transformed = MemoryUtil.memAllocFloat(count * 3);
+        matrix.transformDirections(vectorSegment(directions, count), MemorySegment.ofBuffer(transformed), count);
+        return transformed;
     }
 
     public AABB aabb() {
         return new AABB(aabb);
     }
 
+    /// @return The mesh's coarsest level as an [Occluder], or null if it's too small or too detailed to be one.
+    public @Nullable Occluder occluder() {
+        return occluder;
+    }
+
+    public int lodCount() {
+        return lodErrors.length;
+    }
+
+    /// @return How far, in model space units, level `lod`'s surface may be from the full detail one. 0 for level 0.
+    public float lodError(int lod) {
+        return lodErrors[lod];
+    }
+
+    public int meshletCount(int lod) {
+        return lodMeshletCount[lod];
+    }
+
+    /// Tests level `lod`'s meshlet bounding spheres against `frustum`, which must be in the mesh's model space.
+    /// Writes one bit per meshlet into `visible` from word `visibleOffset` on, see [Frustum#testSpheres(float[], int, int, long[], int)].
+    /// @return How many of the level's meshlets are visible.
+    public int cullMeshlets(Frustum frustum, int lod, long[] visible, int visibleOffset) {
+        return frustum.testSpheres(meshletSpheres, lodFirstMeshlet[lod], lodMeshletCount[lod], visible, visibleOffset);
+    }
+
+    /// @return The device address of level `lod`'s first meshlet.
+    public long meshletAddress(int lod) {
+        return meshletAddress(lod, 0);
+    }
+
+    /// @return The device address of level `lod`'s meshlet `meshlet`.
+    public long meshletAddress(int lod, int meshlet) {
+        return meshBuffer.deviceAddress() + (long) (lodFirstMeshlet[lod] + meshlet) * MESHLET_SIZE;
+    }
+
+    /// @return The device address of level `lod`'s first meshlet bounds.
+    public long boundsAddress(int lod) {
+        return boundsAddress(lod, 0);
+    }
+
+    /// @return The device address of level `lod`'s meshlet `meshlet`'s bounds.
+    public long boundsAddress(int lod, int meshlet) {
+        return boundsBuffer.deviceAddress() + (long) (lodFirstMeshlet[lod] + meshlet) * BOUNDS_SIZE;
+    }
+
     public PlortBuffer vertexBuffer() {
         return vertexBuffer;
     }
@@ -287,10 +516,20 @@ public class PlortMesh extends TrackedCloseable {
     }
 
     public void recordDrawCommand(PlortCommandBuffer commandBuffer) {
-        commandBuffer.drawMeshTasksEXT(meshletCount, 1, 1);
+        commandBuffer.drawMeshTasksEXT(lodMeshletCount[0], 1, 1);
     }
 
     public void recordDrawCommandInstanced(PlortCommandBuffer commandBuffer, int numInstances) {
+        recordDrawCommandInstanced(commandBuffer, numInstances, 0);
+    }
+
+    /// Draws level `lod`'s meshlets, which the mesh shader must read from [#meshletAddress(int)].
+    public void recordDrawCommandInstanced(PlortCommandBuffer commandBuffer, int numInstances, int lod) {
+        recordDrawCommandRange(commandBuffer, numInstances, lodMeshletCount[lod]);
+    }
+
+    /// Draws `meshletCount` meshlets starting wherever the mesh shader was pointed, see [#meshletAddress(int, int)].
+    public void recordDrawCommandRange(PlortCommandBuffer commandBuffer, int numInstances, int meshletCount) {
         commandBuffer.drawMeshTasksEXT(meshletCount, numInstances, 1);
     }
 
@@ -1,7 +1,8 @@
 package net.flamgop.borked.renderer.model;
 
+import net.flamgop.borked.culling.Occluder;
 import net.flamgop.borked.math.AABB;
-import net.flamgop.borked.math.Matrix4f;
+import net.flamgop.borked.math.Frustum;
 import net.flamgop.borked.renderer.PlortCommandBuffer;
 import net.flamgop.borked.renderer.descriptor.PlortBufferedDescriptorSetPool;
 import net.flamgop.borked.renderer.PlortRenderContext;
@@ -9,15 +10,12 @@ import net.flamgop.borked.renderer.descriptor.PlortDescriptor;
 import net.flamgop.borked.renderer.descriptor.PlortDescriptorSetLayout;
 import net.flamgop.borked.renderer.image.PlortImage;
 import net.flamgop.borked.renderer.material.PlortTexture;
-import net.flamgop.borked.renderer.memory.PlortAllocator;
 import net.flamgop.borked.renderer.memory.PlortBuffer;
 import net.flamgop.borked.renderer.pipeline.*;
 import net.flamgop.borked.renderer.util.ResourceHelper;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnmodifiableView;
-import org.lwjgl.PointerBuffer;
-import org.lwjgl.assimp.*;
 import org.lwjgl.system.MemoryStack;
-import org.lwjgl.system.MemoryUtil;
 import org.lwjgl.vulkan.VkDescriptorBufferInfo;
 import org.lwjgl.vulkan.VkDescriptorImageInfo;
 import org.lwjgl.vulkan.VkWriteDescriptorSet;
@@ -25,7 +23,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.util.*;
 
 public class PlortModel implements AutoCloseable {
@@ -40,106 +37,69 @@ public class PlortModel implements AutoCloseable {
 
     private final List<AABB> childAABBs;
     private final AABB aabb;
+    // per model level of detail, the largest error of any mesh drawn at it
+    private final float[] lodErrors;
+    private final @Nullable Occluder occluder;
+    // mesh i's meshlet bits take words [meshletMaskOffsets[i], meshletMaskOffsets[i + 1]) of a meshlet mask
+    private final int[] meshletMaskOffsets;
 
     private final int materialCount;
 
     private final PlortDescriptorSetLayout layout;
     private final PlortBufferedDescriptorSetPool descriptorSets;
 
-    public static void closeNulls() {
+    public static synchronized void closeNulls() {
         if (nullNormal != null) nullNormal.close();
         if (nullTexture != null) nullTexture.close();
         nullNormal = null;
         nullTexture = null;
     }
 
-    @SuppressWarnings("resource")
+    /// Loads the model at `path` through its cooked file, see [CookedModel#load(String)].
     public PlortModel(PlortRenderContext engine, String path) {
-        if (nullTexture == null) {
-            nullTexture = ResourceHelper.loadTextureFromResources(engine, "assets/textures/null.png");
-        }
-        if (nullNormal == null) {
-            nullNormal = ResourceHelper.loadTextureFromResources(engine, "assets/textures/null_normal.png");
-        }
+        this(engine, CookedModel.load(path), true);
+    }
 
-        AIScene scene = Assimp.aiImportFile(
-                path,
-                Assimp.aiProcess_Triangulate |
-                        Assimp.aiProcess_GenSmoothNormals |
-                        Assimp.aiProcess_CalcTangentSpace |
-                        Assimp.aiProcess_JoinIdenticalVertices |
-                        Assimp.aiProcess_ImproveCacheLocality |
-                        Assimp.aiProcess_SortByPType |
-                        Assimp.aiProcess_GenBoundingBoxes
-        );
+    /// Uploads `cooked`, which stays open and can be uploaded again or closed by the caller.
+    public PlortModel(PlortRenderContext engine, CookedModel cooked) {
+        this(engine, cooked, false);
+    }
 
-        if (scene == null || scene.mNumMeshes() == 0) throw new RuntimeException("bad model " + path);
-        AINode rootNode = scene.mRootNode();
-        if (rootNode == null) throw new NullPointerException("No nodes in scene");
-        if (scene.mMeshes() == null) throw new NullPointerException("No meshes in scene");
-        if (scene.mTextures() == null) throw new NullPointerException("No textures in scene");
+    @SuppressWarnings("resource")
+    private PlortModel(PlortRenderContext engine, CookedModel cooked, boolean closeCooked) {
+        // models may be loaded on several threads at once
+        synchronized (PlortModel.class) {
+            if (nullTexture == null) {
+                nullTexture = ResourceHelper.loadTextureFromResources(engine, "assets/textures/null.png");
+            }
+            if (nullNormal == null) {
+                nullNormal = ResourceHelper.loadTextureFromResources(engine, "assets/textures/null_normal.png");
+            }
+        }
 
+        int numMaterials = cooked.materials().size();
         this.layout = new PlortDescriptorSetLayout(
                 engine.device(),
                 new PlortDescriptor(PlortDescriptor.Type.UNIFORM_BUFFER, 1, PlortShaderStage.Stage.ALL.bit()),
                 new PlortDescriptor(PlortDescriptor.Type.COMBINED_IMAGE_SAMPLER, 1, PlortShaderStage.Stage.FRAGMENT.bit()),
                 new PlortDescriptor(PlortDescriptor.Type.COMBINED_IMAGE_SAMPLER, 1, PlortShaderStage.Stage.FRAGMENT.bit())
         );
-        this.descriptorSets = new PlortBufferedDescriptorSetPool(engine.device(), layout, scene.mNumMaterials(), engine.swapchain().imageCount());
-        materialCount = scene.mNumMaterials();
+        this.descriptorSets = new PlortBufferedDescriptorSetPool(engine.device(), layout, numMaterials, engine.swapchain().imageCount());
+        materialCount = numMaterials;
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            Map<String, PlortTexture> textureMap = new HashMap<>();
-            for (int i = 0; i < scene.mNumTextures(); i++) {
-                AITexture aiTexture = AITexture.create(scene.mTextures().get(i));
-
-                if (aiTexture.mHeight() == 0) { // compressed
-                    ByteBuffer data = aiTexture.pcDataCompressed();
-                    textures.add(ResourceHelper.loadTextureFromMemory(engine, data));
-                } else {
-                    int width = aiTexture.mWidth();
-                    int height = aiTexture.mHeight();
-
-                    ByteBuffer rgba = MemoryUtil.memAlloc(width * height * 4);
-                    AITexel.Buffer texels = aiTexture.pcData();
-
-                    texels.forEach(t -> {
-                        rgba.put(t.r());
-                        rgba.put(t.g());
-                        rgba.put(t.b());
-                        rgba.put(t.a());
-                    });
-                    rgba.flip();
-
-                    textures.add(ResourceHelper.loadRawTextureFromMemory(engine, rgba, width, height));
-                    MemoryUtil.memFree(rgba);
-                }
-                textureMap.put("*" + i, textures.get(i));
+            for (CookedModel.Texture texture : cooked.textures()) {
+                ByteBuffer data = texture.data().asByteBuffer();
+                if (texture.compressed()) textures.add(ResourceHelper.loadTextureFromMemory(engine, data));
+                else textures.add(ResourceHelper.loadRawTextureFromMemory(engine, data, texture.width(), texture.height()));
             }
 
-            VkWriteDescriptorSet.Buffer writes = VkWriteDescriptorSet.calloc(engine.swapchain().imageCount() * scene.mNumMaterials() * 2, stack);
-            VkDescriptorImageInfo.Buffer imageInfos = VkDescriptorImageInfo.calloc(scene.mNumMaterials() * 2, stack);
-            for (int i = 0; i < scene.mNumMaterials(); i++) {
-                AIMaterial aiMaterial = AIMaterial.create(scene.mMaterials().get(i));
-                AIString aiPath = AIString.calloc();
-                int r = Assimp.aiGetMaterialTexture(aiMaterial, Assimp.aiTextureType_DIFFUSE, 0, aiPath,
-                        (IntBuffer)null, null, null, null, null, null);
-
-                PlortTexture albedo = null;
-                if (r == Assimp.aiReturn_SUCCESS) {
-                    String p = aiPath.dataString();
-                    albedo = textureMap.get(p);
-                } else if (r != Assimp.aiReturn_FAILURE) LOGGER.error("aiGetMaterialTexture(diffuse) returned {}", r);
-
-                r = Assimp.aiGetMaterialTexture(aiMaterial, Assimp.aiTextureType_NORMALS, 0, aiPath, (IntBuffer) null, null, null, null, null, null);
-
-                PlortTexture normal = null;
-                if (r == Assimp.aiReturn_SUCCESS) {
-                    String p = aiPath.dataString();
-                    normal = textureMap.get(p);
-                } else if (r != Assimp.aiReturn_FAILURE) LOGGER.error("aiGetMaterialTexture(normals) returned {}", r);
-
-                aiPath.close();
+            VkWriteDescriptorSet.Buffer writes = VkWriteDescriptorSet.calloc(engine.swapchain().imageCount() * numMaterials * 2, stack);
+            VkDescriptorImageInfo.Buffer imageInfos = VkDescriptorImageInfo.calloc(numMaterials * 2, stack);
+            for (int i = 0; i < numMaterials; i++) {
+                CookedModel.Material material = cooked.materials().get(i);
+                PlortTexture albedo = material.albedo() >= 0 ? textures.get(material.albedo()) : null;
+                PlortTexture normal = material.normal() >= 0 ? textures.get(material.normal()) : null;
 
                 if (albedo == null) {
                     LOGGER.warn("Mesh has no albedo texture");
@@ -158,7 +118,7 @@ public class PlortModel implements AutoCloseable {
                 imageInfos.get(i * 2 + 1).imageLayout(PlortImage.Layout.SHADER_READ_ONLY_OPTIMAL.qualifier());
 
                 for (int f = 0; f < engine.swapchain().imageCount(); f++) {
-                    writes.get(f * scene.mNumMaterials() * 2 + i * 2)
+                    writes.get(f * numMaterials * 2 + i * 2)
                             .sType$Default()
                             .descriptorCount(1)
                             .descriptorType(PlortDescriptor.Type.COMBINED_IMAGE_SAMPLER.qualifier())
@@ -166,7 +126,7 @@ public class PlortModel implements AutoCloseable {
                             .dstBinding(1)
                             .pImageInfo(imageInfos.slice(2 * i, 1));
 
-                    writes.get(f * scene.mNumMaterials() * 2 + i * 2 + 1)
+                    writes.get(f * numMaterials * 2 + i * 2 + 1)
                             .sType$Default()
                             .descriptorCount(1)
                             .descriptorType(PlortDescriptor.Type.COMBINED_IMAGE_SAMPLER.qualifier())
@@ -179,74 +139,116 @@ public class PlortModel implements AutoCloseable {
             engine.device().updateDescriptorSets(writes, null);
         }
 
-
-        aabb = traverseNode(engine.allocator(), scene, rootNode);
+        AABB aabb = null;
+        for (CookedMesh cookedMesh : cooked.meshes()) {
+            PlortMesh mesh = new PlortMesh(engine.allocator(), cookedMesh);
+            meshes.add(mesh);
+            materialMappings.put(mesh, cookedMesh.material());
+            aabb = aabb == null ? mesh.aabb() : aabb.union(mesh.aabb());
+        }
+        this.aabb = aabb;
         this.childAABBs = meshes.stream().map(PlortMesh::aabb).toList();
 
-        Assimp.aiFreeScene(scene);
+        int lodCount = 1;
+        for (PlortMesh mesh : meshes) lodCount = Math.max(lodCount, mesh.lodCount());
+        this.lodErrors = new float[lodCount];
+        for (PlortMesh mesh : meshes) {
+            for (int lod = 0; lod < lodCount; lod++) lodErrors[lod] = Math.max(lodErrors[lod], mesh.lodError(meshLod(mesh, lod)));
+        }
+        this.occluder = mergeOccluders(meshes);
+
+        this.meshletMaskOffsets = new int[meshes.size() + 1];
+        for (int i = 0; i < meshes.size(); i++) {
+            PlortMesh mesh = meshes.get(i);
+            int meshlets = 0;
+            for (int lod = 0; lod < mesh.lodCount(); lod++) meshlets = Math.max(meshlets, mesh.meshletCount(lod));
+            meshletMaskOffsets[i + 1] = meshletMaskOffsets[i] + Frustum.bitsetLength(meshlets);
+        }
+
+        if (closeCooked) cooked.close();
     }
 
-    private AABB traverseNode(PlortAllocator allocator, AIScene scene, AINode node) {
-        AABB aabb = null;
-        boolean noCollision = false;
-        AIMetaData meta = node.mMetadata();
-        if (meta != null) {
-            // TODO: determine fi the metadata has a no_collision tag on this node.
-            int count = meta.mNumProperties();
-            AIString.Buffer keys = meta.mKeys();
-            AIMetaDataEntry.Buffer values = meta.mValues();
-
-            for (int i = 0; i < count; i++) {
-                String key = keys.get(i).dataString();
-                if (key.equals("no_collision")) {
-                    AIMetaDataEntry entry = values.get(i);
-                    LOGGER.debug("Found a no_collision tag!");
-
-                    switch (entry.mType()) {
-                        case 0 -> { // BOOL
-                            noCollision = entry.mData(1).get() != 0;
-                        }
-                        case 1 -> { // INT32
-                            noCollision = entry.mData(4).getInt(0) != 0;
-                        }
-                    }
-                    LOGGER.debug("Set noCollision to {}", noCollision);
-                    break;
-                }
-            }
+    private static @Nullable Occluder mergeOccluders(List<PlortMesh> meshes) {
+        int positionCount = 0, indexCount = 0;
+        for (PlortMesh mesh : meshes) {
+            Occluder occluder = mesh.occluder();
+            if (occluder == null) continue;
+            positionCount += occluder.positions().length;
+            indexCount += occluder.indices().length;
         }
+        if (indexCount == 0) return null;
+
+        float[] positions = new float[positionCount];
+        int[] indices = new int[indexCount];
+        int positionOffset = 0, indexOffset = 0;
+        for (PlortMesh mesh : meshes) {
+            Occluder occluder = mesh.occluder();
+            if (occluder == null) continue;
+            System.arraycopy(occluder.positions(), 0, positions, positionOffset, occluder.positions().length);
+            int base = positionOffset / 3;
+            for (int index : occluder.indices()) indices[indexOffset++] = base + index;
+            positionOffset += occluder.positions().length;
+        }
+        return new Occluder(positions, indices);
+    }
 
-        IntBuffer meshIndices = node.mMeshes();
-        if (meshIndices != null) {
-            for (int i = 0; i < meshIndices.capacity(); i++) {
-                int meshIndex = meshIndices.get(i);
-                AIMesh mesh = AIMesh.create(scene.mMeshes().get(meshIndex));
-                PlortMesh pm = new PlortMesh(allocator, mesh, !noCollision, Matrix4f.fromAssimp(node.mTransformation()));
+    public AABB aabb() {
+        return new AABB(aabb);
+    }
 
-                meshes.add(pm);
-                materialMappings.put(pm, mesh.mMaterialIndex());
+    /// @return The model's large meshes merged into one [Occluder], or null if it has none.
+    public @Nullable Occluder occluder() {
+        return occluder;
+    }
 
-                if (aabb == null) aabb = pm.aabb();
-                else aabb = aabb.union(pm.aabb());
-            }
-        }
+    /// @return How many levels of detail the model can be drawn at. Meshes with fewer levels draw their coarsest one at the levels they lack.
+    public int lodCount() {
+        return lodErrors.length;
+    }
 
-        PointerBuffer children = node.mChildren();
-        if (children != null) {
-            for (int i = 0; i < node.mNumChildren(); i++) {
-                AINode child = AINode.create(children.get(i));
-                AABB childAABB = traverseNode(allocator, scene, child);
-                if (childAABB != null) {
-                    if (aabb == null) aabb = childAABB;
-                    else aabb = aabb.union(childAABB);
-                }
+    /// @return How far, in model space units, the model's surface may be from the full detail one when drawn at level `lod`.
+    public float lodError(int lod) {
+        return lodErrors[lod];
+    }
+
+    private static int meshLod(PlortMesh mesh, int lod) {
+        return Math.min(lod, mesh.lodCount() - 1);
+    }
+
+    /// @return How many words a meshlet mask takes, see [#cullMeshlets(Frustum, int, long[], int, long[], int)].
+    public int meshletMaskLength() {
+        return meshletMaskOffsets[meshes.size()];
+    }
+
+    /// Tests the level `lod` meshlets of every mesh whose bit is set in `meshMask` against `frustum`, writing a meshlet mask of
+    /// [#meshletMaskLength()] words into `meshletMask` from word `meshletMaskOffset` on. Meshes whose bit is clear get no meshlets.
+    /// @param frustum The view frustum in model space, extracted from the view projection times the instance's model matrix.
+    /// @return How many meshlets were tested.
+    public int cullMeshlets(Frustum frustum, int lod, long[] meshMask, int meshMaskOffset, long[] meshletMask, int meshletMaskOffset) {
+        int tested = 0;
+        for (int i = 0; i < meshes.size(); i++) {
+            int from = meshletMaskOffset + meshletMaskOffsets[i], to = meshletMaskOffset + meshletMaskOffsets[i + 1];
+            if ((meshMask[meshMaskOffset + (i >>> 6)] & (1L << i)) == 0) {
+                Arrays.fill(meshletMask, from, to, 0);
+                continue;
             }
+            PlortMesh mesh = meshes.get(i);
+            int meshLod = meshLod(mesh, lod);
+            int count = mesh.meshletCount(meshLod);
+            mesh.cullMeshlets(frustum, meshLod, meshletMask, from);
+            // coarser levels have fewer meshlets than the mask has room for
+            Arrays.fill(meshletMask, from + Frustum.bitsetLength(count), to, 0);
+            tested += count;
         }
-        return aabb;
+        return tested;
     }
 
-    public AABB aabb() {
-        return new AABB(aabb);
+    /// @return The device memory the model's meshes and embedded textures occupy, not counting the shared fallback textures.
+    public long memorySize() {
+        long size = 0;
+        for (PlortMesh mesh : meshes) size += mesh.vertexBuffer().size() + mesh.meshBuffer().size() + mesh.boundsBuffer().size();
+        for (PlortTexture texture : textures) size += texture.image().memorySize();
+        return size;
     }
 
     @SuppressWarnings("resource")
@@ -269,27 +271,75 @@ public class PlortModel implements AutoCloseable {
     }
 
     public void submit(PlortCommandBuffer cmdBuffer, PlortPipelineLayout layout, PlortBuffer instanceBuffer, int instanceCount, int currentFrameModInFlight) {
+        submit(cmdBuffer, layout, instanceBuffer.deviceAddress(), instanceCount, currentFrameModInFlight);
+    }
+
+    public void submit(PlortCommandBuffer cmdBuffer, PlortPipelineLayout layout, long instances, int instanceCount, int currentFrameModInFlight) {
+        submit(cmdBuffer, layout, instances, instanceCount, 0, null, currentFrameModInFlight);
+    }
+
+    /// Draws `instanceCount` instances of every mesh at level of detail `lod`, reading `(model, inverse_model)` pairs starting at the device address `instances`.
+    /// @param meshMask Bit `i` set draws the mesh with bounds `childAABBs().get(i)`, null draws every mesh.
+    public void submit(PlortCommandBuffer cmdBuffer, PlortPipelineLayout layout, long instances, int instanceCount, int lod, long @Nullable [] meshMask, int currentFrameModInFlight) {
+        submit(cmdBuffer, layout, instances, instanceCount, lod, meshMask, null, currentFrameModInFlight);
+    }
+
+    /// [#submit(PlortCommandBuffer, PlortPipelineLayout, long, int, int, long[], int)] drawing only the meshlets set in `meshletMask`,
+    /// one dispatch per run of consecutive meshlets.
+    /// @param meshletMask Laid out as [#cullMeshlets(Frustum, int, long[], int, long[], int)] writes it, null draws every meshlet.
+    public void submit(PlortCommandBuffer cmdBuffer, PlortPipelineLayout layout, long instances, int instanceCount, int lod, long @Nullable [] meshMask, long @Nullable [] meshletMask, int currentFrameModInFlight) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             ByteBuffer push = stack.calloc(4 * Long.BYTES);
-            for (PlortMesh mesh : meshes) {
+            for (int i = 0; i < meshes.size(); i++) {
+                if (meshMask != null && (meshMask[i >>> 6] & (1L << i)) == 0) continue;
+                PlortMesh mesh = meshes.get(i);
                 if (materialMappings.containsKey(mesh)) {
                     long descriptor = descriptorSets.descriptorSet(currentFrameModInFlight, materialMappings.get(mesh));
 
                     cmdBuffer.bindDescriptorSets(PipelineBindPoint.GRAPHICS, layout, 0, stack.longs(descriptor), null);
                 }
 
-                push.putLong(mesh.vertexBuffer().deviceAddress());
-                push.putLong(mesh.meshBuffer().deviceAddress());
-                push.putLong(mesh.boundsBuffer().deviceAddress());
-                push.putLong(instanceBuffer.deviceAddress());
-                push.flip();
-
-                cmdBuffer.pushConstants(layout, PlortShaderStage.Stage.ALL.bit(), 0, push);
-                mesh.recordDrawCommandInstanced(cmdBuffer, instanceCount);
+                int meshLod = meshLod(mesh, lod);
+                if (meshletMask == null) {
+                    pushDrawData(cmdBuffer, layout, push, mesh, meshLod, 0, instances);
+                    mesh.recordDrawCommandInstanced(cmdBuffer, instanceCount, meshLod);
+                    continue;
+                }
+                // the shader indexes meshlets from dispatch_id.x, so each run points it at its first meshlet
+                int offset = meshletMaskOffsets[i], count = mesh.meshletCount(meshLod);
+                for (int first = nextMeshlet(meshletMask, offset, 0, count, true); first < count; ) {
+                    int end = nextMeshlet(meshletMask, offset, first, count, false);
+                    pushDrawData(cmdBuffer, layout, push, mesh, meshLod, first, instances);
+                    mesh.recordDrawCommandRange(cmdBuffer, instanceCount, end - first);
+                    first = nextMeshlet(meshletMask, offset, end, count, true);
+                }
             }
         }
     }
 
+    private static void pushDrawData(PlortCommandBuffer cmdBuffer, PlortPipelineLayout layout, ByteBuffer push, PlortMesh mesh, int lod, int firstMeshlet, long instances) {
+        push.clear();
+        push.putLong(mesh.vertexBuffer().deviceAddress());
+        push.putLong(mesh.meshletAddress(lod, firstMeshlet));
+        push.putLong(mesh.boundsAddress(lod, firstMeshlet));
+        push.putLong(instances);
+        push.flip();
+
+        cmdBuffer.pushConstants(layout, PlortShaderStage.Stage.ALL.bit(), 0, push);
+    }
+
+    // the first meshlet at or after `from` whose bit in the mask starting at word `offset` is `set`, or `count` if there's none
+    private static int nextMeshlet(long[] mask, int offset, int from, int count, boolean set) {
+        while (from < count) {
+            long word = mask[offset + (from >>> 6)];
+            if (!set) word = ~word;
+            word &= -1L << from;
+            if (word != 0) return Math.min(count, (from & ~63) + Long.numberOfTrailingZeros(word));
+            from = (from & ~63) + 64;
+        }
+        return count;
+    }
+
     public @UnmodifiableView List<AABB> childAABBs() {
         return childAABBs;
     }
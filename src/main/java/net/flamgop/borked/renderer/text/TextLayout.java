@@ -0,0 +1,180 @@
+package net.flamgop.borked.renderer.text;
+
+import net.flamgop.borked.math.Vector2d;
+import net.flamgop.borked.math.Vector4d;
+import net.flamgop.borked.renderer.text.json.JsonAtlasFile;
+import net.flamgop.borked.renderer.text.json.JsonGlyph;
+import org.graalvm.collections.Pair;
+import org.jetbrains.annotations.UnmodifiableView;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.*;
+
+/// The CPU half of [Atlas]: glyph metrics and the layout of [Text] into glyph quads.
+/// Doesn't touch the GPU, so it can be used (and benchmarked) without a device.
+public class TextLayout {
+    private static final ValueLayout.OfFloat F32 = ValueLayout.JAVA_FLOAT_UNALIGNED;
+    private static final ValueLayout.OfInt I32 = ValueLayout.JAVA_INT_UNALIGNED;
+
+    private final List<Pair<Character, Glyph>> glyphs = new ArrayList<>();
+    private final float spaceWidth, lineHeight;
+
+    /// Builds glyphs for the characters `0x20` to `0xFE`, in order.
+    public TextLayout(JsonAtlasFile atlasFile) {
+        this.spaceWidth = (float) (atlasFile.glyphs.stream().filter(g -> g.unicode == 0x20).findFirst().orElseThrow().advance * atlasFile.atlas.size);
+        this.lineHeight = (float) (atlasFile.metrics.lineHeight * atlasFile.atlas.size);
+
+        for (int c = 0x20; c < 0xFF; c++) {
+            final int ch = c;
+            Optional<JsonGlyph> maybeGlyph = atlasFile.glyphs.stream().filter(g -> g.unicode == ch).findFirst();
+            if (maybeGlyph.isEmpty()) {
+                glyphs.add(Pair.create((char) c, new Glyph(new Vector4d(0), new Vector2d(0), new Vector2d(0), 0.261, true))); // let's just say this char is a space :3
+                continue;
+            }
+            JsonGlyph glyph = maybeGlyph.get();
+
+            if (glyph.atlasBounds == null) {
+                glyphs.add(Pair.create((char) c, new Glyph(new Vector4d(0), new Vector2d(0), new Vector2d(0), glyph.advance, true)));
+                continue;
+            }
+
+            double atlasW = atlasFile.atlas.width;
+            double atlasH = atlasFile.atlas.height;
+            boolean yOriginBottom = "bottom".equalsIgnoreCase(atlasFile.atlas.yOrigin);
+
+            double leftPx   = glyph.atlasBounds.left;
+            double bottomPx = glyph.atlasBounds.bottom;
+            double rightPx  = glyph.atlasBounds.right;
+            double topPx    = glyph.atlasBounds.top;
+
+            double uSize = (rightPx - leftPx) / atlasW;
+            double vSize = (topPx - bottomPx) / atlasH;
+
+            double u0 = leftPx / atlasW;
+            double v0;
+            if (yOriginBottom) {
+                v0 = bottomPx / atlasH;
+            } else {
+                v0 = 1.0 - (topPx / atlasH);
+            }
+
+            glyphs.add(Pair.create((char) c, new Glyph(
+                    new Vector4d(u0, v0, uSize, vSize),
+                    new Vector2d((glyph.planeBounds.right - glyph.planeBounds.left) * atlasFile.atlas.size, (glyph.planeBounds.top - glyph.planeBounds.bottom) * atlasFile.atlas.size),
+                    new Vector2d(glyph.planeBounds.left * atlasFile.atlas.size, glyph.planeBounds.top * atlasFile.atlas.size),
+                    glyph.advance * atlasFile.atlas.size,
+                    false
+            )));
+        }
+    }
+
+    public static TextLayout loadFromResources(String atlasPath) {
+        return new TextLayout(JsonAtlasFile.loadFromResources(atlasPath + ".json"));
+    }
+
+    @UnmodifiableView
+    List<Pair<Character, Glyph>> glyphs() {
+        return Collections.unmodifiableList(glyphs);
+    }
+
+    public float lineHeight() {
+        return lineHeight;
+    }
+
+    private Pair<Character, Glyph> glyph(char c) {
+        return glyphs.stream()
+                .filter(p -> p.getLeft() == c)
+                .findFirst()
+                .orElse(glyphs.getFirst());
+    }
+
+    public float stringWidth(String text, float scale) {
+        int numChars = text.length();
+        float penX = 0;
+        float maxWidth = 0;
+
+        for (int i = 0; i < numChars; i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r') {
+                // penX resets to zero, but we don't want to return zero if a string ends with \n, we want to return the length of the longest line in the string.
+                if (penX > maxWidth) maxWidth = penX;
+                penX = 0f;
+                continue;
+            }
+            Glyph glyph = glyph(c).getRight();
+
+            if (glyph.isEmpty())
+                penX += spaceWidth * scale;
+            else
+                penX += (float) glyph.advance() * scale;
+        }
+
+        if (penX > maxWidth) {
+            maxWidth = penX;
+        }
+
+        return maxWidth;
+    }
+
+    public float stringHeight(String text, float scale) {
+        return text.chars().filter(ch -> ch == '\n' || ch == '\r').count() * lineHeight * scale;
+    }
+
+    /// @return The number of glyph quads [#layout(List, MemorySegment)] will write for this text.
+    public int glyphCount(List<Text> text) {
+        return text.stream().mapToInt(t -> t.text().replaceAll("[\\r\\n]", "").length()).sum();
+    }
+
+    /// Lays out `text` into `dst` as [Atlas#GLYPH_MESHLET_SIZE] byte glyph quads.
+    /// @param dst Must be at least [#glyphCount(List)] * [Atlas#GLYPH_MESHLET_SIZE] bytes.
+    public void layout(List<Text> text, MemorySegment dst) {
+        long offset = 0;
+        for (Text t : text) {
+            List<String> lines = Arrays.asList(t.text().split("\\r?\\n"));
+            List<Float> lineWidths = new ArrayList<>();
+            lines.forEach(s -> lineWidths.add(stringWidth(s, t.scale())));
+
+            float penY = t.offset().y();
+
+            for (int lineIndex = 0; lineIndex < lines.size(); lineIndex++) {
+                String line = lines.get(lineIndex);
+                float lineWidth = lineWidths.get(lineIndex);
+
+                float penX = switch (t.align()) {
+                    case CENTER -> t.offset().x() - lineWidth / 2f;
+                    case RIGHT -> t.offset().x() - lineWidth;
+                    default -> t.offset().x();
+                };
+
+                for (int i = 0; i < line.length(); i++) {
+                    char c = line.charAt(i);
+                    Pair<Character, Glyph> glyphPair = glyph(c);
+                    int index = glyphs.indexOf(glyphPair);
+                    Glyph glyph = glyphPair.getRight();
+
+                    dst.set(F32, offset, penX + (float) glyph.bearing().x() * t.scale());
+                    dst.set(F32, offset + 4, penY - (float) glyph.bearing().y() * t.scale());
+                    dst.set(F32, offset + 8, (float) glyph.size().x() * t.scale());
+                    dst.set(F32, offset + 12, (float) glyph.size().y() * t.scale());
+                    dst.set(F32, offset + 16, t.color().x());
+                    dst.set(F32, offset + 20, t.color().y());
+                    dst.set(F32, offset + 24, t.color().z());
+                    dst.set(I32, offset + 28, index);
+                    dst.set(F32, offset + 32, t.depth());
+                    dst.set(F32, offset + 36, 0);
+                    dst.set(F32, offset + 40, 0);
+                    dst.set(F32, offset + 44, 0);
+                    offset += Atlas.GLYPH_MESHLET_SIZE;
+
+                    if (glyph.isEmpty())
+                        penX += spaceWidth * t.scale();
+                    else
+                        penX += (float) glyph.advance() * t.scale();
+                }
+
+                penY += lineHeight * t.scale();
+            }
+        }
+    }
+}
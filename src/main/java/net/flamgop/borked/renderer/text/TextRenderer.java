@@ -31,6 +31,8 @@ public class TextRenderer extends TrackedCloseable {
     private final PlortPipelineLayout pipelineLayout;
     private final PlortPipeline pipeline;
 
+    private final Matrix4f projection = new Matrix4f();
+
     public TextRenderer(PlortDevice device, PlortSwapchain swapchain, PlortRenderPass renderPass, int maxFramesInFlight) {
         super();
         this.device = device;
@@ -77,7 +79,7 @@ public class TextRenderer extends TrackedCloseable {
             cmdBuffer.bindPipeline(PipelineBindPoint.GRAPHICS, pipeline);
 
             int glyphCount = (int)(buffer.size() / Atlas.GLYPH_MESHLET_SIZE);
-            Matrix4f projection = new Matrix4f().orthographic(0f, swapchain.extent().x(), 0f, swapchain.extent().y(), -1f, 1f, true);
+            projection.orthographic(0f, swapchain.extent().x(), 0f, swapchain.extent().y(), -1f, 1f, true);
             ByteBuffer stringData = stack.calloc(STRING_DATA_BYTES);
             projection.getToBuffer(stringData);
             stringData.putLong(4 * 4 * Float.BYTES, buffer.deviceAddress());
@@ -0,0 +1,202 @@
+package net.flamgop.borked.renderer.util;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/// An on-disk cache for data derived from assets, cooked models and decoded textures, so it's never derived twice from the same bytes.
+///
+/// Entries are keyed by a hash of the source bytes, the settings they were derived with and the format's version, see
+/// [#key(String, String, MemorySegment, int, String)]. Changing any of them is a miss, and the entry derived from the source's old
+/// bytes is deleted as soon as its replacement is stored. Entries nobody has read in [#MAX_UNUSED] are deleted when the cache is first used.
+///
+/// The directory is `asset-cache` in the working directory, or wherever the `borked.assetCache` system property points.
+public final class AssetCache {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AssetCache.class);
+
+    public static final Path DIRECTORY = Path.of(System.getProperty("borked.assetCache", "asset-cache"));
+    /// How long an entry may go without a hit before it's evicted.
+    public static final Duration MAX_UNUSED = Duration.ofDays(30);
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), stores = new AtomicLong(), evictions = new AtomicLong();
+    private static final AtomicLong bytesSaved = new AtomicLong();
+
+    static {
+        sweep();
+    }
+
+    private AssetCache() {}
+
+    /// Identifies one entry.
+    /// @param kind What the entry holds, e.g. `model`. Entries of different kinds never collide.
+    /// @param source Where the source bytes came from. Entries with the same kind and source but another hash are stale,
+    ///               null for anonymous sources like embedded textures, whose old entries only go when unused for [#MAX_UNUSED].
+    /// @param hash Hex of the source bytes', settings' and version's hash.
+    public record Key(String kind, @Nullable String source, String hash) {
+        private String prefix() {
+            return source == null ? kind + "-" : kind + "-" + sourceId(source) + "-";
+        }
+
+        private Path path() {
+            return DIRECTORY.resolve(prefix() + hash);
+        }
+    }
+
+    /// Writes an entry's contents.
+    @FunctionalInterface
+    public interface Writer {
+        void write(FileChannel channel) throws IOException;
+    }
+
+    /// Hashes `bytes` together with `settings` and `version`, which must cover everything that changes the derived data.
+    public static Key key(String kind, @Nullable String source, MemorySegment bytes, int version, String settings) {
+        MessageDigest digest = sha256();
+        digest.update(bytes.asByteBuffer());
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, version));
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+        return new Key(kind, source, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /// [#key(String, String, MemorySegment, int, String)] of the file at `source`, memory mapped for hashing.
+    public static Key key(String kind, Path source, int version, String settings) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ);
+             Arena arena = Arena.ofConfined()) {
+            MemorySegment bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            return key(kind, source.toAbsolutePath().normalize().toString(), bytes, version, settings);
+        }
+    }
+
+    /// @return The entry for `key`, or null if there's none yet. Counted as a hit or a miss.
+    public static @Nullable Path find(Key key) {
+        Path path = key.path();
+        try {
+            long size = Files.size(path);
+            // entries are evicted by when they were last used
+            Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            hits.incrementAndGet();
+            bytesSaved.addAndGet(size);
+            LOGGER.debug("Asset cache hit for {} {}", key.kind(), key.source() != null ? key.source() : key.hash());
+            return path;
+        } catch (IOException _) {
+            misses.incrementAndGet();
+            LOGGER.debug("Asset cache miss for {} {}", key.kind(), key.source() != null ? key.source() : key.hash());
+            return null;
+        }
+    }
+
+    /// Writes the entry for `key` through a temporary file, so [#find(Key)] never sees half of one, then evicts the stale entries of its source.
+    /// Failures are only logged, the cache is an optimization.
+    public static void store(Key key, Writer writer) {
+        Path path = key.path();
+        Path temporary = null;
+        try {
+            Files.createDirectories(DIRECTORY);
+            temporary = Files.createTempFile(DIRECTORY, path.getFileName().toString(), TEMPORARY_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writer.write(channel);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            stores.incrementAndGet();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.warn("Couldn't store asset cache entry {}", path, e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException _) {
+                    // swept on a later run
+                }
+            }
+            return;
+        }
+        if (key.source() == null) return;
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(DIRECTORY, key.prefix() + "*")) {
+            for (Path entry : stale) {
+                String name = entry.getFileName().toString();
+                if (!entry.equals(path) && !name.endsWith(TEMPORARY_SUFFIX) && delete(entry)) {
+                    LOGGER.debug("Evicted stale asset cache entry {}", name);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't evict stale asset cache entries for {}", key.source(), e);
+        }
+    }
+
+    /// Deletes the entry for `key`, for when it turned out to be unreadable.
+    public static void evict(Key key) {
+        if (delete(key.path())) LOGGER.debug("Evicted unreadable asset cache entry {}", key.path().getFileName());
+    }
+
+    /// Logs how many lookups hit and missed so far, and how many bytes of derived data were read back instead of derived again.
+    public static void logStatistics() {
+        LOGGER.info("Asset cache: {} hits, {} misses, {} stored, {} evicted, {} saved",
+                hits.get(), misses.get(), stores.get(), evictions.get(), String.format("%.1f MiB", bytesSaved.get() / (1024.0 * 1024.0)));
+    }
+
+    // deletes entries unused for MAX_UNUSED and temporary files left behind by a crash
+    private static void sweep() {
+        if (!Files.isDirectory(DIRECTORY)) return;
+        Instant unusedSince = Instant.now().minus(MAX_UNUSED);
+        Instant abandonedSince = Instant.now().minus(Duration.ofHours(1));
+        try (Stream<Path> entries = Files.list(DIRECTORY)) {
+            entries.forEach(entry -> {
+                try {
+                    Instant modified = Files.getLastModifiedTime(entry).toInstant();
+                    boolean temporary = entry.getFileName().toString().endsWith(TEMPORARY_SUFFIX);
+                    if (modified.isBefore(temporary ? abandonedSince : unusedSince)) delete(entry);
+                } catch (IOException _) {
+                    // another process got to it first
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't sweep the asset cache", e);
+        }
+    }
+
+    private static boolean delete(Path path) {
+        try {
+            if (!Files.deleteIfExists(path)) return false;
+            evictions.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            LOGGER.warn("Couldn't delete asset cache entry {}", path, e);
+            return false;
+        }
+    }
+
+    // the source's file name to make the directory browsable, then a hash of the full path so equally named sources don't collide
+    private static String sourceId(String source) {
+        String name = source.substring(Math.max(source.lastIndexOf('/'), source.lastIndexOf('\\')) + 1).replaceAll("[^A-Za-z0-9._]", "_");
+        byte[] hash = sha256().digest(source.getBytes(StandardCharsets.UTF_8));
+        return name + "-" + HexFormat.of().formatHex(hash, 0, 4);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("every JDK has SHA-256", e);
+        }
+    }
+}
@@ -9,18 +9,38 @@ import net.flamgop.borked.renderer.image.PlortImage;
 import net.flamgop.borked.renderer.image.PlortSampler;
 import net.flamgop.borked.renderer.material.PlortTexture;
 import net.flamgop.borked.renderer.memory.*;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 import static org.lwjgl.vulkan.VK10.*;
 
 public class ResourceHelper {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceHelper.class);
+
+    // decoded textures are cached as width, height, then RGBA8 texels, bottom row first as stb is told to load them
+    private static final String TEXTURE_CACHE_KIND = "texture";
+    // 1 could hold textures decoded while another thread cleared stb's global flip flag, so those entries are never read again
+    private static final int TEXTURE_CACHE_VERSION = 2;
+    // what decodeImage produces, the only decoder whose output is cached
+    private static final String TEXTURE_CACHE_SETTINGS = "rgba8,flipped";
+    private static final ValueLayout.OfInt I32 = ValueLayout.JAVA_INT_UNALIGNED;
+
     public static ByteBuffer loadFromResource(String resourcePath) {
         try (InputStream stream = Main.class.getClassLoader().getResourceAsStream(resourcePath)) {
             if (stream == null) throw new RuntimeException("Couldn't open resource stream for " + resourcePath);
@@ -36,49 +56,60 @@ public class ResourceHelper {
 
     public static PlortTexture loadTextureFromResources(PlortRenderContext engine, String path) {
         ByteBuffer bytes = ResourceHelper.loadFromResource(path);
-        PlortTexture texture = loadTextureFromMemory(engine, bytes);
+        PlortTexture texture = loadTextureFromMemory(engine, bytes, path);
         MemoryUtil.memFree(bytes);
         return texture;
     }
 
     public static PlortTexture loadTextureFromMemory(PlortRenderContext engine, ByteBuffer bytes) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer x = stack.callocInt(1), y = stack.callocInt(1), channels = stack.callocInt(1);
-            STBImage.stbi_set_flip_vertically_on_load(true);
-            ByteBuffer imageData = STBImage.stbi_load_from_memory(bytes, x, y, channels, 4);
-            if (imageData == null) throw new RuntimeException("font");
-            STBImage.stbi_set_flip_vertically_on_load(false);
+        return loadTextureFromMemory(engine, bytes, null);
+    }
 
-            PlortBuffer stagingBuffer = new PlortBuffer(imageData.capacity(), BufferUsage.TRANSFER_SRC_BIT, engine.allocator());
-            try (MappedMemory mem = stagingBuffer.map()) {
-                mem.copyEntireBuffer(imageData);
+    /// Decodes `bytes`, an image file, into a texture. The texels come straight from the [AssetCache] if the same bytes were decoded before.
+    /// @param source Where `bytes` came from, so its old entry is evicted once it changes. Null for anonymous images, like ones embedded in a model.
+    public static PlortTexture loadTextureFromMemory(PlortRenderContext engine, ByteBuffer bytes, @Nullable String source) {
+        AssetCache.Key key = AssetCache.key(TEXTURE_CACHE_KIND, source, MemorySegment.ofBuffer(bytes), TEXTURE_CACHE_VERSION, TEXTURE_CACHE_SETTINGS);
+        Path entry = AssetCache.find(key);
+        if (entry != null) {
+            try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ); Arena arena = Arena.ofConfined()) {
+                MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+                int width = file.get(I32, 0), height = file.get(I32, Integer.BYTES);
+                ByteBuffer rgba = file.asSlice(2 * Integer.BYTES, (long) width * height * 4).asByteBuffer();
+                return loadRawTextureFromMemory(engine, rgba, width, height);
+            } catch (IOException | IndexOutOfBoundsException e) {
+                LOGGER.warn("Couldn't read cached texture {}, decoding it again: {}", source != null ? source : key.hash(), e.getMessage());
+                AssetCache.evict(key);
             }
+        }
 
-            STBImage.stbi_image_free(imageData);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer x = stack.callocInt(1), y = stack.callocInt(1);
+            ByteBuffer imageData = decodeImage(bytes, x, y);
+            if (imageData == null) throw new RuntimeException("font");
 
-            PlortImage image = new PlortImage(
-                    engine.device(), engine.allocator(),
-                    PlortImage.Type.TYPE_2D,
-                    new Vector3i(x.get(0), y.get(0), 1),
-                    1, 1,
-                    ImageFormat.R8G8B8A8_UNORM,
-                    PlortImage.Layout.PREINITIALIZED,
-                    VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT,
-                    1, SharingMode.EXCLUSIVE,
-                    MemoryUsage.GPU_ONLY,
-                    PlortImage.ViewType.TYPE_2D,
-                    VK_IMAGE_ASPECT_COLOR_BIT
-            );
-
-            engine.commandPool().transientSubmit(engine.device().graphicsQueue(), 0, (cmd) -> {
-                VkUtil.copyBufferToImage(cmd, stagingBuffer, image, x.get(0), y.get(0));
+            int width = x.get(0), height = y.get(0);
+            AssetCache.store(key, channel -> {
+                ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES).order(ByteOrder.nativeOrder()).putInt(width).putInt(height).flip();
+                while (header.hasRemaining()) channel.write(header);
+                ByteBuffer texels = imageData.duplicate();
+                while (texels.hasRemaining()) channel.write(texels);
             });
 
-            stagingBuffer.close();
-
-            PlortSampler sampler = new PlortSampler(engine.device(), PlortFilter.LINEAR, PlortFilter.LINEAR, PlortSampler.AddressMode.REPEAT, PlortSampler.AddressMode.REPEAT, PlortSampler.AddressMode.REPEAT);
+            PlortTexture texture = loadRawTextureFromMemory(engine, imageData, width, height);
+            STBImage.stbi_image_free(imageData);
+            return texture;
+        }
+    }
 
-            return new PlortTexture(image, sampler);
+    /// Decodes an image file into RGBA8 texels, bottom row first. The flip is set for the calling thread only, stb's global flag
+    /// would be flipped back by another loader thread finishing its decode in the middle of this one.
+    /// @return The texels, to be freed with `stbi_image_free`, or null if stb can't decode `bytes`.
+    public static @Nullable ByteBuffer decodeImage(ByteBuffer bytes, IntBuffer width, IntBuffer height) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            STBImage.stbi_set_flip_vertically_on_load_thread(true);
+            return STBImage.stbi_load_from_memory(bytes, width, height, stack.mallocInt(1), 4);
+        } finally {
+            STBImage.stbi_set_flip_vertically_on_load_thread(false);
         }
     }
 
@@ -102,7 +133,7 @@ public class ResourceHelper {
                 VK_IMAGE_ASPECT_COLOR_BIT
         );
 
-        engine.commandPool().transientSubmit(engine.device().graphicsQueue(), 0, (cmd) -> {
+        engine.uploadCommandPool().transientSubmit(engine.device().graphicsQueue(), 0, (cmd) -> {
             VkUtil.copyBufferToImage(cmd, stagingBuffer, image, width, height);
         });
 
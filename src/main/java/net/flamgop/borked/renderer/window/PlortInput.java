@@ -2,6 +2,7 @@ package net.flamgop.borked.renderer.window;
 
 import net.flamgop.borked.math.Vector2f;
 import net.flamgop.borked.renderer.util.Util;
+import org.jetbrains.annotations.Nullable;
 import org.lwjgl.glfw.GLFW;
 
 import static org.lwjgl.glfw.GLFW.*;
@@ -9,7 +10,8 @@ import static org.lwjgl.glfw.GLFW.*;
 public class PlortInput {
     private final Vector2f mousePosition = new Vector2f(0);
 
-    private final PlortWindow window;
+    // null for input that isn't fed by a window
+    private final @Nullable PlortWindow window;
 
     private final boolean[] keysPressed = new boolean[GLFW_KEY_LAST];
     private final boolean[] keysPressedOld = new boolean[GLFW_KEY_LAST];
@@ -30,12 +32,23 @@ public class PlortInput {
         }));
     }
 
+    /// Input without a window, nothing is pressed until [#setKeyDown(int, boolean)] says so. For simulating without a display.
+    public PlortInput() {
+        this.window = null;
+    }
+
+    /// Presses or releases `key` as the window's key callback does.
+    public void setKeyDown(int key, boolean down) {
+        keysPressed[key] = down;
+    }
+
     public void update() {
         System.arraycopy(keysPressed, 0, keysPressedOld, 0, keysPressed.length);
         System.arraycopy(buttonsPressed, 0, buttonsPressedOld, 0, buttonsPressed.length);
     }
 
     public void setCursorState(CursorState state) {
+        if (window == null) return;
         GLFW.glfwSetInputMode(window.handle(), GLFW_CURSOR, state.qualifier());
     }
 
@@ -43,6 +56,14 @@ public class PlortInput {
         return new Vector2f(mousePosition);
     }
 
+    public float mouseX() {
+        return mousePosition.x();
+    }
+
+    public float mouseY() {
+        return mousePosition.y();
+    }
+
     public boolean keyDown(int key) {
         return keysPressed[key];
     }
@@ -0,0 +1,386 @@
+package net.flamgop.borked.scene;
+
+import net.flamgop.borked.math.Matrix4f;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/// A forest of transforms, each node's world matrix being its parent's world matrix times its own local one.
+///
+/// Nodes are named by stable ids, but their matrices live in flat arrays ordered depth first, so every subtree is one contiguous
+/// run of positions starting at its root and every parent comes before its children. [#update(ForkJoinPool)] then only has to
+/// walk the runs under dirty nodes, in order, making the cost proportional to what changed plus a scan of one dirty bit per node.
+/// Runs wider than [#PARALLEL_GRAIN] are split along sibling subtrees and propagated in parallel.
+///
+/// Structural changes (creating, destroying and reparenting nodes) leave the order stale, it is rebuilt at the start of the
+/// next update in one O(n) pass.
+/// @implNote Structural changes and [#update(ForkJoinPool)] are not thread safe.
+/// [#setLocal(int, Matrix4f)] may be called concurrently for different nodes, as long as no update runs at the same time.
+public final class SceneGraph {
+    public static final int NULL = -1;
+    // smaller runs are propagated on one thread
+    static final int PARALLEL_GRAIN = 1024;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    // by id
+    private int[] parent = new int[INITIAL_CAPACITY];
+    private int[] firstChild = new int[INITIAL_CAPACITY];
+    private int[] nextSibling = new int[INITIAL_CAPACITY];
+    private int[] positionOf = new int[INITIAL_CAPACITY];
+    private long[] userData = new long[INITIAL_CAPACITY];
+    private int[] freeIds = new int[INITIAL_CAPACITY];
+    private int freeCount;
+    private int idCount;
+    private int size;
+
+    // by position. positions of destroyed nodes hold NULL until the next rebuild
+    private int[] idAt = new int[INITIAL_CAPACITY];
+    private int[] parentAt = new int[INITIAL_CAPACITY];
+    private int[] subtreeSize = new int[INITIAL_CAPACITY];
+    private float[] local = new float[INITIAL_CAPACITY * 16];
+    private float[] world = new float[INITIAL_CAPACITY * 16];
+    private long[] dirty = new long[bitsetLength(INITIAL_CAPACITY)];
+    private int positionCount;
+    private boolean orderDirty;
+
+    private int[] changed = new int[INITIAL_CAPACITY];
+    private int changedCount;
+    private int[] runs = new int[INITIAL_CAPACITY];
+
+    private final Matrix4f scratch = new Matrix4f();
+    private final Matrix4f scratchParent = new Matrix4f();
+
+    private static int bitsetLength(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /// Creates a node with an identity local transform under `parent`, or as a root if `parent` is [#NULL].
+    public int create(int parent, long userData) {
+        return create(parent, null, userData);
+    }
+
+    /// Creates a node under `parent`, or as a root if `parent` is [#NULL].
+    /// Its world transform is computed straight away from the parent's as of the last update.
+    public int create(int parent, @Nullable Matrix4f localTransform, long userData) {
+        if (parent != NULL) checkAlive(parent);
+
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (idCount == this.parent.length) growIds(idCount * 2);
+            id = idCount++;
+        }
+        if (positionCount == idAt.length) growPositions(positionCount * 2);
+        int position = positionCount++;
+
+        this.parent[id] = parent;
+        this.firstChild[id] = NULL;
+        this.nextSibling[id] = NULL;
+        this.userData[id] = userData;
+        this.positionOf[id] = position;
+        if (parent != NULL) link(id, parent);
+
+        idAt[position] = id;
+        parentAt[position] = parent != NULL ? positionOf[parent] : NULL;
+        subtreeSize[position] = 1;
+        identity(local, position);
+        identity(world, position);
+        if (localTransform != null) {
+            localTransform.get(local, position * 16);
+            if (parent == NULL) System.arraycopy(local, position * 16, world, position * 16, 16);
+            else Matrix4f.multiply(world, positionOf[parent] * 16, local, position * 16, world, position * 16);
+        }
+        dirty[position >>> 6] |= 1L << position;
+        // a root appended at the end is still in depth first order, a child generally isn't
+        if (parent != NULL) orderDirty = true;
+        size++;
+        return id;
+    }
+
+    /// Destroys `node`. Its children become roots, keeping the world transform they had as of the last update.
+    public void destroy(int node) {
+        checkAlive(node);
+        for (int child = firstChild[node]; child != NULL; ) {
+            int next = nextSibling[child];
+            setParent(child, NULL, true);
+            child = next;
+        }
+        if (parent[node] != NULL) unlink(node, parent[node]);
+
+        int position = positionOf[node];
+        idAt[position] = NULL;
+        dirty[position >>> 6] &= ~(1L << position);
+        positionOf[node] = NULL;
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        freeIds[freeCount++] = node;
+        orderDirty = true;
+        size--;
+    }
+
+    public boolean isAlive(int node) {
+        return node >= 0 && node < idCount && positionOf[node] != NULL;
+    }
+
+    /// Moves `node` under `newParent`, or makes it a root if `newParent` is [#NULL].
+    /// @param keepWorld Whether to adjust the local transform so the node stays where it was as of the last update,
+    ///                  otherwise the local transform is kept and the node moves with its new parent.
+    public void setParent(int node, int newParent, boolean keepWorld) {
+        checkAlive(node);
+        if (newParent != NULL) {
+            checkAlive(newParent);
+            for (int ancestor = newParent; ancestor != NULL; ancestor = parent[ancestor]) {
+                if (ancestor == node) throw new IllegalArgumentException("Node " + newParent + " is a descendant of node " + node);
+            }
+        }
+        if (parent[node] == newParent) return;
+
+        if (keepWorld) {
+            world(node, scratch);
+            if (newParent != NULL) scratch.set(world(newParent, scratchParent).invert().multiply(scratch));
+            scratch.get(local, positionOf[node] * 16);
+        }
+        if (parent[node] != NULL) unlink(node, parent[node]);
+        parent[node] = newParent;
+        if (newParent != NULL) link(node, newParent);
+
+        int position = positionOf[node];
+        dirty[position >>> 6] |= 1L << position;
+        orderDirty = true;
+    }
+
+    public int parent(int node) {
+        checkAlive(node);
+        return parent[node];
+    }
+
+    /// @return The first child of `node`, or [#NULL]. Iterate the rest with [#nextSibling(int)].
+    public int firstChild(int node) {
+        checkAlive(node);
+        return firstChild[node];
+    }
+
+    public int nextSibling(int node) {
+        checkAlive(node);
+        return nextSibling[node];
+    }
+
+    public long userData(int node) {
+        checkAlive(node);
+        return userData[node];
+    }
+
+    public Matrix4f local(int node, Matrix4f dst) {
+        checkAlive(node);
+        return dst.set(local, positionOf[node] * 16);
+    }
+
+    /// Sets the node's local transform, its subtree is recomputed by the next update.
+    public void setLocal(int node, Matrix4f transform) {
+        checkAlive(node);
+        int position = positionOf[node];
+        transform.get(local, position * 16);
+        LONGS.getAndBitwiseOr(dirty, position >>> 6, 1L << position);
+    }
+
+    /// @return The node's world transform as of the last update.
+    public Matrix4f world(int node, Matrix4f dst) {
+        checkAlive(node);
+        return dst.set(world, positionOf[node] * 16);
+    }
+
+    /// Copies the node's world transform as of the last update into 16 floats at `dst[offset]`.
+    public void copyWorld(int node, float[] dst, int offset) {
+        checkAlive(node);
+        System.arraycopy(world, positionOf[node] * 16, dst, offset, 16);
+    }
+
+    /// @return How many nodes had their world transform recomputed by the last update.
+    public int changedCount() {
+        return changedCount;
+    }
+
+    /// @return The id of the `i`th node recomputed by the last update.
+    public int changed(int i) {
+        if (i >= changedCount) throw new IndexOutOfBoundsException(i);
+        return changed[i];
+    }
+
+    /// Recomputes the world transform of every dirty node and everything under it.
+    /// @param pool Where to spread wide subtrees, `null` to propagate everything on the calling thread.
+    public void update(@Nullable ForkJoinPool pool) {
+        if (orderDirty) rebuildOrder();
+
+        // collect maximal dirty runs. a dirty node's parent can't be dirty too, or the node would be inside the parent's run
+        int runCount = 0;
+        int total = 0;
+        for (int p = nextDirty(0); p != NULL; p = nextDirty(p + subtreeSize[p])) {
+            if (runCount * 2 == runs.length) runs = Arrays.copyOf(runs, runs.length * 2);
+            runs[runCount * 2] = p;
+            runs[runCount * 2 + 1] = p + subtreeSize[p];
+            runCount++;
+            total += subtreeSize[p];
+        }
+        Arrays.fill(dirty, 0, bitsetLength(positionCount), 0);
+
+        if (pool == null || pool.getParallelism() <= 1 || total <= PARALLEL_GRAIN) {
+            for (int r = 0; r < runCount; r++) propagate(runs[r * 2], runs[r * 2 + 1]);
+        } else {
+            Propagate[] tasks = new Propagate[runCount];
+            for (int r = 0; r < runCount; r++) tasks[r] = new Propagate(runs[r * 2], runs[r * 2 + 1]);
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        }
+
+        if (changed.length < total) changed = new int[Math.max(total, changed.length * 2)];
+        changedCount = 0;
+        for (int r = 0; r < runCount; r++) {
+            for (int p = runs[r * 2]; p < runs[r * 2 + 1]; p++) changed[changedCount++] = idAt[p];
+        }
+    }
+
+    private int nextDirty(int from) {
+        int words = bitsetLength(positionCount);
+        int w = from >>> 6;
+        if (w >= words) return NULL;
+        long bits = dirty[w] & (-1L << from);
+        while (bits == 0) {
+            if (++w == words) return NULL;
+            bits = dirty[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    // [from, to) is one or more whole sibling subtrees whose parent is already up to date
+    private void propagate(int from, int to) {
+        for (int p = from; p < to; p++) {
+            int parentPosition = parentAt[p];
+            if (parentPosition == NULL) System.arraycopy(local, p * 16, world, p * 16, 16);
+            else Matrix4f.multiply(world, parentPosition * 16, local, p * 16, world, p * 16);
+        }
+    }
+
+    private final class Propagate extends RecursiveAction {
+        private final int from, to;
+
+        private Propagate(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_GRAIN) {
+                propagate(from, to);
+                return;
+            }
+            if (subtreeSize[from] == to - from) {
+                // a single subtree, its root has to be done before the children can be split up
+                propagate(from, from + 1);
+                if (to - from > 1) new Propagate(from + 1, to).compute();
+                return;
+            }
+            // several sibling subtrees, split at the subtree boundary closest to the middle
+            int mid = (from + to) >>> 1;
+            int split = from;
+            while (split + subtreeSize[split] <= mid) split += subtreeSize[split];
+            if (split == from) split += subtreeSize[from];
+            invokeAll(new Propagate(from, split), new Propagate(split, to));
+        }
+    }
+
+    private void rebuildOrder() {
+        int[] newIdAt = new int[idAt.length];
+        int[] stack = new int[Math.max(size, 1)];
+        int next = 0;
+        for (int p = 0; p < positionCount; p++) {
+            int root = idAt[p];
+            if (root == NULL || parent[root] != NULL) continue;
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                int id = stack[--top];
+                newIdAt[next++] = id;
+                for (int child = firstChild[id]; child != NULL; child = nextSibling[child]) stack[top++] = child;
+            }
+        }
+
+        float[] newLocal = new float[local.length];
+        float[] newWorld = new float[world.length];
+        long[] newDirty = new long[dirty.length];
+        int[] newParentAt = new int[parentAt.length];
+        for (int p = 0; p < next; p++) {
+            int id = newIdAt[p];
+            int old = positionOf[id];
+            System.arraycopy(local, old * 16, newLocal, p * 16, 16);
+            System.arraycopy(world, old * 16, newWorld, p * 16, 16);
+            if ((dirty[old >>> 6] & (1L << old)) != 0) newDirty[p >>> 6] |= 1L << p;
+            positionOf[id] = p;
+            newParentAt[p] = parent[id] != NULL ? positionOf[parent[id]] : NULL;
+            subtreeSize[p] = 1;
+        }
+        // children come after their parent, so walking backwards has every subtree summed before its parent needs it
+        for (int p = next - 1; p > 0; p--) {
+            if (newParentAt[p] != NULL) subtreeSize[newParentAt[p]] += subtreeSize[p];
+        }
+
+        idAt = newIdAt;
+        parentAt = newParentAt;
+        local = newLocal;
+        world = newWorld;
+        dirty = newDirty;
+        positionCount = next;
+        orderDirty = false;
+    }
+
+    private void link(int node, int parent) {
+        nextSibling[node] = firstChild[parent];
+        firstChild[parent] = node;
+    }
+
+    private void unlink(int node, int parent) {
+        if (firstChild[parent] == node) {
+            firstChild[parent] = nextSibling[node];
+        } else {
+            int sibling = firstChild[parent];
+            while (nextSibling[sibling] != node) sibling = nextSibling[sibling];
+            nextSibling[sibling] = nextSibling[node];
+        }
+        nextSibling[node] = NULL;
+    }
+
+    private static void identity(float[] matrices, int position) {
+        Arrays.fill(matrices, position * 16, position * 16 + 16, 0);
+        matrices[position * 16] = matrices[position * 16 + 5] = matrices[position * 16 + 10] = matrices[position * 16 + 15] = 1;
+    }
+
+    private void checkAlive(int node) {
+        if (!isAlive(node)) throw new IllegalArgumentException("Scene node " + node + " does not exist");
+    }
+
+    private void growIds(int capacity) {
+        parent = Arrays.copyOf(parent, capacity);
+        firstChild = Arrays.copyOf(firstChild, capacity);
+        nextSibling = Arrays.copyOf(nextSibling, capacity);
+        positionOf = Arrays.copyOf(positionOf, capacity);
+        userData = Arrays.copyOf(userData, capacity);
+    }
+
+    private void growPositions(int capacity) {
+        idAt = Arrays.copyOf(idAt, capacity);
+        parentAt = Arrays.copyOf(parentAt, capacity);
+        subtreeSize = Arrays.copyOf(subtreeSize, capacity);
+        local = Arrays.copyOf(local, capacity * 16);
+        world = Arrays.copyOf(world, capacity * 16);
+        dirty = Arrays.copyOf(dirty, bitsetLength(capacity));
+    }
+}
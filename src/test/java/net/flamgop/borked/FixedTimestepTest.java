@@ -0,0 +1,91 @@
+package net.flamgop.borked;
+
+import net.flamgop.borked.math.FrameScratch;
+import net.flamgop.borked.math.Vector3f;
+import net.flamgop.borked.renderer.window.PlortInput;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.glfw.GLFW;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// The game's fixed tick, driving a headless [World] and [CameraController] the way [Game#start()] does.
+class FixedTimestepTest {
+    private static final double MAX_FRAME_SECONDS = 0.25;
+    private static final int TICKS = 240;
+    private static final int JUMP_TICK = TICKS / 2;
+
+    @Test
+    void ticksAreWholeAndCarryTheRemainder() {
+        FixedTimestep timestep = new FixedTimestep(0.25, MAX_FRAME_SECONDS);
+        assertEquals(0, timestep.advance(0.125));
+        assertEquals(0.5f, timestep.alpha());
+        assertEquals(1, timestep.advance(0.25));
+        assertEquals(0.5f, timestep.alpha());
+        assertEquals(1, timestep.advance(0.125));
+        assertEquals(0f, timestep.alpha());
+    }
+
+    @Test
+    void stallsAreDropped() {
+        FixedTimestep timestep = new FixedTimestep(Game.TICK_SECONDS, MAX_FRAME_SECONDS);
+        assertEquals((int) (MAX_FRAME_SECONDS / Game.TICK_SECONDS), timestep.advance(10));
+    }
+
+    @Test
+    void repeatedRunsMatch() {
+        double[] frames = {1 / 60.0};
+        assertArrayEquals(simulate(frames), simulate(frames));
+    }
+
+    @Test
+    void framerateDoesNotChangeTheSimulation() {
+        float[] steady = simulate(new double[]{1 / 60.0});
+        assertArrayEquals(steady, simulate(new double[]{1 / 144.0}));
+        assertArrayEquals(steady, simulate(new double[]{1 / 240.0, 1 / 30.0, 0.001, 1 / 90.0, 0.05}));
+
+        // and something actually happened: the player walked forward, fell to the floor and jumped off it
+        assertTrue(steady[(TICKS - 1) * 3] > steady[0] + 1f);
+        float lowest = Float.POSITIVE_INFINITY, afterJump = Float.NEGATIVE_INFINITY;
+        for (int tick = 0; tick < TICKS; tick++) {
+            float y = steady[tick * 3 + 1];
+            if (tick < JUMP_TICK) lowest = Math.min(lowest, y);
+            else afterJump = Math.max(afterJump, y);
+        }
+        assertTrue(afterJump > lowest + 1f);
+    }
+
+    /// Runs [#TICKS] ticks with frames taking `frameTimes` in turn, holding W throughout and space for a few ticks from [#JUMP_TICK],
+    /// since a player at rest is only grounded every other tick.
+    /// Input is applied per tick, like a recorded replay, so only the frame pacing differs between runs.
+    /// @return The player's position after every tick.
+    private static float[] simulate(double[] frameTimes) {
+        PlortInput input = new PlortInput();
+        FrameScratch scratch = new FrameScratch(true);
+        CameraController player = new CameraController(input, scratch, 90, 0.1f);
+        World world = new World(player);
+        FixedTimestep timestep = new FixedTimestep(Game.TICK_SECONDS, MAX_FRAME_SECONDS);
+
+        float[] positions = new float[TICKS * 3];
+        Vector3f position = new Vector3f();
+        try (world; player) {
+            int tick = 0;
+            for (int frame = 0; tick < TICKS; frame++) {
+                scratch.reset();
+                for (int due = timestep.advance(frameTimes[frame % frameTimes.length]); due > 0 && tick < TICKS; due--, tick++) {
+                    input.setKeyDown(GLFW.GLFW_KEY_W, true);
+                    input.setKeyDown(GLFW.GLFW_KEY_SPACE, tick >= JUMP_TICK && tick < JUMP_TICK + 4);
+                    player.tick(world, Game.TICK_SECONDS);
+                    world.update(Game.TICK_SECONDS);
+
+                    player.position(position);
+                    positions[tick * 3] = position.x();
+                    positions[tick * 3 + 1] = position.y();
+                    positions[tick * 3 + 2] = position.z();
+                }
+            }
+        }
+        return positions;
+    }
+}
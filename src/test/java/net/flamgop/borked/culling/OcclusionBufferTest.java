@@ -0,0 +1,104 @@
+package net.flamgop.borked.culling;
+
+import net.flamgop.borked.math.Matrix4f;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// A camera at the origin looking down -z through a 90 degree, square [Matrix4f#perspective], so at distance `d` the screen spans
+/// `[-d, d]` on x and y. The buffer's odd size exercises the pyramid's repeated last rows and columns.
+class OcclusionBufferTest {
+    private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+    private OcclusionBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new OcclusionBuffer(61, 61);
+        buffer.begin(new Matrix4f().perspective((float) Math.toRadians(90), 1f, 0.1f, 100f, true));
+    }
+
+    // a square facing the camera at depth z, half as wide as the screen there
+    private static Occluder quad(float z) {
+        float half = -z / 2f;
+        return new Occluder(
+                new float[]{-half, -half, z, half, -half, z, half, half, z, -half, half, z},
+                new int[]{0, 1, 2, 0, 2, 3}
+        );
+    }
+
+    private void rasterize(Occluder... occluders) {
+        for (Occluder occluder : occluders) buffer.addOccluder(occluder, IDENTITY, 0);
+        buffer.rasterize(0, buffer.height());
+        buffer.buildHierarchy();
+    }
+
+    @Test
+    void boxBehindQuadIsOccluded() {
+        rasterize(quad(-10));
+        assertTrue(buffer.isOccluded(-1, -1, -21, 1, 1, -19));
+    }
+
+    @Test
+    void boxInFrontOfQuadIsVisible() {
+        rasterize(quad(-10));
+        assertFalse(buffer.isOccluded(-1, -1, -6, 1, 1, -4));
+    }
+
+    @Test
+    void boxPeekingPastQuadIsVisible() {
+        rasterize(quad(-10));
+        // behind the quad's plane, but wider than the quad
+        assertFalse(buffer.isOccluded(-15, -1, -21, 15, 1, -19));
+    }
+
+    @Test
+    void boxCrossingNearPlaneIsVisible() {
+        rasterize(quad(-10));
+        // mostly far behind the quad, but its near end is between the near plane and the camera
+        assertFalse(buffer.isOccluded(-0.01f, -0.01f, -50, 0.01f, 0.01f, -0.05f));
+    }
+
+    @Test
+    void boxPartlyOffScreenIsVisible() {
+        // covers the whole screen
+        rasterize(new Occluder(new float[]{-100, -100, -10, 100, -100, -10, 100, 100, -10, -100, 100, -10}, new int[]{0, 1, 2, 0, 2, 3}));
+        assertTrue(buffer.isOccluded(-1, -1, -21, 1, 1, -19));
+        // at z = -20 the screen ends at x = 20
+        assertFalse(buffer.isOccluded(15, -1, -21, 25, 1, -19));
+    }
+
+    @Test
+    void nothingRasterizedOccludesNothing() {
+        rasterize();
+        assertFalse(buffer.isOccluded(-1, -1, -21, 1, 1, -19));
+    }
+
+    @Test
+    void hierarchyLevelsAreConservative() {
+        // a tilted quad and an upright one, so depths vary across the screen and blocks straddle occluder edges
+        Occluder tilted = new Occluder(new float[]{-30, -20, -15, 10, -20, -45, 10, 20, -45, -30, 20, -15}, new int[]{0, 1, 2, 0, 2, 3});
+        rasterize(tilted, quad(-12));
+
+        float[] depth = buffer.depth();
+        int width = buffer.width(), height = buffer.height();
+        for (int level = 1; level < buffer.levelCount(); level++) {
+            float[] texels = buffer.level(level);
+            int levelWidth = buffer.levelWidth(level);
+            for (int y = 0; y < texels.length / levelWidth; y++) {
+                for (int x = 0; x < levelWidth; x++) {
+                    float max = Float.NEGATIVE_INFINITY;
+                    for (int dy = y << level; dy < Math.min((y + 1) << level, height); dy++) {
+                        for (int dx = x << level; dx < Math.min((x + 1) << level, width); dx++) max = Math.max(max, depth[dy * width + dx]);
+                    }
+                    float texel = texels[y * levelWidth + x];
+                    assertTrue(texel >= max, "level " + level + " texel " + x + ", " + y + " is " + texel + ", nearer than " + max + " below it");
+                }
+            }
+        }
+        assertEquals(1, buffer.level(buffer.levelCount() - 1).length);
+    }
+}
@@ -0,0 +1,52 @@
+package net.flamgop.borked.math;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// The specialized inverses against the general adjugate path, so a precision regression can't hide behind a speedup.
+class MatrixInverseTest {
+    private static final float TOLERANCE = 1e-4f;
+
+    @Test
+    void rigid() {
+        Matrix4f rigid = new Matrix4f()
+                .rotation(new Quaternionf(0.18257418f, 0.36514837f, 0.5477226f, 0.73029673f))
+                .setTranslation(12.5f, -3f, 100f);
+        check(rigid, MatrixKind.RIGID, new Matrix4f(rigid).invertRigid());
+    }
+
+    @Test
+    void affine() {
+        Matrix4f affine = new Matrix4f(
+                2f, 0.5f, 0f, 0f,
+                0f, 3f, 0.25f, 0f,
+                0.1f, 0f, 0.75f, 0f,
+                -4f, 8f, 16f, 1f
+        );
+        check(affine, MatrixKind.AFFINE, new Matrix4f(affine).invertAffine());
+    }
+
+    @Test
+    void perspective() {
+        Matrix4f perspective = new Matrix4f().perspective((float) Math.toRadians(90), 16f / 9f, 0.001f, 1000f, true);
+        check(perspective, MatrixKind.PERSPECTIVE, new Matrix4f(perspective).invertPerspective());
+    }
+
+    @Test
+    void dispatchedMatchesKind() {
+        Matrix4f rigid = new Matrix4f().rotation(new Quaternionf(0f, 0.70710677f, 0f, 0.70710677f)).setTranslation(1f, 2f, 3f);
+        check(rigid, MatrixKind.RIGID, new Matrix4f(rigid).invert());
+    }
+
+    private static void check(Matrix4f m, MatrixKind expectedKind, Matrix4f fast) {
+        assertEquals(expectedKind, m.kind(), "tracked kind");
+        Matrix4f reference = new Matrix4f(m).invertGeneral();
+        for (int i = 0; i < 16; i++) {
+            float error = Math.abs(fast.get(i) - reference.get(i)) / Math.max(1f, Math.abs(reference.get(i)));
+            int element = i;
+            assertTrue(error <= TOLERANCE, () -> "element " + element + ": " + fast.get(element) + " vs " + reference.get(element));
+        }
+    }
+}